@@ -0,0 +1,119 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Vergleicht das Formatieren wiederkehrender Dokumente mit und ohne {@link FormattedDocumentCache}.
+ * <p>
+ * Ausführung: {@code ./gradlew jmh -Pjmh.includes=FormattedDocumentCacheBenchmark}. Jeder Aufruf formatiert
+ * {@code documentsPerCall} Dokumente, die zu {@code hotShare} Prozent aus einer kleinen Menge häufiger Dokumente
+ * stammen. Die Varianten mit 8 Threads zeigen den Einfluss der Segmentsperren bei gemeinsam genutztem Cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FormattedDocumentCacheBenchmark {
+
+    // Ein Formatierer mit typischem Aufwand: Metadaten-Kopf, Maskierung und Kürzen von Leerraum
+    private static final Function<Document, String> FORMATTER = doc -> "Quelle: " + doc.getMetadata("source")
+            + " | Seite " + doc.getMetadata("page") + "\n"
+            + doc.text().replace("<", "&lt;").replace(">", "&gt;").replaceAll("\\s+", " ").strip();
+
+    private static final int HOT_DOCUMENTS = 200;
+    private static final int COLD_DOCUMENTS = 100_000;
+    private static final int CALLS = 1024;
+
+    @Param({"16"})
+    public int documentsPerCall;
+
+    @Param({"2000"})
+    public int documentSize;
+
+    @Param({"50", "90"})
+    public int hotShare;
+
+    private List<List<Document>> calls;
+    private FormattedDocumentCache cache;
+    private Function<Document, String> cachedFormatter;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<Document> hot = new ArrayList<>(HOT_DOCUMENTS);
+        for (int i = 0; i < HOT_DOCUMENTS; i++) {
+            hot.add(document(random, "hot-" + i, i));
+        }
+        calls = new ArrayList<>(CALLS);
+        for (int call = 0; call < CALLS; call++) {
+            List<Document> documents = new ArrayList<>(documentsPerCall);
+            for (int i = 0; i < documentsPerCall; i++) {
+                // Dokumente aus dem Retriever sind neue Instanzen, auch wenn der Inhalt bekannt ist
+                Document source = random.nextInt(100) < hotShare
+                        ? hot.get(random.nextInt(HOT_DOCUMENTS))
+                        : document(random, "cold-" + random.nextInt(COLD_DOCUMENTS), i);
+                documents.add(new Document(source.text(), source.metadata()));
+            }
+            calls.add(documents);
+        }
+        cache = new FormattedDocumentCache.Builder().maxEntries(1000).build();
+        cachedFormatter = cache.wrap(FORMATTER);
+    }
+
+    @Benchmark
+    public JoinedDocuments uncached() {
+        return JoinedDocuments.join(nextCall(), FORMATTER, "\n\n");
+    }
+
+    @Benchmark
+    public JoinedDocuments cached() {
+        return JoinedDocuments.join(nextCall(), cachedFormatter, "\n\n");
+    }
+
+    @Benchmark
+    @Threads(8)
+    public JoinedDocuments uncachedConcurrent() {
+        return JoinedDocuments.join(nextCall(), FORMATTER, "\n\n");
+    }
+
+    @Benchmark
+    @Threads(8)
+    public JoinedDocuments cachedConcurrent() {
+        return JoinedDocuments.join(nextCall(), cachedFormatter, "\n\n");
+    }
+
+    private List<Document> nextCall() {
+        // Ungeschützter Zähler: unter mehreren Threads genügt eine ungefähre Verteilung über die Aufrufe
+        int index = next++ & (CALLS - 1);
+        return calls.get(index);
+    }
+
+    private Document document(Random random, String source, int page) {
+        StringBuilder text = new StringBuilder(documentSize);
+        while (text.length() < documentSize) {
+            int wordLength = 2 + random.nextInt(8);
+            for (int i = 0; i < wordLength; i++) {
+                text.append((char) ('a' + random.nextInt(26)));
+            }
+            text.append(random.nextInt(10) == 0 ? "  <b> " : " ");
+        }
+        text.setLength(documentSize);
+        return new Document(text.toString(), Map.of("source", source, "page", page));
+    }
+}
@@ -0,0 +1,95 @@
+package com.aimitjava.chain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vergleicht das stückweise Dekodieren einer gestreamten Antwort mit dem Sammeln der vollständigen Antwort und
+ * anschließendem Parsen.
+ * <p>
+ * Ausführung: {@code ./gradlew jmh -Pjmh.includes=OutputParsingBenchmark}. Die Antwort besteht aus einem
+ * JSON-Objekt und {@code trailingChars} Zeichen Begründung danach, geliefert in Stücken von etwa vier Zeichen wie
+ * bei einem Tokenstrom. {@code incremental} hört nach dem letzten Feld auf, {@code collectThenParse} wartet alle
+ * Stücke ab und parst dann den zusammengesetzten Text. Die gemessene CPU-Zeit ist klein gegenüber der
+ * Generierungszeit; im Betrieb zählen vor allem die Ausgabetokens, die nach dem Abbruch nicht mehr erzeugt werden.
+ * Mit {@code -prof gc} zeigt der Vergleich außerdem die Allokationen je Antwort.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OutputParsingBenchmark {
+
+    private static final int CHUNK_CHARS = 4;
+
+    public enum Kategorie { FRAGE, BESCHWERDE, LOB }
+
+    public record Quelle(String titel, int seite) {
+    }
+
+    public record Ergebnis(String antwort, Kategorie kategorie, double konfidenz, List<String> schlagworte,
+                           List<Quelle> quellen, Optional<String> hinweis) {
+    }
+
+    @Param({"0", "2000"})
+    public int trailingChars;
+
+    @Param({"200", "2000"})
+    public int answerChars;
+
+    private List<String> chunks;
+    private RecordOutputParser<Ergebnis> parser;
+
+    @Setup
+    public void setUp() {
+        StringBuilder answer = new StringBuilder();
+        while (answer.length() < answerChars) {
+            answer.append("Die Lieferung verzögert sich wegen \\\"Streik\\\" im Lager. ");
+        }
+        StringBuilder output = new StringBuilder("```json\n{\"antwort\": \"").append(answer)
+                .append("\", \"kategorie\": \"beschwerde\", \"konfidenz\": 0.87, ")
+                .append("\"schlagworte\": [\"lieferung\", \"verzögerung\", \"streik\"], ")
+                .append("\"quellen\": [{\"titel\": \"FAQ Versand\", \"seite\": 3}, {\"titel\": \"AGB\", \"seite\": 11}], ")
+                .append("\"hinweis\": \"Kunde um Geduld bitten\"}\n```\n");
+        while (output.length() < trailingChars) {
+            output.append("Begründung: Die Quellen nennen den Streik als Ursache der Verzögerung. ");
+        }
+
+        chunks = new ArrayList<>();
+        for (int i = 0; i < output.length(); i += CHUNK_CHARS) {
+            chunks.add(output.substring(i, Math.min(i + CHUNK_CHARS, output.length())));
+        }
+        parser = RecordOutputParser.of(Ergebnis.class);
+    }
+
+    @Benchmark
+    public Ergebnis incremental() {
+        try (OutputParser.Decoder<Ergebnis> decoder = parser.newDecoder()) {
+            for (String chunk : chunks) {
+                if (decoder.feed(chunk)) {
+                    break;
+                }
+            }
+            return decoder.result();
+        }
+    }
+
+    @Benchmark
+    public Ergebnis collectThenParse() {
+        StringBuilder output = new StringBuilder();
+        for (String chunk : chunks) {
+            output.append(chunk);
+        }
+        return parser.parse(output.toString());
+    }
+}
@@ -0,0 +1,95 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Sucht den Umschlagpunkt zwischen sequentieller und paralleler Formatierung.
+ * <p>
+ * Ausführung: {@code ./gradlew jmh -Pjmh.includes=ParallelFormattingBenchmark}. Der Formatierer wandelt HTML in
+ * Text um und normalisiert Leerraum; {@code passes} wiederholt diese Arbeit, um teurere Formatierer nachzubilden
+ * (1 Durchlauf bei 2000 Zeichen entspricht etwa einigen zehn Mikrosekunden). Parallel lohnt sich, sobald
+ * {@code documents × Aufwand je Dokument} deutlich über dem Aufwand für das Verteilen (einige Mikrosekunden je
+ * Helfer) liegt; die Ergebnisse zeigen, ab welcher Dokumentenzahl {@code parallel} schneller ist und damit die
+ * Schwelle für {@code Builder.parallelFormatting(int)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParallelFormattingBenchmark {
+
+    private static final Pattern TAG = Pattern.compile("<[^>]+>");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    @Param({"2", "4", "8", "16", "32", "128"})
+    public int documents;
+
+    @Param({"1", "10"})
+    public int passes;
+
+    @Param({"2000"})
+    public int documentSize;
+
+    private List<Document> input;
+    private ForkJoinPool pool;
+    private ParallelDocumentFormatter sequential;
+    private ParallelDocumentFormatter parallel;
+
+    @Setup
+    public void setUp() {
+        Function<Document, String> formatter = document -> {
+            String text = document.text();
+            for (int i = 0; i < passes; i++) {
+                text = WHITESPACE.matcher(TAG.matcher(document.text()).replaceAll(" ")).replaceAll(" ").strip();
+            }
+            return "Quelle: " + document.getMetadata("source") + "\n" + text;
+        };
+
+        Random random = new Random(42);
+        input = new ArrayList<>(documents);
+        for (int d = 0; d < documents; d++) {
+            StringBuilder html = new StringBuilder(documentSize + 32);
+            while (html.length() < documentSize) {
+                html.append(random.nextInt(8) == 0 ? "<p class=\"x\">" : "").append("wort").append(random.nextInt(100))
+                        .append(random.nextInt(5) == 0 ? "</p>\n  " : " ");
+            }
+            input.add(new Document(html.toString(), Map.of("source", "seite-" + d)));
+        }
+
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        sequential = new ParallelDocumentFormatter(formatter, pool, Integer.MAX_VALUE);
+        parallel = new ParallelDocumentFormatter(formatter, pool, 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public String[] sequential() {
+        return sequential.formatAll(input);
+    }
+
+    @Benchmark
+    public String[] parallel() {
+        return parallel.formatAll(input);
+    }
+}
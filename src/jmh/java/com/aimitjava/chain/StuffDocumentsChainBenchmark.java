@@ -0,0 +1,156 @@
+package com.aimitjava.chain;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import com.aimitjava.document.Document;
+import com.aimitjava.model.ChatLanguageModel;
+import dev.langchain4j.model.output.TokenUsage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Misst die Kosten der Prompt-Erstellung in {@link StuffDocumentsChain#invoke} ohne Modellaufruf.
+ * <p>
+ * Ausführung: {@code ./gradlew jmh -Pjmh.includes=StuffDocumentsChainBenchmark}. Die Testdaten werden mit
+ * festem Seed erzeugt, das Modell antwortet sofort; die Ergebnisse sind damit offline reproduzierbar.
+ * Der gc-Profiler (siehe build.gradle) liefert zusätzlich die Allokationsrate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StuffDocumentsChainBenchmark {
+
+    private static final ChatLanguageModel NO_OP_MODEL =
+            prompt -> new ChatLanguageModel.Response<>("", new TokenUsage(0, 0, 0));
+
+    private static final Function<Document, String> FORMATTER =
+            doc -> "Quelle: " + doc.getMetadata("source") + "\n" + doc.text();
+
+    private static final String SEPARATOR = "\n\n";
+
+    @Param({"1", "100", "1000", "10000"})
+    public int documentCount;
+
+    @Param({"200", "2000"})
+    public int documentSize;
+
+    @Param({"0", "4", "16"})
+    public int variableCount;
+
+    @Param({"INFO", "DEBUG"})
+    public String logLevel;
+
+    private List<Document> documents;
+    private Map<String, Object> variables;
+    private Map<String, Object> renderVariables;
+    private CompiledPromptTemplate template;
+    private StuffDocumentsChain chain;
+    private Level previousLevel;
+    private FormattingAppender appender;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        documents = new ArrayList<>(documentCount);
+        for (int i = 0; i < documentCount; i++) {
+            documents.add(new Document(randomText(random, documentSize), Map.of("source", "doc-" + i)));
+        }
+
+        StringBuilder promptTemplate = new StringBuilder("Beantworte die Frage anhand der Dokumente.\n");
+        variables = new HashMap<>();
+        for (int i = 0; i < variableCount; i++) {
+            promptTemplate.append("Variable ").append(i).append(": {var").append(i).append("}\n");
+            variables.put("var" + i, randomText(random, 40));
+        }
+        promptTemplate.append("\n{context}\n\nAntwort:");
+
+        template = CompiledPromptTemplate.compile(promptTemplate.toString());
+        chain = new StuffDocumentsChain.Builder(NO_OP_MODEL, promptTemplate.toString())
+                .documentFormatter(FORMATTER)
+                .documentSeparator(SEPARATOR)
+                .build();
+
+        renderVariables = new HashMap<>(variables);
+        renderVariables.put("context", JoinedDocuments.join(documents, FORMATTER, SEPARATOR).toString());
+
+        // Debug-Ausgaben werden formatiert, aber nicht geschrieben, damit nur die Kosten der Kette gemessen werden
+        Logger logger = (Logger) LoggerFactory.getLogger(StuffDocumentsChain.class);
+        previousLevel = logger.getLevel();
+        logger.setLevel(Level.valueOf(logLevel));
+        logger.setAdditive(false);
+        appender = new FormattingAppender();
+        appender.start();
+        logger.addAppender(appender);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Logger logger = (Logger) LoggerFactory.getLogger(StuffDocumentsChain.class);
+        logger.detachAppender(appender);
+        logger.setAdditive(true);
+        logger.setLevel(previousLevel);
+    }
+
+    @Benchmark
+    public JoinedDocuments formatDocuments() {
+        return JoinedDocuments.join(documents, FORMATTER, SEPARATOR);
+    }
+
+    @Benchmark
+    public String formatAndJoinDocuments() {
+        return JoinedDocuments.join(documents, FORMATTER, SEPARATOR).toString();
+    }
+
+    @Benchmark
+    public String renderPrompt() {
+        return template.render(renderVariables);
+    }
+
+    @Benchmark
+    public String invoke() {
+        return chain.invoke(documents, variables);
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        while (builder.length() < length) {
+            int wordLength = 2 + random.nextInt(8);
+            for (int i = 0; i < wordLength; i++) {
+                builder.append((char) ('a' + random.nextInt(26)));
+            }
+            builder.append(' ');
+        }
+        builder.setLength(length);
+        return builder.toString();
+    }
+
+    /**
+     * Formatiert jede Log-Nachricht wie ein echter Appender, verwirft sie aber.
+     */
+    private static final class FormattingAppender extends AppenderBase<ILoggingEvent> {
+        private long characters;
+
+        @Override
+        protected void append(ILoggingEvent event) {
+            characters += event.getFormattedMessage().length();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.aimitjava.document;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vergleicht Allokationen und Laufzeit von {@link Document} mit der früheren Implementierung, die ihre Metadaten
+ * beim Erstellen und bei jedem Zugriff kopiert hat.
+ * <p>
+ * Ausführung: {@code ./gradlew jmh -Pjmh.includes=DocumentBenchmark}. Die Allokationsrate pro Operation
+ * ({@code gc.alloc.rate.norm}) liefert der gc-Profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DocumentBenchmark {
+
+    @Param({"1000"})
+    public int documentCount;
+
+    @Param({"2", "16"})
+    public int metadataSize;
+
+    private Map<String, Object> metadata;
+    private List<Document> documents;
+    private List<LegacyDocument> legacyDocuments;
+
+    @Setup
+    public void setUp() {
+        metadata = new HashMap<>();
+        metadata.put("source", "doc.txt");
+        for (int i = 1; i < metadataSize; i++) {
+            metadata.put("key" + i, i);
+        }
+        documents = new ArrayList<>(documentCount);
+        legacyDocuments = new ArrayList<>(documentCount);
+        for (int i = 0; i < documentCount; i++) {
+            documents.add(new Document("Dokument " + i, metadata));
+            legacyDocuments.add(new LegacyDocument("Dokument " + i, metadata));
+        }
+    }
+
+    @Benchmark
+    public void create(Blackhole blackhole) {
+        for (int i = 0; i < documentCount; i++) {
+            blackhole.consume(new Document("Dokument", metadata));
+        }
+    }
+
+    @Benchmark
+    public void createLegacy(Blackhole blackhole) {
+        for (int i = 0; i < documentCount; i++) {
+            blackhole.consume(new LegacyDocument("Dokument", metadata));
+        }
+    }
+
+    @Benchmark
+    public void readMetadata(Blackhole blackhole) {
+        for (Document document : documents) {
+            blackhole.consume(document.metadata().get("source"));
+        }
+    }
+
+    @Benchmark
+    public void readMetadataLegacy(Blackhole blackhole) {
+        for (LegacyDocument document : legacyDocuments) {
+            blackhole.consume(document.metadata().get("source"));
+        }
+    }
+
+    @Benchmark
+    public void copy(Blackhole blackhole) {
+        for (Document document : documents) {
+            blackhole.consume(document.withText(document.text()));
+        }
+    }
+
+    @Benchmark
+    public void copyLegacy(Blackhole blackhole) {
+        for (LegacyDocument document : legacyDocuments) {
+            blackhole.consume(new LegacyDocument(document.text(), new HashMap<>(document.metadata())));
+        }
+    }
+
+    /**
+     * Die frühere Implementierung als Vergleichsbasis.
+     */
+    static final class LegacyDocument {
+        private final String text;
+        private final Map<String, Object> metadata;
+
+        LegacyDocument(String text, Map<String, Object> metadata) {
+            this.text = text;
+            this.metadata = new HashMap<>(metadata);
+        }
+
+        String text() {
+            return text;
+        }
+
+        Map<String, Object> metadata() {
+            return new HashMap<>(metadata);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.aimitjava.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Vergleicht viele kleine Aufrufe einzeln und gebündelt über {@link MicroBatchingChatLanguageModel}.
+ * <p>
+ * Ausführung: {@code ./gradlew jmh -Pjmh.includes=MicroBatchingBenchmark}. Das Modell simuliert einen Anbieter mit
+ * festem Aufwand je Anfrage ({@code overheadMillis}), geringem Aufwand je Prompt und begrenzter Anzahl gleichzeitiger
+ * Anfragen. {@code windowMillis = -1} bedeutet ohne Bündelung. SampleTime zeigt die zusätzliche Latenz durch das
+ * Sammelfenster.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(32)
+public class MicroBatchingBenchmark {
+
+    private static final long PER_PROMPT_MICROS = 200;
+
+    @Param({"20"})
+    public int overheadMillis;
+
+    @Param({"8"})
+    public int providerConcurrency;
+
+    @Param({"-1", "0", "2", "10"})
+    public int windowMillis;
+
+    private ChatLanguageModel model;
+
+    @Setup
+    public void setUp() {
+        Semaphore slots = new Semaphore(providerConcurrency);
+        BatchChatLanguageModel provider = new BatchChatLanguageModel() {
+            @Override
+            public List<Response<String>> generateBatch(List<String> prompts) {
+                slots.acquireUninterruptibly();
+                try {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(overheadMillis)
+                            + TimeUnit.MICROSECONDS.toNanos(PER_PROMPT_MICROS) * prompts.size());
+                } finally {
+                    slots.release();
+                }
+                List<Response<String>> responses = new ArrayList<>(prompts.size());
+                for (String prompt : prompts) {
+                    responses.add(new Response<>("positiv", null));
+                }
+                return responses;
+            }
+        };
+        model = windowMillis < 0 ? provider : new MicroBatchingChatLanguageModel.Builder(provider)
+                .maxBatchSize(16)
+                .window(Duration.ofMillis(windowMillis))
+                .maxAddedLatency(Duration.ofMillis(Math.max(50, windowMillis)))
+                .maxConcurrentBatches(providerConcurrency)
+                .build();
+    }
+
+    @Benchmark
+    public String classify() {
+        return model.generate("Klassifiziere die Stimmung: Das Produkt ist gut.").content();
+    }
+}
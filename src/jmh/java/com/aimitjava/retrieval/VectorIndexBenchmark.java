@@ -0,0 +1,116 @@
+package com.aimitjava.retrieval;
+
+import com.aimitjava.document.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Misst die Latenz einer Top-k-Suche im exakten und im HNSW-Index sowie den Recall des HNSW-Index.
+ * <p>
+ * Ausführung: {@code ./gradlew jmh -Pjmh.includes=VectorIndexBenchmark}. Die Vektoren sind zufällig mit festem
+ * Seed; der Recall@k gegenüber der exakten Suche wird beim Aufbau über {@value #RECALL_QUERIES} Anfragen
+ * berechnet und auf INFO protokolliert. Der Aufbau des HNSW-Index mit einer Million Vektoren dauert einige Minuten.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class VectorIndexBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(VectorIndexBenchmark.class);
+
+    private static final int RECALL_QUERIES = 100;
+    private static final int QUERY_POOL = 1024;
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"384"})
+    public int dimension;
+
+    @Param({"FLAT", "HNSW"})
+    public String indexType;
+
+    @Param({"10"})
+    public int k;
+
+    private VectorIndex index;
+    private float[][] queries;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        FlatVectorIndex flat = new FlatVectorIndex(dimension);
+        HnswVectorIndex hnsw = "HNSW".equals(indexType)
+                ? new HnswVectorIndex.Builder(dimension).m(16).efConstruction(100).efSearch(64).build()
+                : null;
+        for (int i = 0; i < size; i++) {
+            Document document = new Document("Dokument " + i);
+            float[] vector = randomUnitVector(random, dimension);
+            flat.add(document, vector);
+            if (hnsw != null) {
+                hnsw.add(document, vector);
+            }
+        }
+        index = hnsw != null ? hnsw : flat;
+
+        queries = new float[QUERY_POOL][];
+        for (int i = 0; i < QUERY_POOL; i++) {
+            queries[i] = randomUnitVector(random, dimension);
+        }
+
+        if (hnsw != null) {
+            logger.info("recall@{} (size={}, dimension={}): {}", k, size, dimension,
+                    String.format(Locale.ROOT, "%.4f", recall(flat, hnsw)));
+        }
+    }
+
+    @Benchmark
+    public List<SearchResult> search() {
+        float[] query = queries[next++ & (QUERY_POOL - 1)];
+        return index.search(query, k);
+    }
+
+    private double recall(VectorIndex exact, VectorIndex approximate) {
+        int found = 0;
+        int expected = 0;
+        for (int q = 0; q < RECALL_QUERIES; q++) {
+            Set<Document> truth = new HashSet<>();
+            for (SearchResult result : exact.search(queries[q], k)) {
+                truth.add(result.document());
+            }
+            for (SearchResult result : approximate.search(queries[q], k)) {
+                if (truth.contains(result.document())) {
+                    found++;
+                }
+            }
+            expected += truth.size();
+        }
+        return (double) found / expected;
+    }
+
+    private static float[] randomUnitVector(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        VectorMath.normalize(vector);
+        return vector;
+    }
+}
@@ -0,0 +1,230 @@
+package com.aimitjava.chain;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Ein Executor, der höchstens {@code maxConcurrency} Aufgaben gleichzeitig an den zugrunde liegenden
+ * Executor weitergibt. Weitere Aufgaben werden in eine Warteschlange gestellt, ohne einen Thread zu blockieren,
+ * und gestartet, sobald eine laufende Aufgabe beendet ist.
+ * <p>
+ * Lehnt der zugrunde liegende Executor eine Aufgabe ab, schlägt genau diese Aufgabe fehl: Das Future einer über
+ * {@link #supply(Supplier)} eingereihten Aufgabe wird mit der {@link RejectedExecutionException} abgeschlossen.
+ * Eine einfache {@link Runnable} kann keinen Fehler melden; sie wird verworfen und protokolliert, und ihr Aufrufer
+ * erhält die Ausnahme aus {@link #execute(Runnable)}, sofern die Ablehnung noch während dieses Aufrufs geschieht.
+ * Aufgaben mit einem Ergebnis sollten daher über {@link #supply(Supplier)} statt über
+ * {@link CompletableFuture#supplyAsync(Supplier, Executor)} eingereiht werden.
+ */
+public final class BoundedExecutor implements Executor {
+    private static final Logger logger = LoggerFactory.getLogger(BoundedExecutor.class);
+
+    /**
+     * Eine eingereihte Aufgabe mit der Reaktion auf eine Ablehnung; ohne Reaktion wird die Ablehnung vermerkt.
+     */
+    private static final class Task {
+        private final Runnable body;
+        private final Consumer<RejectedExecutionException> onReject;
+        private volatile RejectedExecutionException rejection;
+
+        Task(Runnable body, Consumer<RejectedExecutionException> onReject) {
+            this.body = body;
+            this.onReject = onReject;
+        }
+    }
+
+    private final Executor delegate;
+    private final int maxConcurrency;
+    private final AtomicInteger permits;
+    private final Queue<Task> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger drainRequests = new AtomicInteger();
+
+    /**
+     * Erstellt einen neuen BoundedExecutor.
+     *
+     * @param delegate Der Executor, auf dem die Aufgaben ausgeführt werden
+     * @param maxConcurrency Die maximale Anzahl gleichzeitig laufender Aufgaben
+     */
+    public BoundedExecutor(Executor delegate, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1: " + maxConcurrency);
+        }
+        this.delegate = delegate;
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new AtomicInteger(maxConcurrency);
+    }
+
+    /**
+     * Gibt den Standard-Executor zurück: virtuelle Threads, wenn die Laufzeitumgebung sie unterstützt
+     * (Java 21+), sonst einen gemeinsamen Pool aus Daemon-Threads.
+     *
+     * @return Der Standard-Executor
+     */
+    public static Executor defaultExecutor() {
+        return DefaultExecutorHolder.EXECUTOR;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        Task queued = new Task(task, null);
+        enqueue(queued);
+        RejectedExecutionException rejection = queued.rejection;
+        if (rejection != null) {
+            throw rejection;
+        }
+    }
+
+    /**
+     * Reiht eine Aufgabe ein und meldet bei Ablehnung über {@code onReject} statt über eine Ausnahme. Wird von
+     * verschachtelten BoundedExecutors verwendet, damit eine spätere Ablehnung ihre eigene Aufgabe erreicht.
+     */
+    void execute(Runnable task, Consumer<RejectedExecutionException> onReject) {
+        enqueue(new Task(task, onReject));
+    }
+
+    /**
+     * Führt den Supplier aus, sobald ein Platz frei ist.
+     *
+     * @param supplier Die Berechnung
+     * @return Ein Future mit dem Ergebnis; es schlägt fehl, wenn der Supplier wirft oder der zugrunde liegende
+     *         Executor die Aufgabe ablehnt
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        enqueue(new Task(() -> {
+            try {
+                future.complete(supplier.get());
+            } catch (Throwable e) {
+                // Wie CompletableFuture.supplyAsync verpacken, damit Aufrufer die Ursache gleich behandeln
+                future.completeExceptionally(e instanceof CompletionException ? e : new CompletionException(e));
+            }
+        }, future::completeExceptionally));
+        return future;
+    }
+
+    /**
+     * Gibt die maximale Anzahl gleichzeitig laufender Aufgaben zurück.
+     *
+     * @return Die maximale Parallelität
+     */
+    public int maxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Gibt die Anzahl der Aufgaben zurück, die auf einen freien Platz warten.
+     *
+     * @return Die Anzahl wartender Aufgaben
+     */
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    private void enqueue(Task task) {
+        pending.add(task);
+        drain();
+    }
+
+    /**
+     * Übergibt wartende Aufgaben, solange Plätze frei sind. Es läuft immer nur ein Durchlauf; Anforderungen
+     * während eines Durchlaufs führen zu einer weiteren Runde statt zu Rekursion.
+     */
+    private void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int requests = 1;
+        do {
+            while (!pending.isEmpty() && tryAcquire()) {
+                Task task = pending.poll();
+                if (task == null) {
+                    permits.incrementAndGet();
+                    break;
+                }
+                submit(task);
+            }
+            requests = drainRequests.addAndGet(-requests);
+        } while (requests != 0);
+    }
+
+    private boolean tryAcquire() {
+        while (true) {
+            int available = permits.get();
+            if (available == 0) {
+                return false;
+            }
+            if (permits.compareAndSet(available, available - 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void submit(Task task) {
+        Runnable run = () -> runAndRelease(task.body);
+        try {
+            if (delegate instanceof BoundedExecutor bounded) {
+                bounded.execute(run, e -> reject(task, e));
+            } else {
+                delegate.execute(run);
+            }
+        } catch (RejectedExecutionException e) {
+            reject(task, e);
+        }
+    }
+
+    private void reject(Task task, RejectedExecutionException e) {
+        permits.incrementAndGet();
+        if (task.onReject != null) {
+            task.onReject.accept(e);
+        } else {
+            task.rejection = e;
+            logger.warn("Aufgabe vom Executor abgelehnt und verworfen: {}", e.getMessage());
+        }
+        // Die Ablehnung kann auch außerhalb eines Durchlaufs gemeldet werden, z.B. von einem äußeren Executor
+        drain();
+    }
+
+    private void runAndRelease(Runnable task) {
+        try {
+            task.run();
+        } finally {
+            permits.incrementAndGet();
+            drain();
+        }
+    }
+
+    private static final class DefaultExecutorHolder {
+        private static final Executor EXECUTOR = createDefaultExecutor();
+
+        private static Executor createDefaultExecutor() {
+            try {
+                // Über MethodHandles aufgerufen, damit das Projekt weiterhin mit Java 17 kompiliert
+                return (ExecutorService) MethodHandles.publicLookup()
+                        .findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+                                MethodType.methodType(ExecutorService.class))
+                        .invoke();
+            } catch (Throwable e) {
+                logger.debug("Virtuelle Threads nicht verfügbar, verwende Daemon-Thread-Pool");
+                AtomicInteger threadCount = new AtomicInteger();
+                return Executors.newCachedThreadPool(runnable -> {
+                    Thread thread = new Thread(runnable, "stuff-documents-chain-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.aimitjava.chain;
+
+import org.slf4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Steuert die Debug-Ausgaben einer Kette: ob ein Aufruf protokolliert wird (Level und Stichprobe) und wie
+ * große Inhalte gekürzt werden. Ist Debug deaktiviert, fällt außer dem Level-Check keine Arbeit an.
+ */
+final class ChainDiagnostics {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Logger logger;
+    private final int maxChars;
+    private final int sampleEvery;
+    private final AtomicLong invocations = new AtomicLong();
+
+    /**
+     * @param logger Der Logger der Kette
+     * @param maxChars Maximale Anzahl Zeichen pro protokolliertem Inhalt, 0 für unbegrenzt
+     * @param sampleEvery Nur jeder n-te Aufruf wird protokolliert, 1 für alle
+     */
+    ChainDiagnostics(Logger logger, int maxChars, int sampleEvery) {
+        if (maxChars < 0) {
+            throw new IllegalArgumentException("maxChars must not be negative: " + maxChars);
+        }
+        if (sampleEvery < 1) {
+            throw new IllegalArgumentException("sampleEvery must be at least 1: " + sampleEvery);
+        }
+        this.logger = logger;
+        this.maxChars = maxChars;
+        this.sampleEvery = sampleEvery;
+    }
+
+    /**
+     * Entscheidet einmal pro Aufruf, ob dessen Debug-Ausgaben geschrieben werden.
+     *
+     * @return true, wenn Debug aktiv ist und der Aufruf in die Stichprobe fällt
+     */
+    boolean sample() {
+        if (!logger.isDebugEnabled()) {
+            return false;
+        }
+        return sampleEvery == 1 || invocations.getAndIncrement() % sampleEvery == 0;
+    }
+
+    /**
+     * Kürzt einen Inhalt auf die konfigurierte Länge und hängt Gesamtlänge und Hash an,
+     * damit gekürzte Inhalte weiterhin unterscheidbar bleiben.
+     *
+     * @param text Der zu protokollierende Inhalt
+     * @return Der ggf. gekürzte Inhalt
+     */
+    String abbreviate(CharSequence text) {
+        if (text == null) {
+            return "null";
+        }
+        if (maxChars == 0 || text.length() <= maxChars) {
+            return text.toString();
+        }
+        return text.subSequence(0, maxChars) + "… [" + text.length() + " Zeichen, hash=" + Long.toHexString(hash(text)) + "]";
+    }
+
+    /**
+     * Gibt Variablen wie {@link Map#toString()} aus, kürzt aber jeden Wert einzeln und hört auf, sobald die
+     * konfigurierte Länge erreicht ist. Große Werte werden so nie vollständig in einen String kopiert.
+     *
+     * @param variables Die zu protokollierenden Variablen
+     * @return Die gekürzte Darstellung
+     */
+    String abbreviate(Map<String, ?> variables) {
+        StringBuilder builder = new StringBuilder("{");
+        int written = 0;
+        for (Map.Entry<String, ?> entry : variables.entrySet()) {
+            if (maxChars != 0 && builder.length() >= maxChars) {
+                builder.append("… [").append(variables.size() - written).append(" weitere Variablen]");
+                break;
+            }
+            if (written > 0) {
+                builder.append(", ");
+            }
+            Object value = entry.getValue();
+            builder.append(entry.getKey()).append('=')
+                    .append(abbreviate(value instanceof CharSequence text ? text : String.valueOf(value)));
+            written++;
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * 64-Bit-FNV-1a über die Zeichen des Inhalts.
+     */
+    static long hash(CharSequence text) {
+        return hash(text, text.length());
+    }
+
+    /**
+     * 64-Bit-FNV-1a über die ersten {@code length} Zeichen des Inhalts.
+     */
+    static long hash(CharSequence text, int length) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < length; i++) {
+            hash ^= text.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,352 @@
+package com.aimitjava.chain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Eine einmalig geparste Prompt-Vorlage aus Literal- und Platzhalter-Segmenten.
+ * Platzhalter haben die Form {@code {name}}, wobei {@code name} mit einem Buchstaben oder
+ * Unterstrich beginnt und danach Buchstaben, Ziffern, '_', '-' oder '.' enthalten darf.
+ * Alle anderen geschweiften Klammern (z.B. JSON-Beispiele im Prompt) bleiben unverändert.
+ * <p>
+ * Das Rendern erfolgt in einem einzigen Durchlauf in einen vorab dimensionierten Puffer,
+ * statt die gesamte Vorlage für jede Variable erneut zu kopieren. Werte vom Typ {@link JoinedDocuments}
+ * werden dabei direkt in den Puffer geschrieben.
+ */
+public final class CompiledPromptTemplate {
+
+    private final String template;
+    private final String[] literals;
+    private final int[] placeholderSlots;
+    private final List<String> variableNames;
+    private final int literalLength;
+
+    private CompiledPromptTemplate(String template, String[] literals, int[] placeholderSlots,
+                                   List<String> variableNames) {
+        this.template = template;
+        this.literals = literals;
+        this.placeholderSlots = placeholderSlots;
+        this.variableNames = variableNames;
+
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Parst die übergebene Vorlage in Literal- und Platzhalter-Segmente.
+     *
+     * @param template Die Prompt-Vorlage
+     * @return Die kompilierte Vorlage
+     */
+    public static CompiledPromptTemplate compile(String template) {
+        if (template == null) {
+            throw new IllegalArgumentException("Prompt template must not be null");
+        }
+
+        List<String> literals = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        Map<String, Integer> slotByName = new LinkedHashMap<>();
+
+        int literalStart = 0;
+        int i = 0;
+        while (i < template.length()) {
+            if (template.charAt(i) == '{') {
+                int end = placeholderEnd(template, i);
+                if (end > 0) {
+                    String name = template.substring(i + 1, end);
+                    literals.add(template.substring(literalStart, i));
+                    slots.add(slotByName.computeIfAbsent(name, n -> slotByName.size()));
+                    literalStart = end + 1;
+                    i = literalStart;
+                    continue;
+                }
+            }
+            i++;
+        }
+        literals.add(template.substring(literalStart));
+
+        int[] placeholderSlots = new int[slots.size()];
+        for (int j = 0; j < placeholderSlots.length; j++) {
+            placeholderSlots[j] = slots.get(j);
+        }
+
+        return new CompiledPromptTemplate(
+                template,
+                literals.toArray(new String[0]),
+                placeholderSlots,
+                List.copyOf(slotByName.keySet())
+        );
+    }
+
+    /**
+     * Liefert den Index der schließenden Klammer, wenn an {@code start} ein gültiger Platzhalter beginnt,
+     * sonst -1.
+     */
+    private static int placeholderEnd(String template, int start) {
+        int i = start + 1;
+        if (i >= template.length()) {
+            return -1;
+        }
+        char first = template.charAt(i);
+        if (!Character.isLetter(first) && first != '_') {
+            return -1;
+        }
+        for (i++; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c == '}') {
+                return i;
+            }
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '.') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gibt die ursprüngliche Vorlage zurück.
+     *
+     * @return Die Prompt-Vorlage
+     */
+    public String template() {
+        return template;
+    }
+
+    /**
+     * Gibt die Namen aller Platzhalter in der Reihenfolge ihres ersten Auftretens zurück.
+     *
+     * @return Die Variablennamen
+     */
+    public List<String> variableNames() {
+        return variableNames;
+    }
+
+    /**
+     * Prüft, ob die Vorlage einen Platzhalter mit dem angegebenen Namen enthält.
+     *
+     * @param name Der Variablenname
+     * @return true, wenn der Platzhalter vorhanden ist
+     */
+    public boolean hasVariable(String name) {
+        return variableNames.contains(name);
+    }
+
+    /**
+     * Füllt die Vorlage mit den übergebenen Variablen.
+     *
+     * @param variables Werte für alle Platzhalter der Vorlage
+     * @return Der gefüllte Prompt
+     * @throws IllegalArgumentException wenn für einen Platzhalter kein Wert vorhanden ist
+     */
+    public String render(Map<String, ?> variables) {
+        CharSequence[] values = new CharSequence[variableNames.size()];
+        long length = literalLength;
+        List<String> missing = null;
+
+        for (int slot = 0; slot < values.length; slot++) {
+            Object value = variables.get(variableNames.get(slot));
+            if (value == null) {
+                if (missing == null) {
+                    missing = new ArrayList<>();
+                }
+                missing.add(variableNames.get(slot));
+                continue;
+            }
+            values[slot] = value instanceof CharSequence sequence ? sequence : value.toString();
+        }
+
+        if (missing != null) {
+            throw new IllegalArgumentException("Missing value for prompt variable(s): " + missing);
+        }
+
+        for (int slot : placeholderSlots) {
+            length += values[slot].length();
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Rendered prompt exceeds the maximum length: " + length);
+        }
+
+        StringBuilder builder = new StringBuilder((int) length);
+        for (int j = 0; j < placeholderSlots.length; j++) {
+            builder.append(literals[j]);
+            CharSequence value = values[placeholderSlots[j]];
+            if (value instanceof JoinedDocuments documents) {
+                documents.appendTo(builder);
+            } else {
+                builder.append(value);
+            }
+        }
+        builder.append(literals[literals.length - 1]);
+        return builder.toString();
+    }
+
+    /**
+     * Berechnet die Länge des gefüllten Prompts ohne die Werte der angegebenen Variablen.
+     * Fehlende Werte zählen mit Länge 0.
+     *
+     * @param variables Die Werte der übrigen Platzhalter
+     * @param excludedVariable Die nicht mitgezählte Variable
+     * @return Die Länge in Zeichen
+     */
+    long lengthWithout(Map<String, ?> variables, String excludedVariable) {
+        long length = literalLength;
+        for (int slot : placeholderSlots) {
+            String name = variableNames.get(slot);
+            if (name.equals(excludedVariable)) {
+                continue;
+            }
+            Object value = variables.get(name);
+            if (value != null) {
+                length += value instanceof CharSequence sequence ? sequence.length() : value.toString().length();
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Berechnet, an welcher Stelle des gefüllten Prompts der Wert des ersten veränderlichen Platzhalters beginnt.
+     *
+     * @param variables Die Werte, mit denen gerendert wurde
+     * @param isVolatile Entscheidet anhand des Namens, ob ein Platzhalter veränderlich ist
+     * @return Die Länge des unveränderlichen Präfixes, ohne veränderliche Platzhalter die Länge des Prompts
+     */
+    long prefixLength(Map<String, ?> variables, Predicate<String> isVolatile) {
+        long length = 0;
+        for (int j = 0; j < placeholderSlots.length; j++) {
+            length += literals[j].length();
+            String name = variableNames.get(placeholderSlots[j]);
+            if (isVolatile.test(name)) {
+                return length;
+            }
+            Object value = variables.get(name);
+            if (value != null) {
+                length += value instanceof CharSequence sequence ? sequence.length() : value.toString().length();
+            }
+        }
+        return length + literals[literals.length - 1].length();
+    }
+
+    /**
+     * Verschiebt Zeilen mit veränderlichen Platzhaltern, die vor dem Dokumenten-Platzhalter stehen, hinter die
+     * letzte Zeile mit dem Dokumenten-Platzhalter. Statischer Text und Dokumente bilden damit einen gemeinsamen
+     * Präfix aufeinanderfolgender Prompts. Die Reihenfolge der verschobenen Zeilen bleibt erhalten; steht ein
+     * veränderlicher Platzhalter in derselben Zeile wie der Dokumenten-Platzhalter, bleibt die Zeile unverändert.
+     *
+     * @param documentVariable Der Name des Dokumenten-Platzhalters
+     * @param isVolatile Entscheidet anhand des Namens, ob ein Platzhalter veränderlich ist
+     * @return Die umgestellte Vorlage oder diese Vorlage, wenn nichts zu verschieben ist
+     */
+    CompiledPromptTemplate withVolatileLinesAfter(String documentVariable, Predicate<String> isVolatile) {
+        List<String> lines = new ArrayList<>();
+        int lineStart = 0;
+        for (int i = 0; i < template.length(); i++) {
+            if (template.charAt(i) == '\n') {
+                lines.add(template.substring(lineStart, i + 1));
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart < template.length()) {
+            lines.add(template.substring(lineStart));
+        }
+
+        int firstDocumentLine = -1;
+        int lastDocumentLine = -1;
+        boolean[] volatileLine = new boolean[lines.size()];
+        for (int i = 0; i < lines.size(); i++) {
+            for (String name : compile(lines.get(i)).variableNames()) {
+                if (name.equals(documentVariable)) {
+                    if (firstDocumentLine < 0) {
+                        firstDocumentLine = i;
+                    }
+                    lastDocumentLine = i;
+                } else if (isVolatile.test(name)) {
+                    volatileLine[i] = true;
+                }
+            }
+        }
+
+        List<String> moved = new ArrayList<>();
+        StringBuilder builder = new StringBuilder(template.length() + 1);
+        for (int i = 0; i < firstDocumentLine; i++) {
+            if (volatileLine[i]) {
+                moved.add(lines.get(i));
+            } else {
+                builder.append(lines.get(i));
+            }
+        }
+        if (moved.isEmpty()) {
+            return this;
+        }
+
+        for (int i = firstDocumentLine; i <= lastDocumentLine; i++) {
+            builder.append(lines.get(i));
+        }
+        boolean documentLineIsLast = builder.charAt(builder.length() - 1) != '\n';
+        if (documentLineIsLast) {
+            // Die letzte Zeile hatte keinen Umbruch, die Anzahl der Umbrüche bleibt gleich
+            builder.append('\n');
+            String last = moved.remove(moved.size() - 1);
+            moved.add(last.substring(0, last.length() - 1));
+        }
+        for (String line : moved) {
+            builder.append(line);
+        }
+        for (int i = lastDocumentLine + 1; i < lines.size(); i++) {
+            builder.append(lines.get(i));
+        }
+        return compile(builder.toString());
+    }
+
+    /**
+     * Zählt, wie oft der Platzhalter mit dem angegebenen Namen in der Vorlage vorkommt.
+     *
+     * @param name Der Variablenname
+     * @return Die Anzahl der Vorkommen
+     */
+    int occurrences(String name) {
+        int slot = variableNames.indexOf(name);
+        int count = 0;
+        for (int placeholderSlot : placeholderSlots) {
+            if (placeholderSlot == slot) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Ermittelt die übergebenen Variablen, für die es keinen Platzhalter in der Vorlage gibt.
+     *
+     * @param variables Die zu prüfenden Variablen
+     * @return Die Namen der überzähligen Variablen, leer wenn alle verwendet werden
+     */
+    public Set<String> unusedVariables(Map<String, ?> variables) {
+        Set<String> unused = null;
+        for (String name : variables.keySet()) {
+            if (!variableNames.contains(name)) {
+                if (unused == null) {
+                    unused = new LinkedHashSet<>();
+                }
+                unused.add(name);
+            }
+        }
+        return unused == null ? Collections.emptySet() : unused;
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledPromptTemplate{" +
+                "template='" + template + '\'' +
+                ", variables=" + variableNames +
+                '}';
+    }
+}
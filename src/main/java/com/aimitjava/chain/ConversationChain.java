@@ -0,0 +1,635 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+import com.aimitjava.metrics.ChainListener;
+import com.aimitjava.model.ChatLanguageModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Eine Kette für mehrstufige Gespräche, die den Zustand je Sitzung über die Gesprächsrunden hinweg hält.
+ * <p>
+ * Die formatierten Dokumente der vorherigen Runde bleiben je Sitzung erhalten. In der nächsten Runde werden
+ * Dokumente über ihren Inhalts-Hash wiedererkannt; nur hinzugekommene Dokumente werden formatiert, entfallene
+ * verworfen. Sind die Dokumente unverändert, wird auch der verbundene Kontext der Vorrunde wiederverwendet.
+ * <p>
+ * Der Gesprächsverlauf ist auf {@link Builder#maxHistoryTokens(int)} begrenzt. Wird die Grenze überschritten,
+ * fasst dasselbe Sprachmodell die ältesten Runden zusammen; die letzten {@link Builder#keepRecentTurns(int)} Runden
+ * bleiben wörtlich erhalten. Sitzungen, die länger als {@link Builder#idleTimeout(Duration)} nicht genutzt wurden,
+ * werden entfernt; bei mehr als {@link Builder#maxSessions(int)} Sitzungen zuerst die am längsten ungenutzten.
+ * <p>
+ * Aufrufe derselben Sitzung werden nacheinander ausgeführt, verschiedene Sitzungen laufen nebenläufig. Die Sperre
+ * je Sitzung ist ein {@link ReentrantLock} statt eines Monitors, damit ein virtueller Thread während des
+ * Modellaufrufs seinen Trägerthread nicht blockiert.
+ */
+public class ConversationChain {
+    private static final Logger logger = LoggerFactory.getLogger(ConversationChain.class);
+
+    private static final String DEFAULT_DOCUMENT_SEPARATOR = "\n\n";
+    private static final String DEFAULT_DOCUMENT_VARIABLE_NAME = "context";
+    private static final String DEFAULT_HISTORY_VARIABLE_NAME = "history";
+    private static final String DEFAULT_QUESTION_VARIABLE_NAME = "question";
+    private static final String DEFAULT_SUMMARY_PROMPT = """
+            Fasse den bisherigen Gesprächsverlauf knapp zusammen. Behalte Fakten, Entscheidungen und offene Fragen.
+
+            Bisherige Zusammenfassung:
+            {summary}
+
+            Neue Gesprächsrunden:
+            {turns}""";
+    private static final int DEFAULT_MAX_HISTORY_TOKENS = 2000;
+    private static final int DEFAULT_KEEP_RECENT_TURNS = 2;
+    private static final int DEFAULT_MAX_SESSIONS = 10_000;
+    private static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(30);
+
+    /**
+     * Kennzahlen über alle Sitzungen.
+     *
+     * @param sessions Aktuell gehaltene Sitzungen
+     * @param evictedSessions Wegen Inaktivität oder {@code maxSessions} entfernte Sitzungen
+     * @param reusedSegments Aus der Vorrunde übernommene formatierte Dokumente
+     * @param formattedSegments Neu formatierte Dokumente
+     * @param reusedContexts Runden, in denen der verbundene Kontext der Vorrunde unverändert übernommen wurde
+     * @param summarizations Zusammenfassungen älterer Runden
+     */
+    public record Stats(int sessions, long evictedSessions, long reusedSegments, long formattedSegments,
+                        long reusedContexts, long summarizations) {}
+
+    /**
+     * Ein formatiertes Dokument der Vorrunde. Dokumente mit gleichem Hash, aber unterschiedlichem Inhalt oder
+     * Metadaten werden über {@code next} verkettet.
+     */
+    private static final class Segment {
+        final Document document;
+        final String formatted;
+        Segment next;
+
+        Segment(Document document, String formatted) {
+            this.document = document;
+            this.formatted = formatted;
+        }
+    }
+
+    private record Turn(String text, int tokens) {}
+
+    /**
+     * Eine Sitzung mit dem beim Durchsuchen gelesenen Zeitpunkt, damit sich die Reihenfolge im Heap nicht ändert.
+     */
+    private record IdleCandidate(String sessionId, Session session, long lastAccessMillis) {}
+
+    /**
+     * Zustand einer Sitzung. Alle Felder außer den flüchtigen sind durch {@code lock} geschützt.
+     */
+    private static final class Session {
+        final ReentrantLock lock = new ReentrantLock();
+        Map<Long, Segment> segments = new HashMap<>();
+        List<Document> documents = List.of();
+        JoinedDocuments context;
+        final ArrayDeque<Turn> turns = new ArrayDeque<>();
+        String summary = "";
+        int summaryTokens;
+        int historyTokens;
+        JoinedDocuments history;
+        volatile long lastAccessMillis;
+        volatile boolean closed;
+    }
+
+    private final ChatLanguageModel model;
+    private final CompiledPromptTemplate promptTemplate;
+    private final CompiledPromptTemplate summaryPrompt;
+    private final String documentSeparator;
+    private final String documentVariableName;
+    private final String historyVariableName;
+    private final String questionVariableName;
+    private final Function<Document, String> documentFormatter;
+    private final TokenEstimator tokenEstimator;
+    private final int maxHistoryTokens;
+    private final int keepRecentTurns;
+    private final int maxSessions;
+    private final long idleTimeoutMillis;
+    private final Clock clock;
+    private final ChainListener listener;
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweepMillis = new AtomicLong();
+    private final AtomicBoolean trimming = new AtomicBoolean();
+    private final LongAdder evictedSessions = new LongAdder();
+    private final LongAdder reusedSegments = new LongAdder();
+    private final LongAdder formattedSegments = new LongAdder();
+    private final LongAdder reusedContexts = new LongAdder();
+    private final LongAdder summarizations = new LongAdder();
+
+    private ConversationChain(Builder builder, CompiledPromptTemplate promptTemplate,
+                              CompiledPromptTemplate summaryPrompt) {
+        this.model = builder.model;
+        this.promptTemplate = promptTemplate;
+        this.summaryPrompt = summaryPrompt;
+        this.documentSeparator = builder.documentSeparator;
+        this.documentVariableName = builder.documentVariableName;
+        this.historyVariableName = builder.historyVariableName;
+        this.questionVariableName = builder.questionVariableName;
+        this.documentFormatter = builder.formattedDocumentCache != null
+                ? builder.formattedDocumentCache.wrap(builder.documentFormatter)
+                : builder.documentFormatter;
+        this.tokenEstimator = builder.tokenEstimator;
+        this.maxHistoryTokens = builder.maxHistoryTokens;
+        this.keepRecentTurns = builder.keepRecentTurns;
+        this.maxSessions = builder.maxSessions;
+        this.idleTimeoutMillis = builder.idleTimeout.toMillis();
+        this.clock = builder.clock;
+        this.listener = builder.listener;
+        this.lastSweepMillis.set(clock.millis());
+    }
+
+    /**
+     * Führt eine Gesprächsrunde aus.
+     *
+     * @param sessionId Die Sitzung; eine unbekannte Sitzung wird angelegt
+     * @param question Die Frage dieser Runde
+     * @param documents Die Kontextdokumente dieser Runde
+     * @return Die Antwort des Sprachmodells
+     */
+    public String invoke(String sessionId, String question, List<Document> documents) {
+        return invoke(sessionId, question, documents, Map.of());
+    }
+
+    /**
+     * Führt eine Gesprächsrunde mit zusätzlichen Variablen für die Vorlage aus.
+     *
+     * @param sessionId Die Sitzung; eine unbekannte Sitzung wird angelegt
+     * @param question Die Frage dieser Runde
+     * @param documents Die Kontextdokumente dieser Runde
+     * @param additionalVariables Zusätzliche Variablen für den Prompt
+     * @return Die Antwort des Sprachmodells
+     */
+    public String invoke(String sessionId, String question, List<Document> documents,
+                         Map<String, Object> additionalVariables) {
+        long now = clock.millis();
+        evictIdleSessions(now);
+        String answer;
+        while (true) {
+            Session session = sessions.computeIfAbsent(sessionId, id -> new Session());
+            session.lock.lock();
+            try {
+                // Die Sitzung wurde zwischen Nachschlagen und Sperren entfernt
+                if (session.closed) {
+                    continue;
+                }
+                session.lastAccessMillis = now;
+                answer = invoke(session, question, documents, additionalVariables);
+                session.lastAccessMillis = clock.millis();
+            } finally {
+                session.lock.unlock();
+            }
+            break;
+        }
+        enforceMaxSessions();
+        return answer;
+    }
+
+    private String invoke(Session session, String question, List<Document> documents,
+                          Map<String, Object> additionalVariables) {
+        long formatStart = System.nanoTime();
+        JoinedDocuments context = updateContext(session, documents);
+        listener.onStage(ChainListener.Stage.FORMAT, System.nanoTime() - formatStart);
+
+        Map<String, Object> variables = new HashMap<>(additionalVariables);
+        variables.put(documentVariableName, context);
+        variables.put(historyVariableName, session.history != null ? session.history : "");
+        variables.put(questionVariableName, question);
+
+        long renderStart = System.nanoTime();
+        String prompt = promptTemplate.render(variables);
+        listener.onStage(ChainListener.Stage.RENDER, System.nanoTime() - renderStart);
+        listener.onPrompt(context.count(), ChainListener.utf8Length(prompt));
+
+        String answer = call(prompt).content();
+        addTurn(session, question, answer);
+        return answer;
+    }
+
+    /**
+     * Übernimmt die formatierten Dokumente der Vorrunde und formatiert nur hinzugekommene.
+     */
+    private JoinedDocuments updateContext(Session session, List<Document> documents) {
+        if (session.context != null && documents.equals(session.documents)) {
+            reusedContexts.increment();
+            reusedSegments.add(documents.size());
+            return session.context;
+        }
+
+        Map<Long, Segment> previous = session.segments;
+        Map<Long, Segment> current = new HashMap<>(documents.size() * 2);
+        String[] parts = new String[documents.size()];
+        int reused = 0;
+        for (int i = 0; i < parts.length; i++) {
+            Document document = documents.get(i);
+            long hash = document.contentHash();
+            Segment segment = find(current.get(hash), document);
+            if (segment == null) {
+                segment = find(previous.get(hash), document);
+                if (segment != null) {
+                    reused++;
+                } else {
+                    segment = new Segment(document, documentFormatter.apply(document));
+                }
+                Segment head = new Segment(segment.document, segment.formatted);
+                head.next = current.get(hash);
+                current.put(hash, head);
+            } else {
+                reused++;
+            }
+            parts[i] = segment.formatted;
+        }
+        reusedSegments.add(reused);
+        formattedSegments.add(parts.length - reused);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Kontext aktualisiert: {} übernommen, {} neu formatiert, {} entfallen", reused,
+                    parts.length - reused, Math.max(0, session.documents.size() - reused));
+        }
+
+        session.segments = current;
+        session.documents = List.copyOf(documents);
+        session.context = JoinedDocuments.of(parts, documentSeparator);
+        return session.context;
+    }
+
+    private static Segment find(Segment segment, Document document) {
+        for (Segment s = segment; s != null; s = s.next) {
+            if (s.document == document || s.document.equals(document)) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Hängt die Runde an den Verlauf an und fasst ältere Runden zusammen, sobald das Budget überschritten ist.
+     */
+    private void addTurn(Session session, String question, String answer) {
+        String text = "Nutzer: " + question + "\nAssistent: " + answer;
+        int tokens = tokenEstimator.estimate(text);
+        session.turns.addLast(new Turn(text, tokens));
+        session.historyTokens += tokens;
+
+        if (session.summaryTokens + session.historyTokens > maxHistoryTokens
+                && session.turns.size() > keepRecentTurns) {
+            summarize(session);
+        }
+        session.history = renderHistory(session);
+    }
+
+    private void summarize(Session session) {
+        StringBuilder oldTurns = new StringBuilder();
+        int removedTokens = 0;
+        int summarized = 0;
+        // Älteste Runden entnehmen, bis der Rest ohne Zusammenfassung wieder in das halbe Budget passt
+        while (session.turns.size() > keepRecentTurns
+                && session.historyTokens - removedTokens > maxHistoryTokens / 2) {
+            Turn turn = session.turns.removeFirst();
+            if (oldTurns.length() > 0) {
+                oldTurns.append("\n\n");
+            }
+            oldTurns.append(turn.text());
+            removedTokens += turn.tokens();
+            summarized++;
+        }
+        if (summarized == 0) {
+            return;
+        }
+        session.historyTokens -= removedTokens;
+
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("summary", session.summary.isEmpty() ? "(keine)" : session.summary);
+        variables.put("turns", oldTurns);
+        try {
+            session.summary = call(summaryPrompt.render(variables)).content().strip();
+            session.summaryTokens = tokenEstimator.estimate(session.summary);
+            summarizations.increment();
+            logger.debug("{} Runden zusammengefasst, Zusammenfassung hat ca. {} Tokens", summarized,
+                    session.summaryTokens);
+        } catch (RuntimeException e) {
+            // Ohne Zusammenfassung gehen die ältesten Runden verloren, der Speicher bleibt aber begrenzt
+            logger.warn("Zusammenfassung von {} Runden fehlgeschlagen, sie werden verworfen: {}", summarized,
+                    e.toString());
+        }
+    }
+
+    private JoinedDocuments renderHistory(Session session) {
+        int size = session.turns.size() + (session.summary.isEmpty() ? 0 : 1);
+        String[] parts = new String[size];
+        int i = 0;
+        if (!session.summary.isEmpty()) {
+            parts[i++] = "Zusammenfassung des bisherigen Gesprächs: " + session.summary;
+        }
+        for (Turn turn : session.turns) {
+            parts[i++] = turn.text();
+        }
+        return JoinedDocuments.of(parts, "\n\n");
+    }
+
+    private ChatLanguageModel.Response<String> call(String prompt) {
+        long start = System.nanoTime();
+        ChatLanguageModel.Response<String> response;
+        try {
+            response = model.generate(prompt);
+        } catch (RuntimeException e) {
+            listener.onError(ChainListener.Stage.MODEL_CALL, e);
+            throw e;
+        }
+        listener.onStage(ChainListener.Stage.MODEL_CALL, System.nanoTime() - start);
+        listener.onTokenUsage(response.tokenUsage());
+        return response;
+    }
+
+    /**
+     * Entfernt Sitzungen, die länger als {@code idleTimeout} nicht genutzt wurden. Wird bei Aufrufen höchstens
+     * alle {@code idleTimeout / 4} automatisch ausgeführt und kann zusätzlich periodisch aufgerufen werden.
+     *
+     * @return Die Anzahl der entfernten Sitzungen
+     */
+    public int evictIdleSessions() {
+        long now = clock.millis();
+        lastSweepMillis.set(now);
+        int evicted = 0;
+        for (Iterator<Map.Entry<String, Session>> it = sessions.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Session> entry = it.next();
+            if (now - entry.getValue().lastAccessMillis > idleTimeoutMillis && remove(entry.getKey(), entry.getValue())) {
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            logger.debug("{} inaktive Sitzungen entfernt", evicted);
+        }
+        return evicted;
+    }
+
+    private void evictIdleSessions(long now) {
+        long last = lastSweepMillis.get();
+        if (now - last >= idleTimeoutMillis / 4 && lastSweepMillis.compareAndSet(last, now)) {
+            evictIdleSessions();
+        }
+    }
+
+    /**
+     * Entfernt bei zu vielen Sitzungen die am längsten ungenutzten. Läuft nur bei Überschreitung und entfernt dann
+     * ein Zehntel mehr als nötig, damit nicht jeder neue Aufruf erneut alle Sitzungen durchsucht. Es räumt immer nur
+     * ein Aufrufer auf; die ältesten Sitzungen werden über einen Heap der Größe {@code target} bestimmt, ohne alle
+     * Sitzungen zu sortieren.
+     */
+    private void enforceMaxSessions() {
+        if (sessions.size() <= maxSessions || !trimming.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int excess = sessions.size() - maxSessions;
+            if (excess <= 0) {
+                return;
+            }
+            int target = Math.min(sessions.size(), excess + maxSessions / 10);
+            // Max-Heap nach letzter Nutzung: oben liegt die jüngste der bisher ältesten Sitzungen
+            PriorityQueue<IdleCandidate> oldest = new PriorityQueue<>(target + 1,
+                    Comparator.comparingLong(IdleCandidate::lastAccessMillis).reversed());
+            for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+                Session session = entry.getValue();
+                oldest.add(new IdleCandidate(entry.getKey(), session, session.lastAccessMillis));
+                if (oldest.size() > target) {
+                    oldest.poll();
+                }
+            }
+            for (IdleCandidate candidate : oldest) {
+                remove(candidate.sessionId(), candidate.session());
+            }
+        } finally {
+            trimming.set(false);
+        }
+    }
+
+    private boolean remove(String sessionId, Session session) {
+        // Ohne Sperre: eine gerade laufende Runde wird nicht unterbrochen, ihr Zustand geht mit der Sitzung verloren
+        if (sessions.remove(sessionId, session)) {
+            session.closed = true;
+            evictedSessions.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Beendet eine Sitzung und gibt ihren Zustand frei.
+     *
+     * @param sessionId Die Sitzung
+     * @return true, wenn die Sitzung bestand
+     */
+    public boolean endSession(String sessionId) {
+        Session session = sessions.remove(sessionId);
+        if (session == null) {
+            return false;
+        }
+        session.closed = true;
+        return true;
+    }
+
+    /**
+     * Gibt den aktuellen Gesprächsverlauf einer Sitzung zurück, wie er in der nächsten Runde in den Prompt eingeht.
+     *
+     * @param sessionId Die Sitzung
+     * @return Der Verlauf oder ein leerer String für unbekannte Sitzungen
+     */
+    public String history(String sessionId) {
+        Session session = sessions.get(sessionId);
+        if (session == null) {
+            return "";
+        }
+        session.lock.lock();
+        try {
+            return session.history != null ? session.history.toString() : "";
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    /**
+     * @return Die Anzahl der aktuell gehaltenen Sitzungen
+     */
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * @return Die Kennzahlen über alle Sitzungen
+     */
+    public Stats stats() {
+        return new Stats(sessions.size(), evictedSessions.sum(), reusedSegments.sum(), formattedSegments.sum(),
+                reusedContexts.sum(), summarizations.sum());
+    }
+
+    /**
+     * Builder-Klasse für eine einfachere Konfiguration der ConversationChain.
+     */
+    public static class Builder {
+        private final ChatLanguageModel model;
+        private final String promptTemplate;
+        private String summaryPrompt = DEFAULT_SUMMARY_PROMPT;
+        private String documentSeparator = DEFAULT_DOCUMENT_SEPARATOR;
+        private String documentVariableName = DEFAULT_DOCUMENT_VARIABLE_NAME;
+        private String historyVariableName = DEFAULT_HISTORY_VARIABLE_NAME;
+        private String questionVariableName = DEFAULT_QUESTION_VARIABLE_NAME;
+        private Function<Document, String> documentFormatter = Document::text;
+        private FormattedDocumentCache formattedDocumentCache;
+        private TokenEstimator tokenEstimator = TokenEstimator.defaultEstimator();
+        private int maxHistoryTokens = DEFAULT_MAX_HISTORY_TOKENS;
+        private int keepRecentTurns = DEFAULT_KEEP_RECENT_TURNS;
+        private int maxSessions = DEFAULT_MAX_SESSIONS;
+        private Duration idleTimeout = DEFAULT_IDLE_TIMEOUT;
+        private Clock clock = Clock.systemUTC();
+        private ChainListener listener = ChainListener.NO_OP;
+
+        /**
+         * @param model Das Sprachmodell für Antworten und Zusammenfassungen
+         * @param promptTemplate Die Vorlage mit Platzhaltern für Dokumente, Verlauf und Frage, standardmäßig
+         *                       {@code {context}}, {@code {history}} und {@code {question}}
+         */
+        public Builder(ChatLanguageModel model, String promptTemplate) {
+            this.model = model;
+            this.promptTemplate = promptTemplate;
+        }
+
+        /**
+         * Vorlage für das Zusammenfassen älterer Runden mit den Platzhaltern {@code {summary}} (bisherige
+         * Zusammenfassung) und {@code {turns}} (zusammenzufassende Runden).
+         */
+        public Builder summaryPrompt(String summaryPrompt) {
+            this.summaryPrompt = summaryPrompt;
+            return this;
+        }
+
+        public Builder documentSeparator(String documentSeparator) {
+            this.documentSeparator = documentSeparator;
+            return this;
+        }
+
+        public Builder documentVariableName(String documentVariableName) {
+            this.documentVariableName = documentVariableName;
+            return this;
+        }
+
+        public Builder historyVariableName(String historyVariableName) {
+            this.historyVariableName = historyVariableName;
+            return this;
+        }
+
+        public Builder questionVariableName(String questionVariableName) {
+            this.questionVariableName = questionVariableName;
+            return this;
+        }
+
+        public Builder documentFormatter(Function<Document, String> documentFormatter) {
+            this.documentFormatter = documentFormatter;
+            return this;
+        }
+
+        /**
+         * Teilt formatierte Dokumente zusätzlich über Sitzungen und Ketten hinweg.
+         */
+        public Builder formattedDocumentCache(FormattedDocumentCache formattedDocumentCache) {
+            this.formattedDocumentCache = formattedDocumentCache;
+            return this;
+        }
+
+        public Builder tokenEstimator(TokenEstimator tokenEstimator) {
+            this.tokenEstimator = tokenEstimator;
+            return this;
+        }
+
+        /**
+         * Obergrenze für Zusammenfassung und wörtlich gehaltene Runden zusammen. Standard sind 2000 Tokens.
+         */
+        public Builder maxHistoryTokens(int maxHistoryTokens) {
+            this.maxHistoryTokens = maxHistoryTokens;
+            return this;
+        }
+
+        /**
+         * Anzahl der letzten Runden, die nie zusammengefasst werden. Standard ist 2.
+         */
+        public Builder keepRecentTurns(int keepRecentTurns) {
+            this.keepRecentTurns = keepRecentTurns;
+            return this;
+        }
+
+        /**
+         * Höchstzahl gleichzeitig gehaltener Sitzungen. Standard ist 10000.
+         */
+        public Builder maxSessions(int maxSessions) {
+            this.maxSessions = maxSessions;
+            return this;
+        }
+
+        /**
+         * Nach dieser Zeit ohne Aufruf wird eine Sitzung entfernt. Standard sind 30 Minuten.
+         */
+        public Builder idleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        /**
+         * Uhr für die Inaktivität, z.B. für Tests. Standard ist die Systemuhr.
+         */
+        public Builder clock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Setzt den Empfänger für Laufzeiten, Prompt-Größe und Tokenverbrauch, z.B. {@code ChainMetrics}.
+         */
+        public Builder listener(ChainListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public ConversationChain build() {
+            CompiledPromptTemplate template = CompiledPromptTemplate.compile(promptTemplate);
+            for (String variable : List.of(documentVariableName, historyVariableName, questionVariableName)) {
+                if (!template.hasVariable(variable)) {
+                    throw new IllegalArgumentException("Prompt template must contain the variable: {" + variable + "}");
+                }
+            }
+            CompiledPromptTemplate summary = CompiledPromptTemplate.compile(summaryPrompt);
+            if (!summary.hasVariable("turns")) {
+                throw new IllegalArgumentException("Summary prompt must contain the variable: {turns}");
+            }
+            if (maxHistoryTokens < 1) {
+                throw new IllegalArgumentException("maxHistoryTokens must be positive: " + maxHistoryTokens);
+            }
+            if (keepRecentTurns < 0) {
+                throw new IllegalArgumentException("keepRecentTurns must not be negative: " + keepRecentTurns);
+            }
+            if (maxSessions < 1) {
+                throw new IllegalArgumentException("maxSessions must be positive: " + maxSessions);
+            }
+            if (idleTimeout.isNegative() || idleTimeout.isZero()) {
+                throw new IllegalArgumentException("idleTimeout must be positive: " + idleTimeout);
+            }
+            return new ConversationChain(this, template, summary);
+        }
+    }
+}
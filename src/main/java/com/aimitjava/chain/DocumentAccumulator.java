@@ -0,0 +1,127 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Formatiert Dokumente einzeln, sobald sie eintreffen, und sammelt sie bis zu einer Obergrenze an Zeichen
+ * und optional Tokens. Passt ein Dokument nicht mehr hinein, ist die Sammlung abgeschlossen; wie bei
+ * {@link DocumentPacker.Policy#IN_ORDER} werden auch kleinere nachfolgende Dokumente nicht mehr aufgenommen.
+ * <p>
+ * Es werden nur die formatierten Teile gehalten, der Speicherbedarf ist damit durch den Prompt begrenzt.
+ * Mit einer Reihenfolge werden zusätzlich die übernommenen Dokumente gehalten und beim Verbinden sortiert.
+ */
+final class DocumentAccumulator {
+
+    private final Function<Document, String> formatter;
+    private final String separator;
+    private final long maxChars;
+    private final TokenEstimator estimator;
+    private final long maxTokens;
+    private final int separatorTokens;
+    private final Comparator<Document> order;
+    private final List<String> parts = new ArrayList<>();
+    private final List<Document> documents;
+    private long chars;
+    private long tokens;
+    private boolean full;
+    private long formatNanos;
+
+    /**
+     * @param formatter Funktion zum Formatieren eines einzelnen Dokuments
+     * @param separator Der Trennstring zwischen formatierten Dokumenten
+     * @param maxChars Maximale Länge der verbundenen Dokumente in Zeichen
+     * @param estimator Schätzer für das Token-Budget oder null, wenn nur Zeichen begrenzt werden
+     * @param maxTokens Maximale Tokenanzahl der verbundenen Dokumente, nur mit Schätzer relevant
+     * @param order Reihenfolge der Dokumente im Ergebnis oder null für die Eingangsreihenfolge
+     */
+    DocumentAccumulator(Function<Document, String> formatter, String separator, long maxChars,
+                        TokenEstimator estimator, long maxTokens, Comparator<Document> order) {
+        this.formatter = formatter;
+        this.separator = separator;
+        this.maxChars = maxChars;
+        this.estimator = estimator;
+        this.maxTokens = maxTokens;
+        this.separatorTokens = estimator == null || separator.isEmpty() ? 0 : estimator.estimate(separator);
+        this.order = order;
+        this.documents = order == null ? null : new ArrayList<>();
+    }
+
+    /**
+     * Formatiert ein Dokument und übernimmt es, sofern es noch hineinpasst.
+     *
+     * @param document Das nächste Dokument
+     * @return false, wenn das Dokument nicht mehr hineinpasst und keine weiteren benötigt werden
+     */
+    boolean add(Document document) {
+        if (full) {
+            return false;
+        }
+        long start = System.nanoTime();
+        String part = formatter.apply(document);
+        boolean first = parts.isEmpty();
+        long addedChars = part.length() + (first ? 0 : separator.length());
+        long addedTokens = estimator == null ? 0 : estimator.estimate(part) + (first ? 0 : separatorTokens);
+        if (chars + addedChars > maxChars || (estimator != null && tokens + addedTokens > maxTokens)) {
+            full = true;
+        } else {
+            parts.add(part);
+            if (documents != null) {
+                documents.add(document);
+            }
+            chars += addedChars;
+            tokens += addedTokens;
+        }
+        formatNanos += System.nanoTime() - start;
+        return !full;
+    }
+
+    /**
+     * @return true, wenn ein Dokument wegen der Obergrenze abgewiesen wurde
+     */
+    boolean isFull() {
+        return full;
+    }
+
+    /**
+     * @return Die Anzahl der übernommenen Dokumente
+     */
+    int count() {
+        return parts.size();
+    }
+
+    /**
+     * @return Die für das Formatieren aufgewendete Zeit, ohne das Warten auf die Quelle
+     */
+    long formatNanos() {
+        return formatNanos;
+    }
+
+    /**
+     * Rechnet Zeit für ein vorgelagertes Formatieren hinzu, z.B. durch {@link ParallelDocumentFormatter}.
+     */
+    void addFormatNanos(long nanos) {
+        formatNanos += nanos;
+    }
+
+    JoinedDocuments join() {
+        if (order == null) {
+            return JoinedDocuments.of(parts.toArray(new String[0]), separator);
+        }
+        Integer[] indexes = new Integer[parts.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = i;
+        }
+        Arrays.sort(indexes, (a, b) -> order.compare(documents.get(a), documents.get(b)));
+        String[] sorted = new String[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            sorted[i] = parts.get(indexes[i]);
+        }
+        return JoinedDocuments.of(sorted, separator);
+    }
+}
@@ -0,0 +1,63 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Function;
+
+/**
+ * Ein Zwischenspeicher für abgeleitete Werte eines Dokuments, etwa Tokenanzahl oder Signatur.
+ * <p>
+ * Schlüssel ist das Dokument nach {@link Document#equals(Object)}, also Text und Metadaten; eine neue Instanz mit
+ * gleichem Inhalt findet daher denselben Eintrag. Die Schlüssel werden schwach gehalten: Ein Eintrag verschwindet,
+ * sobald die Instanz, mit der er abgelegt wurde, nicht mehr erreichbar ist. Die Einträge sind nach
+ * {@link Document#hashCode()} auf unabhängig gesperrte Segmente verteilt, damit sich Ketten, die sich eine Instanz
+ * teilen, nicht gegenseitig blockieren. Berechnet wird außerhalb der Sperre; bei gleichzeitigen Fehlschlägen für
+ * dasselbe Dokument kann ein Wert daher mehrfach berechnet werden.
+ *
+ * @param <V> Der Typ des abgeleiteten Werts
+ */
+final class DocumentAttributeCache<V> {
+
+    private static final int STRIPES = 16;
+
+    private final Map<Document, V>[] segments;
+
+    @SuppressWarnings("unchecked")
+    DocumentAttributeCache() {
+        segments = (Map<Document, V>[]) new Map<?, ?>[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            segments[i] = new WeakHashMap<>();
+        }
+    }
+
+    /**
+     * Gibt den gespeicherten Wert zurück oder berechnet und speichert ihn.
+     *
+     * @param document Das Dokument
+     * @param compute Berechnet den Wert, wenn er nicht gespeichert ist
+     * @return Der Wert
+     */
+    V get(Document document, Function<Document, V> compute) {
+        Map<Document, V> segment = segmentFor(document);
+        V value;
+        synchronized (segment) {
+            value = segment.get(document);
+        }
+        if (value != null) {
+            return value;
+        }
+        value = compute.apply(document);
+        synchronized (segment) {
+            segment.put(document, value);
+        }
+        return value;
+    }
+
+    private Map<Document, V> segmentFor(Document document) {
+        int hash = document.hashCode();
+        // Die oberen Bits einmischen, da Text-Hashes in den unteren Bits oft ähnlich sind
+        return segments[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+}
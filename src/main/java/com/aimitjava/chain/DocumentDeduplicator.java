@@ -0,0 +1,296 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.Function;
+
+/**
+ * Entfernt vor dem Zusammenfügen doppelte Dokumente.
+ * <p>
+ * Exakte Duplikate werden über {@link Document#contentHash()} erkannt und bei gleichem Hash über den Text
+ * bestätigt. Optional werden zusätzlich Beinahe-Duplikate über SimHash oder MinHash aus Wort-Shingles verworfen.
+ * Die Signaturen werden über Aufrufe hinweg wiederverwendet; Schlüssel ist der Dokumentinhalt nach
+ * {@link Document#equals(Object)}, siehe {@link DocumentAttributeCache}.
+ * Der Vergleich mit bereits aufgenommenen Dokumenten ist quadratisch in deren Anzahl und damit für die
+ * üblichen Trefferlisten einer Suche gedacht.
+ */
+public final class DocumentDeduplicator {
+
+    /**
+     * Verfahren für die Erkennung von Beinahe-Duplikaten.
+     */
+    public enum NearDuplicates {
+        /** Nur exakte Duplikate entfernen. */
+        NONE,
+        /** 64-Bit-SimHash; Ähnlichkeit ist der Anteil gleicher Bits. */
+        SIMHASH,
+        /** MinHash mit {@value #MINHASH_SIZE} Hashfunktionen; Ähnlichkeit schätzt die Jaccard-Ähnlichkeit. */
+        MINHASH
+    }
+
+    /**
+     * Ergebnis der Deduplizierung. Beide Listen behalten die Reihenfolge der Eingabe.
+     *
+     * @param kept Die aufgenommenen Dokumente
+     * @param dropped Die verworfenen Duplikate
+     * @param exactDuplicates Anzahl der exakten Duplikate
+     * @param nearDuplicates Anzahl der Beinahe-Duplikate
+     * @param savedTokens Die geschätzten Tokens der verworfenen Dokumente inklusive Separatoren
+     */
+    public record Result(List<Document> kept, List<Document> dropped, int exactDuplicates, int nearDuplicates,
+                         long savedTokens) {
+
+        public boolean hasDropped() {
+            return !dropped.isEmpty();
+        }
+    }
+
+    static final int MINHASH_SIZE = 64;
+    private static final int SHINGLE_SIZE = 3;
+    private static final long[] MINHASH_SEEDS = new SplittableRandom(42).longs(MINHASH_SIZE).toArray();
+
+    private final NearDuplicates nearDuplicates;
+    private final double threshold;
+    private final TokenEstimator estimator;
+    private final Function<Document, String> documentFormatter;
+    private final int separatorTokens;
+    private final DocumentAttributeCache<long[]> signatureCache = new DocumentAttributeCache<>();
+
+    /**
+     * Erstellt einen neuen DocumentDeduplicator.
+     *
+     * @param nearDuplicates Das Verfahren für Beinahe-Duplikate
+     * @param threshold Ab dieser Ähnlichkeit (0 bis 1) gilt ein Dokument als Beinahe-Duplikat
+     * @param estimator Der Token-Schätzer für die Einsparung
+     * @param documentFormatter Funktion zum Formatieren eines einzelnen Dokuments
+     * @param documentSeparator Der Trennstring zwischen formatierten Dokumenten
+     */
+    public DocumentDeduplicator(NearDuplicates nearDuplicates, double threshold, TokenEstimator estimator,
+                                Function<Document, String> documentFormatter, String documentSeparator) {
+        if (!(threshold > 0 && threshold <= 1)) {
+            throw new IllegalArgumentException("threshold must be in (0, 1]: " + threshold);
+        }
+        this.nearDuplicates = nearDuplicates;
+        this.threshold = threshold;
+        this.estimator = estimator;
+        this.documentFormatter = documentFormatter;
+        this.separatorTokens = documentSeparator.isEmpty() ? 0 : estimator.estimate(documentSeparator);
+    }
+
+    /**
+     * Entfernt die Duplikate aus einer Liste. Von mehreren gleichen Dokumenten bleibt das erste erhalten.
+     *
+     * @param documents Die Kandidaten
+     * @return Das Ergebnis mit aufgenommenen und verworfenen Dokumenten
+     */
+    public Result deduplicate(List<Document> documents) {
+        Session session = newSession();
+        for (Document document : documents) {
+            session.accept(document);
+        }
+        return session.result();
+    }
+
+    /**
+     * Beginnt eine Deduplizierung für Dokumente, die nacheinander eintreffen.
+     */
+    Session newSession() {
+        return new Session(documentFormatter);
+    }
+
+    /**
+     * Beginnt eine Deduplizierung, die für die Einsparung verworfener Dokumente den übergebenen Formatierer
+     * verwendet, z.B. einen, der bereits formatierte Dokumente nur nachschlägt.
+     */
+    Session newSession(Function<Document, String> formatter) {
+        return new Session(formatter);
+    }
+
+    /**
+     * Gibt die Signatur eines Dokuments für Beinahe-Duplikate zurück, bei SimHash ein Element, bei MinHash
+     * {@value #MINHASH_SIZE} Elemente.
+     */
+    long[] signature(Document document) {
+        return signatureCache.get(document, doc -> {
+            long[] shingles = shingles(doc.text());
+            return nearDuplicates == NearDuplicates.MINHASH ? minHash(shingles) : new long[]{simHash(shingles)};
+        });
+    }
+
+    double similarity(long[] a, long[] b) {
+        if (nearDuplicates == NearDuplicates.SIMHASH) {
+            return 1 - Long.bitCount(a[0] ^ b[0]) / 64.0;
+        }
+        int equal = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / a.length;
+    }
+
+    /**
+     * Zerlegt den Text in kleingeschriebene Wörter und bildet Hashes über je {@value #SHINGLE_SIZE} aufeinander
+     * folgende Wörter. Kürzere Texte ergeben ein einziges Shingle aus allen Wörtern.
+     */
+    static long[] shingles(String text) {
+        long[] words = new long[16];
+        int count = 0;
+        long hash = 0;
+        boolean inWord = false;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                if (!inWord) {
+                    hash = 0xcbf29ce484222325L;
+                    inWord = true;
+                }
+                hash ^= Character.toLowerCase(c);
+                hash *= 0x100000001b3L;
+            } else if (inWord) {
+                if (count == words.length) {
+                    words = Arrays.copyOf(words, count * 2);
+                }
+                words[count++] = hash;
+                inWord = false;
+            }
+        }
+
+        int size = Math.min(SHINGLE_SIZE, count);
+        if (size == 0) {
+            return new long[0];
+        }
+        long[] shingles = new long[count - size + 1];
+        for (int i = 0; i < shingles.length; i++) {
+            long shingle = 0;
+            for (int j = 0; j < size; j++) {
+                shingle = shingle * 31 + words[i + j];
+            }
+            shingles[i] = mix(shingle);
+        }
+        return shingles;
+    }
+
+    private static long simHash(long[] shingles) {
+        int[] weights = new int[64];
+        for (long shingle : shingles) {
+            for (int bit = 0; bit < 64; bit++) {
+                weights[bit] += ((shingle >>> bit) & 1) != 0 ? 1 : -1;
+            }
+        }
+        long hash = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                hash |= 1L << bit;
+            }
+        }
+        return hash;
+    }
+
+    private static long[] minHash(long[] shingles) {
+        long[] signature = new long[MINHASH_SIZE];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (long shingle : shingles) {
+            for (int i = 0; i < MINHASH_SIZE; i++) {
+                long value = mix(shingle ^ MINHASH_SEEDS[i]);
+                if (value < signature[i]) {
+                    signature[i] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Finalisierer aus SplitMix64, verteilt ähnliche Eingaben auf unabhängige Bits.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * Zustand einer Deduplizierung: die bereits aufgenommenen Dokumente und die bisherige Einsparung.
+     */
+    final class Session {
+        private final Function<Document, String> formatter;
+        private final Map<Long, List<Document>> byContentHash = new HashMap<>();
+        private final List<long[]> keptSignatures = new ArrayList<>();
+        private final List<Document> kept = new ArrayList<>();
+        private final List<Document> dropped = new ArrayList<>();
+        private int exactDuplicates;
+        private int nearDuplicateCount;
+        private long savedTokens;
+        private long nanos;
+
+        private Session(Function<Document, String> formatter) {
+            this.formatter = formatter;
+        }
+
+        /**
+         * Prüft ein Dokument gegen die bisher aufgenommenen.
+         *
+         * @return true, wenn das Dokument kein Duplikat ist und aufgenommen wurde
+         */
+        boolean accept(Document document) {
+            long start = System.nanoTime();
+            try {
+                return check(document);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        private boolean check(Document document) {
+            List<Document> sameHash = byContentHash.computeIfAbsent(document.contentHash(), h -> new ArrayList<>(1));
+            for (Document other : sameHash) {
+                if (other.text().equals(document.text())) {
+                    exactDuplicates++;
+                    drop(document);
+                    return false;
+                }
+            }
+
+            if (nearDuplicates != NearDuplicates.NONE) {
+                long[] signature = signature(document);
+                for (long[] other : keptSignatures) {
+                    if (similarity(signature, other) >= threshold) {
+                        nearDuplicateCount++;
+                        drop(document);
+                        return false;
+                    }
+                }
+                keptSignatures.add(signature);
+            }
+            sameHash.add(document);
+            kept.add(document);
+            return true;
+        }
+
+        private void drop(Document document) {
+            dropped.add(document);
+            savedTokens += estimator.estimate(formatter.apply(document)) + separatorTokens;
+        }
+
+        /**
+         * @return Die für die Prüfungen aufgewendete Zeit in Nanosekunden
+         */
+        long nanos() {
+            return nanos;
+        }
+
+        Result result() {
+            return new Result(Collections.unmodifiableList(kept), Collections.unmodifiableList(dropped),
+                    exactDuplicates, nearDuplicateCount, savedTokens);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.aimitjava.chain;
+
+/**
+ * Der Formatierer ist für ein Dokument fehlgeschlagen. Die ursprüngliche Exception ist als Ursache angehängt.
+ */
+public class DocumentFormattingException extends RuntimeException {
+
+    private final int documentIndex;
+
+    /**
+     * @param documentIndex Die Position des Dokuments in der übergebenen Liste
+     * @param cause Die Exception des Formatierers
+     */
+    public DocumentFormattingException(int documentIndex, RuntimeException cause) {
+        super("Formatting document " + documentIndex + " failed: " + cause, cause);
+        this.documentIndex = documentIndex;
+    }
+
+    /**
+     * @return Die Position des fehlgeschlagenen Dokuments in der übergebenen Liste
+     */
+    public int documentIndex() {
+        return documentIndex;
+    }
+}
@@ -0,0 +1,255 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Wählt vor dem Zusammenfügen die Dokumente aus, die in ein Token-Budget passen.
+ * <p>
+ * Die Tokenanzahl eines Dokuments wird einmalig aus seiner formatierten Darstellung geschätzt und
+ * zwischengespeichert, sodass wiederkehrende Dokumente über mehrere Aufrufe hinweg nicht erneut bewertet werden.
+ * Schlüssel ist der Dokumentinhalt nach {@link Document#equals(Object)}, siehe {@link DocumentAttributeCache}.
+ */
+public final class DocumentPacker {
+
+    /**
+     * Strategie für die Auswahl der Dokumente, wenn nicht alle in das Budget passen.
+     */
+    public enum Policy {
+        /** Behält Dokumente in Eingabereihenfolge, bis das nächste nicht mehr passt. */
+        IN_ORDER,
+        /** Nimmt Dokumente absteigend nach ihrem Score auf, solange sie passen. */
+        HIGHEST_SCORE_FIRST,
+        /** Maximiert die Summe der Scores (ohne Scores: die genutzten Tokens) per Rucksack-Optimierung. */
+        KNAPSACK
+    }
+
+    /**
+     * Ergebnis der Auswahl. Beide Listen behalten die Reihenfolge der Eingabe.
+     *
+     * @param kept Die Dokumente, die in den Prompt aufgenommen werden
+     * @param dropped Die Dokumente, die das Budget überschritten hätten
+     * @param usedTokens Die geschätzten Tokens der aufgenommenen Dokumente inklusive Separatoren
+     * @param maxTokens Das konfigurierte Budget
+     */
+    public record Result(List<Document> kept, List<Document> dropped, int usedTokens, int maxTokens) {
+
+        public boolean hasDropped() {
+            return !dropped.isEmpty();
+        }
+    }
+
+    /** Obergrenze der Kapazitätsstufen für die Rucksack-Optimierung; größere Budgets werden skaliert. */
+    private static final int KNAPSACK_BUCKETS = 2048;
+
+    private final int maxTokens;
+    private final Policy policy;
+    private final String scoreMetadataKey;
+    private final TokenEstimator estimator;
+    private final Function<Document, String> documentFormatter;
+    private final int separatorTokens;
+    private final DocumentAttributeCache<Integer> tokenCache = new DocumentAttributeCache<>();
+
+    /**
+     * Erstellt einen neuen DocumentPacker.
+     *
+     * @param maxTokens Das Token-Budget für die verbundenen Dokumente
+     * @param policy Die Auswahlstrategie
+     * @param scoreMetadataKey Der Metadaten-Schlüssel, unter dem der Score eines Dokuments steht
+     * @param estimator Der Token-Schätzer
+     * @param documentFormatter Funktion zum Formatieren eines einzelnen Dokuments
+     * @param documentSeparator Der Trennstring zwischen formatierten Dokumenten
+     */
+    public DocumentPacker(int maxTokens, Policy policy, String scoreMetadataKey, TokenEstimator estimator,
+                          Function<Document, String> documentFormatter, String documentSeparator) {
+        if (maxTokens < 1) {
+            throw new IllegalArgumentException("maxTokens must be positive: " + maxTokens);
+        }
+        this.maxTokens = maxTokens;
+        this.policy = policy;
+        this.scoreMetadataKey = scoreMetadataKey;
+        this.estimator = estimator;
+        this.documentFormatter = documentFormatter;
+        this.separatorTokens = documentSeparator.isEmpty() ? 0 : estimator.estimate(documentSeparator);
+    }
+
+    /**
+     * Gibt die geschätzte Tokenanzahl des formatierten Dokuments zurück.
+     *
+     * @param document Das Dokument
+     * @return Die geschätzte Tokenanzahl
+     */
+    public int estimate(Document document) {
+        return estimate(document, documentFormatter);
+    }
+
+    private int estimate(Document document, Function<Document, String> formatter) {
+        return tokenCache.get(document, doc -> estimator.estimate(formatter.apply(doc)));
+    }
+
+    /**
+     * Wählt die Dokumente aus, die in das Budget passen.
+     *
+     * @param documents Die Kandidaten
+     * @return Das Ergebnis mit aufgenommenen und verworfenen Dokumenten
+     */
+    public Result pack(List<Document> documents) {
+        return pack(documents, documentFormatter);
+    }
+
+    /**
+     * Wählt die Dokumente aus und formatiert noch nicht bewertete Dokumente mit dem übergebenen Formatierer,
+     * z.B. einem, der bereits formatierte Dokumente nachschlägt.
+     */
+    Result pack(List<Document> documents, Function<Document, String> formatter) {
+        return pack(documents, formatter, null);
+    }
+
+    /**
+     * Wählt die Dokumente aus und nimmt die Scores aus {@code scores} statt aus den Metadaten, damit der Aufrufer
+     * gespeicherte Dokumente unverändert übergeben kann und sie in den Caches wiedererkannt werden.
+     *
+     * @param scores Die Scores je Dokument; Dokumente ohne Eintrag werden über die Metadaten bewertet
+     */
+    Result pack(List<Document> documents, Function<Document, String> formatter,
+                Map<Document, ? extends Number> scores) {
+        int count = documents.size();
+        // Jedes Dokument trägt seinen Separator; n Dokumente brauchen n-1 Separatoren, daher Kapazität + 1 Separator
+        int[] costs = new int[count];
+        long totalCost = 0;
+        for (int i = 0; i < count; i++) {
+            costs[i] = estimate(documents.get(i), formatter) + separatorTokens;
+            totalCost += costs[i];
+        }
+        long capacity = (long) maxTokens + separatorTokens;
+
+        if (totalCost <= capacity) {
+            return new Result(documents, List.of(), usedTokens(totalCost, count), maxTokens);
+        }
+
+        boolean[] keep = switch (policy) {
+            case IN_ORDER -> keepInOrder(costs, capacity);
+            case HIGHEST_SCORE_FIRST -> keepHighestScoreFirst(scores(documents, scores), costs, capacity);
+            case KNAPSACK -> keepKnapsack(scores(documents, scores), costs, capacity);
+        };
+
+        List<Document> kept = new ArrayList<>();
+        List<Document> dropped = new ArrayList<>();
+        long keptCost = 0;
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                kept.add(documents.get(i));
+                keptCost += costs[i];
+            } else {
+                dropped.add(documents.get(i));
+            }
+        }
+        return new Result(kept, dropped, usedTokens(keptCost, kept.size()), maxTokens);
+    }
+
+    private int usedTokens(long cost, int keptCount) {
+        return (int) (keptCount == 0 ? 0 : cost - separatorTokens);
+    }
+
+    private static boolean[] keepInOrder(int[] costs, long capacity) {
+        boolean[] keep = new boolean[costs.length];
+        long used = 0;
+        for (int i = 0; i < costs.length && used + costs[i] <= capacity; i++) {
+            keep[i] = true;
+            used += costs[i];
+        }
+        return keep;
+    }
+
+    private static boolean[] keepHighestScoreFirst(Number[] scores, int[] costs, long capacity) {
+        List<Integer> order = new ArrayList<>(scores.length);
+        for (int i = 0; i < scores.length; i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparingDouble((Integer i) -> value(scores[i])).reversed());
+
+        boolean[] keep = new boolean[costs.length];
+        long used = 0;
+        for (int i : order) {
+            if (used + costs[i] <= capacity) {
+                keep[i] = true;
+                used += costs[i];
+            }
+        }
+        return keep;
+    }
+
+    private static boolean[] keepKnapsack(Number[] scores, int[] costs, long capacity) {
+        int count = costs.length;
+        boolean scored = false;
+        for (Number score : scores) {
+            if (score != null) {
+                scored = true;
+                break;
+            }
+        }
+
+        // Gewichte auf höchstens KNAPSACK_BUCKETS Stufen skalieren; Aufrunden hält die Auswahl im Budget
+        long scale = Math.max(1, (capacity + KNAPSACK_BUCKETS - 1) / KNAPSACK_BUCKETS);
+        int buckets = (int) (capacity / scale);
+        double[] best = new double[buckets + 1];
+        BitSet[] taken = new BitSet[count];
+
+        for (int i = 0; i < count; i++) {
+            taken[i] = new BitSet(buckets + 1);
+            int weight = (int) Math.min(buckets + 1L, (costs[i] + scale - 1) / scale);
+            double value = scored ? value(scores[i]) : costs[i];
+            for (int w = buckets; w >= weight; w--) {
+                double candidate = best[w - weight] + value;
+                if (candidate > best[w]) {
+                    best[w] = candidate;
+                    taken[i].set(w);
+                }
+            }
+        }
+
+        boolean[] keep = new boolean[count];
+        long used = 0;
+        int w = buckets;
+        for (int i = count - 1; i >= 0; i--) {
+            if (taken[i].get(w)) {
+                keep[i] = true;
+                used += costs[i];
+                w -= (int) ((costs[i] + scale - 1) / scale);
+            }
+        }
+
+        // Dokumente ohne Score bringen der Optimierung nichts und werden nie gewählt;
+        // den verbleibenden Platz füllen sie in Eingabereihenfolge
+        for (int i = 0; i < count; i++) {
+            if (!keep[i] && scored && value(scores[i]) <= 0 && used + costs[i] <= capacity) {
+                keep[i] = true;
+                used += costs[i];
+            }
+        }
+        return keep;
+    }
+
+    private Number[] scores(List<Document> documents, Map<Document, ? extends Number> given) {
+        Number[] scores = new Number[documents.size()];
+        for (int i = 0; i < scores.length; i++) {
+            Document document = documents.get(i);
+            Number score = given != null ? given.get(document) : null;
+            if (score == null && document.getMetadata(scoreMetadataKey) instanceof Number number) {
+                score = number;
+            }
+            scores[i] = score;
+        }
+        return scores;
+    }
+
+    private static double value(Number score) {
+        return score != null ? score.doubleValue() : 0.0;
+    }
+}
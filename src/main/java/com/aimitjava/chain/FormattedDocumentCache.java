@@ -0,0 +1,220 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Merkt sich die formatierte Darstellung von Dokumenten über Aufrufe hinweg, damit wiederkehrende Dokumente nicht
+ * bei jedem Aufruf erneut formatiert werden.
+ * <p>
+ * Schlüssel ist der {@link Document#contentHash()}; bei einem Treffer wird zusätzlich geprüft, ob Dokument und
+ * Formatierer übereinstimmen. Mehrere Ketten können sich eine Instanz teilen, auch mit unterschiedlichen
+ * Formatierern, wobei sich dann nur Ketten mit demselben Formatierer-Objekt Einträge teilen. Die Einträge sind auf
+ * mehrere unabhängig gesperrte Segmente verteilt, von denen jedes seine ältesten Einträge (LRU) verdrängt, sobald es
+ * seinen Anteil an {@link Builder#maxEntries(int)} überschreitet. Formatiert wird außerhalb der Sperre; bei
+ * gleichzeitigen Fehlschlägen für dasselbe Dokument kann ein Dokument daher mehrfach formatiert werden.
+ */
+public final class FormattedDocumentCache {
+
+    private static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    private final Segment[] segments;
+    private final int maxEntries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Ein formatiertes Dokument. Die Länge der Darstellung ist über {@code text.length()} ohne Kopie verfügbar.
+     */
+    private record Entry(Document document, Function<Document, String> formatter, String text) {
+    }
+
+    /**
+     * Ein Segment mit eigener Sperre und LRU-Reihenfolge.
+     */
+    private final class Segment extends LinkedHashMap<Long, Entry> {
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private FormattedDocumentCache(Builder builder) {
+        this.maxEntries = builder.maxEntries;
+        int stripes = builder.stripes == 1 ? 1 : Integer.highestOneBit(builder.stripes - 1) << 1;
+        stripes = Math.min(stripes, Integer.highestOneBit(maxEntries));
+        this.segments = new Segment[stripes];
+        for (int i = 0; i < stripes; i++) {
+            // Die ersten Segmente erhalten den Rest, damit die Summe genau maxEntries ergibt
+            segments[i] = new Segment(maxEntries / stripes + (i < maxEntries % stripes ? 1 : 0));
+        }
+    }
+
+    /**
+     * Gibt die formatierte Darstellung des Dokuments zurück und formatiert es nur, wenn sie nicht gespeichert ist.
+     *
+     * @param document Das Dokument
+     * @param formatter Der Formatierer, mit dem die Darstellung erzeugt wird
+     * @return Die formatierte Darstellung
+     */
+    public String format(Document document, Function<Document, String> formatter) {
+        long key = document.contentHash();
+        Segment segment = segmentFor(key);
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+        }
+        if (entry != null && entry.formatter() == formatter
+                && (entry.document() == document || entry.document().equals(document))) {
+            hits.increment();
+            return entry.text();
+        }
+
+        misses.increment();
+        String text = formatter.apply(document);
+        synchronized (segment) {
+            segment.put(key, new Entry(document, formatter, text));
+        }
+        return text;
+    }
+
+    /**
+     * Umhüllt einen Formatierer, sodass er über diesen Cache formatiert.
+     *
+     * @param formatter Der Formatierer
+     * @return Ein Formatierer mit demselben Ergebnis
+     */
+    public Function<Document, String> wrap(Function<Document, String> formatter) {
+        return document -> format(document, formatter);
+    }
+
+    private Segment segmentFor(long key) {
+        int hash = (int) (key ^ (key >>> 32));
+        return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+    }
+
+    /**
+     * @return Die Anzahl der Aufrufe, die eine gespeicherte Darstellung geliefert haben
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Die Anzahl der Aufrufe, die formatieren mussten
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Die Anzahl der wegen der Größenbeschränkung verdrängten Einträge
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gibt den Anteil der Treffer an allen Aufrufen zurück.
+     *
+     * @return Der Anteil zwischen 0 und 1, ohne Aufrufe 0
+     */
+    public double hitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * @return Die Anzahl der gespeicherten Einträge
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return Die maximale Anzahl gespeicherter Einträge
+     */
+    public int maxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Entfernt alle Einträge. Die Zähler bleiben erhalten.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FormattedDocumentCache{" +
+                "size=" + size() +
+                ", maxEntries=" + maxEntries +
+                ", hits=" + hits() +
+                ", misses=" + misses() +
+                ", evictions=" + evictions() +
+                '}';
+    }
+
+    /**
+     * Builder für einen FormattedDocumentCache.
+     */
+    public static class Builder {
+        private int maxEntries = DEFAULT_MAX_ENTRIES;
+        private int stripes = Runtime.getRuntime().availableProcessors() * 4;
+
+        /**
+         * Begrenzt die Anzahl gespeicherter Dokumente. Standard ist {@value #DEFAULT_MAX_ENTRIES}.
+         */
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * Setzt die Anzahl unabhängig gesperrter Segmente, aufgerundet auf eine Zweierpotenz. Standard ist das
+         * Vierfache der Prozessoren.
+         */
+        public Builder stripes(int stripes) {
+            this.stripes = stripes;
+            return this;
+        }
+
+        public FormattedDocumentCache build() {
+            if (maxEntries < 1) {
+                throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+            }
+            if (stripes < 1 || stripes > 1 << 16) {
+                throw new IllegalArgumentException("stripes must be between 1 and 65536: " + stripes);
+            }
+            return new FormattedDocumentCache(this);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Die formatierten Dokumente einer Anfrage, verbunden durch einen Separator.
+ * <p>
+ * Die Gesamtlänge wird beim Formatieren gemessen, sodass {@link CompiledPromptTemplate} die Teile
+ * direkt in den Prompt-Puffer schreiben kann, ohne vorher einen zusammengefügten String zu erzeugen.
+ * {@link #toString()} erzeugt diesen String nur bei Bedarf (z.B. für Debug-Logging).
+ */
+public final class JoinedDocuments implements CharSequence {
+
+    private final String[] parts;
+    private final String separator;
+    private final int length;
+    private String joined;
+
+    private JoinedDocuments(String[] parts, String separator, int length) {
+        this.parts = parts;
+        this.separator = separator;
+        this.length = length;
+    }
+
+    /**
+     * Formatiert alle Dokumente und misst dabei die Länge des Ergebnisses.
+     *
+     * @param documents Die zu formatierenden Dokumente
+     * @param formatter Funktion zum Formatieren eines einzelnen Dokuments
+     * @param separator Der Trennstring zwischen formatierten Dokumenten
+     * @return Die verbundenen Dokumente
+     */
+    public static JoinedDocuments join(List<Document> documents, Function<Document, String> formatter,
+                                       String separator) {
+        String[] parts = new String[documents.size()];
+        long length = 0;
+        int i = 0;
+        for (Document document : documents) {
+            String part = formatter.apply(document);
+            parts[i++] = part;
+            length += part.length();
+        }
+        return of(parts, separator, length);
+    }
+
+    /**
+     * Verbindet bereits formatierte Teile.
+     *
+     * @param parts Die formatierten Dokumente
+     * @param separator Der Trennstring zwischen den Teilen
+     * @return Die verbundenen Dokumente
+     */
+    public static JoinedDocuments of(String[] parts, String separator) {
+        long length = 0;
+        for (String part : parts) {
+            length += part.length();
+        }
+        return of(parts, separator, length);
+    }
+
+    private static JoinedDocuments of(String[] parts, String separator, long partsLength) {
+        long length = partsLength;
+        if (parts.length > 1) {
+            length += (long) separator.length() * (parts.length - 1);
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Formatted documents exceed the maximum prompt length: " + length);
+        }
+        return new JoinedDocuments(parts, separator, (int) length);
+    }
+
+    /**
+     * Gibt die Anzahl der verbundenen Dokumente zurück.
+     *
+     * @return Die Anzahl der Teile
+     */
+    public int count() {
+        return parts.length;
+    }
+
+    /**
+     * Schreibt die verbundenen Dokumente in den übergebenen Puffer.
+     *
+     * @param builder Der Zielpuffer
+     */
+    public void appendTo(StringBuilder builder) {
+        if (joined != null) {
+            builder.append(joined);
+            return;
+        }
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                builder.append(separator);
+            }
+            builder.append(parts[i]);
+        }
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (joined == null) {
+            StringBuilder builder = new StringBuilder(length);
+            appendTo(builder);
+            joined = builder.toString();
+        }
+        return joined;
+    }
+}
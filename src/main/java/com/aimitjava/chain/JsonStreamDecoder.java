@@ -0,0 +1,344 @@
+package com.aimitjava.chain;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ein inkrementeller JSON-Decoder für das erste JSON-Objekt einer Modellantwort. Die Antwort kann in beliebigen
+ * Teilstücken übergeben werden; Text vor dem Objekt (z.B. Einleitungen oder Code-Fences) und danach wird
+ * ignoriert.
+ * <p>
+ * Objekte werden zu {@link Map}, Arrays zu {@link List}, Zahlen zu {@link Long} bzw. {@link Double}. Ein Feld des
+ * äußersten Objekts erscheint in {@link #root()}, sobald sein Wert vollständig gelesen ist. Puffer und Stapel werden
+ * über {@link #reset()} wiederverwendet.
+ */
+final class JsonStreamDecoder {
+
+    /** Puffer über dieser Größe werden beim Zurücksetzen nicht behalten. */
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    private enum State {
+        BEFORE_ROOT,
+        EXPECT_KEY_OR_END,
+        EXPECT_KEY,
+        KEY,
+        EXPECT_COLON,
+        EXPECT_VALUE_OR_END,
+        EXPECT_VALUE,
+        STRING,
+        ESCAPE,
+        UNICODE,
+        NUMBER,
+        LITERAL,
+        AFTER_VALUE,
+        DONE
+    }
+
+    private StringBuilder buffer = new StringBuilder(64);
+    private final ArrayList<Object> containers = new ArrayList<>();
+    private final ArrayList<String> keys = new ArrayList<>();
+    private State state = State.BEFORE_ROOT;
+    private boolean escapeInKey;
+    private int unicodeDigits;
+    private int unicodeValue;
+    private long position;
+    private int rootFields;
+    private Map<String, Object> root;
+
+    /**
+     * Verarbeitet das nächste Teilstück.
+     *
+     * @param chunk Das Teilstück
+     * @throws OutputParsingException bei ungültigem JSON
+     */
+    void feed(CharSequence chunk) {
+        int length = chunk.length();
+        int i = 0;
+        while (i < length && state != State.DONE) {
+            if (state == State.STRING || state == State.KEY) {
+                // Zeichen ohne Sonderbedeutung in einem Zug übernehmen
+                int end = i;
+                char c;
+                while (end < length && (c = chunk.charAt(end)) != '"' && c != '\\') {
+                    end++;
+                }
+                buffer.append(chunk, i, end);
+                position += end - i;
+                i = end;
+                if (i == length) {
+                    break;
+                }
+            }
+            if (process(chunk.charAt(i))) {
+                i++;
+                position++;
+            }
+        }
+    }
+
+    /**
+     * Verarbeitet ein Zeichen.
+     *
+     * @return false, wenn das Zeichen im neuen Zustand erneut verarbeitet werden muss
+     */
+    private boolean process(char c) {
+        switch (state) {
+            case BEFORE_ROOT:
+                if (c == '{') {
+                    root = new LinkedHashMap<>();
+                    push(root);
+                    state = State.EXPECT_KEY_OR_END;
+                }
+                return true;
+            case EXPECT_KEY_OR_END:
+            case EXPECT_KEY:
+                if (isWhitespace(c)) {
+                    return true;
+                }
+                if (c == '"') {
+                    buffer.setLength(0);
+                    state = State.KEY;
+                    return true;
+                }
+                if (c == '}' && state == State.EXPECT_KEY_OR_END) {
+                    close();
+                    return true;
+                }
+                throw unexpected(c, "Feldname");
+            case KEY:
+                if (c == '"') {
+                    keys.set(keys.size() - 1, buffer.toString());
+                    state = State.EXPECT_COLON;
+                } else if (c == '\\') {
+                    escapeInKey = true;
+                    state = State.ESCAPE;
+                } else {
+                    buffer.append(c);
+                }
+                return true;
+            case EXPECT_COLON:
+                if (isWhitespace(c)) {
+                    return true;
+                }
+                if (c == ':') {
+                    state = State.EXPECT_VALUE;
+                    return true;
+                }
+                throw unexpected(c, "':'");
+            case EXPECT_VALUE_OR_END:
+            case EXPECT_VALUE:
+                if (isWhitespace(c)) {
+                    return true;
+                }
+                buffer.setLength(0);
+                if (c == '"') {
+                    state = State.STRING;
+                } else if (c == '{') {
+                    push(new LinkedHashMap<String, Object>());
+                    state = State.EXPECT_KEY_OR_END;
+                } else if (c == '[') {
+                    push(new ArrayList<>());
+                    state = State.EXPECT_VALUE_OR_END;
+                } else if (c == ']' && state == State.EXPECT_VALUE_OR_END) {
+                    close();
+                } else if (c == '-' || (c >= '0' && c <= '9')) {
+                    buffer.append(c);
+                    state = State.NUMBER;
+                } else if (c == 't' || c == 'f' || c == 'n') {
+                    buffer.append(c);
+                    state = State.LITERAL;
+                } else {
+                    throw unexpected(c, "Wert");
+                }
+                return true;
+            case STRING:
+                if (c == '"') {
+                    value(buffer.toString());
+                } else if (c == '\\') {
+                    escapeInKey = false;
+                    state = State.ESCAPE;
+                } else {
+                    buffer.append(c);
+                }
+                return true;
+            case ESCAPE:
+                State next = escapeInKey ? State.KEY : State.STRING;
+                switch (c) {
+                    case 'n' -> buffer.append('\n');
+                    case 't' -> buffer.append('\t');
+                    case 'r' -> buffer.append('\r');
+                    case 'b' -> buffer.append('\b');
+                    case 'f' -> buffer.append('\f');
+                    case 'u' -> {
+                        unicodeDigits = 0;
+                        unicodeValue = 0;
+                        next = State.UNICODE;
+                    }
+                    default -> buffer.append(c);
+                }
+                state = next;
+                return true;
+            case UNICODE:
+                int digit = Character.digit(c, 16);
+                if (digit < 0) {
+                    throw unexpected(c, "Hexadezimalziffer");
+                }
+                unicodeValue = unicodeValue * 16 + digit;
+                if (++unicodeDigits == 4) {
+                    buffer.append((char) unicodeValue);
+                    state = escapeInKey ? State.KEY : State.STRING;
+                }
+                return true;
+            case NUMBER:
+                if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                    buffer.append(c);
+                    return true;
+                }
+                value(number());
+                return false;
+            case LITERAL:
+                if (c >= 'a' && c <= 'z') {
+                    buffer.append(c);
+                    return true;
+                }
+                value(literal());
+                return false;
+            case AFTER_VALUE:
+                if (isWhitespace(c)) {
+                    return true;
+                }
+                boolean inObject = containers.get(containers.size() - 1) instanceof Map;
+                if (c == ',') {
+                    state = inObject ? State.EXPECT_KEY : State.EXPECT_VALUE;
+                } else if ((c == '}' && inObject) || (c == ']' && !inObject)) {
+                    close();
+                } else {
+                    throw unexpected(c, "',' oder Ende des " + (inObject ? "Objekts" : "Arrays"));
+                }
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    private void push(Object container) {
+        containers.add(container);
+        keys.add(null);
+    }
+
+    private void close() {
+        Object container = containers.remove(containers.size() - 1);
+        keys.remove(keys.size() - 1);
+        if (containers.isEmpty()) {
+            state = State.DONE;
+        } else {
+            value(container);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void value(Object value) {
+        int top = containers.size() - 1;
+        Object container = containers.get(top);
+        if (container instanceof Map<?, ?> map) {
+            ((Map<String, Object>) map).put(keys.get(top), value);
+            keys.set(top, null);
+            if (top == 0) {
+                rootFields++;
+            }
+        } else {
+            ((List<Object>) container).add(value);
+        }
+        state = State.AFTER_VALUE;
+    }
+
+    private Object number() {
+        boolean decimal = false;
+        for (int i = 0; i < buffer.length(); i++) {
+            char c = buffer.charAt(i);
+            if (c == '.' || c == 'e' || c == 'E') {
+                decimal = true;
+                break;
+            }
+        }
+        String text = buffer.toString();
+        try {
+            if (!decimal) {
+                try {
+                    return Long.parseLong(text);
+                } catch (NumberFormatException e) {
+                    // Zu groß für long, als Gleitkommazahl lesen
+                }
+            }
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new OutputParsingException("Ungültige Zahl '" + text + "' an Position " + position);
+        }
+    }
+
+    private Object literal() {
+        String text = buffer.toString();
+        return switch (text) {
+            case "true" -> Boolean.TRUE;
+            case "false" -> Boolean.FALSE;
+            case "null" -> null;
+            default -> throw new OutputParsingException("Ungültiger Wert '" + text + "' an Position " + position);
+        };
+    }
+
+    private OutputParsingException unexpected(char c, String expected) {
+        return new OutputParsingException("Ungültiges JSON: '" + c + "' an Position " + position + ", erwartet "
+                + expected);
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    /**
+     * @return true, wenn das äußerste Objekt vollständig gelesen ist
+     */
+    boolean isDone() {
+        return state == State.DONE;
+    }
+
+    /**
+     * @return true, wenn das äußerste Objekt begonnen wurde
+     */
+    boolean hasRoot() {
+        return root != null;
+    }
+
+    /**
+     * @return Die Anzahl der vollständig gelesenen Felder des äußersten Objekts
+     */
+    int rootFields() {
+        return rootFields;
+    }
+
+    /**
+     * @return Die vollständig gelesenen Felder des äußersten Objekts oder null, wenn es noch nicht begonnen hat
+     */
+    Map<String, Object> root() {
+        return root;
+    }
+
+    /**
+     * Setzt den Decoder für eine neue Antwort zurück und behält Puffer normaler Größe.
+     */
+    void reset() {
+        if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+            buffer = new StringBuilder(64);
+        } else {
+            buffer.setLength(0);
+        }
+        containers.clear();
+        keys.clear();
+        state = State.BEFORE_ROOT;
+        position = 0;
+        rootFields = 0;
+        root = null;
+    }
+}
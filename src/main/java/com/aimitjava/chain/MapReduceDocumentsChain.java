@@ -0,0 +1,229 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+import com.aimitjava.model.ChatLanguageModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Eine Java-Implementation der 'MapReduceDocumentsChain' aus LangChain Python.
+ * Jedes Dokument (bzw. jeder Dokumentenblock) wird zunächst nebenläufig mit dem Map-Prompt verarbeitet.
+ * Die Teilergebnisse werden anschließend in Runden zu je höchstens {@code reduceBatchSize} Teilen
+ * zusammengefasst, bis nur noch ein Reduce-Aufruf übrig bleibt. Die Laufzeit wächst dadurch mit der Anzahl
+ * der Runden (logarithmisch) statt mit der Anzahl der Dokumente.
+ */
+public class MapReduceDocumentsChain {
+    private static final Logger logger = LoggerFactory.getLogger(MapReduceDocumentsChain.class);
+
+    private static final String DEFAULT_DOCUMENT_SEPARATOR = "\n\n";
+    private static final String DEFAULT_DOCUMENT_VARIABLE_NAME = "context";
+    private static final int DEFAULT_MAP_BATCH_SIZE = 1;
+    private static final int DEFAULT_REDUCE_BATCH_SIZE = 4;
+    private static final int DEFAULT_PARALLELISM = 8;
+
+    private final StuffDocumentsChain mapChain;
+    private final StuffDocumentsChain reduceChain;
+    private final int mapBatchSize;
+    private final int reduceBatchSize;
+
+    private MapReduceDocumentsChain(Builder builder) {
+        if (builder.mapBatchSize < 1) {
+            throw new IllegalArgumentException("mapBatchSize must be at least 1: " + builder.mapBatchSize);
+        }
+        if (builder.reduceBatchSize < 2) {
+            throw new IllegalArgumentException("reduceBatchSize must be at least 2: " + builder.reduceBatchSize);
+        }
+
+        // Map und Reduce teilen sich ein Limit, damit die Parallelität insgesamt begrenzt bleibt
+        Executor sharedExecutor = new BoundedExecutor(
+                builder.executor != null ? builder.executor : BoundedExecutor.defaultExecutor(),
+                builder.parallelism
+        );
+
+        this.mapChain = new StuffDocumentsChain.Builder(builder.model, builder.mapPromptTemplate)
+                .documentSeparator(builder.documentSeparator)
+                .documentVariableName(builder.documentVariableName)
+                .documentFormatter(builder.documentFormatter)
+                .executor(sharedExecutor)
+                .maxConcurrency(builder.parallelism)
+                .build();
+        this.reduceChain = new StuffDocumentsChain.Builder(builder.model, builder.reducePromptTemplate)
+                .documentSeparator(builder.documentSeparator)
+                .documentVariableName(builder.documentVariableName)
+                .executor(sharedExecutor)
+                .maxConcurrency(builder.parallelism)
+                .build();
+        this.mapBatchSize = builder.mapBatchSize;
+        this.reduceBatchSize = builder.reduceBatchSize;
+    }
+
+    /**
+     * Verarbeitet die Eingabedokumente und gibt das zusammengefasste Ergebnis zurück.
+     *
+     * @param documents Liste der zu verarbeitenden Dokumente
+     * @param additionalVariables Zusätzliche Variablen für Map- und Reduce-Prompt
+     * @return Die Antwort des letzten Reduce-Aufrufs
+     */
+    public String invoke(List<Document> documents, Map<String, Object> additionalVariables) {
+        try {
+            return invokeAsync(documents, additionalVariables).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Überladene Methode, die nur Dokumente ohne zusätzliche Variablen akzeptiert.
+     *
+     * @param documents Liste der zu verarbeitenden Dokumente
+     * @return Die Antwort des letzten Reduce-Aufrufs
+     */
+    public String invoke(List<Document> documents) {
+        return invoke(documents, new HashMap<>());
+    }
+
+    /**
+     * Verarbeitet die Eingabedokumente asynchron.
+     *
+     * @param documents Liste der zu verarbeitenden Dokumente
+     * @param additionalVariables Zusätzliche Variablen für Map- und Reduce-Prompt
+     * @return Ein Future mit der Antwort des letzten Reduce-Aufrufs
+     */
+    public CompletableFuture<String> invokeAsync(List<Document> documents, Map<String, Object> additionalVariables) {
+        List<List<Document>> batches = partition(documents, mapBatchSize);
+        logger.debug("Map-Phase: {} Dokumente in {} Blöcken", documents.size(), batches.size());
+
+        List<CompletableFuture<String>> mapped = new ArrayList<>(batches.size());
+        for (List<Document> batch : batches) {
+            mapped.add(mapChain.invokeAsync(batch, additionalVariables));
+        }
+        return allOf(mapped).thenCompose(partials -> reduce(partials, additionalVariables, 1));
+    }
+
+    private CompletableFuture<String> reduce(List<String> partials, Map<String, Object> additionalVariables, int round) {
+        List<Document> documents = new ArrayList<>(partials.size());
+        for (String partial : partials) {
+            documents.add(new Document(partial));
+        }
+
+        if (documents.size() <= reduceBatchSize) {
+            logger.debug("Reduce-Runde {}: abschließende Zusammenfassung von {} Teilergebnissen", round, documents.size());
+            return reduceChain.invokeAsync(documents, additionalVariables);
+        }
+
+        List<List<Document>> groups = partition(documents, reduceBatchSize);
+        logger.debug("Reduce-Runde {}: {} Teilergebnisse in {} Gruppen", round, documents.size(), groups.size());
+
+        List<CompletableFuture<String>> collapsed = new ArrayList<>(groups.size());
+        for (List<Document> group : groups) {
+            collapsed.add(reduceChain.invokeAsync(group, additionalVariables));
+        }
+        return allOf(collapsed).thenCompose(next -> reduce(next, additionalVariables, round + 1));
+    }
+
+    private static CompletableFuture<List<String>> allOf(List<CompletableFuture<String>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    List<String> results = new ArrayList<>(futures.size());
+                    for (CompletableFuture<String> future : futures) {
+                        results.add(future.join());
+                    }
+                    return results;
+                });
+    }
+
+    private static List<List<Document>> partition(List<Document> documents, int size) {
+        List<List<Document>> batches = new ArrayList<>((documents.size() + size - 1) / size);
+        for (int start = 0; start < documents.size(); start += size) {
+            batches.add(documents.subList(start, Math.min(start + size, documents.size())));
+        }
+        return batches;
+    }
+
+    /**
+     * Builder-Klasse für eine einfachere Konfiguration der MapReduceDocumentsChain.
+     */
+    public static class Builder {
+        private final ChatLanguageModel model;
+        private final String mapPromptTemplate;
+        private final String reducePromptTemplate;
+        private String documentSeparator = DEFAULT_DOCUMENT_SEPARATOR;
+        private String documentVariableName = DEFAULT_DOCUMENT_VARIABLE_NAME;
+        private Function<Document, String> documentFormatter = Document::text;
+        private int mapBatchSize = DEFAULT_MAP_BATCH_SIZE;
+        private int reduceBatchSize = DEFAULT_REDUCE_BATCH_SIZE;
+        private int parallelism = DEFAULT_PARALLELISM;
+        private Executor executor;
+
+        /**
+         * @param model Das zu verwendende Sprachmodell
+         * @param mapPromptTemplate Prompt für einzelne Dokumente bzw. Blöcke, mit Dokumentenvariable
+         * @param reducePromptTemplate Prompt zum Zusammenfassen von Teilergebnissen, mit Dokumentenvariable
+         */
+        public Builder(ChatLanguageModel model, String mapPromptTemplate, String reducePromptTemplate) {
+            this.model = model;
+            this.mapPromptTemplate = mapPromptTemplate;
+            this.reducePromptTemplate = reducePromptTemplate;
+        }
+
+        public Builder documentSeparator(String documentSeparator) {
+            this.documentSeparator = documentSeparator;
+            return this;
+        }
+
+        public Builder documentVariableName(String documentVariableName) {
+            this.documentVariableName = documentVariableName;
+            return this;
+        }
+
+        public Builder documentFormatter(Function<Document, String> documentFormatter) {
+            this.documentFormatter = documentFormatter;
+            return this;
+        }
+
+        /**
+         * Anzahl der Dokumente pro Map-Aufruf.
+         */
+        public Builder mapBatchSize(int mapBatchSize) {
+            this.mapBatchSize = mapBatchSize;
+            return this;
+        }
+
+        /**
+         * Maximale Anzahl Teilergebnisse pro Reduce-Aufruf, also die Breite des Reduce-Baums.
+         */
+        public Builder reduceBatchSize(int reduceBatchSize) {
+            this.reduceBatchSize = reduceBatchSize;
+            return this;
+        }
+
+        /**
+         * Maximale Anzahl gleichzeitiger Modellaufrufe über Map- und Reduce-Phase hinweg.
+         */
+        public Builder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public MapReduceDocumentsChain build() {
+            return new MapReduceDocumentsChain(this);
+        }
+    }
+}
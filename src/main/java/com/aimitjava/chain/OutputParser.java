@@ -0,0 +1,70 @@
+package com.aimitjava.chain;
+
+/**
+ * Wandelt die Antwort des Sprachmodells in einen typisierten Wert um.
+ * <p>
+ * Die Antwort wird über einen {@link Decoder} stückweise verarbeitet, sobald sie eintrifft. Meldet der Decoder,
+ * dass alle benötigten Angaben vorliegen, bricht die Kette eine gestreamte Generierung vorzeitig ab.
+ *
+ * @param <T> Der Typ des Ergebnisses
+ */
+public interface OutputParser<T> {
+
+    /**
+     * Gibt die Formatanweisung zurück, die an den gefüllten Prompt angehängt wird. Sie sollte sich zwischen Aufrufen
+     * nicht ändern, damit der Präfix für das Prompt-Caching stabil bleibt.
+     *
+     * @return Die Formatanweisung
+     */
+    String formatInstructions();
+
+    /**
+     * Erstellt einen Decoder für eine einzelne Antwort.
+     *
+     * @return Der Decoder; nicht threadsicher
+     */
+    Decoder<T> newDecoder();
+
+    /**
+     * Verarbeitet eine vollständig vorliegende Antwort.
+     *
+     * @param output Die Antwort des Sprachmodells
+     * @return Das Ergebnis
+     * @throws OutputParsingException wenn die Antwort nicht dem Format entspricht
+     */
+    default T parse(CharSequence output) {
+        try (Decoder<T> decoder = newDecoder()) {
+            decoder.feed(output);
+            return decoder.result();
+        }
+    }
+
+    /**
+     * Zustand beim Verarbeiten einer Antwort. Nach {@link #close()} darf der Decoder nicht mehr verwendet werden,
+     * seine Puffer können dann für weitere Antworten wiederverwendet werden.
+     *
+     * @param <T> Der Typ des Ergebnisses
+     */
+    interface Decoder<T> extends AutoCloseable {
+
+        /**
+         * Verarbeitet das nächste Teilstück der Antwort.
+         *
+         * @param chunk Das Teilstück
+         * @return true, wenn alle benötigten Angaben vorliegen und keine weiteren Teilstücke nötig sind
+         * @throws OutputParsingException wenn die Antwort nicht dem Format entspricht
+         */
+        boolean feed(CharSequence chunk);
+
+        /**
+         * Erstellt das Ergebnis aus den bisher verarbeiteten Teilstücken.
+         *
+         * @return Das Ergebnis
+         * @throws OutputParsingException wenn Angaben fehlen oder die Validierung fehlschlägt
+         */
+        T result();
+
+        @Override
+        void close();
+    }
+}
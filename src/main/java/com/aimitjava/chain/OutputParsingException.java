@@ -0,0 +1,23 @@
+package com.aimitjava.chain;
+
+/**
+ * Die Antwort des Sprachmodells entspricht nicht dem erwarteten Format oder besteht die Validierung nicht.
+ * Nur bei dieser Exception wiederholt {@link StuffDocumentsChain} den Aufruf mit einem Hinweis auf den Fehler.
+ */
+public class OutputParsingException extends RuntimeException {
+
+    /**
+     * @param message Beschreibung des Fehlers, wird dem Modell bei einer Wiederholung mitgeteilt
+     */
+    public OutputParsingException(String message) {
+        super(message);
+    }
+
+    /**
+     * @param message Beschreibung des Fehlers, wird dem Modell bei einer Wiederholung mitgeteilt
+     * @param cause Die ursprüngliche Exception
+     */
+    public OutputParsingException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
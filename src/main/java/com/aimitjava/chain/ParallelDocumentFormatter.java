@@ -0,0 +1,155 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Formatiert eine Liste von Dokumenten auf mehreren Threads, für Formatierer, die pro Dokument Millisekunden
+ * brauchen (z.B. HTML-zu-Text oder Markdown-Normalisierung). Unterhalb der Schwelle wird im aufrufenden Thread
+ * formatiert, weil sich die Verteilung dann nicht lohnt.
+ * <p>
+ * Der aufrufende Thread arbeitet mit; die Helfer holen sich das jeweils nächste Dokument über einen gemeinsamen
+ * Zähler, sodass unterschiedlich teure Dokumente sich von selbst verteilen. Ist der Executor ausgelastet, formatiert
+ * der aufrufende Thread die übrigen Dokumente allein. Die Reihenfolge des Ergebnisses entspricht der Eingabe.
+ */
+final class ParallelDocumentFormatter {
+
+    private final Function<Document, String> formatter;
+    private final Executor executor;
+    private final int threshold;
+    private final int parallelism;
+
+    /**
+     * @param formatter Funktion zum Formatieren eines einzelnen Dokuments
+     * @param executor Executor für die Helfer, z.B. ein {@link ForkJoinPool}
+     * @param threshold Mindestanzahl Dokumente für die parallele Formatierung
+     */
+    ParallelDocumentFormatter(Function<Document, String> formatter, Executor executor, int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("threshold must be at least 1: " + threshold);
+        }
+        this.formatter = formatter;
+        this.executor = executor;
+        this.threshold = threshold;
+        this.parallelism = executor instanceof ForkJoinPool pool
+                ? pool.getParallelism()
+                : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Formatiert alle Dokumente.
+     *
+     * @param documents Die Dokumente
+     * @return Die formatierten Dokumente in der Reihenfolge der Eingabe
+     * @throws DocumentFormattingException wenn der Formatierer fehlschlägt, mit der kleinsten fehlgeschlagenen
+     *                                     Position unter den bis dahin formatierten Dokumenten
+     */
+    String[] formatAll(List<Document> documents) {
+        int count = documents.size();
+        String[] parts = new String[count];
+        if (count < threshold || parallelism < 2) {
+            for (int i = 0; i < count; i++) {
+                parts[i] = format(documents, i);
+            }
+            return parts;
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch remaining = new CountDownLatch(count);
+        Runnable worker = () -> {
+            int i;
+            while (failure.get() == null && (i = next.getAndIncrement()) < count) {
+                try {
+                    parts[i] = format(documents, i);
+                } catch (Throwable e) {
+                    // Auch Errors werden festgehalten, sonst wartet der Aufrufer ewig auf dieses Dokument
+                    failure.accumulateAndGet(e, ParallelDocumentFormatter::earlierFailure);
+                    // Nicht mehr formatierte Dokumente zählen nicht herunter, der Aufrufer soll trotzdem aufwachen
+                    while (remaining.getCount() > 0) {
+                        remaining.countDown();
+                    }
+                } finally {
+                    remaining.countDown();
+                }
+            }
+        };
+
+        int helpers = Math.min(parallelism, count) - 1;
+        for (int h = 0; h < helpers; h++) {
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                break;
+            }
+        }
+        worker.run();
+        try {
+            remaining.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while formatting documents", e);
+        }
+        Throwable error = failure.get();
+        if (error instanceof DocumentFormattingException e) {
+            throw e;
+        }
+        if (error instanceof Error e) {
+            throw e;
+        }
+        if (error != null) {
+            throw new IllegalStateException("Formatting documents failed", error);
+        }
+        return parts;
+    }
+
+    /**
+     * Ein Error hat Vorrang, sonst zählt die kleinste fehlgeschlagene Position.
+     */
+    private static Throwable earlierFailure(Throwable current, Throwable update) {
+        if (current == null) {
+            return update;
+        }
+        if (current instanceof DocumentFormattingException c && update instanceof DocumentFormattingException u) {
+            return u.documentIndex() < c.documentIndex() ? u : c;
+        }
+        return current instanceof DocumentFormattingException ? update : current;
+    }
+
+    /**
+     * Formatiert alle Dokumente und gibt einen Formatierer zurück, der für diese Dokumentinstanzen das Ergebnis
+     * nachschlägt und für alle übrigen den ursprünglichen Formatierer aufruft.
+     *
+     * @param documents Die Dokumente
+     * @return Der nachschlagende Formatierer
+     */
+    Function<Document, String> preformat(List<Document> documents) {
+        String[] parts = formatAll(documents);
+        Map<Document, String> formatted = new IdentityHashMap<>(parts.length * 2);
+        for (int i = 0; i < parts.length; i++) {
+            formatted.put(documents.get(i), parts[i]);
+        }
+        return document -> {
+            String part = formatted.get(document);
+            return part != null ? part : formatter.apply(document);
+        };
+    }
+
+    private String format(List<Document> documents, int index) {
+        try {
+            return formatter.apply(documents.get(index));
+        } catch (RuntimeException e) {
+            throw new DocumentFormattingException(index, e);
+        }
+    }
+}
@@ -0,0 +1,519 @@
+package com.aimitjava.chain;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Liest die Antwort des Sprachmodells als JSON-Objekt in einen Record ein.
+ * <p>
+ * Die Felder des Records bestimmen Formatanweisung und Umwandlung: {@code String}, ganze Zahlen, Gleitkommazahlen,
+ * {@code boolean}, Enums (Groß-/Kleinschreibung egal), {@code List}, {@code Map}, verschachtelte Records und
+ * {@code Optional} für Felder, die fehlen dürfen. Die Antwort wird stückweise dekodiert; der Decoder meldet das
+ * Ergebnis als vollständig, sobald alle Felder gelesen sind oder das Objekt endet, sodass nachfolgender Text und
+ * schließende Tokens nicht mehr abgewartet werden. Decoder und ihre Puffer werden über alle Aufrufe wiederverwendet.
+ *
+ * @param <T> Der Typ des Records
+ */
+public final class RecordOutputParser<T extends Record> implements OutputParser<T> {
+
+    /** Höchstzahl der zurückgelegten Decoder je Parser. */
+    private static final int MAX_POOLED_DECODERS = 64;
+
+    private static final ClassValue<Schema> SCHEMAS = new ClassValue<>() {
+        @Override
+        protected Schema computeValue(Class<?> type) {
+            return new Schema(type);
+        }
+    };
+
+    private static final ClassValue<RecordOutputParser<?>> PARSERS = new ClassValue<>() {
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        protected RecordOutputParser<?> computeValue(Class<?> type) {
+            return new RecordOutputParser(type, null, null);
+        }
+    };
+
+    private final Schema schema;
+    private final Predicate<? super T> validator;
+    private final String validationMessage;
+    private final String formatInstructions;
+    private final ConcurrentLinkedQueue<JsonStreamDecoder> pool;
+    private final AtomicInteger pooled;
+
+    private RecordOutputParser(Class<T> type, Predicate<? super T> validator, String validationMessage) {
+        if (!type.isRecord()) {
+            throw new IllegalArgumentException("Type must be a record: " + type.getName());
+        }
+        this.schema = SCHEMAS.get(type);
+        this.validator = validator;
+        this.validationMessage = validationMessage;
+        this.formatInstructions = "Antworte ausschließlich mit einem JSON-Objekt in diesem Format:\n"
+                + schema.describe(new HashSet<>(), "");
+        this.pool = new ConcurrentLinkedQueue<>();
+        this.pooled = new AtomicInteger();
+    }
+
+    private RecordOutputParser(RecordOutputParser<T> parser, Predicate<? super T> validator, String validationMessage) {
+        this.schema = parser.schema;
+        this.validator = validator;
+        this.validationMessage = validationMessage;
+        this.formatInstructions = parser.formatInstructions;
+        this.pool = parser.pool;
+        this.pooled = parser.pooled;
+    }
+
+    /**
+     * Gibt den Parser für einen Record-Typ zurück. Parser werden je Typ einmal erstellt und zwischengespeichert.
+     *
+     * @param type Der Typ des Records
+     * @return Der Parser
+     * @throws IllegalArgumentException wenn der Typ kein Record ist oder ein Feld einen nicht unterstützten Typ hat
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Record> RecordOutputParser<T> of(Class<T> type) {
+        return (RecordOutputParser<T>) PARSERS.get(type);
+    }
+
+    /**
+     * Gibt einen Parser zurück, der das Ergebnis zusätzlich prüft. Schlägt die Prüfung fehl, wird eine
+     * {@link OutputParsingException} mit der Meldung geworfen, sodass die Kette den Aufruf wiederholen kann.
+     * Decoder werden mit diesem Parser geteilt.
+     *
+     * @param validator Die Prüfung
+     * @param message Die Meldung bei fehlgeschlagener Prüfung, wird dem Modell bei einer Wiederholung mitgeteilt
+     * @return Der prüfende Parser
+     */
+    public RecordOutputParser<T> withValidator(Predicate<? super T> validator, String message) {
+        if (validator == null) {
+            throw new IllegalArgumentException("validator must not be null");
+        }
+        return new RecordOutputParser<>(this, validator, message);
+    }
+
+    @Override
+    public String formatInstructions() {
+        return formatInstructions;
+    }
+
+    @Override
+    public Decoder<T> newDecoder() {
+        JsonStreamDecoder json = pool.poll();
+        if (json != null) {
+            pooled.decrementAndGet();
+        } else {
+            json = new JsonStreamDecoder();
+        }
+        return new RecordDecoder(json);
+    }
+
+    private void release(JsonStreamDecoder json) {
+        json.reset();
+        if (pooled.incrementAndGet() <= MAX_POOLED_DECODERS) {
+            pool.offer(json);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * Dekodiert eine einzelne Antwort und erkennt, wann alle Felder des Records vorliegen.
+     */
+    private final class RecordDecoder implements Decoder<T> {
+        private JsonStreamDecoder json;
+        private int checkedFields;
+        private boolean complete;
+
+        RecordDecoder(JsonStreamDecoder json) {
+            this.json = json;
+        }
+
+        @Override
+        public boolean feed(CharSequence chunk) {
+            if (json == null) {
+                throw new IllegalStateException("Decoder is closed");
+            }
+            if (complete) {
+                return true;
+            }
+            json.feed(chunk);
+            if (json.isDone()) {
+                complete = true;
+            } else if (json.rootFields() > checkedFields) {
+                checkedFields = json.rootFields();
+                complete = schema.isComplete(json.root());
+            }
+            return complete;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T result() {
+            if (json == null) {
+                throw new IllegalStateException("Decoder is closed");
+            }
+            if (!json.hasRoot()) {
+                throw new OutputParsingException("Die Antwort enthält kein JSON-Objekt");
+            }
+            if (!complete) {
+                throw new OutputParsingException("Das JSON-Objekt ist unvollständig");
+            }
+            T result = (T) schema.instantiate(json.root(), "");
+            if (validator != null && !validator.test(result)) {
+                throw new OutputParsingException(validationMessage != null ? validationMessage
+                        : "Die Antwort besteht die Prüfung nicht");
+            }
+            return result;
+        }
+
+        @Override
+        public void close() {
+            if (json != null) {
+                release(json);
+                json = null;
+            }
+        }
+    }
+
+    /**
+     * Felder, Konstruktor und Umwandlungen eines Record-Typs.
+     */
+    private static final class Schema {
+        private final Class<?> type;
+        private final String[] names;
+        private final Type[] types;
+        private final boolean[] optional;
+        private final Function<Object, Object>[] converters;
+        private final Object[] defaults;
+        private final Constructor<?> constructor;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Schema(Class<?> type) {
+            if (!type.isRecord()) {
+                throw new IllegalArgumentException("Type must be a record: " + type.getName());
+            }
+            RecordComponent[] components = type.getRecordComponents();
+            this.type = type;
+            this.names = new String[components.length];
+            this.types = new Type[components.length];
+            this.optional = new boolean[components.length];
+            this.converters = new Function[components.length];
+            this.defaults = new Object[components.length];
+            Class<?>[] parameterTypes = new Class<?>[components.length];
+            for (int i = 0; i < components.length; i++) {
+                RecordComponent component = components[i];
+                Type componentType = component.getGenericType();
+                names[i] = component.getName();
+                parameterTypes[i] = component.getType();
+                if (component.getType() == Optional.class) {
+                    optional[i] = true;
+                    defaults[i] = Optional.empty();
+                    componentType = typeArgument(componentType, 0, component);
+                    Function<Object, Object> converter = converter(componentType, component);
+                    converters[i] = value -> Optional.of(converter.apply(value));
+                } else {
+                    converters[i] = converter(componentType, component);
+                }
+                types[i] = componentType;
+            }
+            try {
+                this.constructor = type.getDeclaredConstructor(parameterTypes);
+                this.constructor.setAccessible(true);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                throw new IllegalArgumentException("Cannot access canonical constructor of " + type.getName(), e);
+            }
+        }
+
+        /**
+         * Alle Felder liegen vor; unbekannte Felder werden nicht mitgezählt.
+         */
+        boolean isComplete(Map<String, Object> fields) {
+            if (fields.size() < names.length) {
+                return false;
+            }
+            for (String name : names) {
+                if (!fields.containsKey(name)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        Object instantiate(Map<String, Object> fields, String path) {
+            Object[] arguments = new Object[names.length];
+            for (int i = 0; i < names.length; i++) {
+                Object value = fields.get(names[i]);
+                String field = path + names[i];
+                if (value == null) {
+                    if (!optional[i]) {
+                        throw new OutputParsingException("Das Feld '" + field + "' fehlt");
+                    }
+                    arguments[i] = defaults[i];
+                    continue;
+                }
+                try {
+                    arguments[i] = converters[i].apply(value);
+                } catch (ConversionException e) {
+                    throw new OutputParsingException("Das Feld '" + field + "' ist ungültig: " + e.getMessage());
+                }
+            }
+            try {
+                return constructor.newInstance(arguments);
+            } catch (InvocationTargetException e) {
+                // Der Record lehnt die Werte selbst ab, z.B. in einem kompakten Konstruktor
+                throw new OutputParsingException("Ungültige Werte für " + type.getSimpleName() + ": "
+                        + e.getCause().getMessage(), e.getCause());
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot instantiate " + type.getName(), e);
+            }
+        }
+
+        /**
+         * Beschreibt den Record als JSON-Gerüst mit Platzhaltern für die Werte.
+         */
+        String describe(Set<Class<?>> visiting, String indent) {
+            if (!visiting.add(type)) {
+                return "<Objekt>";
+            }
+            StringBuilder builder = new StringBuilder("{\n");
+            for (int i = 0; i < names.length; i++) {
+                builder.append(indent).append("  \"").append(names[i]).append("\": ");
+                String description = describeType(types[i], visiting, indent + "  ");
+                if (types[i] instanceof Class<?> c && c.isRecord()) {
+                    builder.append(description);
+                    if (optional[i]) {
+                        builder.append(" oder null");
+                    }
+                } else {
+                    builder.append('<').append(description).append(optional[i] ? ", optional>" : ">");
+                }
+                builder.append(i < names.length - 1 ? ",\n" : "\n");
+            }
+            visiting.remove(type);
+            return builder.append(indent).append('}').toString();
+        }
+    }
+
+    private static String describeType(Type type, Set<Class<?>> visiting, String indent) {
+        Class<?> raw = rawType(type);
+        if (raw == String.class) {
+            return "Text";
+        }
+        if (raw == int.class || raw == Integer.class || raw == long.class || raw == Long.class) {
+            return "Ganzzahl";
+        }
+        if (raw == double.class || raw == Double.class || raw == float.class || raw == Float.class) {
+            return "Zahl";
+        }
+        if (raw == boolean.class || raw == Boolean.class) {
+            return "true oder false";
+        }
+        if (raw.isEnum()) {
+            StringBuilder builder = new StringBuilder("eines von ");
+            Object[] constants = raw.getEnumConstants();
+            for (int i = 0; i < constants.length; i++) {
+                builder.append(i > 0 ? ", " : "").append('"').append(((Enum<?>) constants[i]).name()).append('"');
+            }
+            return builder.toString();
+        }
+        if (raw == List.class) {
+            Type element = ((ParameterizedType) type).getActualTypeArguments()[0];
+            Class<?> elementRaw = rawType(element);
+            return elementRaw.isRecord()
+                    ? "Liste von " + SCHEMAS.get(elementRaw).describe(visiting, indent)
+                    : "Liste von " + describeType(element, visiting, indent);
+        }
+        if (raw == Map.class) {
+            Type valueType = ((ParameterizedType) type).getActualTypeArguments()[1];
+            return valueType == Object.class
+                    ? "Objekt"
+                    : "Objekt mit Werten vom Typ " + describeType(valueType, visiting, indent);
+        }
+        return SCHEMAS.get(raw).describe(visiting, indent);
+    }
+
+    /**
+     * Erstellt die Umwandlung eines JSON-Werts in den Feldtyp. Verschachtelte Records werden erst bei der ersten
+     * Verwendung aufgelöst, damit auch rekursive Records unterstützt werden.
+     */
+    private static Function<Object, Object> converter(Type type, RecordComponent component) {
+        Class<?> raw = rawType(type);
+        if (raw == String.class) {
+            return value -> value instanceof String ? value : String.valueOf(value);
+        }
+        if (raw == int.class || raw == Integer.class) {
+            return value -> {
+                long l = integral(value);
+                if (l < Integer.MIN_VALUE || l > Integer.MAX_VALUE) {
+                    throw new ConversionException("Zahl zu groß: " + value);
+                }
+                return (int) l;
+            };
+        }
+        if (raw == long.class || raw == Long.class) {
+            return RecordOutputParser::integral;
+        }
+        if (raw == double.class || raw == Double.class) {
+            return value -> number(value).doubleValue();
+        }
+        if (raw == float.class || raw == Float.class) {
+            return value -> number(value).floatValue();
+        }
+        if (raw == boolean.class || raw == Boolean.class) {
+            return RecordOutputParser::bool;
+        }
+        if (raw.isEnum()) {
+            Map<String, Object> constants = new HashMap<>();
+            for (Object constant : raw.getEnumConstants()) {
+                constants.put(((Enum<?>) constant).name().toUpperCase(Locale.ROOT), constant);
+            }
+            return value -> {
+                Object constant = constants.get(String.valueOf(value).trim().toUpperCase(Locale.ROOT));
+                if (constant == null) {
+                    throw new ConversionException("erwartet eines von " + constants.keySet() + ", war " + value);
+                }
+                return constant;
+            };
+        }
+        if (raw == List.class) {
+            Function<Object, Object> element = converter(typeArgument(type, 0, component), component);
+            return value -> {
+                if (!(value instanceof List<?> list)) {
+                    throw new ConversionException("erwartet eine Liste, war " + value);
+                }
+                List<Object> converted = new ArrayList<>(list.size());
+                for (Object item : list) {
+                    if (item == null) {
+                        throw new ConversionException("die Liste enthält null");
+                    }
+                    converted.add(element.apply(item));
+                }
+                return List.copyOf(converted);
+            };
+        }
+        if (raw == Map.class) {
+            if (typeArgument(type, 0, component) != String.class) {
+                throw new IllegalArgumentException("Map keys must be String for component " + component.getName()
+                        + " of " + component.getDeclaringRecord().getName());
+            }
+            Type valueType = typeArgument(type, 1, component);
+            // Bei Object bleiben die dekodierten Werte (Map, List, Long, Double, ...) unverändert
+            Function<Object, Object> element = valueType == Object.class ? null : converter(valueType, component);
+            return value -> {
+                if (!(value instanceof Map<?, ?> map)) {
+                    throw new ConversionException("erwartet ein Objekt, war " + value);
+                }
+                Map<String, Object> converted = new LinkedHashMap<>(map.size() * 2);
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    Object item = entry.getValue();
+                    if (element != null) {
+                        if (item == null) {
+                            throw new ConversionException("der Wert für '" + entry.getKey() + "' ist null");
+                        }
+                        item = element.apply(item);
+                    }
+                    converted.put((String) entry.getKey(), item);
+                }
+                return Collections.unmodifiableMap(converted);
+            };
+        }
+        if (raw.isRecord()) {
+            return value -> {
+                if (!(value instanceof Map<?, ?> map)) {
+                    throw new ConversionException("erwartet ein Objekt, war " + value);
+                }
+                @SuppressWarnings("unchecked")
+                Map<String, Object> fields = (Map<String, Object>) map;
+                return SCHEMAS.get(raw).instantiate(fields, component.getName() + ".");
+            };
+        }
+        throw new IllegalArgumentException("Unsupported type " + type.getTypeName() + " for component "
+                + component.getName() + " of " + component.getDeclaringRecord().getName());
+    }
+
+    private static Class<?> rawType(Type type) {
+        if (type instanceof Class<?> c) {
+            return c;
+        }
+        if (type instanceof ParameterizedType p) {
+            return (Class<?>) p.getRawType();
+        }
+        throw new IllegalArgumentException("Unsupported type " + type.getTypeName());
+    }
+
+    private static Type typeArgument(Type type, int index, RecordComponent component) {
+        if (!(type instanceof ParameterizedType p)) {
+            throw new IllegalArgumentException("Raw type " + type.getTypeName() + " for component "
+                    + component.getName() + " of " + component.getDeclaringRecord().getName());
+        }
+        return p.getActualTypeArguments()[index];
+    }
+
+    private static Number number(Object value) {
+        if (value instanceof Number n) {
+            return n;
+        }
+        if (value instanceof String s) {
+            try {
+                return Double.parseDouble(s.trim());
+            } catch (NumberFormatException e) {
+                // Fällt auf die Meldung unten durch
+            }
+        }
+        throw new ConversionException("erwartet eine Zahl, war " + value);
+    }
+
+    private static long integral(Object value) {
+        Number number = number(value);
+        if (number instanceof Long l) {
+            return l;
+        }
+        double d = number.doubleValue();
+        if (d != Math.rint(d) || Math.abs(d) > Long.MAX_VALUE) {
+            throw new ConversionException("erwartet eine ganze Zahl, war " + value);
+        }
+        return (long) d;
+    }
+
+    private static Object bool(Object value) {
+        if (value instanceof Boolean) {
+            return value;
+        }
+        if (value instanceof String s) {
+            if (s.trim().equalsIgnoreCase("true")) {
+                return Boolean.TRUE;
+            }
+            if (s.trim().equalsIgnoreCase("false")) {
+                return Boolean.FALSE;
+            }
+        }
+        throw new ConversionException("erwartet true oder false, war " + value);
+    }
+
+    /**
+     * Ein einzelner Wert passt nicht zum Feldtyp; wird mit dem Feldnamen als {@link OutputParsingException}
+     * weitergegeben.
+     */
+    private static final class ConversionException extends RuntimeException {
+        ConversionException(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+import com.aimitjava.model.ChatLanguageModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Eine Java-Implementation der 'RefineDocumentsChain' aus LangChain Python.
+ * Das erste Dokument (bzw. der erste Block) wird mit dem Initial-Prompt verarbeitet; jedes weitere
+ * verfeinert die bisherige Antwort über den Refine-Prompt. Die Dokumente werden dabei sequenziell abgearbeitet.
+ */
+public class RefineDocumentsChain {
+    private static final Logger logger = LoggerFactory.getLogger(RefineDocumentsChain.class);
+
+    private static final String DEFAULT_DOCUMENT_SEPARATOR = "\n\n";
+    private static final String DEFAULT_DOCUMENT_VARIABLE_NAME = "context";
+    private static final String DEFAULT_ANSWER_VARIABLE_NAME = "existing_answer";
+    private static final int DEFAULT_BATCH_SIZE = 1;
+
+    private final StuffDocumentsChain initialChain;
+    private final StuffDocumentsChain refineChain;
+    private final String answerVariableName;
+    private final int batchSize;
+
+    private RefineDocumentsChain(Builder builder) {
+        if (builder.batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1: " + builder.batchSize);
+        }
+        CompiledPromptTemplate refineTemplate = CompiledPromptTemplate.compile(builder.refinePromptTemplate);
+        if (!refineTemplate.hasVariable(builder.answerVariableName)) {
+            throw new IllegalArgumentException(
+                    "Refine prompt template must contain the answer variable: {" + builder.answerVariableName + "}"
+            );
+        }
+
+        this.initialChain = new StuffDocumentsChain.Builder(builder.model, builder.initialPromptTemplate)
+                .documentSeparator(builder.documentSeparator)
+                .documentVariableName(builder.documentVariableName)
+                .documentFormatter(builder.documentFormatter)
+                .build();
+        this.refineChain = new StuffDocumentsChain.Builder(builder.model, builder.refinePromptTemplate)
+                .documentSeparator(builder.documentSeparator)
+                .documentVariableName(builder.documentVariableName)
+                .documentFormatter(builder.documentFormatter)
+                .build();
+        this.answerVariableName = builder.answerVariableName;
+        this.batchSize = builder.batchSize;
+    }
+
+    /**
+     * Verarbeitet die Eingabedokumente nacheinander und verfeinert dabei die Antwort.
+     *
+     * @param documents Liste der zu verarbeitenden Dokumente
+     * @param additionalVariables Zusätzliche Variablen für Initial- und Refine-Prompt
+     * @return Die Antwort nach dem letzten Verfeinerungsschritt
+     */
+    public String invoke(List<Document> documents, Map<String, Object> additionalVariables) {
+        int end = Math.min(batchSize, documents.size());
+        String answer = initialChain.invoke(documents.subList(0, end), additionalVariables);
+
+        Map<String, Object> refineVariables = new HashMap<>(additionalVariables);
+        for (int start = end; start < documents.size(); start += batchSize) {
+            end = Math.min(start + batchSize, documents.size());
+            logger.debug("Verfeinere Antwort mit Dokumenten {} bis {}", start, end - 1);
+            refineVariables.put(answerVariableName, answer);
+            answer = refineChain.invoke(documents.subList(start, end), refineVariables);
+        }
+        return answer;
+    }
+
+    /**
+     * Überladene Methode, die nur Dokumente ohne zusätzliche Variablen akzeptiert.
+     *
+     * @param documents Liste der zu verarbeitenden Dokumente
+     * @return Die Antwort nach dem letzten Verfeinerungsschritt
+     */
+    public String invoke(List<Document> documents) {
+        return invoke(documents, new HashMap<>());
+    }
+
+    /**
+     * Builder-Klasse für eine einfachere Konfiguration der RefineDocumentsChain.
+     */
+    public static class Builder {
+        private final ChatLanguageModel model;
+        private final String initialPromptTemplate;
+        private final String refinePromptTemplate;
+        private String documentSeparator = DEFAULT_DOCUMENT_SEPARATOR;
+        private String documentVariableName = DEFAULT_DOCUMENT_VARIABLE_NAME;
+        private String answerVariableName = DEFAULT_ANSWER_VARIABLE_NAME;
+        private Function<Document, String> documentFormatter = Document::text;
+        private int batchSize = DEFAULT_BATCH_SIZE;
+
+        /**
+         * @param model Das zu verwendende Sprachmodell
+         * @param initialPromptTemplate Prompt für den ersten Block, mit Dokumentenvariable
+         * @param refinePromptTemplate Prompt für alle weiteren Blöcke, mit Dokumenten- und Antwortvariable
+         */
+        public Builder(ChatLanguageModel model, String initialPromptTemplate, String refinePromptTemplate) {
+            this.model = model;
+            this.initialPromptTemplate = initialPromptTemplate;
+            this.refinePromptTemplate = refinePromptTemplate;
+        }
+
+        public Builder documentSeparator(String documentSeparator) {
+            this.documentSeparator = documentSeparator;
+            return this;
+        }
+
+        public Builder documentVariableName(String documentVariableName) {
+            this.documentVariableName = documentVariableName;
+            return this;
+        }
+
+        public Builder answerVariableName(String answerVariableName) {
+            this.answerVariableName = answerVariableName;
+            return this;
+        }
+
+        public Builder documentFormatter(Function<Document, String> documentFormatter) {
+            this.documentFormatter = documentFormatter;
+            return this;
+        }
+
+        /**
+         * Anzahl der Dokumente pro Modellaufruf.
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        public RefineDocumentsChain build() {
+            return new RefineDocumentsChain(this);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+import com.aimitjava.retrieval.Embedder;
+import com.aimitjava.retrieval.SearchResult;
+import com.aimitjava.retrieval.VectorIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Verbindet eine Vektorsuche mit einer {@link StuffDocumentsChain}: Die Anfrage wird eingebettet, die
+ * ähnlichsten Dokumente werden im Index gesucht und zusammen mit der Anfrage an die Kette übergeben.
+ * <p>
+ * Die Treffer werden unverändert übergeben und ihre Scores getrennt davon an das Token-Budget der Kette, sodass
+ * {@link DocumentPacker.Policy#HIGHEST_SCORE_FIRST} darauf aufbauen kann. Da die Dokumente nicht pro Anfrage
+ * verändert werden, erkennen die Caches der Kette wiederkehrende Treffer.
+ */
+public class RetrievalStuffChain {
+    private static final Logger logger = LoggerFactory.getLogger(RetrievalStuffChain.class);
+
+    private static final int DEFAULT_TOP_K = 4;
+    private static final String DEFAULT_QUERY_VARIABLE_NAME = "question";
+
+    private final StuffDocumentsChain chain;
+    private final Embedder embedder;
+    private final VectorIndex index;
+    private final int topK;
+    private final float minScore;
+    private final String queryVariableName;
+
+    private RetrievalStuffChain(Builder builder) {
+        this.chain = builder.chain;
+        this.embedder = builder.embedder;
+        this.index = builder.index;
+        this.topK = builder.topK;
+        this.minScore = builder.minScore;
+        this.queryVariableName = builder.queryVariableName;
+    }
+
+    /**
+     * Bettet die Dokumente ein und nimmt sie in den Index auf.
+     *
+     * @param documents Die aufzunehmenden Dokumente
+     */
+    public void addDocuments(List<Document> documents) {
+        for (Document document : documents) {
+            index.add(document, embedder.embed(document.text()));
+        }
+    }
+
+    /**
+     * Sucht die zur Anfrage ähnlichsten Dokumente.
+     *
+     * @param query Die Anfrage
+     * @return Höchstens {@code topK} Treffer, absteigend nach Score
+     */
+    public List<SearchResult> retrieve(String query) {
+        List<SearchResult> results = index.search(embedder.embed(query), topK);
+        int accepted = 0;
+        while (accepted < results.size() && results.get(accepted).score() >= minScore) {
+            accepted++;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("{} von {} Treffern für die Anfrage übernommen", accepted, results.size());
+        }
+        return results.subList(0, accepted);
+    }
+
+    /**
+     * Sucht passende Dokumente und ruft die Kette mit ihnen und der Anfrage auf.
+     *
+     * @param query Die Anfrage, im Prompt unter {@link Builder#queryVariableName(String)} verfügbar
+     * @param additionalVariables Zusätzliche Variablen für den Prompt
+     * @return Die Antwort des Sprachmodells
+     */
+    public String invoke(String query, Map<String, Object> additionalVariables) {
+        Map<String, Object> variables = new HashMap<>(additionalVariables);
+        variables.put(queryVariableName, query);
+
+        List<SearchResult> results = retrieve(query);
+        List<Document> documents = new ArrayList<>(results.size());
+        Map<Document, Float> scores = new HashMap<>();
+        for (SearchResult result : results) {
+            documents.add(result.document());
+            scores.putIfAbsent(result.document(), result.score());
+        }
+        return chain.invoke(documents, variables, scores);
+    }
+
+    /**
+     * Überladene Methode ohne zusätzliche Variablen.
+     *
+     * @param query Die Anfrage
+     * @return Die Antwort des Sprachmodells
+     */
+    public String invoke(String query) {
+        return invoke(query, new HashMap<>());
+    }
+
+    /**
+     * Builder-Klasse für die RetrievalStuffChain.
+     */
+    public static class Builder {
+        private final StuffDocumentsChain chain;
+        private final Embedder embedder;
+        private final VectorIndex index;
+        private int topK = DEFAULT_TOP_K;
+        private float minScore = Float.NEGATIVE_INFINITY;
+        private String queryVariableName = DEFAULT_QUERY_VARIABLE_NAME;
+
+        public Builder(StuffDocumentsChain chain, Embedder embedder, VectorIndex index) {
+            this.chain = chain;
+            this.embedder = embedder;
+            this.index = index;
+        }
+
+        /**
+         * Anzahl der Dokumente, die pro Anfrage gesucht werden. Standard ist 4.
+         */
+        public Builder topK(int topK) {
+            this.topK = topK;
+            return this;
+        }
+
+        /**
+         * Treffer mit kleinerem Score werden verworfen. Standard ist keine Untergrenze.
+         */
+        public Builder minScore(float minScore) {
+            this.minScore = minScore;
+            return this;
+        }
+
+        public Builder queryVariableName(String queryVariableName) {
+            this.queryVariableName = queryVariableName;
+            return this;
+        }
+
+        public RetrievalStuffChain build() {
+            if (topK < 1) {
+                throw new IllegalArgumentException("topK must be at least 1: " + topK);
+            }
+            if (embedder.dimension() != index.dimension()) {
+                throw new IllegalArgumentException("Embedder dimension " + embedder.dimension()
+                        + " does not match index dimension " + index.dimension());
+            }
+            return new RetrievalStuffChain(this);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+
+import java.util.Comparator;
+
+/**
+ * Eine von der Eingabereihenfolge unabhängige Reihenfolge für Dokumente: optional nach einem Metadatenwert,
+ * sonst bzw. bei Gleichstand nach {@link Document#contentHash()}. Gleiche Dokumentmengen ergeben damit immer
+ * denselben Prompt-Abschnitt.
+ */
+final class StableDocumentOrder implements Comparator<Document> {
+
+    private final String sortKey;
+
+    /**
+     * @param sortKey Der Metadaten-Schlüssel, nach dem zuerst sortiert wird, oder null
+     */
+    StableDocumentOrder(String sortKey) {
+        this.sortKey = sortKey;
+    }
+
+    @Override
+    public int compare(Document a, Document b) {
+        if (sortKey != null) {
+            int byKey = compareValues(a.getMetadata(sortKey), b.getMetadata(sortKey));
+            if (byKey != 0) {
+                return byKey;
+            }
+        }
+        return Long.compare(a.contentHash(), b.contentHash());
+    }
+
+    /**
+     * Vergleicht Zahlen numerisch, gleichartige vergleichbare Werte natürlich und alles andere als Text.
+     * Dokumente ohne Wert stehen am Ende.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareValues(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : 1) : -1;
+        }
+        if (a instanceof Number x && b instanceof Number y) {
+            return Double.compare(x.doubleValue(), y.doubleValue());
+        }
+        if (a.getClass() == b.getClass() && a instanceof Comparable comparable) {
+            return comparable.compareTo(b);
+        }
+        return a.toString().compareTo(b.toString());
+    }
+}
@@ -1,30 +1,72 @@
 package com.aimitjava.chain;
 
 import com.aimitjava.document.Document;
+import com.aimitjava.metrics.ChainListener;
 import com.aimitjava.model.ChatLanguageModel;
+import com.aimitjava.model.StreamingChatLanguageModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * Eine Java-Implementation der 'create_stuff_documents_chain' Funktion aus LangChain Python.
  * Diese Klasse ermöglicht das Zusammenfügen mehrerer Dokumente und deren Übergabe an ein Sprachmodell.
+ * <p>
+ * Der Prompt wird deterministisch in der Reihenfolge der Vorlage gefüllt. Mit
+ * {@link Builder#cacheFriendlyLayout(boolean)} werden zusätzlich Zeilen mit veränderlichen Variablen hinter die
+ * Dokumente verschoben und die Dokumente stabil sortiert, damit aufeinanderfolgende Prompts einen möglichst langen
+ * gemeinsamen Präfix für das Prompt-Caching des Anbieters haben.
  */
 public class StuffDocumentsChain {
     private static final Logger logger = LoggerFactory.getLogger(StuffDocumentsChain.class);
 
     private static final String DEFAULT_DOCUMENT_SEPARATOR = "\n\n";
     private static final String DEFAULT_DOCUMENT_VARIABLE_NAME = "context";
+    private static final int DEFAULT_MAX_CONCURRENCY = 64;
+    private static final String DEFAULT_SCORE_METADATA_KEY = "score";
+    private static final int DEFAULT_DEBUG_LOG_MAX_CHARS = 1000;
+    private static final int PUBLISHER_PREFETCH = 16;
+    private static final int DEFAULT_OUTPUT_RETRIES = 1;
+    private static final int MAX_WARNED_UNUSED_VARIABLE_SETS = 64;
 
     private final ChatLanguageModel model;
-    private final String promptTemplate;
+    private final StreamingChatLanguageModel streamingModel;
+    private final CompiledPromptTemplate promptTemplate;
     private final String documentSeparator;
     private final String documentVariableName;
     private final Function<Document, String> documentFormatter;
+    private final ParallelDocumentFormatter parallelFormatter;
+    private final BoundedExecutor executor;
+    private final DocumentPacker packer;
+    private final int maxContextTokens;
+    private final TokenEstimator tokenEstimator;
+    private final int maxPromptChars;
+    private final Set<String> stableVariables;
+    private final Comparator<Document> documentOrder;
+    private final Consumer<DocumentPacker.Result> packingListener;
+    private final DocumentDeduplicator deduplicator;
+    private final Consumer<DocumentDeduplicator.Result> deduplicationListener;
+    private final ChainDiagnostics diagnostics;
+    private final ChainListener listener;
+    private final int outputRetries;
+    private final Set<Set<String>> warnedUnusedVariables = ConcurrentHashMap.newKeySet();
 
     /**
      * Erstellt eine neue StuffDocumentsChain mit Standardwerten.
@@ -52,19 +94,64 @@ public class StuffDocumentsChain {
             String documentSeparator,
             String documentVariableName,
             Function<Document, String> documentFormatter) {
+        this(new Builder(model, promptTemplate)
+                .documentSeparator(documentSeparator)
+                .documentVariableName(documentVariableName)
+                .documentFormatter(documentFormatter));
+    }
+
+    private StuffDocumentsChain(Builder builder) {
+        // Mit Cache formatieren alle Stufen (Budget, Deduplizierung, Zusammenfügen) über den Cache
+        Function<Document, String> formatter = builder.formattedDocumentCache != null
+                ? builder.formattedDocumentCache.wrap(builder.documentFormatter)
+                : builder.documentFormatter;
 
-        // Validiere, dass der Prompt die Dokumentenvariable enthält
-        if (!promptTemplate.contains("{" + documentVariableName + "}")) {
+        // Parse die Vorlage einmalig und validiere, dass sie die Dokumentenvariable enthält
+        CompiledPromptTemplate compiledTemplate = CompiledPromptTemplate.compile(builder.promptTemplate);
+        if (!compiledTemplate.hasVariable(builder.documentVariableName)) {
             throw new IllegalArgumentException(
-                    "Prompt template must contain the document variable: {" + documentVariableName + "}"
+                    "Prompt template must contain the document variable: {" + builder.documentVariableName + "}"
             );
         }
 
-        this.model = model;
-        this.promptTemplate = promptTemplate;
-        this.documentSeparator = documentSeparator;
-        this.documentVariableName = documentVariableName;
-        this.documentFormatter = documentFormatter;
+        this.model = builder.model;
+        this.streamingModel = builder.streamingModel;
+        this.documentSeparator = builder.documentSeparator;
+        this.documentVariableName = builder.documentVariableName;
+        this.stableVariables = Set.copyOf(builder.stableVariables);
+        if (builder.cacheFriendlyLayout) {
+            this.promptTemplate = compiledTemplate.withVolatileLinesAfter(documentVariableName, this::isVolatile);
+            this.documentOrder = new StableDocumentOrder(builder.documentSortKey);
+        } else {
+            this.promptTemplate = compiledTemplate;
+            this.documentOrder = null;
+        }
+        this.documentFormatter = formatter;
+        this.parallelFormatter = builder.parallelFormattingThreshold > 0
+                ? new ParallelDocumentFormatter(formatter,
+                        builder.formattingExecutor != null ? builder.formattingExecutor : ForkJoinPool.commonPool(),
+                        builder.parallelFormattingThreshold)
+                : null;
+        this.executor = new BoundedExecutor(
+                builder.executor != null ? builder.executor : BoundedExecutor.defaultExecutor(),
+                builder.maxConcurrency
+        );
+        this.packer = builder.maxContextTokens > 0
+                ? new DocumentPacker(builder.maxContextTokens, builder.packingPolicy, builder.scoreMetadataKey,
+                        builder.tokenEstimator, formatter, builder.documentSeparator)
+                : null;
+        this.maxContextTokens = builder.maxContextTokens;
+        this.tokenEstimator = builder.tokenEstimator;
+        this.maxPromptChars = builder.maxPromptChars;
+        this.packingListener = builder.packingListener;
+        this.deduplicator = builder.deduplicate
+                ? new DocumentDeduplicator(builder.nearDuplicates, builder.nearDuplicateThreshold,
+                        builder.tokenEstimator, formatter, builder.documentSeparator)
+                : null;
+        this.deduplicationListener = builder.deduplicationListener;
+        this.listener = builder.listener;
+        this.outputRetries = builder.outputRetries;
+        this.diagnostics = new ChainDiagnostics(logger, builder.debugLogMaxChars, builder.debugLogSampleEvery);
     }
 
     /**
@@ -73,41 +160,437 @@ public class StuffDocumentsChain {
      * @param documents Liste der zu verarbeitenden Dokumente
      * @param additionalVariables Zusätzliche Variablen für den Prompt (optional)
      * @return Die Antwort des Sprachmodells
+     * @throws IllegalArgumentException wenn für einen Platzhalter der Vorlage kein Wert vorhanden ist
      */
     public String invoke(List<Document> documents, Map<String, Object> additionalVariables) {
-        // Debug-Logging der Eingabedokumente
-        logger.debug("Verarbeitung von {} Dokumenten", documents.size());
-        for (int i = 0; i < documents.size(); i++) {
-            logger.debug("Dokument {}: {}", i, documents.get(i).text());
+        return invokeWithTokenUsage(documents, additionalVariables).content();
+    }
+
+    /**
+     * Verarbeitet die Eingabedokumente wie {@link #invoke(List, Map)}, gibt aber die vollständige Antwort
+     * einschließlich {@code TokenUsage} zurück.
+     *
+     * @param documents Liste der zu verarbeitenden Dokumente
+     * @param additionalVariables Zusätzliche Variablen für den Prompt
+     * @return Die Antwort des Sprachmodells mit Tokenverbrauch
+     */
+    public ChatLanguageModel.Response<String> invokeWithTokenUsage(List<Document> documents,
+                                                                   Map<String, Object> additionalVariables) {
+        boolean debug = diagnostics.sample();
+        return call(buildPrompt(documents, additionalVariables, debug), debug);
+    }
+
+    /**
+     * Verarbeitet Dokumente aus einer Quelle, die sie nacheinander liefert, z.B. einem Retriever.
+     * Jedes Dokument wird formatiert, sobald es eintrifft; es wird nur so weit gelesen, wie Dokumente in
+     * {@link Builder#maxPromptChars(int)} und {@link Builder#maxContextTokens(int)} passen. Beide Grenzen
+     * gelten in der Reihenfolge der Quelle, die Packing-Policy wird hier nicht angewendet.
+     *
+     * @param documents Die Dokumentenquelle
+     * @param additionalVariables Zusätzliche Variablen für den Prompt
+     * @return Die Antwort des Sprachmodells
+     */
+    public String invoke(Iterator<? extends Document> documents, Map<String, Object> additionalVariables) {
+        boolean debug = diagnostics.sample();
+        return call(buildPrompt(documents, additionalVariables, debug), debug).content();
+    }
+
+    /**
+     * Überladene Methode, die nur eine Dokumentenquelle ohne zusätzliche Variablen akzeptiert.
+     *
+     * @param documents Die Dokumentenquelle
+     * @return Die Antwort des Sprachmodells
+     */
+    public String invoke(Iterator<? extends Document> documents) {
+        return invoke(documents, new HashMap<>());
+    }
+
+    /**
+     * Verarbeitet die Dokumente eines Streams wie {@link #invoke(Iterator, Map)}. Der Stream wird nur so weit
+     * konsumiert, wie Dokumente in den Prompt passen; geschlossen wird er vom Aufrufer.
+     *
+     * @param documents Der Dokumenten-Stream
+     * @param additionalVariables Zusätzliche Variablen für den Prompt
+     * @return Die Antwort des Sprachmodells
+     */
+    public String invoke(Stream<? extends Document> documents, Map<String, Object> additionalVariables) {
+        return invoke(documents.iterator(), additionalVariables);
+    }
+
+    /**
+     * Überladene Methode, die nur einen Dokumenten-Stream ohne zusätzliche Variablen akzeptiert.
+     *
+     * @param documents Der Dokumenten-Stream
+     * @return Die Antwort des Sprachmodells
+     */
+    public String invoke(Stream<? extends Document> documents) {
+        return invoke(documents, new HashMap<>());
+    }
+
+    /**
+     * Verarbeitet die Dokumente eines Publishers wie {@link #invoke(Iterator, Map)} und wartet auf die Antwort.
+     *
+     * @param documents Der Dokumenten-Publisher
+     * @param additionalVariables Zusätzliche Variablen für den Prompt
+     * @return Die Antwort des Sprachmodells
+     */
+    public String invoke(Flow.Publisher<? extends Document> documents, Map<String, Object> additionalVariables) {
+        try {
+            return invokeAsync(documents, additionalVariables).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
         }
+    }
+
+    /**
+     * Verarbeitet die Dokumente eines Publishers, während sie eintreffen. Es sind höchstens
+     * {@value #PUBLISHER_PREFETCH} Dokumente gleichzeitig angefordert; sobald der Prompt voll ist, wird das
+     * Abonnement gekündigt. Der Modellaufruf erfolgt anschließend auf dem konfigurierten Executor.
+     *
+     * @param documents Der Dokumenten-Publisher
+     * @param additionalVariables Zusätzliche Variablen für den Prompt
+     * @return Ein Future mit der Antwort des Sprachmodells
+     */
+    public CompletableFuture<String> invokeAsync(Flow.Publisher<? extends Document> documents,
+                                                 Map<String, Object> additionalVariables) {
+        boolean debug = diagnostics.sample();
+        DocumentAccumulator accumulator = newAccumulator(additionalVariables, packer != null);
+        DocumentDeduplicator.Session deduplication = deduplicator != null ? deduplicator.newSession() : null;
+        CompletableFuture<String> result = new CompletableFuture<>();
+        documents.subscribe(new Flow.Subscriber<Document>() {
+            private Flow.Subscription subscription;
+            private boolean finished;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(PUBLISHER_PREFETCH);
+            }
+
+            @Override
+            public void onNext(Document document) {
+                if (finished) {
+                    return;
+                }
+                boolean accepted;
+                try {
+                    if (deduplication != null && !deduplication.accept(document)) {
+                        subscription.request(1);
+                        return;
+                    }
+                    accepted = accumulator.add(document);
+                } catch (RuntimeException e) {
+                    finished = true;
+                    subscription.cancel();
+                    result.completeExceptionally(e);
+                    return;
+                }
+                if (!accepted) {
+                    finished = true;
+                    subscription.cancel();
+                    complete();
+                    return;
+                }
+                if (debug) {
+                    logger.debug("Dokument {}: {}", accumulator.count() - 1, diagnostics.abbreviate(document.text()));
+                }
+                subscription.request(1);
+            }
 
-        // Formatiere alle Dokumente und verbinde sie mit dem Separator
-        String formattedDocs = documents.stream()
-                .map(documentFormatter)
-                .reduce((a, b) -> a + documentSeparator + b)
-                .orElse("");
+            @Override
+            public void onError(Throwable throwable) {
+                if (!finished) {
+                    finished = true;
+                    result.completeExceptionally(throwable);
+                }
+            }
 
-        logger.debug("Formatierte Dokumente: {}", formattedDocs);
-        logger.debug("Verwende Dokumentenseparator: '{}'", documentSeparator);
+            @Override
+            public void onComplete() {
+                if (!finished) {
+                    finished = true;
+                    complete();
+                }
+            }
+
+            private void complete() {
+                try {
+                    executor.supply(() -> call(renderAccumulated(accumulator, deduplication, additionalVariables, debug),
+                                    debug)
+                                    .content())
+                            .whenComplete((content, error) -> {
+                                if (error != null) {
+                                    result.completeExceptionally(
+                                            error instanceof CompletionException ? error.getCause() : error);
+                                } else {
+                                    result.complete(content);
+                                }
+                            });
+                } catch (RuntimeException e) {
+                    // Eine synchrone Ablehnung darf das Ergebnis nicht für immer offen lassen
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Überladene Methode, die nur einen Dokumenten-Publisher ohne zusätzliche Variablen akzeptiert.
+     *
+     * @param documents Der Dokumenten-Publisher
+     * @return Ein Future mit der Antwort des Sprachmodells
+     */
+    public CompletableFuture<String> invokeAsync(Flow.Publisher<? extends Document> documents) {
+        return invokeAsync(documents, new HashMap<>());
+    }
+
+    /**
+     * Ruft das Modell mit dem fertigen Prompt auf und meldet Laufzeit und Tokenverbrauch.
+     */
+    private ChatLanguageModel.Response<String> call(String filledPrompt, boolean debug) {
+        // Rufe das Modell auf
+        long start = System.nanoTime();
+        ChatLanguageModel.Response<String> response;
+        try {
+            response = model.generate(filledPrompt);
+        } catch (RuntimeException e) {
+            listener.onError(ChainListener.Stage.MODEL_CALL, e);
+            throw e;
+        }
+        listener.onStage(ChainListener.Stage.MODEL_CALL, System.nanoTime() - start);
+        listener.onTokenUsage(response.tokenUsage());
+
+        if (debug) {
+            logger.debug("Erhaltene Antwort: {}", diagnostics.abbreviate(response.content()));
+        }
+        return response;
+    }
+
+    /**
+     * Verarbeitet die Dokumente wie {@link #invoke(List, Map)} und bewertet sie für das Token-Budget mit den
+     * übergebenen Scores statt mit den Metadaten.
+     */
+    String invoke(List<Document> documents, Map<String, Object> additionalVariables,
+                  Map<Document, ? extends Number> scores) {
+        boolean debug = diagnostics.sample();
+        return call(buildPrompt(documents, additionalVariables, scores, debug), debug).content();
+    }
+
+    private String buildPrompt(List<Document> documents, Map<String, Object> additionalVariables, boolean debug) {
+        return buildPrompt(documents, additionalVariables, null, debug);
+    }
+
+    /**
+     * Baut den vollständigen Prompt aus den Dokumenten und Variablen.
+     * Debug-Ausgaben werden nur erzeugt, wenn der Aufruf für das Logging ausgewählt wurde.
+     */
+    private String buildPrompt(List<Document> documents, Map<String, Object> additionalVariables,
+                               Map<Document, ? extends Number> scores, boolean debug) {
+        if (debug) {
+            logger.debug("Verarbeitung von {} Dokumenten", documents.size());
+            for (int i = 0; i < documents.size(); i++) {
+                logger.debug("Dokument {}: {}", i, diagnostics.abbreviate(documents.get(i).text()));
+            }
+        }
+
+        // Formatiere alle Dokumente vorab parallel; Budget und Zusammenfügen lesen danach nur noch nach
+        Function<Document, String> formatter = documentFormatter;
+        long preformatNanos = 0;
+        if (parallelFormatter != null) {
+            long preformatStart = System.nanoTime();
+            formatter = parallelFormatter.preformat(documents);
+            preformatNanos = System.nanoTime() - preformatStart;
+        }
 
+        // Entferne Duplikate, bevor sie Platz im Budget belegen
+        if (deduplicator != null) {
+            DocumentDeduplicator.Session deduplication = deduplicator.newSession(formatter);
+            for (Document document : documents) {
+                deduplication.accept(document);
+            }
+            DocumentDeduplicator.Result result = reportDeduplication(deduplication);
+            documents = result.kept();
+        }
+
+        // Beschränke die Dokumente auf das Token-Budget, falls eines konfiguriert ist
+        if (packer != null) {
+            long packStart = System.nanoTime();
+            DocumentPacker.Result packing = packer.pack(documents, formatter, scores);
+            listener.onStage(ChainListener.Stage.PACK, System.nanoTime() - packStart);
+            if (packing.hasDropped()) {
+                logger.info("{} von {} Dokumenten verworfen, um das Budget von {} Tokens einzuhalten",
+                        packing.dropped().size(), documents.size(), packing.maxTokens());
+            }
+            if (packingListener != null) {
+                packingListener.accept(packing);
+            }
+            documents = packing.kept();
+        }
+
+        if (maxPromptChars > 0) {
+            // Die Zeichengrenze gilt wie bei Dokumentenquellen in der Reihenfolge der Dokumente
+            DocumentAccumulator accumulator = newAccumulator(formatter, additionalVariables, false);
+            accumulator.addFormatNanos(preformatNanos);
+            for (Document document : documents) {
+                if (!accumulator.add(document)) {
+                    break;
+                }
+            }
+            return renderAccumulated(accumulator, null, additionalVariables, debug);
+        }
+
+        if (documentOrder != null) {
+            List<Document> sorted = new ArrayList<>(documents);
+            sorted.sort(documentOrder);
+            documents = sorted;
+        }
+
+        // Formatiere alle Dokumente; verbunden werden sie erst beim Rendern direkt im Prompt-Puffer
+        long formatStart = System.nanoTime();
+        JoinedDocuments formattedDocs = JoinedDocuments.join(documents, formatter, documentSeparator);
+        listener.onStage(ChainListener.Stage.FORMAT, preformatNanos + System.nanoTime() - formatStart);
+        return renderPrompt(formattedDocs, additionalVariables, debug);
+    }
+
+    /**
+     * Baut den Prompt aus einer Dokumentenquelle und liest dabei nur so weit, wie Dokumente hineinpassen.
+     */
+    private String buildPrompt(Iterator<? extends Document> documents, Map<String, Object> additionalVariables,
+                               boolean debug) {
+        DocumentAccumulator accumulator = newAccumulator(additionalVariables, packer != null);
+        DocumentDeduplicator.Session deduplication = deduplicator != null ? deduplicator.newSession() : null;
+        while (documents.hasNext()) {
+            Document document = documents.next();
+            if (deduplication != null && !deduplication.accept(document)) {
+                continue;
+            }
+            if (!accumulator.add(document)) {
+                break;
+            }
+            if (debug) {
+                logger.debug("Dokument {}: {}", accumulator.count() - 1, diagnostics.abbreviate(document.text()));
+            }
+        }
+        return renderAccumulated(accumulator, deduplication, additionalVariables, debug);
+    }
+
+    /**
+     * Erstellt einen Sammler, dessen Zeichengrenze sich aus {@link Builder#maxPromptChars(int)} abzüglich
+     * Vorlage und übriger Variablen ergibt.
+     */
+    private DocumentAccumulator newAccumulator(Map<String, Object> additionalVariables, boolean tokenBudget) {
+        return newAccumulator(documentFormatter, additionalVariables, tokenBudget);
+    }
+
+    private DocumentAccumulator newAccumulator(Function<Document, String> formatter,
+                                               Map<String, Object> additionalVariables, boolean tokenBudget) {
+        long maxChars = Long.MAX_VALUE;
+        if (maxPromptChars > 0) {
+            long fixedLength = promptTemplate.lengthWithout(additionalVariables, documentVariableName);
+            if (fixedLength > maxPromptChars) {
+                throw new IllegalArgumentException("Prompt needs " + fixedLength
+                        + " characters without documents, more than maxPromptChars " + maxPromptChars);
+            }
+            maxChars = (maxPromptChars - fixedLength) / promptTemplate.occurrences(documentVariableName);
+        }
+        return new DocumentAccumulator(formatter, documentSeparator, maxChars,
+                tokenBudget ? tokenEstimator : null, maxContextTokens, documentOrder);
+    }
+
+    private String renderAccumulated(DocumentAccumulator accumulator, DocumentDeduplicator.Session deduplication,
+                                     Map<String, Object> additionalVariables, boolean debug) {
+        if (deduplication != null) {
+            reportDeduplication(deduplication);
+        }
+        listener.onStage(ChainListener.Stage.FORMAT, accumulator.formatNanos());
+        if (accumulator.isFull()) {
+            logger.info("Dokumente nach {} Dokumenten abgeschnitten, um die Grenze des Prompts einzuhalten",
+                    accumulator.count());
+        }
+        return renderPrompt(accumulator.join(), additionalVariables, debug);
+    }
+
+    /**
+     * Meldet Laufzeit und Einsparung einer abgeschlossenen Deduplizierung an Log und Listener.
+     */
+    private DocumentDeduplicator.Result reportDeduplication(DocumentDeduplicator.Session deduplication) {
+        DocumentDeduplicator.Result result = deduplication.result();
+        listener.onStage(ChainListener.Stage.DEDUPLICATE, deduplication.nanos());
+        if (result.hasDropped()) {
+            logger.info("{} doppelte Dokumente verworfen ({} exakt, {} ähnlich), ca. {} Tokens eingespart",
+                    result.dropped().size(), result.exactDuplicates(), result.nearDuplicates(), result.savedTokens());
+            listener.onDeduplication(result.dropped().size(), result.savedTokens());
+        }
+        if (deduplicationListener != null) {
+            deduplicationListener.accept(result);
+        }
+        return result;
+    }
+
+    /**
+     * Warnt einmal je Kombination überzähliger Variablen. Überzählige Variablen sind erlaubt, z.B. wenn Map- und
+     * Reduce-Prompt dieselben Eingaben erhalten, deuten aber oft auf einen Tippfehler im Platzhalter hin.
+     */
+    private void warnUnusedVariables(Map<String, Object> allVariables) {
+        if (!logger.isWarnEnabled()) {
+            return;
+        }
+        Set<String> unusedVariables = promptTemplate.unusedVariables(allVariables);
+        if (unusedVariables.isEmpty() || warnedUnusedVariables.contains(unusedVariables)) {
+            return;
+        }
+        // Begrenzt, damit ständig wechselnde Variablennamen den Speicher nicht füllen
+        if (warnedUnusedVariables.size() < MAX_WARNED_UNUSED_VARIABLE_SETS && warnedUnusedVariables.add(unusedVariables)) {
+            logger.warn("Variablen ohne Platzhalter in der Prompt-Vorlage werden ignoriert: {}", unusedVariables);
+        }
+    }
+
+    /**
+     * Füllt die Vorlage mit den formatierten Dokumenten und den übrigen Variablen.
+     */
+    private String renderPrompt(JoinedDocuments formattedDocs, Map<String, Object> additionalVariables,
+                                boolean debug) {
         // Erstelle die vollständige Map mit allen Variablen
         Map<String, Object> allVariables = new HashMap<>(additionalVariables);
         allVariables.put(documentVariableName, formattedDocs);
-        logger.debug("Variablen für den Prompt: {}", allVariables);
 
-        // Fülle den Prompt mit den Variablen
-        String filledPrompt = promptTemplate;
-        for (Map.Entry<String, Object> entry : allVariables.entrySet()) {
-            filledPrompt = filledPrompt.replace("{" + entry.getKey() + "}", entry.getValue().toString());
+        if (debug) {
+            // Die Dokumente stecken bereits im Prompt und werden hier nicht ein weiteres Mal ausgegeben
+            logger.debug("Verwende Dokumentenseparator: '{}'", documentSeparator);
+            logger.debug("Zusätzliche Variablen für den Prompt: {}", diagnostics.abbreviate(additionalVariables));
         }
+        warnUnusedVariables(allVariables);
 
-        logger.debug("Vollständiger Prompt: {}", filledPrompt);
+        // Fülle den Prompt mit den Variablen in einem Durchlauf
+        long renderStart = System.nanoTime();
+        String filledPrompt = promptTemplate.render(allVariables);
+        if (listener != ChainListener.NO_OP) {
+            listener.onStage(ChainListener.Stage.RENDER, System.nanoTime() - renderStart);
+            listener.onPrompt(formattedDocs.count(), ChainListener.utf8Length(filledPrompt));
+            int prefixChars = (int) promptTemplate.prefixLength(allVariables, this::isVolatile);
+            listener.onPromptPrefix(ChainDiagnostics.hash(filledPrompt, prefixChars), prefixChars, filledPrompt.length());
+        }
 
-        // Rufe das Modell auf
-        ChatLanguageModel.Response<String> response = model.generate(filledPrompt);
-        logger.debug("Erhaltene Antwort: {}", response.content());
+        if (debug) {
+            logger.debug("Vollständiger Prompt: {}", diagnostics.abbreviate(filledPrompt));
+            logger.debug("Gemeinsamer Präfix: {} von {} Zeichen",
+                    promptTemplate.prefixLength(allVariables, this::isVolatile), filledPrompt.length());
+        }
+        return filledPrompt;
+    }
 
-        return response.content();
+    /**
+     * Variablen außer den Dokumenten gelten als veränderlich, sofern sie nicht als stabil konfiguriert sind.
+     */
+    private boolean isVolatile(String name) {
+        return !name.equals(documentVariableName) && !stableVariables.contains(name);
     }
 
     /**
@@ -127,10 +610,11 @@ public class StuffDocumentsChain {
      * @return Die Antwort des Sprachmodells
      */
     public String invoke(Map<String, Object> inputs) {
-        logger.debug("Invoking mit Map-Input. Schlüssel: {}", inputs.keySet());
+        if (logger.isDebugEnabled()) {
+            logger.debug("Invoking mit Map-Input. Schlüssel: {}", inputs.keySet());
+        }
 
-        @SuppressWarnings("unchecked")
-        List<Document> documents = (List<Document>) inputs.get(documentVariableName);
+        Object documents = inputs.get(documentVariableName);
         if (documents == null) {
             throw new IllegalArgumentException("Input map must contain the key: " + documentVariableName);
         }
@@ -139,7 +623,321 @@ public class StuffDocumentsChain {
         Map<String, Object> additionalVariables = new HashMap<>(inputs);
         additionalVariables.remove(documentVariableName);
 
-        return invoke(documents, additionalVariables);
+        return invokeWithSource(documents, additionalVariables);
+    }
+
+    /**
+     * Ruft die passende Überladung für die unter dem Dokumenten-Schlüssel übergebene Quelle auf.
+     */
+    @SuppressWarnings("unchecked")
+    private String invokeWithSource(Object documents, Map<String, Object> additionalVariables) {
+        if (documents instanceof List<?> list) {
+            return invoke((List<Document>) list, additionalVariables);
+        }
+        if (documents instanceof Iterable<?> iterable) {
+            return invoke((Iterator<Document>) iterable.iterator(), additionalVariables);
+        }
+        if (documents instanceof Iterator<?> iterator) {
+            return invoke((Iterator<Document>) iterator, additionalVariables);
+        }
+        if (documents instanceof Stream<?> stream) {
+            return invoke((Stream<Document>) stream, additionalVariables);
+        }
+        if (documents instanceof Flow.Publisher<?> publisher) {
+            return invoke((Flow.Publisher<Document>) publisher, additionalVariables);
+        }
+        throw new IllegalArgumentException("Value of '" + documentVariableName
+                + "' must be a List, Iterable, Iterator, Stream or Flow.Publisher of documents: "
+                + documents.getClass().getName());
+    }
+
+    /**
+     * Verarbeitet die Eingabedokumente und wandelt die Antwort mit dem Parser in einen typisierten Wert um.
+     * Die Formatanweisung des Parsers wird hinter den gefüllten Prompt gehängt, der Präfix für das Prompt-Caching
+     * bleibt damit unverändert.
+     * <p>
+     * Ist ein Streaming-Modell konfiguriert, wird die Antwort verarbeitet, während sie eintrifft, und die
+     * Generierung abgebrochen, sobald der Parser alle Angaben hat. Entspricht die Antwort nicht dem Format, wird der
+     * Aufruf bis zu {@link Builder#outputRetries(int)} Mal mit einem Hinweis auf den Fehler wiederholt; Fehler des
+     * Modells selbst werden nicht wiederholt.
+     *
+     * @param documents Liste der zu verarbeitenden Dokumente
+     * @param additionalVariables Zusätzliche Variablen für den Prompt
+     * @param parser Der Parser für die Antwort
+     * @return Das Ergebnis des Parsers
+     * @throws OutputParsingException wenn auch die letzte Wiederholung nicht dem Format entspricht
+     */
+    public <T> T invoke(List<Document> documents, Map<String, Object> additionalVariables, OutputParser<T> parser) {
+        boolean debug = diagnostics.sample();
+        String filledPrompt = buildPrompt(documents, additionalVariables, debug) + "\n\n" + parser.formatInstructions();
+        String prompt = filledPrompt;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return callParsed(prompt, parser, debug);
+            } catch (OutputParsingException e) {
+                listener.onError(ChainListener.Stage.PARSE, e);
+                if (attempt >= outputRetries) {
+                    throw e;
+                }
+                logger.info("Antwort entspricht nicht dem Format ({}), Wiederholung {} von {}",
+                        e.getMessage(), attempt + 1, outputRetries);
+                prompt = filledPrompt + "\n\nDeine vorherige Antwort war ungültig: " + e.getMessage()
+                        + ". Antworte erneut und halte dich genau an das Format.";
+            }
+        }
+    }
+
+    /**
+     * Überladene Methode, die nur Dokumente ohne zusätzliche Variablen akzeptiert.
+     *
+     * @param documents Liste der zu verarbeitenden Dokumente
+     * @param parser Der Parser für die Antwort
+     * @return Das Ergebnis des Parsers
+     */
+    public <T> T invoke(List<Document> documents, OutputParser<T> parser) {
+        return invoke(documents, new HashMap<>(), parser);
+    }
+
+    /**
+     * Verarbeitet die Eingabedokumente wie {@link #invoke(List, Map, OutputParser)} und liest die Antwort als
+     * JSON-Objekt in einen Record ein, siehe {@link RecordOutputParser}.
+     *
+     * @param documents Liste der zu verarbeitenden Dokumente
+     * @param additionalVariables Zusätzliche Variablen für den Prompt
+     * @param type Der Typ des Ergebnisses
+     * @return Das Ergebnis
+     */
+    public <T extends Record> T invoke(List<Document> documents, Map<String, Object> additionalVariables,
+                                       Class<T> type) {
+        return invoke(documents, additionalVariables, RecordOutputParser.of(type));
+    }
+
+    /**
+     * Überladene Methode, die nur Dokumente ohne zusätzliche Variablen akzeptiert.
+     *
+     * @param documents Liste der zu verarbeitenden Dokumente
+     * @param type Der Typ des Ergebnisses
+     * @return Das Ergebnis
+     */
+    public <T extends Record> T invoke(List<Document> documents, Class<T> type) {
+        return invoke(documents, new HashMap<>(), RecordOutputParser.of(type));
+    }
+
+    /**
+     * Verarbeitet die Eingabedokumente wie {@link #invoke(List, Map, OutputParser)} asynchron auf dem
+     * konfigurierten Executor.
+     *
+     * @param documents Liste der zu verarbeitenden Dokumente
+     * @param additionalVariables Zusätzliche Variablen für den Prompt
+     * @param parser Der Parser für die Antwort
+     * @return Ein Future mit dem Ergebnis des Parsers
+     */
+    public <T> CompletableFuture<T> invokeAsync(List<Document> documents, Map<String, Object> additionalVariables,
+                                                OutputParser<T> parser) {
+        return executor.supply(() -> invoke(documents, additionalVariables, parser));
+    }
+
+    /**
+     * Ruft das Modell einmal auf und wandelt die Antwort um; mit Streaming-Modell stückweise und mit Abbruch,
+     * sobald der Decoder vollständig ist.
+     */
+    private <T> T callParsed(String prompt, OutputParser<T> parser, boolean debug) {
+        try (OutputParser.Decoder<T> decoder = parser.newDecoder()) {
+            if (streamingModel == null) {
+                ChatLanguageModel.Response<String> response = call(prompt, debug);
+                long parseStart = System.nanoTime();
+                decoder.feed(response.content());
+                T result = decoder.result();
+                listener.onStage(ChainListener.Stage.PARSE, System.nanoTime() - parseStart);
+                return result;
+            }
+
+            ParsingHandler<T> handler = new ParsingHandler<>(decoder);
+            long start = System.nanoTime();
+            ChatLanguageModel.Response<String> response;
+            try {
+                streamingModel.generate(prompt, handler);
+                response = handler.done.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the streaming model", e);
+            } catch (ExecutionException e) {
+                listener.onError(ChainListener.Stage.MODEL_CALL, e.getCause());
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw new IllegalStateException("Streaming model failed", e.getCause());
+            } catch (RuntimeException e) {
+                listener.onError(ChainListener.Stage.MODEL_CALL, e);
+                throw e;
+            }
+            listener.onStage(ChainListener.Stage.MODEL_CALL, System.nanoTime() - start);
+            if (response != null) {
+                listener.onTokenUsage(response.tokenUsage());
+            } else if (debug) {
+                logger.debug("Generierung nach vollständiger Antwort abgebrochen");
+            }
+            if (handler.parseError != null) {
+                throw handler.parseError;
+            }
+            long parseStart = System.nanoTime();
+            T result = decoder.result();
+            listener.onStage(ChainListener.Stage.PARSE, handler.parseNanos + System.nanoTime() - parseStart);
+            return result;
+        }
+    }
+
+    /**
+     * Gibt die Tokens an den Decoder weiter und fordert den Abbruch an, sobald er vollständig ist oder das Format
+     * verletzt wurde. Das Future wird dann ohne Antwort abgeschlossen, sonst mit der Antwort des Modells.
+     */
+    private static final class ParsingHandler<T> implements StreamingChatLanguageModel.StreamingResponseHandler {
+        private final OutputParser.Decoder<T> decoder;
+        private final CompletableFuture<ChatLanguageModel.Response<String>> done = new CompletableFuture<>();
+        private volatile boolean cancelled;
+        private OutputParsingException parseError;
+        private long parseNanos;
+
+        ParsingHandler(OutputParser.Decoder<T> decoder) {
+            this.decoder = decoder;
+        }
+
+        @Override
+        public void onToken(String token) {
+            if (cancelled) {
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                if (decoder.feed(token)) {
+                    cancelled = true;
+                }
+            } catch (OutputParsingException e) {
+                parseError = e;
+                cancelled = true;
+            }
+            parseNanos += System.nanoTime() - start;
+            if (cancelled) {
+                done.complete(null);
+            }
+        }
+
+        @Override
+        public void onComplete(ChatLanguageModel.Response<String> response) {
+            done.complete(response);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            done.completeExceptionally(error);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * Verarbeitet die Eingabedokumente mit dem Streaming-Modell und liefert die Tokens an den Handler,
+     * sobald sie eintreffen. Die vollständige Antwort mit {@code TokenUsage} folgt über
+     * {@link StreamingChatLanguageModel.StreamingResponseHandler#onComplete}.
+     *
+     * @param documents Liste der zu verarbeitenden Dokumente
+     * @param additionalVariables Zusätzliche Variablen für den Prompt
+     * @param handler Empfänger der Tokens
+     * @throws IllegalStateException wenn kein Streaming-Modell konfiguriert ist
+     */
+    public void stream(List<Document> documents, Map<String, Object> additionalVariables,
+                       StreamingChatLanguageModel.StreamingResponseHandler handler) {
+        StreamingChatLanguageModel streaming = requireStreamingModel();
+        streaming.generate(buildPrompt(documents, additionalVariables, diagnostics.sample()), handler);
+    }
+
+    /**
+     * Verarbeitet die Eingabedokumente mit dem Streaming-Modell. Die Generierung startet mit dem Abonnieren
+     * des Publishers; Tokens werden gemäß der Nachfrage des Subscribers ausgeliefert.
+     *
+     * @param documents Liste der zu verarbeitenden Dokumente
+     * @param additionalVariables Zusätzliche Variablen für den Prompt
+     * @return Ein Publisher für die Tokens der Antwort
+     * @throws IllegalStateException wenn kein Streaming-Modell konfiguriert ist
+     */
+    public TokenPublisher stream(List<Document> documents, Map<String, Object> additionalVariables) {
+        StreamingChatLanguageModel streaming = requireStreamingModel();
+        return new TokenPublisher(handler ->
+                streaming.generate(buildPrompt(documents, additionalVariables, diagnostics.sample()), handler));
+    }
+
+    /**
+     * Überladene Methode, die nur Dokumente ohne zusätzliche Variablen akzeptiert.
+     *
+     * @param documents Liste der zu verarbeitenden Dokumente
+     * @return Ein Publisher für die Tokens der Antwort
+     */
+    public TokenPublisher stream(List<Document> documents) {
+        return stream(documents, new HashMap<>());
+    }
+
+    private StreamingChatLanguageModel requireStreamingModel() {
+        if (streamingModel == null) {
+            throw new IllegalStateException("No streaming model configured, use Builder.streamingModel(...)");
+        }
+        return streamingModel;
+    }
+
+    /**
+     * Verarbeitet die Eingabedokumente asynchron auf dem konfigurierten Executor.
+     * Die Anzahl gleichzeitiger Modellaufrufe ist durch {@link Builder#maxConcurrency(int)} begrenzt;
+     * weitere Aufrufe warten, ohne einen Thread zu blockieren.
+     *
+     * @param documents Liste der zu verarbeitenden Dokumente
+     * @param additionalVariables Zusätzliche Variablen für den Prompt
+     * @return Ein Future mit der Antwort des Sprachmodells
+     */
+    public CompletableFuture<String> invokeAsync(List<Document> documents, Map<String, Object> additionalVariables) {
+        return executor.supply(() -> invoke(documents, additionalVariables));
+    }
+
+    /**
+     * Überladene Methode, die nur Dokumente ohne zusätzliche Variablen akzeptiert.
+     *
+     * @param documents Liste der zu verarbeitenden Dokumente
+     * @return Ein Future mit der Antwort des Sprachmodells
+     */
+    public CompletableFuture<String> invokeAsync(List<Document> documents) {
+        return invokeAsync(documents, new HashMap<>());
+    }
+
+    /**
+     * Verarbeitet mehrere Dokumentenlisten nebenläufig und wartet auf alle Antworten.
+     *
+     * @param batches Die Dokumentenlisten, eine pro Modellaufruf
+     * @return Die Antworten in der Reihenfolge der Eingaben
+     */
+    public List<String> invokeAll(List<List<Document>> batches) {
+        return invokeAllAsync(batches).join();
+    }
+
+    /**
+     * Verarbeitet mehrere Dokumentenlisten nebenläufig.
+     *
+     * @param batches Die Dokumentenlisten, eine pro Modellaufruf
+     * @return Ein Future mit den Antworten in der Reihenfolge der Eingaben
+     */
+    public CompletableFuture<List<String>> invokeAllAsync(List<List<Document>> batches) {
+        List<CompletableFuture<String>> futures = new ArrayList<>(batches.size());
+        for (List<Document> batch : batches) {
+            futures.add(invokeAsync(batch));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    List<String> results = new ArrayList<>(futures.size());
+                    for (CompletableFuture<String> future : futures) {
+                        results.add(future.join());
+                    }
+                    return results;
+                });
     }
 
     /**
@@ -151,6 +949,29 @@ public class StuffDocumentsChain {
         private String documentSeparator = DEFAULT_DOCUMENT_SEPARATOR;
         private String documentVariableName = DEFAULT_DOCUMENT_VARIABLE_NAME;
         private Function<Document, String> documentFormatter = Document::text;
+        private FormattedDocumentCache formattedDocumentCache;
+        private int parallelFormattingThreshold;
+        private Executor formattingExecutor;
+        private StreamingChatLanguageModel streamingModel;
+        private Executor executor;
+        private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+        private int maxContextTokens;
+        private int maxPromptChars;
+        private boolean cacheFriendlyLayout;
+        private Set<String> stableVariables = Set.of();
+        private String documentSortKey;
+        private DocumentPacker.Policy packingPolicy = DocumentPacker.Policy.IN_ORDER;
+        private String scoreMetadataKey = DEFAULT_SCORE_METADATA_KEY;
+        private TokenEstimator tokenEstimator = TokenEstimator.defaultEstimator();
+        private Consumer<DocumentPacker.Result> packingListener;
+        private boolean deduplicate;
+        private DocumentDeduplicator.NearDuplicates nearDuplicates = DocumentDeduplicator.NearDuplicates.NONE;
+        private double nearDuplicateThreshold = 1;
+        private Consumer<DocumentDeduplicator.Result> deduplicationListener;
+        private int debugLogMaxChars = DEFAULT_DEBUG_LOG_MAX_CHARS;
+        private int debugLogSampleEvery = 1;
+        private ChainListener listener = ChainListener.NO_OP;
+        private int outputRetries = DEFAULT_OUTPUT_RETRIES;
 
         public Builder(ChatLanguageModel model, String promptTemplate) {
             this.model = model;
@@ -172,14 +993,217 @@ public class StuffDocumentsChain {
             return this;
         }
 
+        /**
+         * Speichert die Ausgabe des Formatierers in diesem Cache, damit wiederkehrende Dokumente nicht bei jedem
+         * Aufruf neu formatiert werden. Ein Cache kann von mehreren Ketten gemeinsam genutzt werden.
+         */
+        public Builder formattedDocumentCache(FormattedDocumentCache formattedDocumentCache) {
+            this.formattedDocumentCache = formattedDocumentCache;
+            return this;
+        }
+
+        /**
+         * Formatiert Dokumentenlisten ab {@code threshold} Dokumenten parallel im gemeinsamen {@link ForkJoinPool},
+         * bevor Budget und Zeichengrenze angewendet werden. Lohnt sich für Formatierer, die pro Dokument deutlich
+         * länger als eine Mikrosekunde brauchen; den Umschlagpunkt zeigt {@code ParallelFormattingBenchmark}.
+         * Schlägt der Formatierer fehl, wird eine {@link DocumentFormattingException} mit der Position des Dokuments
+         * geworfen. Dokumentenquellen werden weiterhin nacheinander formatiert. Standard ist 0 (aus).
+         */
+        public Builder parallelFormatting(int threshold) {
+            this.parallelFormattingThreshold = threshold;
+            return this;
+        }
+
+        /**
+         * Wie {@link #parallelFormatting(int)}, aber auf dem übergebenen Executor, z.B. einem eigenen
+         * {@link ForkJoinPool}, damit teure Formatierer den gemeinsamen Pool nicht belegen.
+         */
+        public Builder parallelFormatting(int threshold, Executor formattingExecutor) {
+            this.parallelFormattingThreshold = threshold;
+            this.formattingExecutor = formattingExecutor;
+            return this;
+        }
+
+        /**
+         * Setzt das Modell für {@code stream}. Ohne Streaming-Modell ist nur {@code invoke} verfügbar. Typisierte
+         * Aufrufe mit {@link OutputParser} verwenden es ebenfalls, um die Antwort schon während der Generierung zu
+         * verarbeiten.
+         */
+        public Builder streamingModel(StreamingChatLanguageModel streamingModel) {
+            this.streamingModel = streamingModel;
+            return this;
+        }
+
+        /**
+         * Setzt den Executor für {@code invokeAsync} und {@code invokeAll}.
+         * Standard sind virtuelle Threads, sofern verfügbar.
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Begrenzt die Anzahl gleichzeitiger asynchroner Modellaufrufe dieser Kette.
+         */
+        public Builder maxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * Begrenzt die verbundenen Dokumente auf ein Token-Budget. Standard ist 0 (keine Begrenzung).
+         */
+        public Builder maxContextTokens(int maxContextTokens) {
+            this.maxContextTokens = maxContextTokens;
+            return this;
+        }
+
+        /**
+         * Begrenzt den gefüllten Prompt auf die angegebene Zeichenanzahl. Dokumente werden in ihrer Reihenfolge
+         * aufgenommen, bis das nächste nicht mehr passt; Dokumentenquellen werden ab dort nicht weiter gelesen.
+         * Standard ist 0 (keine Begrenzung).
+         */
+        public Builder maxPromptChars(int maxPromptChars) {
+            this.maxPromptChars = maxPromptChars;
+            return this;
+        }
+
+        /**
+         * Ordnet den Prompt für serverseitiges Prompt-Caching: Zeilen der Vorlage mit veränderlichen Variablen, die
+         * vor den Dokumenten stehen, werden hinter die Dokumente verschoben, und die Dokumente werden unabhängig von
+         * ihrer Eingangsreihenfolge sortiert (siehe {@link #documentSortKey(String)}). Standard ist false.
+         */
+        public Builder cacheFriendlyLayout(boolean cacheFriendlyLayout) {
+            this.cacheFriendlyLayout = cacheFriendlyLayout;
+            return this;
+        }
+
+        /**
+         * Variablen, die sich zwischen Aufrufen nicht ändern (z.B. Systemanweisungen) und deshalb zum
+         * gemeinsamen Präfix zählen. Alle übrigen Variablen außer den Dokumenten gelten als veränderlich.
+         */
+        public Builder stableVariables(String... stableVariables) {
+            this.stableVariables = Set.of(stableVariables);
+            return this;
+        }
+
+        /**
+         * Sortiert die Dokumente im cache-freundlichen Layout zuerst nach diesem Metadatenwert, bei Gleichstand
+         * nach dem Inhalts-Hash. Ohne Angabe wird nur nach dem Inhalts-Hash sortiert.
+         */
+        public Builder documentSortKey(String documentSortKey) {
+            this.documentSortKey = documentSortKey;
+            return this;
+        }
+
+        /**
+         * Setzt die Strategie, nach der Dokumente bei Überschreitung des Budgets ausgewählt werden.
+         */
+        public Builder packingPolicy(DocumentPacker.Policy packingPolicy) {
+            this.packingPolicy = packingPolicy;
+            return this;
+        }
+
+        /**
+         * Setzt den Metadaten-Schlüssel, unter dem der Relevanz-Score eines Dokuments steht.
+         */
+        public Builder scoreMetadataKey(String scoreMetadataKey) {
+            this.scoreMetadataKey = scoreMetadataKey;
+            return this;
+        }
+
+        public Builder tokenEstimator(TokenEstimator tokenEstimator) {
+            this.tokenEstimator = tokenEstimator;
+            return this;
+        }
+
+        /**
+         * Wird bei jedem Aufruf mit dem Ergebnis der Budget-Auswahl benachrichtigt.
+         */
+        public Builder packingListener(Consumer<DocumentPacker.Result> packingListener) {
+            this.packingListener = packingListener;
+            return this;
+        }
+
+        /**
+         * Verwirft vor dem Zusammenfügen Dokumente mit gleichem Text; das erste Vorkommen bleibt erhalten.
+         * Standard ist false.
+         */
+        public Builder deduplicate(boolean deduplicate) {
+            this.deduplicate = deduplicate;
+            return this;
+        }
+
+        /**
+         * Verwirft zusätzlich Dokumente, deren Ähnlichkeit zu einem bereits aufgenommenen Dokument mindestens
+         * {@code threshold} beträgt, und schaltet die Deduplizierung ein. Übliche Schwellen liegen bei 0.9 für
+         * {@code SIMHASH} und 0.8 für {@code MINHASH}.
+         */
+        public Builder nearDuplicates(DocumentDeduplicator.NearDuplicates nearDuplicates, double threshold) {
+            this.nearDuplicates = nearDuplicates;
+            this.nearDuplicateThreshold = threshold;
+            this.deduplicate = true;
+            return this;
+        }
+
+        /**
+         * Wird bei jedem Aufruf mit dem Ergebnis der Deduplizierung benachrichtigt.
+         */
+        public Builder deduplicationListener(Consumer<DocumentDeduplicator.Result> deduplicationListener) {
+            this.deduplicationListener = deduplicationListener;
+            return this;
+        }
+
+        /**
+         * Kürzt Dokumente, Prompt und Antwort im Debug-Log auf die angegebene Zeichenanzahl
+         * (ergänzt um Länge und Hash). 0 schaltet die Kürzung ab.
+         */
+        public Builder debugLogMaxChars(int debugLogMaxChars) {
+            this.debugLogMaxChars = debugLogMaxChars;
+            return this;
+        }
+
+        /**
+         * Protokolliert im Debug-Log nur jeden n-ten Aufruf.
+         */
+        public Builder debugLogSampleEvery(int debugLogSampleEvery) {
+            this.debugLogSampleEvery = debugLogSampleEvery;
+            return this;
+        }
+
+        /**
+         * Setzt den Empfänger für Laufzeiten, Prompt-Größe und Tokenverbrauch, z.B. {@code ChainMetrics}.
+         */
+        public Builder listener(ChainListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * Wiederholt typisierte Aufrufe bis zu dieser Anzahl, wenn die Antwort nicht dem Format des
+         * {@link OutputParser} entspricht. Standard ist 1.
+         */
+        public Builder outputRetries(int outputRetries) {
+            this.outputRetries = outputRetries;
+            return this;
+        }
+
         public StuffDocumentsChain build() {
-            return new StuffDocumentsChain(
-                    model,
-                    promptTemplate,
-                    documentSeparator,
-                    documentVariableName,
-                    documentFormatter
-            );
+            if (maxPromptChars < 0) {
+                throw new IllegalArgumentException("maxPromptChars must not be negative: " + maxPromptChars);
+            }
+            if (parallelFormattingThreshold < 0) {
+                throw new IllegalArgumentException("parallelFormatting threshold must not be negative: "
+                        + parallelFormattingThreshold);
+            }
+            if (nearDuplicates == null) {
+                throw new IllegalArgumentException("nearDuplicates must not be null");
+            }
+            if (outputRetries < 0) {
+                throw new IllegalArgumentException("outputRetries must not be negative: " + outputRetries);
+            }
+            return new StuffDocumentsChain(this);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.aimitjava.chain;
+
+/**
+ * Schätzt die Anzahl der Tokens eines Textes lokal, ohne das Sprachmodell aufzurufen.
+ */
+@FunctionalInterface
+public interface TokenEstimator {
+
+    /**
+     * Schätzt die Anzahl der Tokens des übergebenen Textes.
+     *
+     * @param text Der zu bewertende Text
+     * @return Die geschätzte Tokenanzahl
+     */
+    int estimate(String text);
+
+    /**
+     * Eine einfache Heuristik auf Basis der Zeichenanzahl.
+     *
+     * @param charsPerToken Durchschnittliche Anzahl Zeichen pro Token
+     * @return Der Schätzer
+     */
+    static TokenEstimator charsPerToken(double charsPerToken) {
+        if (charsPerToken <= 0) {
+            throw new IllegalArgumentException("charsPerToken must be positive: " + charsPerToken);
+        }
+        return text -> (int) Math.ceil(text.length() / charsPerToken);
+    }
+
+    /**
+     * Der Standardschätzer: etwa vier Zeichen pro Token, wie bei den OpenAI-Tokenizern für englischen Text.
+     *
+     * @return Der Schätzer
+     */
+    static TokenEstimator defaultEstimator() {
+        return charsPerToken(4.0);
+    }
+}
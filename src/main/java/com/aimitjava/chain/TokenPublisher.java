@@ -0,0 +1,202 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.model.ChatLanguageModel;
+import com.aimitjava.model.StreamingChatLanguageModel;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Ein {@link Flow.Publisher}, der die Tokens einer gestreamten Modellantwort an genau einen Subscriber liefert.
+ * <p>
+ * Die Generierung startet erst mit {@link #subscribe}. Tokens, die schneller eintreffen als angefordert,
+ * werden gepuffert und erst nach {@link Flow.Subscription#request(long)} weitergegeben. Nach
+ * {@link Flow.Subscription#cancel()} werden keine Tokens mehr ausgeliefert und das Modell wird über
+ * {@link StreamingChatLanguageModel.StreamingResponseHandler#isCancelled()} zum Abbruch aufgefordert.
+ * Die vollständige Antwort einschließlich {@code TokenUsage} liefert {@link #completion()}.
+ */
+public final class TokenPublisher implements Flow.Publisher<String> {
+
+    private final Consumer<StreamingChatLanguageModel.StreamingResponseHandler> source;
+    private final CompletableFuture<ChatLanguageModel.Response<String>> completion = new CompletableFuture<>();
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    /**
+     * @param source Startet die Generierung und meldet Tokens an den übergebenen Handler
+     */
+    public TokenPublisher(Consumer<StreamingChatLanguageModel.StreamingResponseHandler> source) {
+        this.source = source;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super String> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("TokenPublisher supports only a single subscriber"));
+            return;
+        }
+
+        TokenSubscription subscription = new TokenSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        if (subscription.cancelled) {
+            return;
+        }
+        try {
+            source.accept(subscription);
+        } catch (RuntimeException e) {
+            subscription.onError(e);
+        }
+    }
+
+    /**
+     * Gibt die vollständige Antwort zurück, sobald die Generierung abgeschlossen ist.
+     * Nach einem Abbruch durch den Subscriber wird das Future abgebrochen.
+     *
+     * @return Ein Future mit Antworttext und {@code TokenUsage}
+     */
+    public CompletableFuture<ChatLanguageModel.Response<String>> completion() {
+        return completion;
+    }
+
+    private final class TokenSubscription implements Flow.Subscription,
+            StreamingChatLanguageModel.StreamingResponseHandler {
+
+        private final Flow.Subscriber<? super String> subscriber;
+        private final Queue<String> tokens = new ConcurrentLinkedQueue<>();
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile boolean done;
+        private volatile Throwable error;
+        private volatile Throwable invalidDemand;
+        private boolean terminated;
+
+        TokenSubscription(Flow.Subscriber<? super String> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                if (cancelled) {
+                    return;
+                }
+                // Reactive Streams §3.9: die Subscription gilt als gekündigt, bevor onError gemeldet wird
+                invalidDemand = new IllegalArgumentException("Demand must be positive: " + n);
+                cancel();
+                drain();
+                return;
+            }
+            demand.accumulateAndGet(n, (current, added) -> {
+                long sum = current + added;
+                return sum < 0 ? Long.MAX_VALUE : sum;
+            });
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            tokens.clear();
+            completion.cancel(false);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void onToken(String token) {
+            if (cancelled) {
+                return;
+            }
+            tokens.add(token);
+            drain();
+        }
+
+        @Override
+        public void onComplete(ChatLanguageModel.Response<String> response) {
+            completion.complete(response);
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            completion.completeExceptionally(throwable);
+            error = throwable;
+            done = true;
+            drain();
+        }
+
+        /**
+         * Liefert gepufferte Tokens entsprechend der Nachfrage aus. Nur ein Thread liefert gleichzeitig aus.
+         */
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                long requested = demand.get();
+                long emitted = 0;
+                while (emitted != requested) {
+                    if (cancelled) {
+                        terminateCancelled();
+                        return;
+                    }
+                    String token = tokens.poll();
+                    if (token == null) {
+                        break;
+                    }
+                    subscriber.onNext(token);
+                    emitted++;
+                }
+                if (emitted > 0 && requested != Long.MAX_VALUE) {
+                    demand.addAndGet(-emitted);
+                }
+                if (cancelled) {
+                    terminateCancelled();
+                    return;
+                }
+                if (done && !terminated && (error != null || tokens.isEmpty())) {
+                    terminated = true;
+                    tokens.clear();
+                    if (error != null) {
+                        subscriber.onError(error);
+                    } else {
+                        subscriber.onComplete();
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Nach einer Kündigung geht nur noch der Fehler einer ungültigen Nachfrage an den Subscriber.
+         */
+        private void terminateCancelled() {
+            tokens.clear();
+            Throwable failure = invalidDemand;
+            if (failure != null && !terminated) {
+                terminated = true;
+                subscriber.onError(failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.aimitjava.document;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Unveränderliche Metadaten eines Dokuments.
+ * <p>
+ * Wenige Einträge werden als flaches Array aus abwechselnd Schlüssel und Wert gehalten, größere Mengen in einer
+ * internen HashMap. Instanzen werden zwischen Dokumenten geteilt, ohne kopiert zu werden.
+ */
+final class CompactMetadata extends AbstractMap<String, Object> {
+
+    static final CompactMetadata EMPTY = new CompactMetadata(new Object[0], null);
+
+    /** Bis zu dieser Anzahl Einträge ist die lineare Suche im Array schneller als eine HashMap. */
+    private static final int FLAT_LIMIT = 8;
+
+    private final Object[] flat;
+    private final Map<String, Object> table;
+    private Set<Entry<String, Object>> entrySet;
+
+    private CompactMetadata(Object[] flat, Map<String, Object> table) {
+        this.flat = flat;
+        this.table = table;
+    }
+
+    /**
+     * Erstellt unveränderliche Metadaten. Bereits unveränderliche Metadaten werden unverändert zurückgegeben.
+     *
+     * @param source Die Quelle
+     * @return Die unveränderlichen Metadaten
+     */
+    static CompactMetadata of(Map<String, ?> source) {
+        if (source instanceof CompactMetadata metadata) {
+            return metadata;
+        }
+        if (source == null || source.isEmpty()) {
+            return EMPTY;
+        }
+        if (source.size() > FLAT_LIMIT) {
+            return new CompactMetadata(null, new HashMap<>(source));
+        }
+        Object[] flat = new Object[source.size() * 2];
+        int i = 0;
+        for (Map.Entry<String, ?> entry : source.entrySet()) {
+            flat[i++] = entry.getKey();
+            flat[i++] = entry.getValue();
+        }
+        return new CompactMetadata(flat, null);
+    }
+
+    /**
+     * Gibt neue Metadaten zurück, in denen der Schlüssel auf den Wert gesetzt ist.
+     */
+    CompactMetadata with(String key, Object value) {
+        Map<String, Object> copy = new HashMap<>(this);
+        copy.put(key, value);
+        return of(copy);
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (table != null) {
+            return table.get(key);
+        }
+        for (int i = 0; i < flat.length; i += 2) {
+            if (Objects.equals(flat[i], key)) {
+                return flat[i + 1];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (table != null) {
+            return table.containsKey(key);
+        }
+        for (int i = 0; i < flat.length; i += 2) {
+            if (Objects.equals(flat[i], key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return table != null ? table.size() : flat.length / 2;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = table != null ? Collections.unmodifiableMap(table).entrySet() : new FlatEntrySet();
+        }
+        return entrySet;
+    }
+
+    private final class FlatEntrySet extends AbstractSet<Entry<String, Object>> {
+
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+            return new Iterator<>() {
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return index < flat.length;
+                }
+
+                @Override
+                public Entry<String, Object> next() {
+                    if (index >= flat.length) {
+                        throw new NoSuchElementException();
+                    }
+                    Entry<String, Object> entry = new SimpleImmutableEntry<>((String) flat[index], flat[index + 1]);
+                    index += 2;
+                    return entry;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return flat.length / 2;
+        }
+    }
+}
@@ -1,14 +1,18 @@
 package com.aimitjava.document;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
 /**
- * Repräsentiert ein Dokument mit Textinhalt und Metadaten.
+ * Repräsentiert ein unveränderliches Dokument mit Textinhalt und Metadaten.
+ * <p>
+ * Die Metadaten werden beim Erstellen einmalig in eine kompakte, schreibgeschützte Darstellung übernommen
+ * und danach ohne Kopie weitergegeben, auch an mit {@link #withText(String)} abgeleitete Dokumente.
  */
 public class Document {
     private final String text;
-    private final Map<String, Object> metadata;
+    private final CompactMetadata metadata;
+    private volatile long contentHash;
 
     /**
      * Erzeugt ein neues Dokument mit dem angegebenen Text und leeren Metadaten.
@@ -16,7 +20,7 @@ public class Document {
      * @param text Der Textinhalt des Dokuments
      */
     public Document(String text) {
-        this(text, new HashMap<>());
+        this(text, CompactMetadata.EMPTY);
     }
 
     /**
@@ -25,9 +29,18 @@ public class Document {
      * @param text Der Textinhalt des Dokuments
      * @param metadata Die Metadaten des Dokuments
      */
-    public Document(String text, Map<String, Object> metadata) {
+    public Document(String text, Map<String, ?> metadata) {
         this.text = text;
-        this.metadata = new HashMap<>(metadata);
+        this.metadata = CompactMetadata.of(metadata);
+    }
+
+    /**
+     * Für Unterklassen, die Text und Metadaten selbst bereitstellen und dazu {@link #text()} und
+     * {@link #metadata()} überschreiben.
+     */
+    Document() {
+        this.text = null;
+        this.metadata = CompactMetadata.EMPTY;
     }
 
     /**
@@ -40,12 +53,12 @@ public class Document {
     }
 
     /**
-     * Gibt die Metadaten des Dokuments zurück.
+     * Gibt die Metadaten des Dokuments als schreibgeschützte Sicht zurück.
      *
      * @return Die Metadaten
      */
     public Map<String, Object> metadata() {
-        return new HashMap<>(metadata);
+        return metadata;
     }
 
     /**
@@ -55,14 +68,99 @@ public class Document {
      * @return Der Metadatenwert oder null, wenn der Schlüssel nicht existiert
      */
     public Object getMetadata(String key) {
-        return metadata.get(key);
+        return metadata().get(key);
+    }
+
+    /**
+     * Gibt die Länge des Textinhalts in Zeichen zurück.
+     *
+     * @return Die Länge
+     */
+    public int length() {
+        return text().length();
+    }
+
+    /**
+     * Gibt einen 64-Bit-Hash (FNV-1a) des Textinhalts zurück. Der Wert wird beim ersten Aufruf
+     * berechnet und danach wiederverwendet.
+     *
+     * @return Der Hash des Textinhalts
+     */
+    public long contentHash() {
+        // Wie bei String.hashCode() steht 0 für "noch nicht berechnet"
+        long hash = contentHash;
+        if (hash == 0) {
+            hash = hash(text());
+            contentHash = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * Erzeugt ein Dokument mit neuem Text und denselben Metadaten.
+     *
+     * @param text Der neue Textinhalt
+     * @return Das neue Dokument
+     */
+    public Document withText(String text) {
+        return new Document(text, metadata());
+    }
+
+    /**
+     * Erzeugt ein Dokument mit demselben Text und einem zusätzlichen oder geänderten Metadatenwert.
+     *
+     * @param key Der Schlüssel
+     * @param value Der Wert
+     * @return Das neue Dokument
+     */
+    public Document withMetadata(String key, Object value) {
+        return new Document(text(), CompactMetadata.of(metadata()).with(key, value));
+    }
+
+    /**
+     * Erzeugt ein Dokument mit demselben Text und den angegebenen Metadaten.
+     *
+     * @param metadata Die neuen Metadaten
+     * @return Das neue Dokument
+     */
+    public Document withMetadata(Map<String, ?> metadata) {
+        return new Document(text(), metadata);
+    }
+
+    /**
+     * 64-Bit-FNV-1a über die Zeichen eines Textes.
+     */
+    static long hash(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Document other)) {
+            return false;
+        }
+        return Objects.equals(text(), other.text()) && metadata().equals(other.metadata());
+    }
+
+    @Override
+    public int hashCode() {
+        // Nur der Text: String cached seinen Hash, und gleiche Dokumente haben gleichen Text
+        return Objects.hashCode(text());
     }
 
     @Override
     public String toString() {
         return "Document{" +
-                "text='" + text + '\'' +
-                ", metadata=" + metadata +
+                "text='" + text() + '\'' +
+                ", metadata=" + metadata() +
                 '}';
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,583 @@
+package com.aimitjava.document;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Ablage für sehr viele Dokumente außerhalb des Java-Heaps.
+ * <p>
+ * Texte und Metadaten liegen in einer nur angehängten, speicherabgebildeten Datendatei, ihre Positionen in
+ * einer ebenfalls speicherabgebildeten Indexdatei mit Einträgen fester Größe. {@link #get(long)} liefert
+ * leichtgewichtige {@link Document}-Handles, die ihren Text erst beim Aufruf von {@link Document#text()}
+ * dekodieren und ihn nicht festhalten; die Metadaten werden beim ersten Zugriff dekodiert und im Handle behalten.
+ * <p>
+ * Beide Dateien werden in Segmenten fester Größe abgebildet, ein Datensatz liegt immer vollständig in einem
+ * Segment. Die Anzahl der Dokumente steht im Header der Indexdatei und wird erst nach den Datensätzen
+ * geschrieben; beim erneuten Öffnen wird daher nichts eingelesen, Segmente werden erst bei Bedarf abgebildet.
+ * <p>
+ * Schreiben ist synchronisiert, Lesen kommt ohne Sperren aus.
+ */
+public final class MappedDocumentStore implements AutoCloseable {
+
+    static final String DATA_FILE = "documents.dat";
+    static final String INDEX_FILE = "documents.idx";
+
+    private static final int DEFAULT_SEGMENT_SIZE = 1 << 28;
+    private static final int DEFAULT_INDEX_SEGMENT_SIZE = 1 << 24;
+    private static final int MIN_SEGMENT_SIZE = 1 << 12;
+    private static final int MAX_SEGMENT_SIZE = 1 << 30;
+
+    private static final int MAGIC = 0x444f4353; // "DOCS"
+    private static final int VERSION = 1;
+
+    // Header: [Kennung int][Version int][Anzahl long][Segmentgröße Daten int][Segmentgröße Index int][reserviert long]
+    private static final int HEADER_SIZE = 32;
+    private static final int COUNT_OFFSET = 8;
+    private static final int SEGMENT_SIZE_OFFSET = 16;
+    private static final int INDEX_SEGMENT_SIZE_OFFSET = 20;
+
+    // Eintrag: [Position long][Textbytes int][Metadatenbytes int][Zeichen int][String-Hash int][Inhalts-Hash long]
+    private static final int ENTRY_SIZE = 32;
+    private static final int TEXT_BYTES = 8;
+    private static final int METADATA_BYTES = 12;
+    private static final int CHARS = 16;
+    private static final int STRING_HASH = 20;
+    private static final int CONTENT_HASH = 24;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INTEGER = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_FLOAT = 4;
+    private static final byte TYPE_DOUBLE = 5;
+    private static final byte TYPE_BOOLEAN = 6;
+
+    private static final byte[] NO_BYTES = new byte[0];
+
+    private final Path directory;
+    private final SegmentedFile data;
+    private final SegmentedFile index;
+    private volatile long size;
+    private volatile boolean closed;
+    private long writePosition;
+
+    private MappedDocumentStore(Builder builder) {
+        this.directory = builder.directory;
+        FileChannel indexChannel = null;
+        FileChannel dataChannel = null;
+        try {
+            Files.createDirectories(directory);
+            indexChannel = FileChannel.open(directory.resolve(INDEX_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            dataChannel = FileChannel.open(directory.resolve(DATA_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            boolean existing = indexChannel.size() >= HEADER_SIZE;
+            if (existing) {
+                indexChannel.read(header, 0);
+                if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                    throw new IllegalArgumentException("Not a document store: " + directory);
+                }
+            }
+
+            // Bei bestehenden Ablagen bestimmt der Header die Segmentgrößen, nicht der Builder
+            int segmentSize = existing ? header.getInt(SEGMENT_SIZE_OFFSET) : builder.segmentSize;
+            int indexSegmentSize = existing ? header.getInt(INDEX_SEGMENT_SIZE_OFFSET) : builder.indexSegmentSize;
+            this.data = new SegmentedFile(dataChannel, segmentSize);
+            this.index = new SegmentedFile(indexChannel, indexSegmentSize);
+        } catch (IOException e) {
+            closeQuietly(indexChannel);
+            closeQuietly(dataChannel);
+            throw new UncheckedIOException("Could not open document store: " + directory, e);
+        } catch (RuntimeException e) {
+            closeQuietly(indexChannel);
+            closeQuietly(dataChannel);
+            throw e;
+        }
+
+        ByteBuffer headerSegment = index.segmentFor(0);
+        if (headerSegment.getInt(0) != MAGIC) {
+            headerSegment.putInt(SEGMENT_SIZE_OFFSET, data.segmentSize());
+            headerSegment.putInt(INDEX_SEGMENT_SIZE_OFFSET, index.segmentSize());
+            headerSegment.putLong(COUNT_OFFSET, 0);
+            headerSegment.putInt(4, VERSION);
+            headerSegment.putInt(0, MAGIC);
+        }
+        this.size = headerSegment.getLong(COUNT_OFFSET);
+        if (size > 0) {
+            long last = entryPosition(size - 1);
+            ByteBuffer entry = index.segmentFor(last);
+            int e = index.offsetIn(last);
+            writePosition = entry.getLong(e) + entry.getInt(e + TEXT_BYTES) + entry.getInt(e + METADATA_BYTES);
+        }
+    }
+
+    /**
+     * Öffnet die Ablage im angegebenen Verzeichnis oder legt sie mit Standardeinstellungen an.
+     *
+     * @param directory Das Verzeichnis der Daten- und Indexdatei
+     * @return Die geöffnete Ablage
+     */
+    public static MappedDocumentStore open(Path directory) {
+        return new Builder(directory).build();
+    }
+
+    /**
+     * Hängt ein Dokument an.
+     *
+     * @param document Das Dokument
+     * @return Die ID des Dokuments
+     */
+    public long append(Document document) {
+        return appendAll(List.of(document));
+    }
+
+    /**
+     * Hängt mehrere Dokumente an. Die Dokumente erhalten fortlaufende IDs und werden gemeinsam festgeschrieben:
+     * schlägt eines fehl, wird keines übernommen.
+     *
+     * @param documents Die Dokumente
+     * @return Die ID des ersten Dokuments
+     * @throws IllegalArgumentException wenn ein Dokument nicht in ein Segment passt oder Metadaten
+     *                                  eines nicht unterstützten Typs enthält
+     */
+    public synchronized long appendAll(Collection<? extends Document> documents) {
+        ensureOpen();
+        long first = size;
+        long next = first;
+        long startPosition = writePosition;
+        try {
+            for (Document document : documents) {
+                write(next, document);
+                next++;
+            }
+        } catch (RuntimeException e) {
+            writePosition = startPosition;
+            throw e;
+        }
+
+        // Erst nach allen Datensätzen und Indexeinträgen wird die neue Anzahl festgeschrieben
+        index.segmentFor(0).putLong(COUNT_OFFSET, next);
+        size = next;
+        return first;
+    }
+
+    private void write(long id, Document document) {
+        String text = document.text();
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+        byte[] metadataBytes = encodeMetadata(document.metadata());
+        int length = textBytes.length + metadataBytes.length;
+        if (length > data.segmentSize()) {
+            throw new IllegalArgumentException("Document needs " + length + " bytes but the segment size is "
+                    + data.segmentSize());
+        }
+
+        long position = writePosition;
+        if (data.offsetIn(position) + length > data.segmentSize()) {
+            position = data.nextSegmentStart(position);
+        }
+        ByteBuffer segment = data.segmentFor(position);
+        int offset = data.offsetIn(position);
+        segment.put(offset, textBytes);
+        segment.put(offset + textBytes.length, metadataBytes);
+        writePosition = position + length;
+
+        long entryPosition = entryPosition(id);
+        ByteBuffer entry = index.segmentFor(entryPosition);
+        int e = index.offsetIn(entryPosition);
+        entry.putLong(e, position);
+        entry.putInt(e + TEXT_BYTES, textBytes.length);
+        entry.putInt(e + METADATA_BYTES, metadataBytes.length);
+        entry.putInt(e + CHARS, text.length());
+        entry.putInt(e + STRING_HASH, text.hashCode());
+        entry.putLong(e + CONTENT_HASH, document.contentHash());
+    }
+
+    /**
+     * Gibt ein Handle auf das Dokument mit der angegebenen ID zurück.
+     *
+     * @param id Die ID aus {@link #append(Document)} bzw. {@link #appendAll(Collection)}
+     * @return Das Dokument
+     * @throws IndexOutOfBoundsException wenn es kein Dokument mit dieser ID gibt
+     */
+    public Document get(long id) {
+        ensureOpen();
+        Objects.checkIndex(id, size);
+        return new StoredDocument(this, id);
+    }
+
+    /**
+     * Gibt alle zum Zeitpunkt des Aufrufs gespeicherten Dokumente als unveränderliche Liste von Handles zurück.
+     *
+     * @return Die Dokumente
+     */
+    public List<Document> documents() {
+        ensureOpen();
+        long count = size;
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many documents for a list: " + count);
+        }
+        return new HandleList((int) count);
+    }
+
+    /**
+     * @return Die Anzahl der gespeicherten Dokumente
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Schreibt alle Änderungen auf das Speichermedium.
+     */
+    public synchronized void flush() {
+        ensureOpen();
+        data.force();
+        index.force();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        data.force();
+        index.force();
+        closed = true;
+        try {
+            data.close();
+        } finally {
+            index.close();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Document store is closed: " + directory);
+        }
+    }
+
+    private static long entryPosition(long id) {
+        return HEADER_SIZE + id * ENTRY_SIZE;
+    }
+
+    String readText(long id) {
+        ensureOpen();
+        long entryPosition = entryPosition(id);
+        ByteBuffer entry = index.segmentFor(entryPosition);
+        int e = index.offsetIn(entryPosition);
+        long position = entry.getLong(e);
+        byte[] bytes = new byte[entry.getInt(e + TEXT_BYTES)];
+        data.segmentFor(position).get(data.offsetIn(position), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    CompactMetadata readMetadata(long id) {
+        ensureOpen();
+        long entryPosition = entryPosition(id);
+        ByteBuffer entry = index.segmentFor(entryPosition);
+        int e = index.offsetIn(entryPosition);
+        int length = entry.getInt(e + METADATA_BYTES);
+        if (length == 0) {
+            return CompactMetadata.EMPTY;
+        }
+        long position = entry.getLong(e) + entry.getInt(e + TEXT_BYTES);
+        byte[] bytes = new byte[length];
+        data.segmentFor(position).get(data.offsetIn(position), bytes);
+        return decodeMetadata(ByteBuffer.wrap(bytes));
+    }
+
+    private int entryInt(long id, int field) {
+        long entryPosition = entryPosition(id);
+        return index.segmentFor(entryPosition).getInt(index.offsetIn(entryPosition) + field);
+    }
+
+    private long entryLong(long id, int field) {
+        long entryPosition = entryPosition(id);
+        return index.segmentFor(entryPosition).getLong(index.offsetIn(entryPosition) + field);
+    }
+
+    private static byte[] encodeMetadata(Map<String, Object> metadata) {
+        if (metadata.isEmpty()) {
+            return NO_BYTES;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(metadata.size());
+            for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+                writeString(out, entry.getKey());
+                writeValue(out, entry.getKey(), entry.getValue());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeValue(DataOutputStream out, String key, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof String string) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, string);
+        } else if (value instanceof Integer number) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt(number);
+        } else if (value instanceof Long number) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong(number);
+        } else if (value instanceof Float number) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat(number);
+        } else if (value instanceof Double number) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(number);
+        } else if (value instanceof Boolean bool) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean(bool);
+        } else {
+            throw new IllegalArgumentException("Unsupported metadata type for key '" + key + "': "
+                    + value.getClass().getName());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static CompactMetadata decodeMetadata(ByteBuffer in) {
+        int count = in.getInt();
+        Map<String, Object> metadata = new LinkedHashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String key = readString(in);
+            byte type = in.get();
+            Object value = switch (type) {
+                case TYPE_NULL -> null;
+                case TYPE_STRING -> readString(in);
+                case TYPE_INTEGER -> in.getInt();
+                case TYPE_LONG -> in.getLong();
+                case TYPE_FLOAT -> in.getFloat();
+                case TYPE_DOUBLE -> in.getDouble();
+                case TYPE_BOOLEAN -> in.get() != 0;
+                default -> throw new IllegalStateException("Corrupt metadata type " + type + " for key '" + key + "'");
+            };
+            metadata.put(key, value);
+        }
+        return CompactMetadata.of(metadata);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Der ursprüngliche Fehler ist aussagekräftiger
+        }
+    }
+
+    /**
+     * Eine Datei, die in Segmenten fester Größe (Zweierpotenz) bei Bedarf abgebildet wird.
+     */
+    private static final class SegmentedFile {
+        private final FileChannel channel;
+        private final int shift;
+        private final int mask;
+        private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+        SegmentedFile(FileChannel channel, int segmentSize) {
+            if (segmentSize < MIN_SEGMENT_SIZE || segmentSize > MAX_SEGMENT_SIZE || Integer.bitCount(segmentSize) != 1) {
+                throw new IllegalArgumentException("Segment size must be a power of two between " + MIN_SEGMENT_SIZE
+                        + " and " + MAX_SEGMENT_SIZE + ": " + segmentSize);
+            }
+            this.channel = channel;
+            this.shift = Integer.numberOfTrailingZeros(segmentSize);
+            this.mask = segmentSize - 1;
+        }
+
+        int segmentSize() {
+            return mask + 1;
+        }
+
+        int offsetIn(long position) {
+            return (int) (position & mask);
+        }
+
+        long nextSegmentStart(long position) {
+            return ((position >>> shift) + 1) << shift;
+        }
+
+        ByteBuffer segmentFor(long position) {
+            int number = (int) (position >>> shift);
+            MappedByteBuffer[] current = segments;
+            if (number < current.length && current[number] != null) {
+                return current[number];
+            }
+            return map(number);
+        }
+
+        private synchronized MappedByteBuffer map(int number) {
+            MappedByteBuffer[] current = segments;
+            if (number < current.length && current[number] != null) {
+                return current[number];
+            }
+            MappedByteBuffer[] grown = Arrays.copyOf(current, Math.max(current.length, number + 1));
+            try {
+                grown[number] = channel.map(FileChannel.MapMode.READ_WRITE, (long) number << shift, mask + 1L);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not map segment " + number, e);
+            }
+            segments = grown;
+            return grown[number];
+        }
+
+        void force() {
+            for (MappedByteBuffer segment : segments) {
+                if (segment != null) {
+                    segment.force();
+                }
+            }
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private final class HandleList extends AbstractList<Document> implements RandomAccess {
+        private final int size;
+
+        HandleList(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public Document get(int index) {
+            Objects.checkIndex(index, size);
+            return new StoredDocument(MappedDocumentStore.this, index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Handle auf ein gespeichertes Dokument. Länge und Hashes stehen im Index und erfordern kein Dekodieren.
+     */
+    private static final class StoredDocument extends Document {
+        private final MappedDocumentStore store;
+        private final long id;
+        private volatile CompactMetadata metadata;
+
+        StoredDocument(MappedDocumentStore store, long id) {
+            this.store = store;
+            this.id = id;
+        }
+
+        @Override
+        public String text() {
+            return store.readText(id);
+        }
+
+        @Override
+        public Map<String, Object> metadata() {
+            CompactMetadata current = metadata;
+            if (current == null) {
+                current = store.readMetadata(id);
+                metadata = current;
+            }
+            return current;
+        }
+
+        @Override
+        public int length() {
+            return store.entryInt(id, CHARS);
+        }
+
+        @Override
+        public long contentHash() {
+            return store.entryLong(id, CONTENT_HASH);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof StoredDocument other && other.store == store && other.id == id) {
+                return true;
+            }
+            return super.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return store.entryInt(id, STRING_HASH);
+        }
+    }
+
+    public static class Builder {
+        private final Path directory;
+        private int segmentSize = DEFAULT_SEGMENT_SIZE;
+        private int indexSegmentSize = DEFAULT_INDEX_SEGMENT_SIZE;
+
+        public Builder(Path directory) {
+            if (directory == null) {
+                throw new IllegalArgumentException("directory must not be null");
+            }
+            this.directory = directory;
+        }
+
+        /**
+         * Größe der abgebildeten Segmente der Datendatei (Zweierpotenz, Standard 256 MiB).
+         * Begrenzt zugleich die Größe eines einzelnen Dokuments. Gilt nur für neu angelegte Ablagen.
+         */
+        public Builder segmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * Größe der abgebildeten Segmente der Indexdatei (Zweierpotenz, Standard 16 MiB).
+         * Gilt nur für neu angelegte Ablagen.
+         */
+        public Builder indexSegmentSize(int indexSegmentSize) {
+            this.indexSegmentSize = indexSegmentSize;
+            return this;
+        }
+
+        public MappedDocumentStore build() {
+            return new MappedDocumentStore(this);
+        }
+    }
+}
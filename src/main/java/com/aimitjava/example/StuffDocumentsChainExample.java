@@ -112,22 +112,20 @@ public class StuffDocumentsChainExample {
         }
 
 
-        List<Document> documents1 = copyDocuments(documents);
-        executeExample("\n=== Beispiel 1: Direkte Übergabe der Dokumente ===", "Beispiel 1 verwendet {} Dokumente", documents1, chain.invoke(documents1));
+        // Dokumente sind unveränderlich und können von allen Beispielen gemeinsam genutzt werden
+        executeExample("\n=== Beispiel 1: Direkte Übergabe der Dokumente ===", "Beispiel 1 verwendet {} Dokumente", documents, chain.invoke(documents));
 
 
-        List<Document> documents2 = copyDocuments(documents);
         Map<String, Object> inputs = new HashMap<>();
-        inputs.put("context", documents2);
-        executeExample("\n=== Beispiel 2: Übergabe als Map mit dem 'context'-Schlüssel ===", "Beispiel 2 verwendet {} Dokumente via Map", documents2, chain.invoke(inputs));
+        inputs.put("context", documents);
+        executeExample("\n=== Beispiel 2: Übergabe als Map mit dem 'context'-Schlüssel ===", "Beispiel 2 verwendet {} Dokumente via Map", documents, chain.invoke(inputs));
 
 
-        List<Document> documents3 = copyDocuments(documents);
         StuffDocumentsChain customChain = new StuffDocumentsChain.Builder(model, promptTemplate)
                 .documentSeparator(" | ") // Ändere den Separator zu einem Pipe-Symbol mit Leerzeichen
                 .build();
 
-        executeExample("\n=== Beispiel 3: Anpassung des Dokument-Separators ===", "Beispiel 3 verwendet {} Dokumente mit angepasstem Separator", documents3, customChain.invoke(documents3));
+        executeExample("\n=== Beispiel 3: Anpassung des Dokument-Separators ===", "Beispiel 3 verwendet {} Dokumente mit angepasstem Separator", documents, customChain.invoke(documents));
     }
 
     private static void executeExample(String s, String s1, List<Document> documents1, String chain) {
@@ -135,14 +133,4 @@ public class StuffDocumentsChainExample {
         logger.debug(s1, documents1.size());
         logger.info("Antwort: {}", chain);
     }
-
-    /**
-     * Erstellt eine tiefe Kopie der Dokumente, um sicherzustellen, dass jedes Beispiel
-     * mit identischen Daten arbeitet.
-     */
-    private static List<Document> copyDocuments(List<Document> original) {
-        return original.stream()
-                .map(doc -> new Document(doc.text(), new HashMap<>(doc.metadata())))
-                .toList();
-    }
-}
\ No newline at end of file
+}
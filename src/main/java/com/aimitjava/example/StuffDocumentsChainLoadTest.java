@@ -0,0 +1,121 @@
+package com.aimitjava.example;
+
+import com.aimitjava.chain.StuffDocumentsChain;
+import com.aimitjava.document.Document;
+import com.aimitjava.loadtest.LatencyDistribution;
+import com.aimitjava.loadtest.LoadGenerator;
+import com.aimitjava.loadtest.SimulatedLlmServer;
+import com.aimitjava.metrics.ChainMetrics;
+import com.aimitjava.model.ChatLanguageModel;
+import dev.langchain4j.model.openai.OpenAiChatModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Lasttest der StuffDocumentsChain über den vollständigen HTTP-Pfad: {@link ChatLanguageModel.Adapter} über
+ * {@link OpenAiChatModel} gegen einen lokalen {@link SimulatedLlmServer}. Läuft ohne API-Schlüssel und Netzwerk.
+ * <p>
+ * Konfiguration über Systemeigenschaften, z.B.
+ * {@code ./gradlew runStuffDocumentsChainLoadTest -Dloadtest.mode=open -Dloadtest.rate=200}:
+ * <ul>
+ *     <li>{@code loadtest.mode}: {@code closed} (Standard) oder {@code open}</li>
+ *     <li>{@code loadtest.concurrency}: Worker im geschlossenen Modus, Standard 32</li>
+ *     <li>{@code loadtest.rate}: Aufrufe pro Sekunde im offenen Modus, Standard 100</li>
+ *     <li>{@code loadtest.duration} / {@code loadtest.warmup}: Sekunden, Standard 30 / 5</li>
+ *     <li>{@code loadtest.documents} / {@code loadtest.documentSize}: Dokumente je Aufruf und Zeichen je
+ *     Dokument, Standard 8 / 1000</li>
+ *     <li>{@code loadtest.url}: Basis-URL eines vorhandenen Servers statt des simulierten</li>
+ *     <li>{@code stub.latency}: z.B. {@code constant:200}, {@code uniform:100:400}, {@code lognormal:300:1500}
+ *     (Standard)</li>
+ *     <li>{@code stub.tokensPerSecond} / {@code stub.outputTokens}: Standard 0 / 50</li>
+ *     <li>{@code stub.errorRate} / {@code stub.rateLimitRate}: Anteil HTTP 500 / 429, Standard 0</li>
+ * </ul>
+ */
+public class StuffDocumentsChainLoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(StuffDocumentsChainLoadTest.class);
+
+    private static final int DOCUMENT_SETS = 256;
+
+    public static void main(String[] args) throws Exception {
+        String url = System.getProperty("loadtest.url");
+        SimulatedLlmServer server = null;
+        if (url == null || url.isBlank()) {
+            server = new SimulatedLlmServer.Builder()
+                    .latency(LatencyDistribution.parse(System.getProperty("stub.latency", "lognormal:300:1500")))
+                    .tokensPerSecond(Double.parseDouble(System.getProperty("stub.tokensPerSecond", "0")))
+                    .outputTokens(Integer.getInteger("stub.outputTokens", 50))
+                    .errorRate(Double.parseDouble(System.getProperty("stub.errorRate", "0")))
+                    .rateLimitRate(Double.parseDouble(System.getProperty("stub.rateLimitRate", "0")))
+                    .build()
+                    .start();
+            url = server.baseUrl();
+        }
+
+        try {
+            OpenAiChatModel openAiModel = OpenAiChatModel.builder()
+                    .baseUrl(url)
+                    .apiKey(System.getProperty("loadtest.apiKey", "simulated"))
+                    .modelName(System.getProperty("loadtest.model", "gpt-4o-mini"))
+                    .timeout(Duration.ofSeconds(60))
+                    // Fehler sollen im Bericht erscheinen und nicht durch Wiederholungen verdeckt werden
+                    .maxRetries(0)
+                    .build();
+
+            ChainMetrics metrics = new ChainMetrics();
+            StuffDocumentsChain chain = new StuffDocumentsChain.Builder(
+                    new ChatLanguageModel.Adapter(openAiModel), "Fasse die folgenden Dokumente zusammen:\n\n{context}")
+                    .listener(metrics)
+                    .build();
+
+            List<List<Document>> documentSets = documentSets(Integer.getInteger("loadtest.documents", 8),
+                    Integer.getInteger("loadtest.documentSize", 1000));
+
+            LoadGenerator.Builder builder = new LoadGenerator.Builder(() -> chain.invoke(
+                    documentSets.get(ThreadLocalRandom.current().nextInt(documentSets.size()))))
+                    .warmup(Duration.ofSeconds(Integer.getInteger("loadtest.warmup", 5)))
+                    .duration(Duration.ofSeconds(Integer.getInteger("loadtest.duration", 30)));
+            if ("open".equalsIgnoreCase(System.getProperty("loadtest.mode", "closed"))) {
+                builder.openLoop(Double.parseDouble(System.getProperty("loadtest.rate", "100")));
+            } else {
+                builder.closedLoop(Integer.getInteger("loadtest.concurrency", 32));
+            }
+
+            LoadGenerator.Report report = builder.build().run();
+            logger.info("Ergebnis:\n{}", report.summary());
+            logger.info("Kettenmetriken: {}", metrics);
+            if (server != null) {
+                logger.info("Server: {}", server);
+            }
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    private static List<List<Document>> documentSets(int documentsPerCall, int documentSize) {
+        Random random = new Random(42);
+        String[] words = {"Vertrag", "Kunde", "Lieferung", "Rechnung", "Frist", "Leistung", "Zahlung", "Angebot"};
+        List<List<Document>> sets = new ArrayList<>(DOCUMENT_SETS);
+        for (int s = 0; s < DOCUMENT_SETS; s++) {
+            List<Document> documents = new ArrayList<>(documentsPerCall);
+            for (int d = 0; d < documentsPerCall; d++) {
+                StringBuilder text = new StringBuilder(documentSize + 16);
+                while (text.length() < documentSize) {
+                    text.append(words[random.nextInt(words.length)]).append(' ');
+                }
+                documents.add(new Document(text.toString().strip(), Map.of("source", "dokument-" + s + "-" + d)));
+            }
+            sets.add(List.copyOf(documents));
+        }
+        return List.copyOf(sets);
+    }
+}
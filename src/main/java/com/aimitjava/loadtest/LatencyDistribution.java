@@ -0,0 +1,112 @@
+package com.aimitjava.loadtest;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Verteilung der Antwortzeiten des {@link SimulatedLlmServer}, ohne die Zeit für die Ausgabetokens.
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+    /**
+     * z-Wert des 99. Perzentils der Standardnormalverteilung
+     */
+    double Z_99 = 2.3263478740;
+
+    /**
+     * Zieht eine Latenz.
+     *
+     * @param random Die Zufallsquelle
+     * @return Die Latenz in Mikrosekunden
+     */
+    long sampleMicros(ThreadLocalRandom random);
+
+    /**
+     * @param latency Die feste Latenz
+     * @return Eine Verteilung, die immer denselben Wert liefert
+     */
+    static LatencyDistribution constant(Duration latency) {
+        long micros = toMicros(latency);
+        return random -> micros;
+    }
+
+    /**
+     * @param min Die kleinste Latenz
+     * @param max Die größte Latenz
+     * @return Eine Gleichverteilung zwischen min und max
+     */
+    static LatencyDistribution uniform(Duration min, Duration max) {
+        long minMicros = toMicros(min);
+        long maxMicros = toMicros(max);
+        if (maxMicros < minMicros) {
+            throw new IllegalArgumentException("max " + max + " must not be shorter than min " + min);
+        }
+        return random -> minMicros == maxMicros ? minMicros : random.nextLong(minMicros, maxMicros + 1);
+    }
+
+    /**
+     * Eine Log-Normalverteilung, wie sie bei Antwortzeiten von LLM-Anbietern typisch ist: die meisten Anfragen
+     * liegen nahe am Median, einzelne sind um ein Vielfaches langsamer.
+     *
+     * @param median Der Median
+     * @param p99    Das 99. Perzentil
+     * @return Die Verteilung
+     */
+    static LatencyDistribution logNormal(Duration median, Duration p99) {
+        long medianMicros = toMicros(median);
+        long p99Micros = toMicros(p99);
+        if (medianMicros <= 0 || p99Micros < medianMicros) {
+            throw new IllegalArgumentException("Expected 0 < median <= p99: " + median + ", " + p99);
+        }
+        double mu = Math.log(medianMicros);
+        double sigma = Math.log((double) p99Micros / medianMicros) / Z_99;
+        return random -> Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+    }
+
+    /**
+     * Liest eine Verteilung aus einer Kurzschreibweise mit Millisekunden, z.B. für Systemeigenschaften:
+     * {@code constant:200}, {@code uniform:100:400} oder {@code lognormal:300:1500} (Median und p99).
+     *
+     * @param spec Die Kurzschreibweise
+     * @return Die Verteilung
+     */
+    static LatencyDistribution parse(String spec) {
+        String[] parts = spec.strip().toLowerCase(Locale.ROOT).split(":");
+        try {
+            switch (parts[0]) {
+                case "constant":
+                    if (parts.length == 2) {
+                        return constant(Duration.ofMillis(Long.parseLong(parts[1])));
+                    }
+                    break;
+                case "uniform":
+                    if (parts.length == 3) {
+                        return uniform(Duration.ofMillis(Long.parseLong(parts[1])),
+                                Duration.ofMillis(Long.parseLong(parts[2])));
+                    }
+                    break;
+                case "lognormal":
+                    if (parts.length == 3) {
+                        return logNormal(Duration.ofMillis(Long.parseLong(parts[1])),
+                                Duration.ofMillis(Long.parseLong(parts[2])));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid latency distribution: " + spec, e);
+        }
+        throw new IllegalArgumentException("Invalid latency distribution: " + spec
+                + " (expected constant:<ms>, uniform:<min>:<max> or lognormal:<median>:<p99>)");
+    }
+
+    private static long toMicros(Duration duration) {
+        if (duration.isNegative()) {
+            throw new IllegalArgumentException("Latency must not be negative: " + duration);
+        }
+        return duration.toNanos() / 1000;
+    }
+}
@@ -0,0 +1,393 @@
+package com.aimitjava.loadtest;
+
+import com.aimitjava.chain.BoundedExecutor;
+import com.aimitjava.metrics.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Erzeugt Last auf eine blockierende Aufgabe, z.B. {@code chain.invoke(documents)}, und misst Durchsatz,
+ * Latenzverteilung sowie Heap- und GC-Verhalten.
+ * <p>
+ * Im <b>geschlossenen</b> Modus ({@link Builder#closedLoop(int)}) ruft eine feste Anzahl Worker die Aufgabe
+ * nacheinander auf; der Durchsatz ergibt sich aus der Latenz. Im <b>offenen</b> Modus ({@link Builder#openLoop(double)})
+ * starten Aufrufe mit fester Rate unabhängig davon, ob frühere fertig sind, wie bei echtem Nutzerverkehr. Die Latenz
+ * wird dann ab dem geplanten Startzeitpunkt gemessen, sodass Rückstau nicht verdeckt wird (coordinated omission).
+ * Übersteigt die Anzahl laufender Aufrufe {@link Builder#maxOutstanding(int)}, werden Aufrufe verworfen und gezählt.
+ * <p>
+ * Aufrufe während {@link Builder#warmup(Duration)} laufen mit, fließen aber nicht in den Bericht ein.
+ */
+public final class LoadGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    /**
+     * Art der Lasterzeugung.
+     */
+    public enum Mode {
+        OPEN_LOOP,
+        CLOSED_LOOP
+    }
+
+    /**
+     * Ergebnis eines Laufs, nur für den Messzeitraum nach dem Aufwärmen.
+     *
+     * @param mode Art der Lasterzeugung
+     * @param requests Erfolgreiche Aufrufe
+     * @param errors Fehlgeschlagene Aufrufe
+     * @param dropped Im offenen Modus wegen {@code maxOutstanding} nicht gestartete Aufrufe
+     * @param elapsed Dauer des Messzeitraums
+     * @param latencyMicros Latenz erfolgreicher Aufrufe in Mikrosekunden
+     * @param heapUsedBeforeBytes Belegter Heap zu Beginn der Messung
+     * @param heapUsedAfterBytes Belegter Heap am Ende der Messung
+     * @param heapPeakBytes Summe der Spitzenbelegung aller Heap-Bereiche während der Messung
+     * @param gcCount Anzahl der Garbage Collections während der Messung
+     * @param gcMillis Gesamtdauer der Garbage Collections während der Messung
+     */
+    public record Report(Mode mode, long requests, long errors, long dropped, Duration elapsed,
+                         Histogram.Snapshot latencyMicros, long heapUsedBeforeBytes, long heapUsedAfterBytes,
+                         long heapPeakBytes, long gcCount, long gcMillis) {
+
+        /**
+         * @return Erfolgreiche Aufrufe pro Sekunde
+         */
+        public double throughput() {
+            double seconds = elapsed.toNanos() / 1e9;
+            return seconds == 0 ? 0 : requests / seconds;
+        }
+
+        /**
+         * @return Anteil fehlgeschlagener Aufrufe an allen gestarteten
+         */
+        public double errorRate() {
+            long total = requests + errors;
+            return total == 0 ? 0 : (double) errors / total;
+        }
+
+        /**
+         * @return Eine mehrzeilige, lesbare Zusammenfassung
+         */
+        public String summary() {
+            return String.format(Locale.ROOT,
+                    "mode=%s, elapsed=%.1fs%n"
+                            + "throughput=%.1f req/s, requests=%d, errors=%d (%.2f%%), dropped=%d%n"
+                            + "latency ms: p50=%.1f, p90=%.1f, p99=%.1f, p999=%.1f, max=%.1f, mean=%.1f%n"
+                            + "heap MiB: before=%.1f, after=%.1f, peak=%.1f; gc: count=%d, time=%d ms",
+                    mode, elapsed.toMillis() / 1000.0,
+                    throughput(), requests, errors, errorRate() * 100, dropped,
+                    latencyMicros.p50() / 1000.0, latencyMicros.p90() / 1000.0, latencyMicros.p99() / 1000.0,
+                    latencyMicros.p999() / 1000.0, latencyMicros.max() / 1000.0, latencyMicros.mean() / 1000.0,
+                    heapUsedBeforeBytes / 1048576.0, heapUsedAfterBytes / 1048576.0, heapPeakBytes / 1048576.0,
+                    gcCount, gcMillis);
+        }
+    }
+
+    private final Runnable task;
+    private final Executor executor;
+    private final Mode mode;
+    private final double ratePerSecond;
+    private final boolean poisson;
+    private final int concurrency;
+    private final int maxOutstanding;
+    private final long warmupNanos;
+    private final long durationNanos;
+    private final long drainTimeoutNanos;
+
+    private final Histogram latencyMicros = new Histogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong loggedErrors = new AtomicLong();
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    private LoadGenerator(Builder builder) {
+        this.task = builder.task;
+        this.executor = builder.executor != null ? builder.executor : BoundedExecutor.defaultExecutor();
+        this.mode = builder.mode;
+        this.ratePerSecond = builder.ratePerSecond;
+        this.poisson = builder.poisson;
+        this.concurrency = builder.concurrency;
+        this.maxOutstanding = builder.maxOutstanding;
+        this.warmupNanos = builder.warmup.toNanos();
+        this.durationNanos = builder.duration.toNanos();
+        this.drainTimeoutNanos = builder.drainTimeout.toNanos();
+    }
+
+    /**
+     * Führt den Lauf blockierend aus. Ein LoadGenerator kann nur einmal ausgeführt werden.
+     *
+     * @return Der Bericht über den Messzeitraum
+     * @throws InterruptedException Wenn der aufrufende Thread unterbrochen wird
+     */
+    public Report run() throws InterruptedException {
+        if (!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("LoadGenerator has already been run");
+        }
+        long start = System.nanoTime();
+        long measureStart = start + warmupNanos;
+        long end = measureStart + durationNanos;
+        logger.info("Starte Last im Modus {} für {} ms (davon {} ms Aufwärmen)", mode,
+                TimeUnit.NANOSECONDS.toMillis(end - start), TimeUnit.NANOSECONDS.toMillis(warmupNanos));
+
+        JvmSample[] before = new JvmSample[1];
+        Runnable onMeasureStart = () -> before[0] = JvmSample.take(true);
+        if (mode == Mode.OPEN_LOOP) {
+            runOpenLoop(start, measureStart, end, onMeasureStart);
+        } else {
+            runClosedLoop(measureStart, end, onMeasureStart);
+        }
+        JvmSample after = JvmSample.take(false);
+        if (before[0] == null) {
+            before[0] = after;
+        }
+
+        return new Report(mode, latencyMicros.count(), errors.sum(), dropped.sum(), Duration.ofNanos(durationNanos),
+                latencyMicros.snapshot(), before[0].heapUsed(), after.heapUsed(), after.heapPeak(),
+                after.gcCount() - before[0].gcCount(), after.gcMillis() - before[0].gcMillis());
+    }
+
+    private void runOpenLoop(long start, long measureStart, long end, Runnable onMeasureStart)
+            throws InterruptedException {
+        AtomicInteger outstanding = new AtomicInteger();
+        double meanIntervalNanos = 1e9 / ratePerSecond;
+        boolean measuring = false;
+        long intended = start;
+        while (intended < end) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                continue;
+            }
+            boolean measured = intended >= measureStart;
+            if (measured && !measuring) {
+                measuring = true;
+                onMeasureStart.run();
+            }
+            if (outstanding.get() >= maxOutstanding) {
+                if (measured) {
+                    dropped.increment();
+                }
+            } else {
+                outstanding.incrementAndGet();
+                long scheduled = intended;
+                executor.execute(() -> {
+                    try {
+                        execute(scheduled, measured);
+                    } finally {
+                        outstanding.decrementAndGet();
+                    }
+                });
+            }
+            double interval = poisson
+                    ? -Math.log(1 - ThreadLocalRandom.current().nextDouble()) * meanIntervalNanos
+                    : meanIntervalNanos;
+            intended += Math.max(1, (long) interval);
+        }
+
+        long deadline = System.nanoTime() + drainTimeoutNanos;
+        while (outstanding.get() > 0) {
+            if (System.nanoTime() - deadline > 0) {
+                logger.warn("{} Aufrufe nach Ablauf der Wartezeit noch nicht beendet", outstanding.get());
+                break;
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private void runClosedLoop(long measureStart, long end, Runnable onMeasureStart) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            executor.execute(() -> {
+                try {
+                    long now;
+                    while ((now = System.nanoTime()) < end) {
+                        execute(now, now >= measureStart);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        long wait = measureStart - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        onMeasureStart.run();
+        if (!done.await(end - System.nanoTime() + drainTimeoutNanos, TimeUnit.NANOSECONDS)) {
+            logger.warn("{} Worker nach Ablauf der Wartezeit noch nicht beendet", done.getCount());
+        }
+    }
+
+    private void execute(long startNanos, boolean measured) {
+        try {
+            task.run();
+            if (measured) {
+                latencyMicros.record((System.nanoTime() - startNanos) / 1000);
+            }
+        } catch (RuntimeException e) {
+            if (measured) {
+                errors.increment();
+            }
+            if (loggedErrors.getAndIncrement() == 0) {
+                logger.warn("Aufruf fehlgeschlagen, weitere Fehler nur im Debug-Log", e);
+            } else {
+                logger.debug("Aufruf fehlgeschlagen: {}", e.toString());
+            }
+        }
+    }
+
+    /**
+     * Heap- und GC-Kennzahlen der JVM zu einem Zeitpunkt.
+     */
+    private record JvmSample(long heapUsed, long heapPeak, long gcCount, long gcMillis) {
+
+        static JvmSample take(boolean resetPeaks) {
+            long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            long heapPeak = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() != MemoryType.HEAP) {
+                    continue;
+                }
+                if (resetPeaks) {
+                    pool.resetPeakUsage();
+                } else {
+                    heapPeak += pool.getPeakUsage().getUsed();
+                }
+            }
+            long gcCount = 0;
+            long gcMillis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                gcCount += Math.max(0, gc.getCollectionCount());
+                gcMillis += Math.max(0, gc.getCollectionTime());
+            }
+            return new JvmSample(heapUsed, heapPeak, gcCount, gcMillis);
+        }
+    }
+
+    /**
+     * Builder-Klasse für eine einfachere Konfiguration des LoadGenerator.
+     */
+    public static class Builder {
+        private final Runnable task;
+        private Executor executor;
+        private Mode mode = Mode.CLOSED_LOOP;
+        private double ratePerSecond;
+        private boolean poisson = true;
+        private int concurrency = 16;
+        private int maxOutstanding = 10_000;
+        private Duration warmup = Duration.ofSeconds(5);
+        private Duration duration = Duration.ofSeconds(30);
+        private Duration drainTimeout = Duration.ofSeconds(30);
+
+        /**
+         * @param task Ein einzelner blockierender Aufruf; eine Exception zählt als Fehler
+         */
+        public Builder(Runnable task) {
+            this.task = task;
+        }
+
+        /**
+         * Executor für die Aufrufe. Standard sind virtuelle Threads, sofern verfügbar.
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Geschlossener Modus mit der gegebenen Anzahl gleichzeitiger Worker. Standard mit 16 Workern.
+         */
+        public Builder closedLoop(int concurrency) {
+            this.mode = Mode.CLOSED_LOOP;
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * Offener Modus mit der gegebenen Ankunftsrate.
+         */
+        public Builder openLoop(double ratePerSecond) {
+            this.mode = Mode.OPEN_LOOP;
+            this.ratePerSecond = ratePerSecond;
+            return this;
+        }
+
+        /**
+         * Im offenen Modus exponentiell verteilte Abstände (Poisson-Prozess) statt fester Abstände. Standard ist
+         * true.
+         */
+        public Builder poisson(boolean poisson) {
+            this.poisson = poisson;
+            return this;
+        }
+
+        /**
+         * Im offenen Modus die maximale Anzahl laufender Aufrufe. Standard ist 10000.
+         */
+        public Builder maxOutstanding(int maxOutstanding) {
+            this.maxOutstanding = maxOutstanding;
+            return this;
+        }
+
+        /**
+         * Dauer des Aufwärmens vor der Messung. Standard sind 5 Sekunden.
+         */
+        public Builder warmup(Duration warmup) {
+            this.warmup = warmup;
+            return this;
+        }
+
+        /**
+         * Dauer der Messung. Standard sind 30 Sekunden.
+         */
+        public Builder duration(Duration duration) {
+            this.duration = duration;
+            return this;
+        }
+
+        /**
+         * Wie lange nach der Messung auf laufende Aufrufe gewartet wird. Standard sind 30 Sekunden.
+         */
+        public Builder drainTimeout(Duration drainTimeout) {
+            this.drainTimeout = drainTimeout;
+            return this;
+        }
+
+        public LoadGenerator build() {
+            if (task == null) {
+                throw new IllegalArgumentException("task must not be null");
+            }
+            if (mode == Mode.OPEN_LOOP && !(ratePerSecond > 0)) {
+                throw new IllegalArgumentException("ratePerSecond must be positive: " + ratePerSecond);
+            }
+            if (mode == Mode.CLOSED_LOOP && concurrency < 1) {
+                throw new IllegalArgumentException("concurrency must be at least 1: " + concurrency);
+            }
+            if (maxOutstanding < 1) {
+                throw new IllegalArgumentException("maxOutstanding must be at least 1: " + maxOutstanding);
+            }
+            if (warmup.isNegative() || duration.isNegative() || duration.isZero() || drainTimeout.isNegative()) {
+                throw new IllegalArgumentException("warmup and drainTimeout must not be negative, duration must be "
+                        + "positive: " + warmup + ", " + duration + ", " + drainTimeout);
+            }
+            return new LoadGenerator(this);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.aimitjava.loadtest;
+
+import com.aimitjava.chain.BoundedExecutor;
+import com.aimitjava.chain.TokenEstimator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Ein lokaler HTTP-Server, der den Endpunkt {@code /v1/chat/completions} der OpenAI-API nachbildet. Damit läuft
+ * {@code OpenAiChatModel} mit {@code baseUrl(server.baseUrl())} samt HTTP-Client, JSON-Verarbeitung und
+ * {@link com.aimitjava.model.ChatLanguageModel.Adapter} vollständig offline.
+ * <p>
+ * Jede Antwort wartet eine aus {@link Builder#latency(LatencyDistribution)} gezogene Zeit plus
+ * {@code outputTokens / tokensPerSecond}. Mit {@link Builder#errorRate(double)} und
+ * {@link Builder#rateLimitRate(double)} wird ein Anteil der Anfragen sofort mit HTTP 500 bzw. 429 beantwortet.
+ * Die Eingabetokens in {@code usage} werden aus der Größe der Anfrage geschätzt.
+ */
+public final class SimulatedLlmServer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SimulatedLlmServer.class);
+
+    private static final String PATH = "/v1/chat/completions";
+    private static final Pattern MODEL = Pattern.compile("\"model\"\\s*:\\s*\"([^\"]*)\"");
+    private static final TokenEstimator ESTIMATOR = TokenEstimator.defaultEstimator();
+
+    private final HttpServer server;
+    private final LatencyDistribution latency;
+    private final double tokensPerSecond;
+    private final int outputTokens;
+    private final double errorRate;
+    private final double rateLimitRate;
+    private final String content;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder injectedErrors = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+
+    private SimulatedLlmServer(Builder builder) throws IOException {
+        this.latency = builder.latency;
+        this.tokensPerSecond = builder.tokensPerSecond;
+        this.outputTokens = builder.outputTokens;
+        this.errorRate = builder.errorRate;
+        this.rateLimitRate = builder.rateLimitRate;
+
+        // Ein Wort entspricht etwa einem Token
+        StringBuilder text = new StringBuilder(outputTokens * 6);
+        for (int i = 0; i < outputTokens; i++) {
+            text.append(i == 0 ? "Simulierte" : " antwort");
+        }
+        this.content = text.toString();
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), builder.port),
+                builder.backlog);
+        server.createContext(PATH, this::handle);
+        server.setExecutor(builder.executor != null ? builder.executor : BoundedExecutor.defaultExecutor());
+    }
+
+    /**
+     * Startet den Server.
+     *
+     * @return Dieser Server
+     */
+    public SimulatedLlmServer start() {
+        server.start();
+        logger.info("Simulierter LLM-Server läuft unter {}", baseUrl());
+        return this;
+    }
+
+    /**
+     * @return Die Basis-URL für {@code OpenAiChatModel.builder().baseUrl(...)}, z.B. {@code http://127.0.0.1:8089/v1}
+     */
+    public String baseUrl() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort() + "/v1";
+    }
+
+    /**
+     * @return Der tatsächliche Port, auch wenn {@code port(0)} konfiguriert wurde
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.increment();
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, error("Method not allowed", "invalid_request_error"));
+                return;
+            }
+            String body = readBody(exchange.getRequestBody());
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            double roll = random.nextDouble();
+            if (roll < rateLimitRate) {
+                rateLimited.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 429, error("Rate limit reached (simulated)", "rate_limit_exceeded"));
+                return;
+            }
+            if (roll < rateLimitRate + errorRate) {
+                injectedErrors.increment();
+                send(exchange, 500, error("Internal server error (simulated)", "server_error"));
+                return;
+            }
+
+            long delayMicros = latency.sampleMicros(random);
+            if (tokensPerSecond > 0) {
+                delayMicros += (long) (outputTokens * 1_000_000L / tokensPerSecond);
+            }
+            TimeUnit.MICROSECONDS.sleep(delayMicros);
+
+            send(exchange, 200, completion(body));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String completion(String requestBody) {
+        Matcher matcher = MODEL.matcher(requestBody);
+        String model = matcher.find() ? matcher.group(1) : "simulated";
+        int inputTokens = ESTIMATOR.estimate(requestBody);
+        long id = requests.sum();
+        return "{\"id\":\"chatcmpl-sim-" + id + "\",\"object\":\"chat.completion\",\"created\":"
+                + System.currentTimeMillis() / 1000 + ",\"model\":\"" + model + "\","
+                + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"" + content + "\"},"
+                + "\"finish_reason\":\"stop\"}],"
+                + "\"usage\":{\"prompt_tokens\":" + inputTokens + ",\"completion_tokens\":" + outputTokens
+                + ",\"total_tokens\":" + (inputTokens + outputTokens) + "}}";
+    }
+
+    private static String error(String message, String type) {
+        return "{\"error\":{\"message\":\"" + message + "\",\"type\":\"" + type + "\",\"code\":null}}";
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * @return Die Anzahl aller empfangenen Anfragen
+     */
+    public long requests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return Die Anzahl der mit HTTP 500 beantworteten Anfragen
+     */
+    public long injectedErrors() {
+        return injectedErrors.sum();
+    }
+
+    /**
+     * @return Die Anzahl der mit HTTP 429 beantworteten Anfragen
+     */
+    public long rateLimited() {
+        return rateLimited.sum();
+    }
+
+    /**
+     * Beendet den Server, ohne auf laufende Anfragen zu warten.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    @Override
+    public String toString() {
+        return "SimulatedLlmServer{url=" + baseUrl() + ", requests=" + requests() + ", injectedErrors="
+                + injectedErrors() + ", rateLimited=" + rateLimited() + '}';
+    }
+
+    /**
+     * Builder-Klasse für eine einfachere Konfiguration des SimulatedLlmServer.
+     */
+    public static class Builder {
+        private int port;
+        private int backlog = 1024;
+        private Executor executor;
+        private LatencyDistribution latency = LatencyDistribution.constant(Duration.ZERO);
+        private double tokensPerSecond;
+        private int outputTokens = 50;
+        private double errorRate;
+        private double rateLimitRate;
+
+        /**
+         * Der Port; 0 wählt einen freien Port. Standard ist 0.
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * Länge der Warteschlange für neue Verbindungen. Standard ist 1024.
+         */
+        public Builder backlog(int backlog) {
+            this.backlog = backlog;
+            return this;
+        }
+
+        /**
+         * Executor für die Anfragen. Jede Anfrage belegt für ihre simulierte Dauer einen Thread; Standard sind
+         * virtuelle Threads, sofern verfügbar.
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Verteilung der Zeit bis zur Antwort, ohne Ausgabetokens. Standard ist keine Verzögerung.
+         */
+        public Builder latency(LatencyDistribution latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        /**
+         * Erzeugungsrate der Ausgabetokens; 0 bedeutet ohne zusätzliche Zeit. Standard ist 0.
+         */
+        public Builder tokensPerSecond(double tokensPerSecond) {
+            this.tokensPerSecond = tokensPerSecond;
+            return this;
+        }
+
+        /**
+         * Anzahl der Ausgabetokens je Antwort. Standard ist 50.
+         */
+        public Builder outputTokens(int outputTokens) {
+            this.outputTokens = outputTokens;
+            return this;
+        }
+
+        /**
+         * Anteil der Anfragen, die mit HTTP 500 beantwortet werden. Standard ist 0.
+         */
+        public Builder errorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        /**
+         * Anteil der Anfragen, die mit HTTP 429 beantwortet werden. Standard ist 0.
+         */
+        public Builder rateLimitRate(double rateLimitRate) {
+            this.rateLimitRate = rateLimitRate;
+            return this;
+        }
+
+        /**
+         * Erstellt den Server, ohne ihn zu starten.
+         *
+         * @throws IOException Wenn der Port nicht gebunden werden kann
+         */
+        public SimulatedLlmServer build() throws IOException {
+            if (port < 0 || port > 65535) {
+                throw new IllegalArgumentException("Invalid port: " + port);
+            }
+            if (tokensPerSecond < 0) {
+                throw new IllegalArgumentException("tokensPerSecond must not be negative: " + tokensPerSecond);
+            }
+            if (outputTokens < 1) {
+                throw new IllegalArgumentException("outputTokens must be at least 1: " + outputTokens);
+            }
+            if (errorRate < 0 || rateLimitRate < 0 || errorRate + rateLimitRate > 1) {
+                throw new IllegalArgumentException("errorRate and rateLimitRate must be in [0, 1] and sum to at most 1: "
+                        + errorRate + ", " + rateLimitRate);
+            }
+            return new SimulatedLlmServer(this);
+        }
+    }
+}
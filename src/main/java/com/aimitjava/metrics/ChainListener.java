@@ -0,0 +1,116 @@
+package com.aimitjava.metrics;
+
+import dev.langchain4j.model.output.TokenUsage;
+
+/**
+ * Beobachter für Messwerte aus Ketten und Modellaufrufen.
+ * Alle Methoden haben leere Standardimplementierungen; Implementierungen müssen threadsicher sein,
+ * da Ketten nebenläufig aufgerufen werden.
+ */
+public interface ChainListener {
+
+    /**
+     * Ein Listener, der alle Messwerte verwirft.
+     */
+    ChainListener NO_OP = new ChainListener() {
+    };
+
+    /**
+     * Abschnitte eines Kettenaufrufs.
+     */
+    enum Stage {
+        /** Entfernen doppelter Dokumente. */
+        DEDUPLICATE,
+        /** Auswahl der Dokumente nach Token-Budget. */
+        PACK,
+        /** Formatieren der einzelnen Dokumente. */
+        FORMAT,
+        /** Verbinden der Dokumente und Füllen der Prompt-Vorlage in einem Durchlauf. */
+        RENDER,
+        /** Aufruf des Sprachmodells. */
+        MODEL_CALL,
+        /** Umwandeln der Antwort in ein typisiertes Ergebnis. */
+        PARSE
+    }
+
+    /**
+     * Wird nach jedem abgeschlossenen Abschnitt aufgerufen.
+     *
+     * @param stage Der Abschnitt
+     * @param nanos Die Dauer in Nanosekunden
+     */
+    default void onStage(Stage stage, long nanos) {
+    }
+
+    /**
+     * Wird aufgerufen, sobald der Prompt erstellt ist.
+     *
+     * @param documentCount Anzahl der Dokumente im Prompt
+     * @param promptBytes Größe des Prompts in UTF-8-Bytes
+     */
+    default void onPrompt(int documentCount, long promptBytes) {
+    }
+
+    /**
+     * Wird mit dem Fingerabdruck des Prompt-Präfixes aufgerufen, der sich zwischen Aufrufen mit gleichen Dokumenten
+     * nicht ändert: Vorlagentext, stabile Variablen und Dokumente bis zur ersten veränderlichen Variable.
+     * Aufrufe mit gleichem Fingerabdruck können vom serverseitigen Prompt-Caching des Anbieters profitieren.
+     *
+     * @param fingerprint 64-Bit-FNV-1a-Hash des Präfixes
+     * @param prefixChars Länge des Präfixes in Zeichen
+     * @param promptChars Länge des gesamten Prompts in Zeichen
+     */
+    default void onPromptPrefix(long fingerprint, int prefixChars, int promptChars) {
+    }
+
+    /**
+     * Wird aufgerufen, wenn vor dem Zusammenfügen doppelte Dokumente verworfen wurden.
+     *
+     * @param droppedDocuments Anzahl der verworfenen Dokumente
+     * @param savedTokens Die geschätzten Tokens, die der Prompt dadurch kürzer ist
+     */
+    default void onDeduplication(int droppedDocuments, long savedTokens) {
+    }
+
+    /**
+     * Wird nach einer erfolgreichen Modellantwort aufgerufen.
+     *
+     * @param tokenUsage Die Tokenverbrauchsangaben der Antwort, ggf. null
+     */
+    default void onTokenUsage(TokenUsage tokenUsage) {
+    }
+
+    /**
+     * Wird aufgerufen, wenn ein Abschnitt mit einer Exception endet.
+     *
+     * @param stage Der Abschnitt
+     * @param error Der Fehler
+     */
+    default void onError(Stage stage, Throwable error) {
+    }
+
+    /**
+     * Ermittelt die UTF-8-Länge eines Textes, ohne ihn zu kodieren.
+     *
+     * @param text Der Text
+     * @return Die Anzahl Bytes in UTF-8
+     */
+    static long utf8Length(CharSequence text) {
+        long bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,184 @@
+package com.aimitjava.metrics;
+
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sammelt die Messwerte eines oder mehrerer Ketten sperrfrei in Histogrammen.
+ * Eine Instanz kann von beliebig vielen Ketten und Modell-Adaptern gemeinsam genutzt werden.
+ */
+public class ChainMetrics implements ChainListener {
+
+    private static final int PREFIX_SLOTS = 1024;
+
+    private final Map<Stage, Histogram> stageNanos = new EnumMap<>(Stage.class);
+    private final Map<Stage, LongAdder> stageErrors = new EnumMap<>(Stage.class);
+    private final Histogram promptBytes = new Histogram();
+    private final Histogram documentCount = new Histogram();
+    private final Histogram inputTokens = new Histogram();
+    private final Histogram outputTokens = new Histogram();
+    private final LongAdder totalTokens = new LongAdder();
+    private final Histogram prefixChars = new Histogram();
+    private final LongAdder prefixCalls = new LongAdder();
+    private final LongAdder prefixRepeats = new LongAdder();
+    // Direkt adressierte Tabelle der zuletzt gesehenen Fingerabdrücke
+    private final AtomicLongArray recentPrefixes = new AtomicLongArray(PREFIX_SLOTS);
+    private final LongAdder deduplicatedDocuments = new LongAdder();
+    private final LongAdder deduplicationSavedTokens = new LongAdder();
+
+    public ChainMetrics() {
+        for (Stage stage : Stage.values()) {
+            stageNanos.put(stage, new Histogram());
+            stageErrors.put(stage, new LongAdder());
+        }
+    }
+
+    @Override
+    public void onStage(Stage stage, long nanos) {
+        stageNanos.get(stage).record(nanos);
+    }
+
+    @Override
+    public void onPrompt(int documentCount, long promptBytes) {
+        this.documentCount.record(documentCount);
+        this.promptBytes.record(promptBytes);
+    }
+
+    @Override
+    public void onTokenUsage(TokenUsage tokenUsage) {
+        if (tokenUsage == null) {
+            return;
+        }
+        if (tokenUsage.inputTokenCount() != null) {
+            inputTokens.record(tokenUsage.inputTokenCount());
+        }
+        if (tokenUsage.outputTokenCount() != null) {
+            outputTokens.record(tokenUsage.outputTokenCount());
+        }
+        if (tokenUsage.totalTokenCount() != null) {
+            totalTokens.add(tokenUsage.totalTokenCount());
+        }
+    }
+
+    @Override
+    public void onPromptPrefix(long fingerprint, int prefixChars, int promptChars) {
+        this.prefixChars.record(prefixChars);
+        prefixCalls.increment();
+        int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & (PREFIX_SLOTS - 1);
+        if (recentPrefixes.getAndSet(slot, fingerprint) == fingerprint) {
+            prefixRepeats.increment();
+        }
+    }
+
+    @Override
+    public void onDeduplication(int droppedDocuments, long savedTokens) {
+        deduplicatedDocuments.add(droppedDocuments);
+        deduplicationSavedTokens.add(savedTokens);
+    }
+
+    @Override
+    public void onError(Stage stage, Throwable error) {
+        stageErrors.get(stage).increment();
+    }
+
+    /**
+     * Gibt die Dauer eines Abschnitts in Nanosekunden zurück.
+     *
+     * @param stage Der Abschnitt
+     * @return Das Histogramm der Dauern
+     */
+    public Histogram stage(Stage stage) {
+        return stageNanos.get(stage);
+    }
+
+    /**
+     * Gibt die Anzahl der Fehler in einem Abschnitt zurück.
+     *
+     * @param stage Der Abschnitt
+     * @return Die Anzahl der Fehler
+     */
+    public long errors(Stage stage) {
+        return stageErrors.get(stage).sum();
+    }
+
+    public Histogram promptBytes() {
+        return promptBytes;
+    }
+
+    public Histogram documentCount() {
+        return documentCount;
+    }
+
+    public Histogram inputTokens() {
+        return inputTokens;
+    }
+
+    public Histogram outputTokens() {
+        return outputTokens;
+    }
+
+    public long totalTokens() {
+        return totalTokens.sum();
+    }
+
+    /**
+     * Gibt die Länge der cachebaren Prompt-Präfixe in Zeichen zurück.
+     *
+     * @return Das Histogramm der Präfixlängen
+     */
+    public Histogram prefixChars() {
+        return prefixChars;
+    }
+
+    /**
+     * Gibt den Anteil der Aufrufe zurück, deren Präfix dem eines früheren Aufrufs entspricht. Da nur eine
+     * begrenzte Anzahl Fingerabdrücke gemerkt wird, ist der Wert eine Untergrenze.
+     *
+     * @return Der Anteil zwischen 0 und 1
+     */
+    public double prefixRepeatRate() {
+        long calls = prefixCalls.sum();
+        return calls == 0 ? 0 : (double) prefixRepeats.sum() / calls;
+    }
+
+    /**
+     * Gibt die Anzahl der vor dem Zusammenfügen verworfenen Duplikate zurück.
+     *
+     * @return Die Anzahl der Dokumente über alle Aufrufe
+     */
+    public long deduplicatedDocuments() {
+        return deduplicatedDocuments.sum();
+    }
+
+    /**
+     * Gibt die durch verworfene Duplikate eingesparten Tokens zurück.
+     *
+     * @return Die geschätzten Tokens über alle Aufrufe
+     */
+    public long deduplicationSavedTokens() {
+        return deduplicationSavedTokens.sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ChainMetrics{");
+        for (Stage stage : Stage.values()) {
+            builder.append(stage).append('=').append(stageNanos.get(stage).snapshot()).append(", ");
+        }
+        return builder.append("promptBytes=").append(promptBytes.snapshot())
+                .append(", documentCount=").append(documentCount.snapshot())
+                .append(", inputTokens=").append(inputTokens.snapshot())
+                .append(", outputTokens=").append(outputTokens.snapshot())
+                .append(", totalTokens=").append(totalTokens.sum())
+                .append(", prefixChars=").append(prefixChars.snapshot())
+                .append(", prefixRepeatRate=").append(prefixRepeatRate())
+                .append(", deduplicatedDocuments=").append(deduplicatedDocuments.sum())
+                .append(", deduplicationSavedTokens=").append(deduplicationSavedTokens.sum())
+                .append('}')
+                .toString();
+    }
+}
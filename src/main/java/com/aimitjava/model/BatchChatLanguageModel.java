@@ -0,0 +1,23 @@
+package com.aimitjava.model;
+
+import java.util.List;
+
+/**
+ * Ein Sprachmodell, das mehrere unabhängige Prompts in einem Aufruf beantworten kann, z.B. über eine
+ * Batch-Schnittstelle des Anbieters oder einen zusammengesetzten Prompt ({@link MultiPartChatLanguageModel}).
+ */
+public interface BatchChatLanguageModel extends ChatLanguageModel {
+
+    /**
+     * Beantwortet alle Prompts.
+     *
+     * @param prompts Die Prompts
+     * @return Die Antworten in der Reihenfolge der Prompts
+     */
+    List<Response<String>> generateBatch(List<String> prompts);
+
+    @Override
+    default Response<String> generate(String prompt) {
+        return generateBatch(List.of(prompt)).get(0);
+    }
+}
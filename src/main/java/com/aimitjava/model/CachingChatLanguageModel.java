@@ -0,0 +1,296 @@
+package com.aimitjava.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decorator, der Antworten eines {@link ChatLanguageModel} zwischenspeichert.
+ * <p>
+ * Der Schlüssel ist ein SHA-256 über die Modelleinstellungen und den vollständigen Prompt. Im Speicher
+ * werden Einträge per LRU verdrängt, begrenzt durch Anzahl, geschätzte Größe in Bytes und eine optionale
+ * Lebensdauer. Optional werden Antworten zusätzlich in einer speicherabgebildeten Datei abgelegt, die einen
+ * Neustart überdauert. Gleichzeitige Anfragen mit identischem Prompt lösen nur einen Aufruf des Modells aus.
+ * Die {@code TokenUsage} der ursprünglichen Antwort bleibt erhalten.
+ */
+public class CachingChatLanguageModel implements ChatLanguageModel, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(CachingChatLanguageModel.class);
+
+    private static final int DEFAULT_MAX_ENTRIES = 10_000;
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    /**
+     * Zähler des Caches.
+     *
+     * @param hits Treffer im Speicher oder in der Datei
+     * @param misses Anfragen, die an das Modell weitergegeben wurden
+     * @param diskHits Treffer, die aus der Datei geladen wurden (in {@code hits} enthalten)
+     * @param coalesced Anfragen, die auf einen bereits laufenden identischen Aufruf gewartet haben
+     * @param evictions Verdrängte oder abgelaufene Einträge im Speicher
+     * @param entries Aktuelle Anzahl Einträge im Speicher
+     * @param bytes Aktuelle geschätzte Größe der Einträge im Speicher
+     * @param diskFull Antworten, die auch nach dem Verdichten nicht mehr in die Cache-Datei gepasst haben
+     */
+    public record Stats(long hits, long misses, long diskHits, long coalesced, long evictions, int entries, long bytes,
+                        long diskFull) {
+
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+    }
+
+    private record MemoryEntry(Response<String> response, long createdAtMillis, long sizeBytes) {}
+
+    private final ChatLanguageModel delegate;
+    private final String modelSettings;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final Clock clock;
+    private final MappedResponseStore diskStore;
+
+    private final LinkedHashMap<CacheKey, MemoryEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private final Map<CacheKey, CompletableFuture<Response<String>>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder diskFull = new LongAdder();
+    private final AtomicBoolean diskFullWarned = new AtomicBoolean();
+
+    private CachingChatLanguageModel(Builder builder) {
+        this.delegate = builder.delegate;
+        this.modelSettings = builder.modelSettings;
+        this.maxEntries = builder.maxEntries;
+        this.maxBytes = builder.maxBytes;
+        this.ttlMillis = builder.timeToLive == null ? 0 : builder.timeToLive.toMillis();
+        this.clock = builder.clock;
+        this.diskStore = builder.diskFile == null
+                ? null
+                : new MappedResponseStore(builder.diskFile, builder.diskCapacityBytes, ttlMillis);
+    }
+
+    @Override
+    public Response<String> generate(String prompt) {
+        CacheKey key = CacheKey.of(modelSettings, prompt);
+
+        Response<String> cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<Response<String>> flight = new CompletableFuture<>();
+        CompletableFuture<Response<String>> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            coalesced.increment();
+            return await(running);
+        }
+
+        try {
+            // Ein gerade beendeter Aufruf kann den Eintrag inzwischen abgelegt haben
+            cached = lookup(key);
+            if (cached == null) {
+                misses.increment();
+                cached = delegate.generate(prompt);
+                store(key, cached);
+            }
+            flight.complete(cached);
+            return cached;
+        } catch (Throwable e) {
+            // Auch bei einem Error abschließen, sonst warten zusammengefasste Aufrufer für immer
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private static Response<String> await(CompletableFuture<Response<String>> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private Response<String> lookup(CacheKey key) {
+        long now = clock.millis();
+        synchronized (entries) {
+            MemoryEntry entry = entries.get(key);
+            if (entry != null) {
+                if (!isExpired(entry.createdAtMillis(), now)) {
+                    hits.increment();
+                    return entry.response();
+                }
+                entries.remove(key);
+                bytes -= entry.sizeBytes();
+                evictions.increment();
+            }
+        }
+
+        if (diskStore != null) {
+            MappedResponseStore.Entry stored = diskStore.get(key);
+            if (stored != null && !isExpired(stored.createdAtMillis(), now)) {
+                hits.increment();
+                diskHits.increment();
+                putInMemory(key, stored.response(), stored.createdAtMillis());
+                return stored.response();
+            }
+        }
+        return null;
+    }
+
+    private boolean isExpired(long createdAtMillis, long now) {
+        return ttlMillis > 0 && now - createdAtMillis >= ttlMillis;
+    }
+
+    private void store(CacheKey key, Response<String> response) {
+        long now = clock.millis();
+        putInMemory(key, response, now);
+        if (diskStore != null && !diskStore.put(key, response, now)) {
+            diskFull.increment();
+            if (diskFullWarned.compareAndSet(false, true)) {
+                logger.warn("Cache-Datei ist auch nach dem Verdichten voll, weitere Antworten werden nur im Speicher "
+                        + "gehalten (Kapazität erhöhen oder timeToLive verkürzen)");
+            }
+        }
+    }
+
+    private void putInMemory(CacheKey key, Response<String> response, long createdAtMillis) {
+        long size = ENTRY_OVERHEAD_BYTES + 2L * response.content().length();
+        if (size > maxBytes) {
+            return;
+        }
+        synchronized (entries) {
+            MemoryEntry previous = entries.put(key, new MemoryEntry(response, createdAtMillis, size));
+            if (previous != null) {
+                bytes -= previous.sizeBytes();
+            }
+            bytes += size;
+
+            Iterator<MemoryEntry> eldest = entries.values().iterator();
+            while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+                bytes -= eldest.next().sizeBytes();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Gibt die aktuellen Zähler zurück.
+     *
+     * @return Die Cache-Statistik
+     */
+    public Stats stats() {
+        synchronized (entries) {
+            return new Stats(hits.sum(), misses.sum(), diskHits.sum(), coalesced.sum(), evictions.sum(),
+                    entries.size(), bytes, diskFull.sum());
+        }
+    }
+
+    /**
+     * Leert den Speicher-Cache. Die Cache-Datei bleibt unverändert.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (diskStore != null) {
+            diskStore.close();
+        }
+    }
+
+    /**
+     * Builder-Klasse für eine einfachere Konfiguration des CachingChatLanguageModel.
+     */
+    public static class Builder {
+        private final ChatLanguageModel delegate;
+        private String modelSettings = "";
+        private int maxEntries = DEFAULT_MAX_ENTRIES;
+        private long maxBytes = DEFAULT_MAX_BYTES;
+        private Duration timeToLive;
+        private Clock clock = Clock.systemUTC();
+        private Path diskFile;
+        private long diskCapacityBytes;
+
+        public Builder(ChatLanguageModel delegate) {
+            this.delegate = delegate;
+        }
+
+        /**
+         * Beschreibung der Modelleinstellungen (z.B. Modellname und Temperatur), die in den Schlüssel eingeht.
+         */
+        public Builder modelSettings(String modelSettings) {
+            this.modelSettings = modelSettings;
+            return this;
+        }
+
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        public Builder maxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * Lebensdauer eines Eintrags. Ohne Angabe laufen Einträge nicht ab.
+         */
+        public Builder timeToLive(Duration timeToLive) {
+            this.timeToLive = timeToLive;
+            return this;
+        }
+
+        public Builder clock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Aktiviert die persistente Ablage in einer speicherabgebildeten Datei mit fester Kapazität. Ist sie voll,
+         * werden überschriebene und abgelaufene Einträge verdichtet.
+         */
+        public Builder diskCache(Path file, long capacityBytes) {
+            this.diskFile = file;
+            this.diskCapacityBytes = capacityBytes;
+            return this;
+        }
+
+        public CachingChatLanguageModel build() {
+            if (maxEntries < 1) {
+                throw new IllegalArgumentException("maxEntries must be at least 1: " + maxEntries);
+            }
+            return new CachingChatLanguageModel(this);
+        }
+    }
+}
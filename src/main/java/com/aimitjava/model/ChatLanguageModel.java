@@ -1,5 +1,6 @@
 package com.aimitjava.model;
 
+import com.aimitjava.metrics.ChainListener;
 import dev.langchain4j.data.message.AiMessage;
 import dev.langchain4j.model.chat.response.ChatResponse;
 
@@ -21,15 +22,34 @@ public interface ChatLanguageModel {
      */
     class Adapter implements ChatLanguageModel {
         private final dev.langchain4j.model.chat.ChatLanguageModel delegate;
+        private final ChainListener listener;
 
         public Adapter(dev.langchain4j.model.chat.ChatLanguageModel delegate) {
+            this(delegate, ChainListener.NO_OP);
+        }
+
+        /**
+         * @param delegate Das LangChain4j-Modell
+         * @param listener Empfänger für Dauer und Tokenverbrauch jedes Aufrufs. Wird derselbe Listener auch
+         *                 an der Kette registriert, werden Modellaufrufe doppelt gezählt.
+         */
+        public Adapter(dev.langchain4j.model.chat.ChatLanguageModel delegate, ChainListener listener) {
             this.delegate = delegate;
+            this.listener = listener;
         }
 
         @Override
         public Response<String> generate(String prompt) {
-            ChatResponse response =
-                    delegate.chat(new AiMessage(prompt));
+            long start = System.nanoTime();
+            ChatResponse response;
+            try {
+                response = delegate.chat(new AiMessage(prompt));
+            } catch (RuntimeException e) {
+                listener.onError(ChainListener.Stage.MODEL_CALL, e);
+                throw e;
+            }
+            listener.onStage(ChainListener.Stage.MODEL_CALL, System.nanoTime() - start);
+            listener.onTokenUsage(response.tokenUsage());
             return new Response<>(
                     response.aiMessage().text(),
                     response.tokenUsage()
@@ -0,0 +1,201 @@
+package com.aimitjava.model;
+
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistente Ablage für Modellantworten in einer speicherabgebildeten Datei fester Kapazität.
+ * <p>
+ * Aufbau: ein Header mit Kennung und Schreibposition, danach Datensätze der Form
+ * {@code [Schlüssel 32 Byte][Zeitstempel long][Tokens 3x int][Länge int][Inhalt UTF-8]}.
+ * Beim Öffnen werden die Datensätze bis zur gespeicherten Schreibposition in einen Index eingelesen;
+ * spätere Einträge mit gleichem Schlüssel überschreiben frühere.
+ * <p>
+ * Ist die Datei voll, werden überschriebene und abgelaufene Datensätze durch Verdichten entfernt. Während des
+ * Verdichtens steht die Schreibposition auf dem Anfang; bei einem Absturz geht so höchstens der Inhalt verloren,
+ * die Datei bleibt aber lesbar.
+ */
+final class MappedResponseStore implements AutoCloseable {
+
+    private static final int MAGIC = 0x52455350; // "RESP"
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+    private static final int KEY_SIZE = 32;
+    private static final int RECORD_HEADER_SIZE = KEY_SIZE + Long.BYTES + 4 * Integer.BYTES;
+
+    record Entry(ChatLanguageModel.Response<String> response, long createdAtMillis) {}
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final Map<CacheKey, Integer> index = new HashMap<>();
+    private final long ttlMillis;
+    private long compactions;
+
+    /**
+     * @param file Die Cache-Datei
+     * @param capacityBytes Die Kapazität der Datei
+     * @param ttlMillis Lebensdauer eines Eintrags beim Verdichten, 0 für unbegrenzt
+     */
+    MappedResponseStore(Path file, long capacityBytes, long ttlMillis) {
+        if (capacityBytes <= HEADER_SIZE || capacityBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("capacityBytes must be between " + HEADER_SIZE + " and "
+                    + Integer.MAX_VALUE + ": " + capacityBytes);
+        }
+        this.ttlMillis = ttlMillis;
+        try {
+            this.channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = Math.max(channel.size(), capacityBytes);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open response cache file: " + file, e);
+        }
+
+        if (buffer.getInt(0) != MAGIC) {
+            buffer.putInt(0, MAGIC);
+            buffer.putLong(Integer.BYTES, HEADER_SIZE);
+        }
+        rebuildIndex();
+    }
+
+    private void rebuildIndex() {
+        int end = (int) buffer.getLong(Integer.BYTES);
+        int position = HEADER_SIZE;
+        while (position < end) {
+            byte[] key = new byte[KEY_SIZE];
+            buffer.get(position, key);
+            index.put(new CacheKey(key), position);
+            int contentLength = buffer.getInt(position + RECORD_HEADER_SIZE - Integer.BYTES);
+            position += RECORD_HEADER_SIZE + contentLength;
+        }
+    }
+
+    synchronized Entry get(CacheKey key) {
+        Integer position = index.get(key);
+        if (position == null) {
+            return null;
+        }
+        int p = position + KEY_SIZE;
+        long createdAt = buffer.getLong(p);
+        p += Long.BYTES;
+        Integer input = fromStored(buffer.getInt(p));
+        Integer output = fromStored(buffer.getInt(p + Integer.BYTES));
+        Integer total = fromStored(buffer.getInt(p + 2 * Integer.BYTES));
+        int length = buffer.getInt(p + 3 * Integer.BYTES);
+        byte[] content = new byte[length];
+        buffer.get(p + 4 * Integer.BYTES, content);
+
+        TokenUsage usage = input == null && output == null && total == null
+                ? null
+                : new TokenUsage(input, output, total);
+        return new Entry(new ChatLanguageModel.Response<>(new String(content, StandardCharsets.UTF_8), usage), createdAt);
+    }
+
+    /**
+     * Hängt einen Eintrag an. Ist die Datei voll, wird sie zuerst verdichtet; reicht der Platz danach immer noch
+     * nicht, wird der Eintrag nicht gespeichert. Ein Eintrag, der selbst in die leere Datei nicht passt, wird ohne
+     * Verdichten abgelehnt.
+     *
+     * @return true, wenn der Eintrag geschrieben wurde
+     */
+    synchronized boolean put(CacheKey key, ChatLanguageModel.Response<String> response, long createdAtMillis) {
+        byte[] content = response.content().getBytes(StandardCharsets.UTF_8);
+        if ((long) RECORD_HEADER_SIZE + content.length > buffer.capacity() - HEADER_SIZE) {
+            return false;
+        }
+        int position = (int) buffer.getLong(Integer.BYTES);
+        if ((long) position + RECORD_HEADER_SIZE + content.length > buffer.capacity()) {
+            // Der alte Datensatz zum selben Schlüssel wird ohnehin ersetzt
+            index.remove(key);
+            position = compact(createdAtMillis);
+            if ((long) position + RECORD_HEADER_SIZE + content.length > buffer.capacity()) {
+                return false;
+            }
+        }
+
+        TokenUsage usage = response.tokenUsage();
+        int p = position;
+        buffer.put(p, key.bytes());
+        p += KEY_SIZE;
+        buffer.putLong(p, createdAtMillis);
+        p += Long.BYTES;
+        buffer.putInt(p, toStored(usage == null ? null : usage.inputTokenCount()));
+        buffer.putInt(p + Integer.BYTES, toStored(usage == null ? null : usage.outputTokenCount()));
+        buffer.putInt(p + 2 * Integer.BYTES, toStored(usage == null ? null : usage.totalTokenCount()));
+        buffer.putInt(p + 3 * Integer.BYTES, content.length);
+        buffer.put(p + 4 * Integer.BYTES, content);
+
+        // Die Schreibposition erst nach dem vollständigen Datensatz aktualisieren
+        buffer.putLong(Integer.BYTES, (long) position + RECORD_HEADER_SIZE + content.length);
+        index.put(key, position);
+        return true;
+    }
+
+    /**
+     * Schiebt alle noch gültigen Datensätze an den Anfang der Datei und verwirft überschriebene und abgelaufene.
+     *
+     * @param now Der aktuelle Zeitpunkt für die Prüfung der Lebensdauer
+     * @return Die neue Schreibposition
+     */
+    private int compact(long now) {
+        List<Integer> live = new ArrayList<>(index.values());
+        live.sort(null);
+        buffer.putLong(Integer.BYTES, HEADER_SIZE);
+        index.clear();
+
+        // Ziele liegen nie hinter der Quelle, daher genügt ein Durchlauf in aufsteigender Reihenfolge
+        int target = HEADER_SIZE;
+        for (int position : live) {
+            int length = RECORD_HEADER_SIZE + buffer.getInt(position + RECORD_HEADER_SIZE - Integer.BYTES);
+            long createdAt = buffer.getLong(position + KEY_SIZE);
+            if (ttlMillis > 0 && now - createdAt >= ttlMillis) {
+                continue;
+            }
+            byte[] record = new byte[length];
+            buffer.get(position, record);
+            buffer.put(target, record);
+            index.put(new CacheKey(Arrays.copyOf(record, KEY_SIZE)), target);
+            target += length;
+        }
+        buffer.putLong(Integer.BYTES, target);
+        compactions++;
+        return target;
+    }
+
+    synchronized long compactions() {
+        return compactions;
+    }
+
+    synchronized int size() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        buffer.force();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int toStored(Integer value) {
+        return value == null ? -1 : value;
+    }
+
+    private static Integer fromStored(int value) {
+        return value < 0 ? null : value;
+    }
+}
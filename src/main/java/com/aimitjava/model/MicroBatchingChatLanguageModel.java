@@ -0,0 +1,291 @@
+package com.aimitjava.model;
+
+import com.aimitjava.chain.BoundedExecutor;
+import com.aimitjava.metrics.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decorator, der gleichzeitige Aufrufe sammelt und gebündelt an ein {@link BatchChatLanguageModel} weitergibt.
+ * Für viele kleine Prompts, z.B. Klassifikationen über wenige Dokumente, entfällt so der Aufwand je Anfrage.
+ * <p>
+ * Ein Bündel wird abgeschickt, sobald {@link Builder#maxBatchSize(int)} Aufrufe warten oder der älteste Aufruf
+ * {@link Builder#window(Duration)} gewartet hat, sofern weniger als {@link Builder#maxConcurrentBatches(int)}
+ * Bündel unterwegs sind. Sind alle Plätze belegt, warten die Aufrufe weiter; nach
+ * {@link Builder#maxAddedLatency(Duration)} wird ein Bündel auch über diese Grenze hinaus abgeschickt.
+ * <p>
+ * Wird eine Kette wie {@code StuffDocumentsChain} mit diesem Modell erstellt, bündeln sich ihre nebenläufigen
+ * {@code invokeAsync}-Aufrufe automatisch. Schlägt ein Bündel fehl, erhalten alle enthaltenen Aufrufe den Fehler.
+ */
+public class MicroBatchingChatLanguageModel implements ChatLanguageModel {
+    private static final Logger logger = LoggerFactory.getLogger(MicroBatchingChatLanguageModel.class);
+
+    private static final int DEFAULT_MAX_BATCH_SIZE = 16;
+    private static final Duration DEFAULT_WINDOW = Duration.ofMillis(5);
+    private static final Duration DEFAULT_MAX_ADDED_LATENCY = Duration.ofMillis(50);
+    private static final int DEFAULT_MAX_CONCURRENT_BATCHES = 8;
+
+    private record Pending(String prompt, long enqueuedNanos, CompletableFuture<Response<String>> future) {}
+
+    private final BatchChatLanguageModel delegate;
+    private final Executor executor;
+    private final int maxBatchSize;
+    private final long windowNanos;
+    private final long maxAddedLatencyNanos;
+    private final int maxConcurrentBatches;
+
+    // Durch die Sperre auf queue geschützt
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    private int inFlight;
+    private long nextCheckNanos = Long.MAX_VALUE;
+
+    private final Histogram batchSizes = new Histogram();
+    private final Histogram queueMicros = new Histogram();
+    private final LongAdder overdueBatches = new LongAdder();
+
+    private MicroBatchingChatLanguageModel(Builder builder) {
+        this.delegate = builder.delegate;
+        this.executor = builder.executor != null ? builder.executor : BoundedExecutor.defaultExecutor();
+        this.maxBatchSize = builder.maxBatchSize;
+        this.windowNanos = builder.window.toNanos();
+        this.maxAddedLatencyNanos = builder.maxAddedLatency.toNanos();
+        this.maxConcurrentBatches = builder.maxConcurrentBatches;
+    }
+
+    @Override
+    public Response<String> generate(String prompt) {
+        try {
+            return generateAsync(prompt).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reiht den Prompt in das nächste Bündel ein, ohne einen Thread zu blockieren.
+     *
+     * @param prompt Der Eingabetext für das Sprachmodell
+     * @return Ein Future mit der Antwort auf diesen Prompt
+     */
+    public CompletableFuture<Response<String>> generateAsync(String prompt) {
+        CompletableFuture<Response<String>> future = new CompletableFuture<>();
+        synchronized (queue) {
+            queue.add(new Pending(prompt, System.nanoTime(), future));
+        }
+        drain();
+        return future;
+    }
+
+    /**
+     * Schickt alle fälligen Bündel ab und plant die nächste Prüfung für die übrigen Aufrufe.
+     */
+    private void drain() {
+        while (true) {
+            List<Pending> batch;
+            boolean overdue;
+            synchronized (queue) {
+                if (queue.isEmpty()) {
+                    return;
+                }
+                long now = System.nanoTime();
+                long waited = now - queue.peekFirst().enqueuedNanos();
+                boolean ready = queue.size() >= maxBatchSize || waited >= windowNanos;
+                overdue = waited >= maxAddedLatencyNanos;
+                if (!ready || (inFlight >= maxConcurrentBatches && !overdue)) {
+                    long dueIn = (ready ? maxAddedLatencyNanos : windowNanos) - waited;
+                    // Ein freiwerdender Platz löst ebenfalls eine Prüfung aus
+                    scheduleCheck(now, dueIn);
+                    return;
+                }
+                int size = Math.min(queue.size(), maxBatchSize);
+                batch = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    batch.add(queue.pollFirst());
+                }
+                inFlight++;
+            }
+            if (overdue) {
+                overdueBatches.increment();
+            }
+            dispatch(batch);
+        }
+    }
+
+    private void scheduleCheck(long now, long dueInNanos) {
+        long due = now + dueInNanos;
+        if (due - nextCheckNanos >= 0) {
+            return;
+        }
+        nextCheckNanos = due;
+        CompletableFuture.delayedExecutor(Math.max(0, dueInNanos), TimeUnit.NANOSECONDS, executor).execute(() -> {
+            synchronized (queue) {
+                if (nextCheckNanos == due) {
+                    nextCheckNanos = Long.MAX_VALUE;
+                }
+            }
+            drain();
+        });
+    }
+
+    private void dispatch(List<Pending> batch) {
+        long now = System.nanoTime();
+        List<String> prompts = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            prompts.add(pending.prompt());
+            queueMicros.record((now - pending.enqueuedNanos()) / 1000);
+        }
+        batchSizes.record(batch.size());
+
+        Runnable call = () -> {
+            try {
+                List<Response<String>> responses = delegate.generateBatch(prompts);
+                if (responses.size() != batch.size()) {
+                    throw new IllegalStateException("Batch model returned " + responses.size()
+                            + " responses for " + batch.size() + " prompts");
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).future().complete(responses.get(i));
+                }
+            } catch (Throwable e) {
+                // Auch bei Errors muss jeder Aufrufer eine Antwort erhalten, sonst wartet er ewig
+                logger.debug("Bündel mit {} Aufrufen fehlgeschlagen: {}", batch.size(), e.toString());
+                for (Pending pending : batch) {
+                    pending.future().completeExceptionally(e);
+                }
+            } finally {
+                synchronized (queue) {
+                    inFlight--;
+                }
+                drain();
+            }
+        };
+        try {
+            executor.execute(call);
+        } catch (RejectedExecutionException e) {
+            for (Pending pending : batch) {
+                pending.future().completeExceptionally(e);
+            }
+            synchronized (queue) {
+                inFlight--;
+            }
+        }
+    }
+
+    /**
+     * Gibt die Größen der abgeschickten Bündel zurück.
+     *
+     * @return Das Histogramm der Bündelgrößen
+     */
+    public Histogram batchSizes() {
+        return batchSizes;
+    }
+
+    /**
+     * Gibt die zusätzliche Wartezeit der Aufrufe bis zum Abschicken ihres Bündels in Mikrosekunden zurück.
+     *
+     * @return Das Histogramm der Wartezeiten
+     */
+    public Histogram queueMicros() {
+        return queueMicros;
+    }
+
+    /**
+     * @return Die Anzahl der Bündel, die wegen {@code maxAddedLatency} über die Grenze gleichzeitiger Bündel hinaus
+     * abgeschickt wurden
+     */
+    public long overdueBatches() {
+        return overdueBatches.sum();
+    }
+
+    /**
+     * Builder-Klasse für eine einfachere Konfiguration des MicroBatchingChatLanguageModel.
+     */
+    public static class Builder {
+        private final BatchChatLanguageModel delegate;
+        private Executor executor;
+        private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+        private Duration window = DEFAULT_WINDOW;
+        private Duration maxAddedLatency = DEFAULT_MAX_ADDED_LATENCY;
+        private int maxConcurrentBatches = DEFAULT_MAX_CONCURRENT_BATCHES;
+
+        /**
+         * @param delegate Das Modell für die Bündel, z.B. ein {@link MultiPartChatLanguageModel}
+         */
+        public Builder(BatchChatLanguageModel delegate) {
+            this.delegate = delegate;
+        }
+
+        /**
+         * Setzt den Executor, auf dem die Bündel abgeschickt werden. Standard sind virtuelle Threads, sofern
+         * verfügbar.
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Maximale Anzahl Aufrufe je Bündel. Standard ist {@value #DEFAULT_MAX_BATCH_SIZE}.
+         */
+        public Builder maxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Wie lange nach dem ältesten wartenden Aufruf weitere gesammelt werden. Standard sind 5 ms.
+         */
+        public Builder window(Duration window) {
+            this.window = window;
+            return this;
+        }
+
+        /**
+         * Obergrenze der Wartezeit bis zum Abschicken, auch wenn alle Plätze für Bündel belegt sind.
+         * Standard sind 50 ms.
+         */
+        public Builder maxAddedLatency(Duration maxAddedLatency) {
+            this.maxAddedLatency = maxAddedLatency;
+            return this;
+        }
+
+        /**
+         * Anzahl gleichzeitig laufender Bündel. Standard ist {@value #DEFAULT_MAX_CONCURRENT_BATCHES}.
+         */
+        public Builder maxConcurrentBatches(int maxConcurrentBatches) {
+            this.maxConcurrentBatches = maxConcurrentBatches;
+            return this;
+        }
+
+        public MicroBatchingChatLanguageModel build() {
+            if (maxBatchSize < 1) {
+                throw new IllegalArgumentException("maxBatchSize must be at least 1: " + maxBatchSize);
+            }
+            if (maxConcurrentBatches < 1) {
+                throw new IllegalArgumentException("maxConcurrentBatches must be at least 1: " + maxConcurrentBatches);
+            }
+            if (window.isNegative() || maxAddedLatency.compareTo(window) < 0) {
+                throw new IllegalArgumentException("maxAddedLatency " + maxAddedLatency
+                        + " must not be shorter than window " + window);
+            }
+            return new MicroBatchingChatLanguageModel(this);
+        }
+    }
+}
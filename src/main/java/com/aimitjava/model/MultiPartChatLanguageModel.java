@@ -0,0 +1,159 @@
+package com.aimitjava.model;
+
+import dev.langchain4j.model.output.TokenUsage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Beantwortet mehrere Prompts mit einem einzigen Aufruf, indem sie zu einem nummerierten Prompt zusammengesetzt
+ * werden. Das Modell wird angewiesen, jede Antwort mit einer Markierungszeile zu beginnen; an diesen Zeilen wird
+ * die Antwort wieder aufgeteilt. Fehlt die Antwort auf einen Teil, wird dieser Prompt einzeln nachgefragt.
+ * <p>
+ * Der {@code TokenUsage} des gemeinsamen Aufrufs wird anteilig nach Länge der Prompts bzw. Antworten verteilt.
+ * Geeignet für kurze, gleichartige Aufgaben wie Klassifikationen.
+ */
+public class MultiPartChatLanguageModel implements BatchChatLanguageModel {
+    private static final Logger logger = LoggerFactory.getLogger(MultiPartChatLanguageModel.class);
+
+    private static final String DEFAULT_INSTRUCTIONS = "Bearbeite die folgenden %d Aufgaben unabhängig voneinander. "
+            + "Beginne die Antwort auf jede Aufgabe mit einer eigenen Zeile \"### Antwort <Nummer>\" "
+            + "und gib außer den Antworten nichts aus.";
+    private static final Pattern ANSWER_MARKER = Pattern.compile("(?m)^### Antwort (\\d+)[ \\t]*\\r?$\\n?");
+
+    private final ChatLanguageModel delegate;
+    private final String instructions;
+    private final LongAdder fallbacks = new LongAdder();
+
+    /**
+     * @param delegate Das Modell, das den zusammengesetzten Prompt beantwortet
+     */
+    public MultiPartChatLanguageModel(ChatLanguageModel delegate) {
+        this(delegate, DEFAULT_INSTRUCTIONS);
+    }
+
+    /**
+     * @param delegate Das Modell, das den zusammengesetzten Prompt beantwortet
+     * @param instructions Anweisung vor den Aufgaben; {@code %d} wird durch die Anzahl ersetzt. Sie muss das Format
+     *                     der Markierungszeile {@code ### Antwort <Nummer>} vorgeben.
+     */
+    public MultiPartChatLanguageModel(ChatLanguageModel delegate, String instructions) {
+        this.delegate = delegate;
+        this.instructions = instructions;
+    }
+
+    @Override
+    public Response<String> generate(String prompt) {
+        return delegate.generate(prompt);
+    }
+
+    @Override
+    public List<Response<String>> generateBatch(List<String> prompts) {
+        if (prompts.size() == 1) {
+            return List.of(delegate.generate(prompts.get(0)));
+        }
+
+        Response<String> combined = delegate.generate(combine(prompts));
+        String[] answers = split(combined.content(), prompts.size());
+
+        long promptChars = 0;
+        long answerChars = 0;
+        for (int i = 0; i < answers.length; i++) {
+            promptChars += prompts.get(i).length();
+            answerChars += answers[i] == null ? 0 : answers[i].length();
+        }
+
+        List<Response<String>> responses = new ArrayList<>(prompts.size());
+        for (int i = 0; i < answers.length; i++) {
+            if (answers[i] == null) {
+                fallbacks.increment();
+                logger.debug("Antwort {} von {} fehlt im zusammengesetzten Ergebnis, frage einzeln nach",
+                        i + 1, answers.length);
+                responses.add(delegate.generate(prompts.get(i)));
+            } else {
+                responses.add(new Response<>(answers[i], share(combined.tokenUsage(),
+                        (double) prompts.get(i).length() / promptChars,
+                        answerChars == 0 ? 0 : (double) answers[i].length() / answerChars)));
+            }
+        }
+        return responses;
+    }
+
+    String combine(List<String> prompts) {
+        int length = instructions.length() + 32;
+        for (String prompt : prompts) {
+            length += prompt.length() + 24;
+        }
+        StringBuilder builder = new StringBuilder(length);
+        builder.append(String.format(instructions, prompts.size()));
+        for (int i = 0; i < prompts.size(); i++) {
+            builder.append("\n\n### Aufgabe ").append(i + 1).append('\n').append(prompts.get(i));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Teilt die Antwort an den Markierungszeilen. Fehlende, doppelte oder ungültige Nummern ergeben null.
+     */
+    static String[] split(String content, int parts) {
+        String[] answers = new String[parts];
+        boolean[] duplicate = new boolean[parts];
+        Matcher matcher = ANSWER_MARKER.matcher(content);
+        int current = -1;
+        int start = 0;
+        while (matcher.find()) {
+            store(answers, duplicate, current, content.substring(start, matcher.start()));
+            current = parseIndex(matcher.group(1), parts);
+            start = matcher.end();
+        }
+        store(answers, duplicate, current, content.substring(start));
+        for (int i = 0; i < parts; i++) {
+            if (duplicate[i]) {
+                answers[i] = null;
+            }
+        }
+        return answers;
+    }
+
+    private static void store(String[] answers, boolean[] duplicate, int index, String text) {
+        if (index < 0) {
+            return;
+        }
+        if (answers[index] != null) {
+            duplicate[index] = true;
+        }
+        answers[index] = text.strip();
+    }
+
+    private static int parseIndex(String number, int parts) {
+        try {
+            int index = Integer.parseInt(number) - 1;
+            return index >= 0 && index < parts ? index : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static TokenUsage share(TokenUsage usage, double inputShare, double outputShare) {
+        if (usage == null) {
+            return null;
+        }
+        Integer input = usage.inputTokenCount() == null ? null : (int) Math.round(usage.inputTokenCount() * inputShare);
+        Integer output = usage.outputTokenCount() == null ? null
+                : (int) Math.round(usage.outputTokenCount() * outputShare);
+        Integer total = input == null || output == null ? null : input + output;
+        return new TokenUsage(input, output, total);
+    }
+
+    /**
+     * @return Die Anzahl der Prompts, die wegen einer fehlenden Teilantwort einzeln nachgefragt wurden
+     */
+    public long fallbacks() {
+        return fallbacks.sum();
+    }
+}
@@ -0,0 +1,541 @@
+package com.aimitjava.model;
+
+import com.aimitjava.chain.BoundedExecutor;
+import com.aimitjava.metrics.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Decorator, der Aufrufe eines {@link ChatLanguageModel} gegen langsame und fehlerhafte Antworten absichert.
+ * <p>
+ * Jeder Versuch läuft auf dem konfigurierten Executor und wird nach {@link Builder#timeout(Duration)} abgebrochen.
+ * Schlägt ein Versuch fehl, wird er mit exponentiell wachsender, zufällig verkürzter Wartezeit wiederholt.
+ * Mit {@link Builder#hedging(boolean)} wird ein zweiter Versuch gestartet, wenn der erste länger braucht als das
+ * konfigurierte Perzentil der bisherigen Antwortzeiten; die erste Antwort gewinnt. Ein Circuit Breaker weist
+ * Aufrufe nach einer Reihe von Fehlern für eine Weile sofort ab und lässt danach einzelne Probeaufrufe durch.
+ * <p>
+ * Gewartet wird ausschließlich über Zeitgeber von {@link CompletableFuture}; {@link #generateAsync(String)}
+ * blockiert keinen Thread, {@link #generate(String)} parkt nur den aufrufenden Thread. Verlorene Versuche eines
+ * Hedgings werden nicht unterbrochen, ihr Ergebnis wird verworfen.
+ */
+public class ResilientChatLanguageModel implements ChatLanguageModel {
+    private static final Logger logger = LoggerFactory.getLogger(ResilientChatLanguageModel.class);
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofMillis(200);
+    private static final Duration DEFAULT_MAX_BACKOFF = Duration.ofSeconds(10);
+    private static final Duration DEFAULT_HEDGE_DELAY = Duration.ofSeconds(2);
+    private static final double DEFAULT_HEDGE_PERCENTILE = 95;
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(30);
+    /** Mindestanzahl Antwortzeiten, bevor die Hedging-Verzögerung aus dem Perzentil berechnet wird. */
+    private static final int MIN_HEDGE_SAMPLES = 20;
+    /** Die Verzögerung wird nach so vielen neuen Antwortzeiten neu berechnet. */
+    private static final int HEDGE_REFRESH_INTERVAL = 64;
+
+    /**
+     * Zustand des Circuit Breakers.
+     */
+    public enum CircuitState {
+        /** Aufrufe werden durchgelassen. */
+        CLOSED,
+        /** Aufrufe werden sofort abgewiesen. */
+        OPEN,
+        /** Einzelne Probeaufrufe entscheiden, ob der Breaker wieder schließt. */
+        HALF_OPEN
+    }
+
+    /**
+     * Wird geworfen, wenn der Circuit Breaker einen Aufruf abweist.
+     */
+    public static class CircuitOpenException extends IllegalStateException {
+        public CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Wird geworfen, wenn ein Versuch die konfigurierte Zeit überschreitet.
+     */
+    public static class ModelTimeoutException extends RuntimeException {
+        public ModelTimeoutException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Zähler des Decorators.
+     *
+     * @param calls Aufrufe von {@code generate} bzw. {@code generateAsync}
+     * @param attempts Aufrufe des Modells, einschließlich Wiederholungen und Hedging
+     * @param retries Wiederholungen nach einem Fehler
+     * @param hedges Zusätzlich gestartete Versuche wegen langsamer Antwort
+     * @param hedgeWins Hedging-Versuche, die vor dem ursprünglichen Versuch geantwortet haben
+     * @param timeouts Versuche, die die Zeitgrenze überschritten haben
+     * @param rejected Vom Circuit Breaker abgewiesene Aufrufe
+     * @param circuitState Aktueller Zustand des Circuit Breakers
+     */
+    public record Stats(long calls, long attempts, long retries, long hedges, long hedgeWins, long timeouts,
+                        long rejected, CircuitState circuitState) {}
+
+    private final ChatLanguageModel delegate;
+    private final Executor executor;
+    private final long timeoutMillis;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final double backoffMultiplier;
+    private final double jitter;
+    private final Predicate<Throwable> retryOn;
+    private final boolean hedging;
+    private final long fallbackHedgeDelayMicros;
+    private final double hedgePercentile;
+    private final CircuitBreaker circuitBreaker;
+
+    private final Histogram latencyMicros = new Histogram();
+    private final AtomicLong latencySamples = new AtomicLong();
+    private volatile long hedgeDelayMicros;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private ResilientChatLanguageModel(Builder builder) {
+        this.delegate = builder.delegate;
+        this.executor = builder.executor != null ? builder.executor : BoundedExecutor.defaultExecutor();
+        this.timeoutMillis = builder.timeout == null ? 0 : builder.timeout.toMillis();
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoffMillis = builder.initialBackoff.toMillis();
+        this.maxBackoffMillis = builder.maxBackoff.toMillis();
+        this.backoffMultiplier = builder.backoffMultiplier;
+        this.jitter = builder.jitter;
+        this.retryOn = builder.retryOn;
+        this.hedging = builder.hedging;
+        this.fallbackHedgeDelayMicros = builder.hedgeDelay.toNanos() / 1000;
+        this.hedgeDelayMicros = fallbackHedgeDelayMicros;
+        this.hedgePercentile = builder.hedgePercentile;
+        this.circuitBreaker = new CircuitBreaker(builder.failureThreshold, builder.openDuration.toMillis(),
+                builder.halfOpenProbes, builder.clock);
+    }
+
+    /**
+     * Ruft das Modell mit Wiederholungen, Hedging und Circuit Breaker auf und wartet auf die Antwort.
+     *
+     * @throws CircuitOpenException wenn der Circuit Breaker den Aufruf abweist
+     * @throws ModelTimeoutException wenn auch der letzte Versuch die Zeitgrenze überschreitet
+     */
+    @Override
+    public Response<String> generate(String prompt) {
+        try {
+            return generateAsync(prompt).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Ruft das Modell wie {@link #generate(String)} auf, ohne einen Thread zu blockieren.
+     *
+     * @param prompt Der Eingabetext für das Sprachmodell
+     * @return Ein Future mit der Antwort; wird es abgebrochen, unterbleiben weitere Wiederholungen
+     */
+    public CompletableFuture<Response<String>> generateAsync(String prompt) {
+        calls.increment();
+        CompletableFuture<Response<String>> result = new CompletableFuture<>();
+        attempt(prompt, 1, result);
+        return result;
+    }
+
+    private void attempt(String prompt, int attempt, CompletableFuture<Response<String>> result) {
+        if (result.isDone()) {
+            return;
+        }
+        if (!circuitBreaker.tryAcquire()) {
+            rejected.increment();
+            result.completeExceptionally(new CircuitOpenException("Circuit breaker is open, model call rejected"));
+            return;
+        }
+
+        round(prompt).whenComplete((response, error) -> {
+            if (error == null) {
+                circuitBreaker.onSuccess();
+                result.complete(response);
+                return;
+            }
+            Throwable cause = unwrap(error);
+            boolean retryable = retryOn.test(cause);
+            // Nicht wiederholbare Fehler (z.B. ungültige Anfragen) sagen nichts über die Verfügbarkeit aus
+            if (retryable) {
+                circuitBreaker.onFailure();
+            } else {
+                circuitBreaker.onSuccess();
+            }
+            if (!retryable || attempt >= maxAttempts || result.isDone()) {
+                result.completeExceptionally(cause);
+                return;
+            }
+
+            long delay = backoffMillis(attempt);
+            retries.increment();
+            logger.debug("Versuch {} von {} fehlgeschlagen ({}), Wiederholung in {} ms",
+                    attempt, maxAttempts, cause.toString(), delay);
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executor)
+                    .execute(() -> attempt(prompt, attempt + 1, result));
+        });
+    }
+
+    /**
+     * Startet einen Versuch und, falls Hedging aktiv ist und er zu lange dauert, einen zweiten. Die Runde endet mit
+     * der ersten Antwort oder mit dem Fehler des letzten gestarteten Versuchs.
+     */
+    private CompletableFuture<Response<String>> round(String prompt) {
+        CompletableFuture<Response<String>> round = new CompletableFuture<>();
+        // Anzahl gestarteter, noch nicht beendeter Versuche; bei 0 startet kein Hedging-Versuch mehr
+        AtomicInteger running = new AtomicInteger(1);
+
+        start(prompt).whenComplete((response, error) -> finish(round, running, response, error, false));
+
+        if (hedging) {
+            CompletableFuture.delayedExecutor(hedgeDelayMicros, TimeUnit.MICROSECONDS, executor).execute(() -> {
+                if (round.isDone() || running.getAndUpdate(n -> n == 0 ? 0 : n + 1) == 0) {
+                    return;
+                }
+                hedges.increment();
+                logger.debug("Keine Antwort nach {} µs, starte zweiten Versuch", hedgeDelayMicros);
+                start(prompt).whenComplete((response, error) -> finish(round, running, response, error, true));
+            });
+        }
+        return round;
+    }
+
+    private void finish(CompletableFuture<Response<String>> round, AtomicInteger running,
+                        Response<String> response, Throwable error, boolean hedge) {
+        if (error == null) {
+            // Nur zählen, wenn der zweite Versuch die Runde tatsächlich entschieden hat
+            if (round.complete(response) && hedge) {
+                hedgeWins.increment();
+            }
+        } else if (running.decrementAndGet() == 0) {
+            round.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * Führt einen einzelnen Versuch auf dem Executor aus und zeichnet seine Antwortzeit auf.
+     */
+    private CompletableFuture<Response<String>> start(String prompt) {
+        attempts.increment();
+        long start = System.nanoTime();
+        CompletableFuture<Response<String>> attempt = new CompletableFuture<>();
+        CompletableFuture<Response<String>> call = CompletableFuture.supplyAsync(() -> delegate.generate(prompt), executor);
+        if (timeoutMillis > 0) {
+            call.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        call.whenComplete((response, error) -> {
+            if (error == null) {
+                recordLatency((System.nanoTime() - start) / 1000);
+                attempt.complete(response);
+                return;
+            }
+            Throwable cause = unwrap(error);
+            if (cause instanceof TimeoutException) {
+                timeouts.increment();
+                cause = new ModelTimeoutException("Model call timed out after " + timeoutMillis + " ms", cause);
+            }
+            attempt.completeExceptionally(cause);
+        });
+        return attempt;
+    }
+
+    private void recordLatency(long micros) {
+        latencyMicros.record(micros);
+        long samples = latencySamples.incrementAndGet();
+        if (hedging && samples >= MIN_HEDGE_SAMPLES
+                && (samples == MIN_HEDGE_SAMPLES || samples % HEDGE_REFRESH_INTERVAL == 0)) {
+            hedgeDelayMicros = Math.max(1, latencyMicros.valueAtPercentile(hedgePercentile));
+        }
+    }
+
+    /**
+     * Berechnet die Wartezeit vor dem nächsten Versuch: exponentiell wachsend bis zur Obergrenze, um bis zu
+     * {@code jitter} zufällig verkürzt, damit sich gleichzeitig fehlgeschlagene Aufrufe verteilen.
+     */
+    long backoffMillis(int attempt) {
+        double delay = Math.min(maxBackoffMillis, initialBackoffMillis * Math.pow(backoffMultiplier, attempt - 1));
+        return Math.round(delay * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * Gibt die aktuell verwendete Verzögerung für Hedging-Versuche zurück.
+     *
+     * @return Die Verzögerung
+     */
+    public Duration hedgeDelay() {
+        return Duration.ofNanos(hedgeDelayMicros * 1000);
+    }
+
+    /**
+     * Gibt die Antwortzeiten erfolgreicher Versuche in Mikrosekunden zurück.
+     *
+     * @return Das Histogramm der Antwortzeiten
+     */
+    public Histogram latencyMicros() {
+        return latencyMicros;
+    }
+
+    public CircuitState circuitState() {
+        return circuitBreaker.state();
+    }
+
+    /**
+     * Gibt die aktuellen Zähler zurück.
+     *
+     * @return Die Statistik
+     */
+    public Stats stats() {
+        return new Stats(calls.sum(), attempts.sum(), retries.sum(), hedges.sum(), hedgeWins.sum(), timeouts.sum(),
+                rejected.sum(), circuitBreaker.state());
+    }
+
+    /**
+     * Circuit Breaker, der nach {@code failureThreshold} aufeinanderfolgenden Fehlern für {@code openMillis} öffnet
+     * und danach bis zu {@code halfOpenProbes} gleichzeitige Probeaufrufe zulässt. Ein erfolgreicher Probeaufruf
+     * schließt ihn, ein fehlgeschlagener öffnet ihn erneut. Der Zustand wird einmal pro Versuch geändert; eine
+     * einfache Sperre genügt.
+     */
+    private static final class CircuitBreaker {
+        private final int failureThreshold;
+        private final long openMillis;
+        private final int halfOpenProbes;
+        private final Clock clock;
+        private CircuitState state = CircuitState.CLOSED;
+        private int consecutiveFailures;
+        private long openUntilMillis;
+        private int probes;
+
+        CircuitBreaker(int failureThreshold, long openMillis, int halfOpenProbes, Clock clock) {
+            this.failureThreshold = failureThreshold;
+            this.openMillis = openMillis;
+            this.halfOpenProbes = halfOpenProbes;
+            this.clock = clock;
+        }
+
+        synchronized boolean tryAcquire() {
+            if (state == CircuitState.OPEN) {
+                if (clock.millis() < openUntilMillis) {
+                    return false;
+                }
+                state = CircuitState.HALF_OPEN;
+                probes = 0;
+                logger.info("Circuit Breaker halb offen, lasse Probeaufrufe zu");
+            }
+            if (state == CircuitState.HALF_OPEN) {
+                if (probes >= halfOpenProbes) {
+                    return false;
+                }
+                probes++;
+            }
+            return true;
+        }
+
+        synchronized void onSuccess() {
+            consecutiveFailures = 0;
+            if (state == CircuitState.HALF_OPEN) {
+                state = CircuitState.CLOSED;
+                logger.info("Circuit Breaker geschlossen");
+            }
+        }
+
+        synchronized void onFailure() {
+            if (failureThreshold == 0 || state == CircuitState.OPEN) {
+                return;
+            }
+            consecutiveFailures++;
+            if (state == CircuitState.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                state = CircuitState.OPEN;
+                openUntilMillis = clock.millis() + openMillis;
+                logger.warn("Circuit Breaker nach {} Fehlern für {} ms geöffnet", consecutiveFailures, openMillis);
+            }
+        }
+
+        synchronized CircuitState state() {
+            return state;
+        }
+    }
+
+    /**
+     * Builder-Klasse für eine einfachere Konfiguration des ResilientChatLanguageModel.
+     */
+    public static class Builder {
+        private final ChatLanguageModel delegate;
+        private Executor executor;
+        private Duration timeout;
+        private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+        private Duration initialBackoff = DEFAULT_INITIAL_BACKOFF;
+        private Duration maxBackoff = DEFAULT_MAX_BACKOFF;
+        private double backoffMultiplier = 2;
+        private double jitter = 0.5;
+        private Predicate<Throwable> retryOn = error -> !(error instanceof IllegalArgumentException);
+        private boolean hedging;
+        private Duration hedgeDelay = DEFAULT_HEDGE_DELAY;
+        private double hedgePercentile = DEFAULT_HEDGE_PERCENTILE;
+        private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+        private Duration openDuration = DEFAULT_OPEN_DURATION;
+        private int halfOpenProbes = 1;
+        private Clock clock = Clock.systemUTC();
+
+        public Builder(ChatLanguageModel delegate) {
+            this.delegate = delegate;
+        }
+
+        /**
+         * Setzt den Executor, auf dem die Versuche laufen. Standard sind virtuelle Threads, sofern verfügbar.
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Zeitgrenze pro Versuch. Ohne Angabe wird unbegrenzt gewartet.
+         */
+        public Builder timeout(Duration timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        /**
+         * Maximale Anzahl Versuche einschließlich des ersten. 1 schaltet Wiederholungen ab.
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Wartezeit vor der ersten Wiederholung, die sich mit jedem Versuch um {@code multiplier} bis höchstens
+         * {@code maxBackoff} verlängert.
+         */
+        public Builder backoff(Duration initialBackoff, Duration maxBackoff, double multiplier) {
+            this.initialBackoff = initialBackoff;
+            this.maxBackoff = maxBackoff;
+            this.backoffMultiplier = multiplier;
+            return this;
+        }
+
+        /**
+         * Anteil (0 bis 1), um den jede Wartezeit zufällig verkürzt wird. Standard ist 0.5.
+         */
+        public Builder jitter(double jitter) {
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * Entscheidet, welche Fehler wiederholt werden und für den Circuit Breaker zählen. Standard sind alle
+         * außer {@link IllegalArgumentException}.
+         */
+        public Builder retryOn(Predicate<Throwable> retryOn) {
+            this.retryOn = retryOn;
+            return this;
+        }
+
+        /**
+         * Startet einen zweiten Versuch, wenn der erste länger als das Perzentil der bisherigen Antwortzeiten
+         * braucht. Standard ist false.
+         */
+        public Builder hedging(boolean hedging) {
+            this.hedging = hedging;
+            return this;
+        }
+
+        /**
+         * Verzögerung des zweiten Versuchs, solange weniger als {@value #MIN_HEDGE_SAMPLES} Antwortzeiten
+         * vorliegen. Standard sind 2 Sekunden.
+         */
+        public Builder hedgeDelay(Duration hedgeDelay) {
+            this.hedgeDelay = hedgeDelay;
+            return this;
+        }
+
+        /**
+         * Perzentil der Antwortzeiten (0 bis 100), nach dem der zweite Versuch startet. Standard ist 95.
+         */
+        public Builder hedgePercentile(double hedgePercentile) {
+            this.hedgePercentile = hedgePercentile;
+            return this;
+        }
+
+        /**
+         * Öffnet den Circuit Breaker nach {@code failureThreshold} aufeinanderfolgenden Fehlern für
+         * {@code openDuration}. 0 schaltet den Circuit Breaker ab.
+         */
+        public Builder circuitBreaker(int failureThreshold, Duration openDuration) {
+            this.failureThreshold = failureThreshold;
+            this.openDuration = openDuration;
+            return this;
+        }
+
+        /**
+         * Anzahl gleichzeitiger Probeaufrufe im halb offenen Zustand. Standard ist 1.
+         */
+        public Builder halfOpenProbes(int halfOpenProbes) {
+            this.halfOpenProbes = halfOpenProbes;
+            return this;
+        }
+
+        public Builder clock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public ResilientChatLanguageModel build() {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts must be at least 1: " + maxAttempts);
+            }
+            if (backoffMultiplier < 1) {
+                throw new IllegalArgumentException("backoff multiplier must be at least 1: " + backoffMultiplier);
+            }
+            if (jitter < 0 || jitter > 1) {
+                throw new IllegalArgumentException("jitter must be between 0 and 1: " + jitter);
+            }
+            if (!(hedgePercentile > 0 && hedgePercentile <= 100)) {
+                throw new IllegalArgumentException("hedgePercentile must be in (0, 100]: " + hedgePercentile);
+            }
+            if (failureThreshold < 0) {
+                throw new IllegalArgumentException("failureThreshold must not be negative: " + failureThreshold);
+            }
+            if (halfOpenProbes < 1) {
+                throw new IllegalArgumentException("halfOpenProbes must be at least 1: " + halfOpenProbes);
+            }
+            return new ResilientChatLanguageModel(this);
+        }
+    }
+}
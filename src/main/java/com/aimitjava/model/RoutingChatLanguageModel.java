@@ -0,0 +1,424 @@
+package com.aimitjava.model;
+
+import com.aimitjava.chain.TokenEstimator;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Verteilt Aufrufe auf mehrere {@link ChatLanguageModel}-Instanzen, z.B. mehrere API-Schlüssel oder Deployments.
+ * <p>
+ * Pro Route lassen sich die gleichzeitigen Aufrufe und die Tokens pro Minute begrenzen; gezählt wird der
+ * {@code TokenUsage} der Antworten, während eines Aufrufs ist die geschätzte Promptgröße reserviert. Routen mit
+ * {@link Route.Builder#maxPromptTokens(int)} gelten als kleine Modelle und werden für Prompts bis zu dieser Größe
+ * bevorzugt; sind sie ausgelastet, übernehmen die übrigen Routen. Unter den verfügbaren Routen wählt die
+ * {@link Strategy}.
+ * <p>
+ * Die gesamte Buchführung erfolgt über atomare Variablen ohne Sperren. Ist keine Route verfügbar, wird sofort eine
+ * {@link NoRouteAvailableException} geworfen; zusammen mit {@link ResilientChatLanguageModel} wird der Aufruf dann
+ * nach einer Wartezeit wiederholt.
+ */
+public class RoutingChatLanguageModel implements ChatLanguageModel {
+
+    private static final int WINDOW_SECONDS = 60;
+    private static final double DEFAULT_EWMA_ALPHA = 0.3;
+    /** Antwortzeit, mit der ein fehlgeschlagener Aufruf mindestens in die Glättung eingeht. */
+    private static final long FAILURE_PENALTY_NANOS = 10_000_000_000L;
+
+    /**
+     * Strategie für die Auswahl unter den verfügbaren Routen.
+     */
+    public enum Strategy {
+        /** Reihum. */
+        ROUND_ROBIN,
+        /** Die Route mit den wenigsten laufenden Aufrufen. */
+        LEAST_OUTSTANDING,
+        /**
+         * Die Route mit der kleinsten geglätteten Antwortzeit, gewichtet mit den laufenden Aufrufen. Fehlgeschlagene
+         * Aufrufe gehen mit mindestens 10 Sekunden ein, damit schnell scheiternde Routen nicht bevorzugt werden.
+         */
+        EWMA_LATENCY
+    }
+
+    /**
+     * Wird geworfen, wenn alle passenden Routen ihre Grenze für Parallelität oder Tokens erreicht haben.
+     */
+    public static class NoRouteAvailableException extends IllegalStateException {
+        public NoRouteAvailableException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Momentaufnahme einer Route.
+     *
+     * @param name Der Name der Route
+     * @param outstanding Aktuell laufende Aufrufe
+     * @param requests Abgeschlossene Aufrufe
+     * @param failures Davon fehlgeschlagen
+     * @param tokensLastMinute In den letzten 60 Sekunden verbrauchte Tokens
+     * @param ewmaLatencyMillis Geglättete Antwortzeit einschließlich der Strafzeit für Fehler, 0 ohne Messwerte
+     */
+    public record RouteStats(String name, int outstanding, long requests, long failures, long tokensLastMinute,
+                             double ewmaLatencyMillis) {}
+
+    /**
+     * Ein Modell mit seinen Grenzen und seiner Buchführung.
+     */
+    public static final class Route {
+        private final String name;
+        private final ChatLanguageModel model;
+        private final int maxConcurrency;
+        private final long tokensPerMinute;
+        private final int maxPromptTokens;
+
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicLong reservedTokens = new AtomicLong();
+        // Verbrauch je Sekunde im gleitenden Fenster; epochs enthält die Sekunde, zu der ein Fach gehört
+        private final AtomicLongArray windowTokens = new AtomicLongArray(WINDOW_SECONDS);
+        private final AtomicLongArray windowEpochs = new AtomicLongArray(WINDOW_SECONDS);
+        // Bits eines double, damit die Glättung per CAS aktualisiert werden kann
+        private final AtomicLong ewmaNanosBits = new AtomicLong(Double.doubleToRawLongBits(0));
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        private Route(Builder builder) {
+            this.name = builder.name;
+            this.model = builder.model;
+            this.maxConcurrency = builder.maxConcurrency;
+            this.tokensPerMinute = builder.tokensPerMinute;
+            this.maxPromptTokens = builder.maxPromptTokens;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        boolean isSmall() {
+            return maxPromptTokens > 0;
+        }
+
+        /**
+         * Belegt einen Platz, sofern Parallelität und Token-Budget es zulassen. Die Reservierung erfolgt per CAS,
+         * gleichzeitige Aufrufer können das Budget daher nicht gemeinsam überschreiten.
+         */
+        boolean tryAcquire(int promptTokens, long nowSecond) {
+            if (tokensPerMinute > 0) {
+                long used = tokensInWindow(nowSecond);
+                long reserved;
+                do {
+                    reserved = reservedTokens.get();
+                    if (used + reserved + promptTokens > tokensPerMinute) {
+                        return false;
+                    }
+                } while (!reservedTokens.compareAndSet(reserved, reserved + promptTokens));
+            } else {
+                reservedTokens.addAndGet(promptTokens);
+            }
+            if (maxConcurrency > 0) {
+                int current;
+                do {
+                    current = outstanding.get();
+                    if (current >= maxConcurrency) {
+                        reservedTokens.addAndGet(-promptTokens);
+                        return false;
+                    }
+                } while (!outstanding.compareAndSet(current, current + 1));
+            } else {
+                outstanding.incrementAndGet();
+            }
+            return true;
+        }
+
+        void release(int promptTokens, long usedTokens, long nowSecond, long latencyNanos, double alpha,
+                     boolean failed) {
+            // Erst verbuchen, dann die Reservierung freigeben, damit das Budget kurzzeitig eher zu hoch als zu
+            // niedrig gezählt wird
+            recordTokens(usedTokens, nowSecond);
+            reservedTokens.addAndGet(-promptTokens);
+            requests.increment();
+            if (failed) {
+                failures.increment();
+                latencyNanos = Math.max(latencyNanos, FAILURE_PENALTY_NANOS);
+            }
+            long previous;
+            double updated;
+            do {
+                previous = ewmaNanosBits.get();
+                double old = Double.longBitsToDouble(previous);
+                updated = old == 0 ? latencyNanos : alpha * latencyNanos + (1 - alpha) * old;
+            } while (!ewmaNanosBits.compareAndSet(previous, Double.doubleToRawLongBits(updated)));
+            outstanding.decrementAndGet();
+        }
+
+        private void recordTokens(long tokens, long nowSecond) {
+            if (tokens <= 0) {
+                return;
+            }
+            int slot = (int) (nowSecond % WINDOW_SECONDS);
+            long epoch = windowEpochs.get(slot);
+            if (epoch != nowSecond && windowEpochs.compareAndSet(slot, epoch, nowSecond)) {
+                // Das Fach gehörte zu einer älteren Minute; gleichzeitige Buchungen können knapp verloren gehen
+                windowTokens.set(slot, 0);
+            }
+            windowTokens.addAndGet(slot, tokens);
+        }
+
+        long tokensInWindow(long nowSecond) {
+            long sum = 0;
+            for (int slot = 0; slot < WINDOW_SECONDS; slot++) {
+                if (nowSecond - windowEpochs.get(slot) < WINDOW_SECONDS) {
+                    sum += windowTokens.get(slot);
+                }
+            }
+            return sum;
+        }
+
+        double ewmaNanos() {
+            return Double.longBitsToDouble(ewmaNanosBits.get());
+        }
+
+        /**
+         * Builder für eine Route.
+         */
+        public static class Builder {
+            private final String name;
+            private final ChatLanguageModel model;
+            private int maxConcurrency;
+            private long tokensPerMinute;
+            private int maxPromptTokens;
+
+            public Builder(String name, ChatLanguageModel model) {
+                this.name = name;
+                this.model = model;
+            }
+
+            /**
+             * Begrenzt die gleichzeitigen Aufrufe dieser Route. Standard ist 0 (keine Begrenzung).
+             */
+            public Builder maxConcurrency(int maxConcurrency) {
+                this.maxConcurrency = maxConcurrency;
+                return this;
+            }
+
+            /**
+             * Begrenzt die Tokens pro Minute, gemessen über ein gleitendes Fenster von 60 Sekunden.
+             * Standard ist 0 (keine Begrenzung).
+             */
+            public Builder tokensPerMinute(long tokensPerMinute) {
+                this.tokensPerMinute = tokensPerMinute;
+                return this;
+            }
+
+            /**
+             * Kennzeichnet die Route als kleines Modell: Sie erhält nur Prompts bis zu dieser geschätzten
+             * Tokenanzahl, wird für diese aber vor allen anderen Routen gewählt.
+             */
+            public Builder maxPromptTokens(int maxPromptTokens) {
+                this.maxPromptTokens = maxPromptTokens;
+                return this;
+            }
+
+            public Route build() {
+                if (name == null || model == null) {
+                    throw new IllegalArgumentException("Route name and model must not be null");
+                }
+                if (maxConcurrency < 0 || tokensPerMinute < 0 || maxPromptTokens < 0) {
+                    throw new IllegalArgumentException("Route limits must not be negative: " + name);
+                }
+                return new Route(this);
+            }
+        }
+    }
+
+    private final Route[] routes;
+    private final Strategy strategy;
+    private final TokenEstimator tokenEstimator;
+    private final double ewmaAlpha;
+    private final Clock clock;
+    private final AtomicLong nextIndex = new AtomicLong();
+
+    private RoutingChatLanguageModel(Builder builder) {
+        this.routes = builder.routes.toArray(new Route[0]);
+        this.strategy = builder.strategy;
+        this.tokenEstimator = builder.tokenEstimator;
+        this.ewmaAlpha = builder.ewmaAlpha;
+        this.clock = builder.clock;
+    }
+
+    /**
+     * Wählt eine Route und ruft deren Modell auf.
+     *
+     * @throws NoRouteAvailableException wenn alle passenden Routen ausgelastet sind
+     */
+    @Override
+    public Response<String> generate(String prompt) {
+        int promptTokens = tokenEstimator.estimate(prompt);
+        long nowSecond = clock.millis() / 1000;
+        // Ein gemeinsamer Startpunkt für beide Gruppen, damit jeder Aufruf die Reihum-Position genau einmal weiterschiebt
+        int offset = (int) Math.floorMod(nextIndex.getAndIncrement(), (long) routes.length);
+        Route route = acquire(promptTokens, nowSecond, offset, true);
+        if (route == null) {
+            route = acquire(promptTokens, nowSecond, offset, false);
+        }
+        if (route == null) {
+            throw new NoRouteAvailableException("All routes are at their concurrency or token limit");
+        }
+
+        long start = System.nanoTime();
+        long usedTokens = promptTokens;
+        boolean failed = true;
+        try {
+            Response<String> response = route.model.generate(prompt);
+            usedTokens = usedTokens(response.tokenUsage(), promptTokens);
+            failed = false;
+            return response;
+        } finally {
+            // Auch abgelehnte Anfragen können beim Anbieter zählen, daher wird bei Fehlern die Schätzung verbucht
+            route.release(promptTokens, usedTokens, clock.millis() / 1000, System.nanoTime() - start, ewmaAlpha,
+                    failed);
+        }
+    }
+
+    /**
+     * Belegt die nach der Strategie beste Route einer Gruppe. Scheitert die Belegung, weil eine andere Anfrage
+     * schneller war, wird die nächstbeste versucht.
+     */
+    private Route acquire(int promptTokens, long nowSecond, int offset, boolean small) {
+        int count = routes.length;
+        boolean[] tried = null;
+        for (int round = 0; round < count; round++) {
+            int best = -1;
+            double bestScore = Double.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                int index = (offset + i) % count;
+                Route route = routes[index];
+                if ((tried != null && tried[index]) || route.isSmall() != small
+                        || (small && promptTokens > route.maxPromptTokens)) {
+                    continue;
+                }
+                double score = score(route);
+                if (score < bestScore) {
+                    best = index;
+                    bestScore = score;
+                    if (strategy == Strategy.ROUND_ROBIN) {
+                        break;
+                    }
+                }
+            }
+            if (best < 0) {
+                return null;
+            }
+            if (routes[best].tryAcquire(promptTokens, nowSecond)) {
+                return routes[best];
+            }
+            if (tried == null) {
+                tried = new boolean[count];
+            }
+            tried[best] = true;
+        }
+        return null;
+    }
+
+    private double score(Route route) {
+        return switch (strategy) {
+            case ROUND_ROBIN -> 0;
+            case LEAST_OUTSTANDING -> route.outstanding.get();
+            // Routen ohne Messwert haben 0 und werden zuerst ausprobiert; nach einem Fehler gilt die Strafzeit
+            case EWMA_LATENCY -> route.ewmaNanos() * (route.outstanding.get() + 1);
+        };
+    }
+
+    private static long usedTokens(TokenUsage tokenUsage, int estimatedTokens) {
+        if (tokenUsage == null || tokenUsage.totalTokenCount() == null) {
+            return estimatedTokens;
+        }
+        return tokenUsage.totalTokenCount();
+    }
+
+    /**
+     * Gibt eine Momentaufnahme aller Routen in der Reihenfolge ihrer Konfiguration zurück.
+     *
+     * @return Die Statistik je Route
+     */
+    public List<RouteStats> stats() {
+        long nowSecond = clock.millis() / 1000;
+        List<RouteStats> stats = new ArrayList<>(routes.length);
+        for (Route route : routes) {
+            stats.add(new RouteStats(route.name, route.outstanding.get(), route.requests.sum(),
+                    route.failures.sum(), route.tokensInWindow(nowSecond), route.ewmaNanos() / 1_000_000));
+        }
+        return stats;
+    }
+
+    /**
+     * Builder-Klasse für eine einfachere Konfiguration des RoutingChatLanguageModel.
+     */
+    public static class Builder {
+        private final List<Route> routes = new ArrayList<>();
+        private Strategy strategy = Strategy.LEAST_OUTSTANDING;
+        private TokenEstimator tokenEstimator = TokenEstimator.defaultEstimator();
+        private double ewmaAlpha = DEFAULT_EWMA_ALPHA;
+        private Clock clock = Clock.systemUTC();
+
+        public Builder route(Route route) {
+            this.routes.add(route);
+            return this;
+        }
+
+        /**
+         * Fügt eine Route ohne Grenzen hinzu.
+         */
+        public Builder route(String name, ChatLanguageModel model) {
+            return route(new Route.Builder(name, model).build());
+        }
+
+        /**
+         * Setzt die Auswahlstrategie. Standard ist {@link Strategy#LEAST_OUTSTANDING}.
+         */
+        public Builder strategy(Strategy strategy) {
+            this.strategy = strategy;
+            return this;
+        }
+
+        /**
+         * Schätzer für die Promptgröße, die für kleine Modelle und die Token-Reservierung verwendet wird.
+         */
+        public Builder tokenEstimator(TokenEstimator tokenEstimator) {
+            this.tokenEstimator = tokenEstimator;
+            return this;
+        }
+
+        /**
+         * Gewicht (0 bis 1) einer neuen Antwortzeit in der geglätteten Antwortzeit. Standard ist 0.3.
+         */
+        public Builder ewmaAlpha(double ewmaAlpha) {
+            this.ewmaAlpha = ewmaAlpha;
+            return this;
+        }
+
+        public Builder clock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public RoutingChatLanguageModel build() {
+            if (routes.isEmpty()) {
+                throw new IllegalArgumentException("At least one route is required");
+            }
+            if (strategy == null) {
+                throw new IllegalArgumentException("strategy must not be null");
+            }
+            if (!(ewmaAlpha > 0 && ewmaAlpha <= 1)) {
+                throw new IllegalArgumentException("ewmaAlpha must be in (0, 1]: " + ewmaAlpha);
+            }
+            return new RoutingChatLanguageModel(this);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.aimitjava.model;
+
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+
+import java.util.List;
+
+/**
+ * Interface für Chat-basierte Sprachmodelle, die ihre Antwort tokenweise liefern.
+ */
+public interface StreamingChatLanguageModel {
+
+    /**
+     * Startet die Generierung einer Antwort. Die Tokens werden an den Handler übergeben, sobald sie eintreffen.
+     *
+     * @param prompt Der Eingabetext für das Sprachmodell
+     * @param handler Empfänger der Tokens und der abschließenden Antwort
+     */
+    void generate(String prompt, StreamingResponseHandler handler);
+
+    /**
+     * Empfänger einer gestreamten Antwort.
+     */
+    interface StreamingResponseHandler {
+
+        /**
+         * Wird für jedes Token in der Reihenfolge der Generierung aufgerufen.
+         *
+         * @param token Das nächste Teilstück der Antwort
+         */
+        void onToken(String token);
+
+        /**
+         * Wird nach dem letzten Token mit der vollständigen Antwort und deren {@code TokenUsage} aufgerufen.
+         *
+         * @param response Die vollständige Antwort
+         */
+        void onComplete(ChatLanguageModel.Response<String> response);
+
+        /**
+         * Wird aufgerufen, wenn die Generierung fehlschlägt.
+         *
+         * @param error Der Fehler
+         */
+        void onError(Throwable error);
+
+        /**
+         * Gibt an, ob der Empfänger keine weiteren Tokens mehr benötigt. Modelle, die das unterstützen,
+         * brechen die Generierung dann vorzeitig ab.
+         *
+         * @return true, wenn die Generierung abgebrochen werden kann
+         */
+        default boolean isCancelled() {
+            return false;
+        }
+    }
+
+    /**
+     * Adapter-Klasse zur Verwendung von LangChain4j Streaming-Modellen.
+     * LangChain4j bietet keinen Abbruch laufender Streams; nach einem Abbruch werden weitere Tokens verworfen.
+     */
+    class Adapter implements StreamingChatLanguageModel {
+        private final dev.langchain4j.model.chat.StreamingChatLanguageModel delegate;
+
+        public Adapter(dev.langchain4j.model.chat.StreamingChatLanguageModel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void generate(String prompt, StreamingResponseHandler handler) {
+            delegate.chat(List.of(UserMessage.from(prompt)), new StreamingChatResponseHandler() {
+                @Override
+                public void onPartialResponse(String partialResponse) {
+                    if (!handler.isCancelled()) {
+                        handler.onToken(partialResponse);
+                    }
+                }
+
+                @Override
+                public void onCompleteResponse(ChatResponse response) {
+                    handler.onComplete(new ChatLanguageModel.Response<>(
+                            response.aiMessage().text(),
+                            response.tokenUsage()
+                    ));
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    handler.onError(error);
+                }
+            });
+        }
+    }
+}
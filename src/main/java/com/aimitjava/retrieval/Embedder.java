@@ -0,0 +1,20 @@
+package com.aimitjava.retrieval;
+
+/**
+ * Berechnet Embeddings für Texte, z.B. mit einem lokalen Modell.
+ */
+public interface Embedder {
+
+    /**
+     * Berechnet das Embedding eines Textes.
+     *
+     * @param text Der Text
+     * @return Ein Vektor der Länge {@link #dimension()}
+     */
+    float[] embed(String text);
+
+    /**
+     * @return Die Länge der erzeugten Vektoren
+     */
+    int dimension();
+}
@@ -0,0 +1,82 @@
+package com.aimitjava.retrieval;
+
+import com.aimitjava.document.Document;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Exakte Vektorsuche durch Vergleich mit allen Vektoren.
+ * <p>
+ * Die Vektoren liegen blockweise hintereinander in {@code float[]}-Arrays und werden sequenziell durchlaufen,
+ * die besten Treffer in einem Heap der Größe k gehalten. Für bis zu einigen hunderttausend Vektoren ist das
+ * meist schnell genug und liefert immer die exakten Treffer; darüber hinaus siehe {@link HnswVectorIndex}.
+ * <p>
+ * Hinzufügen ist synchronisiert, Suchen laufen ohne Sperre parallel dazu und sehen alle Dokumente,
+ * die vor ihrem Beginn vollständig hinzugefügt wurden.
+ */
+public final class FlatVectorIndex implements VectorIndex {
+
+    private final VectorStore vectors;
+    private volatile Document[] documents = new Document[16];
+    private volatile int size;
+
+    /**
+     * @param dimension Die Länge der Vektoren
+     */
+    public FlatVectorIndex(int dimension) {
+        this.vectors = new VectorStore(dimension);
+    }
+
+    @Override
+    public synchronized int add(Document document, float[] embedding) {
+        vectors.checkDimension(embedding);
+        int id = size;
+        Document[] current = documents;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, id * 2);
+        }
+        current[id] = document;
+        vectors.set(id, embedding);
+        documents = current;
+        size = id + 1;
+        return id;
+    }
+
+    @Override
+    public List<SearchResult> search(float[] query, int k) {
+        vectors.checkDimension(query);
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1: " + k);
+        }
+        int count = size;
+        Document[] snapshot = documents;
+        float[][] blocks = vectors.blocks();
+        int dimension = vectors.dimension();
+
+        ScoreHeap top = new ScoreHeap(Math.min(k, count));
+        for (int block = 0, base = 0; base < count; block++, base += VectorStore.BLOCK_SIZE) {
+            float[] data = blocks[block];
+            int inBlock = Math.min(VectorStore.BLOCK_SIZE, count - base);
+            for (int i = 0; i < inBlock; i++) {
+                float score = VectorMath.dot(data, i * dimension, query, 0, dimension);
+                if (top.size() < k) {
+                    top.push(base + i, score);
+                } else if (score > top.peekScore()) {
+                    top.replaceTop(base + i, score);
+                }
+            }
+        }
+        return top.drainDescending(id -> snapshot[id]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int dimension() {
+        return vectors.dimension();
+    }
+}
@@ -0,0 +1,50 @@
+package com.aimitjava.retrieval;
+
+/**
+ * Ein deterministischer Embedder ohne Modell: Jedes Wort wird per Feature-Hashing auf eine Dimension mit
+ * Vorzeichen abgebildet, das Ergebnis auf Länge 1 normiert. Texte mit gemeinsamen Wörtern haben damit
+ * ein positives Skalarprodukt. Gedacht für Tests und Beispiele, die ohne Netzwerk auskommen sollen.
+ */
+public final class HashingEmbedder implements Embedder {
+
+    private final int dimension;
+
+    /**
+     * @param dimension Die Länge der erzeugten Vektoren
+     */
+    public HashingEmbedder(int dimension) {
+        if (dimension < 1) {
+            throw new IllegalArgumentException("dimension must be at least 1: " + dimension);
+        }
+        this.dimension = dimension;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[dimension];
+        int hash = 0;
+        boolean inWord = false;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                if (!inWord) {
+                    hash = 0x811c9dc5;
+                    inWord = true;
+                }
+                hash ^= Character.toLowerCase(c);
+                hash *= 0x01000193;
+            } else if (inWord) {
+                // Das oberste Bit bestimmt das Vorzeichen, damit sich Kollisionen im Mittel aufheben
+                vector[Math.floorMod(hash, dimension)] += hash < 0 ? -1f : 1f;
+                inWord = false;
+            }
+        }
+        VectorMath.normalize(vector);
+        return vector;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+}
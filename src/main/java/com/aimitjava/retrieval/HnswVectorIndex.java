@@ -0,0 +1,413 @@
+package com.aimitjava.retrieval;
+
+import com.aimitjava.document.Document;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Approximative Vektorsuche über einen HNSW-Graphen (Hierarchical Navigable Small World, Malkov &amp; Yashunin).
+ * <p>
+ * Jedes Dokument ist ein Knoten auf einer zufälligen Anzahl von Ebenen. Die Suche steigt von der obersten Ebene
+ * gierig ab und durchsucht die unterste Ebene mit einer Kandidatenliste der Größe {@code efSearch}. Größere
+ * Werte für {@code m}, {@code efConstruction} und {@code efSearch} erhöhen Recall und Kosten.
+ * Die Vektoren liegen wie bei {@link FlatVectorIndex} in {@code float[]}-Blöcken, die Nachbarlisten in
+ * {@code int[]}-Arrays.
+ * <p>
+ * Suchen laufen parallel, Hinzufügen schließt Suchen für die Dauer des Einfügens aus.
+ */
+public final class HnswVectorIndex implements VectorIndex {
+
+    private static final int DEFAULT_M = 16;
+    private static final int DEFAULT_EF_CONSTRUCTION = 200;
+    private static final int DEFAULT_EF_SEARCH = 64;
+    /** Suchen laufen höchstens so parallel wie Prozessoren vorhanden sind; mehr Markierungsarrays lohnen nicht. */
+    private static final int MAX_POOLED_VISITED_SETS = Runtime.getRuntime().availableProcessors();
+
+    private final VectorStore vectors;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelMultiplier;
+    private final Random random;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Ein Pool statt ThreadLocal: Mit virtuellen Threads läuft jede Suche auf einem neuen Thread
+    private final ConcurrentLinkedQueue<VisitedSet> visitedPool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledVisitedSets = new AtomicInteger();
+    // Nur unter der Schreibsperre verwendet
+    private final VisitedSet insertVisited = new VisitedSet();
+
+    private Document[] documents = new Document[16];
+    // links[knoten][ebene] = [Anzahl, Nachbar 1, Nachbar 2, ...]
+    private int[][][] links = new int[16][][];
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    private HnswVectorIndex(Builder builder) {
+        this.vectors = new VectorStore(builder.dimension);
+        this.m = builder.m;
+        this.efConstruction = builder.efConstruction;
+        this.efSearch = builder.efSearch;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.random = new Random(builder.seed);
+    }
+
+    @Override
+    public int add(Document document, float[] embedding) {
+        vectors.checkDimension(embedding);
+        lock.writeLock().lock();
+        try {
+            int id = size;
+            if (id == documents.length) {
+                documents = Arrays.copyOf(documents, id * 2);
+                links = Arrays.copyOf(links, id * 2);
+            }
+            documents[id] = document;
+            vectors.set(id, embedding);
+            int level = randomLevel();
+            links[id] = new int[level + 1][];
+            for (int l = 0; l <= level; l++) {
+                links[id][l] = new int[1 + maxConnections(l)];
+            }
+            size = id + 1;
+
+            if (entryPoint < 0) {
+                entryPoint = id;
+                maxLevel = level;
+                return id;
+            }
+
+            int current = entryPoint;
+            for (int l = maxLevel; l > level; l--) {
+                current = greedyClosest(embedding, current, l);
+            }
+            for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+                ScoreHeap found = searchLayer(embedding, current, efConstruction, l, insertVisited);
+                int count = found.size();
+                int[] ids = new int[count];
+                float[] scores = new float[count];
+                for (int i = count - 1; i >= 0; i--) {
+                    scores[i] = found.peekScore();
+                    ids[i] = found.pop();
+                }
+                int[] neighbours = selectNeighbours(ids, scores, count, maxConnections(l));
+                int[] list = links[id][l];
+                list[0] = neighbours.length;
+                System.arraycopy(neighbours, 0, list, 1, neighbours.length);
+                for (int neighbour : neighbours) {
+                    connect(neighbour, id, l);
+                }
+                current = ids[0];
+            }
+            if (level > maxLevel) {
+                maxLevel = level;
+                entryPoint = id;
+            }
+            return id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<SearchResult> search(float[] query, int k) {
+        vectors.checkDimension(query);
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1: " + k);
+        }
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) {
+                return List.of();
+            }
+            int current = entryPoint;
+            for (int l = maxLevel; l > 0; l--) {
+                current = greedyClosest(query, current, l);
+            }
+            VisitedSet seen = acquireVisited();
+            ScoreHeap found;
+            try {
+                found = searchLayer(query, current, Math.max(efSearch, k), 0, seen);
+            } finally {
+                releaseVisited(seen);
+            }
+            while (found.size() > k) {
+                found.pop();
+            }
+            Document[] snapshot = documents;
+            return found.drainDescending(id -> snapshot[id]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private VisitedSet acquireVisited() {
+        VisitedSet seen = visitedPool.poll();
+        if (seen != null) {
+            pooledVisitedSets.decrementAndGet();
+            return seen;
+        }
+        return new VisitedSet();
+    }
+
+    private void releaseVisited(VisitedSet seen) {
+        if (pooledVisitedSets.incrementAndGet() <= MAX_POOLED_VISITED_SETS) {
+            visitedPool.offer(seen);
+        } else {
+            pooledVisitedSets.decrementAndGet();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int dimension() {
+        return vectors.dimension();
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? 2 * m : m;
+    }
+
+    private int randomLevel() {
+        return (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+    }
+
+    /**
+     * Folgt auf einer Ebene jeweils dem Nachbarn mit dem höchsten Score, bis sich keiner mehr verbessert.
+     */
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        float best = vectors.dot(current, query);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] list = links[current][level];
+            for (int i = 1; i <= list[0]; i++) {
+                float score = vectors.dot(list[i], query);
+                if (score > best) {
+                    best = score;
+                    current = list[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Bestensuche auf einer Ebene.
+     *
+     * @return Ein Min-Heap mit den höchstens {@code ef} besten gefundenen Knoten
+     */
+    private ScoreHeap searchLayer(float[] query, int start, int ef, int level, VisitedSet seen) {
+        seen.reset(size);
+        seen.visit(start);
+
+        float startScore = vectors.dot(start, query);
+        // Kandidaten als Max-Heap über negierte Scores
+        // Es gibt höchstens size Knoten; ein großes ef soll kleine Indizes nicht große Arrays kosten lassen
+        ScoreHeap candidates = new ScoreHeap(Math.min(ef, size));
+        ScoreHeap results = new ScoreHeap(Math.min(ef + 1, size));
+        candidates.push(start, -startScore);
+        results.push(start, startScore);
+
+        while (!candidates.isEmpty()) {
+            float candidateScore = -candidates.peekScore();
+            if (results.size() >= ef && candidateScore < results.peekScore()) {
+                break;
+            }
+            int candidate = candidates.pop();
+            int[] list = links[candidate][level];
+            for (int i = 1; i <= list[0]; i++) {
+                int neighbour = list[i];
+                if (!seen.visit(neighbour)) {
+                    continue;
+                }
+                float score = vectors.dot(neighbour, query);
+                if (results.size() < ef || score > results.peekScore()) {
+                    candidates.push(neighbour, -score);
+                    results.push(neighbour, score);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Wählt aus absteigend sortierten Kandidaten Nachbarn nach der Heuristik des HNSW-Papiers: Ein Kandidat wird
+     * bevorzugt, wenn er dem neuen Knoten näher ist als allen bereits gewählten Nachbarn. Verbleibende Plätze
+     * werden mit den übrigen Kandidaten in Score-Reihenfolge aufgefüllt.
+     */
+    private int[] selectNeighbours(int[] ids, float[] scores, int count, int max) {
+        int[] selected = new int[Math.min(count, max)];
+        boolean[] taken = new boolean[count];
+        int selectedCount = 0;
+        for (int i = 0; i < count && selectedCount < selected.length; i++) {
+            boolean diverse = true;
+            for (int j = 0; j < selectedCount; j++) {
+                if (vectors.dot(ids[i], selected[j]) > scores[i]) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[selectedCount++] = ids[i];
+                taken[i] = true;
+            }
+        }
+        for (int i = 0; i < count && selectedCount < selected.length; i++) {
+            if (!taken[i]) {
+                selected[selectedCount++] = ids[i];
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Fügt {@code id} zu den Nachbarn von {@code node} hinzu und kürzt die Liste bei Überlauf neu aus.
+     */
+    private void connect(int node, int id, int level) {
+        int[] list = links[node][level];
+        int count = list[0];
+        if (count < list.length - 1) {
+            list[count + 1] = id;
+            list[0] = count + 1;
+            return;
+        }
+
+        int[] ids = new int[count + 1];
+        float[] scores = new float[count + 1];
+        System.arraycopy(list, 1, ids, 0, count);
+        ids[count] = id;
+        for (int i = 0; i < ids.length; i++) {
+            scores[i] = vectors.dot(node, ids[i]);
+        }
+        sortDescending(ids, scores);
+        int[] neighbours = selectNeighbours(ids, scores, ids.length, list.length - 1);
+        list[0] = neighbours.length;
+        System.arraycopy(neighbours, 0, list, 1, neighbours.length);
+    }
+
+    private static void sortDescending(int[] ids, float[] scores) {
+        for (int i = 1; i < ids.length; i++) {
+            int id = ids[i];
+            float score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                ids[j + 1] = ids[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            ids[j + 1] = id;
+            scores[j + 1] = score;
+        }
+    }
+
+    /**
+     * Merkt besuchte Knoten über Generationsnummern, damit das Array nicht vor jeder Suche geleert werden muss.
+     */
+    private static final class VisitedSet {
+        private int[] marks = new int[0];
+        private int generation;
+
+        void reset(int size) {
+            if (marks.length < size) {
+                marks = new int[Math.max(size, marks.length * 2)];
+                generation = 0;
+            }
+            generation++;
+            if (generation == 0) {
+                Arrays.fill(marks, 0);
+                generation = 1;
+            }
+        }
+
+        /**
+         * @return true, wenn der Knoten noch nicht besucht war
+         */
+        boolean visit(int node) {
+            if (marks[node] == generation) {
+                return false;
+            }
+            marks[node] = generation;
+            return true;
+        }
+    }
+
+    public static class Builder {
+        private final int dimension;
+        private int m = DEFAULT_M;
+        private int efConstruction = DEFAULT_EF_CONSTRUCTION;
+        private int efSearch = DEFAULT_EF_SEARCH;
+        private long seed = 42;
+
+        /**
+         * @param dimension Die Länge der Vektoren
+         */
+        public Builder(int dimension) {
+            this.dimension = dimension;
+        }
+
+        /**
+         * Anzahl Nachbarn pro Knoten und Ebene, auf der untersten Ebene das Doppelte. Standard ist 16.
+         */
+        public Builder m(int m) {
+            this.m = m;
+            return this;
+        }
+
+        /**
+         * Größe der Kandidatenliste beim Einfügen. Standard ist 200.
+         */
+        public Builder efConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+            return this;
+        }
+
+        /**
+         * Größe der Kandidatenliste bei der Suche, mindestens k. Standard ist 64.
+         */
+        public Builder efSearch(int efSearch) {
+            this.efSearch = efSearch;
+            return this;
+        }
+
+        /**
+         * Startwert für die Zufallsebenen, damit der Graph reproduzierbar aufgebaut wird.
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public HnswVectorIndex build() {
+            if (m < 2) {
+                throw new IllegalArgumentException("m must be at least 2: " + m);
+            }
+            if (efConstruction < 1) {
+                throw new IllegalArgumentException("efConstruction must be at least 1: " + efConstruction);
+            }
+            if (efSearch < 1) {
+                throw new IllegalArgumentException("efSearch must be at least 1: " + efSearch);
+            }
+            return new HnswVectorIndex(this);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.aimitjava.retrieval;
+
+import com.aimitjava.document.Document;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Ein Min-Heap aus IDs und Scores in primitiven Arrays. Die Wurzel ist der Eintrag mit dem kleinsten Score.
+ */
+final class ScoreHeap {
+
+    private int[] ids;
+    private float[] scores;
+    private int size;
+
+    ScoreHeap(int capacity) {
+        this.ids = new int[Math.max(capacity, 1)];
+        this.scores = new float[Math.max(capacity, 1)];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int peekId() {
+        return ids[0];
+    }
+
+    float peekScore() {
+        return scores[0];
+    }
+
+    void push(int id, float score) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= score) {
+                break;
+            }
+            ids[i] = ids[parent];
+            scores[i] = scores[parent];
+            i = parent;
+        }
+        ids[i] = id;
+        scores[i] = score;
+    }
+
+    /**
+     * Entfernt den Eintrag mit dem kleinsten Score.
+     *
+     * @return Dessen ID
+     */
+    int pop() {
+        int top = ids[0];
+        size--;
+        if (size > 0) {
+            siftDown(ids[size], scores[size]);
+        }
+        return top;
+    }
+
+    /**
+     * Ersetzt den Eintrag mit dem kleinsten Score, ohne den Heap zu vergrößern.
+     */
+    void replaceTop(int id, float score) {
+        siftDown(id, score);
+    }
+
+    private void siftDown(int id, float score) {
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && scores[child + 1] < scores[child]) {
+                child++;
+            }
+            if (score <= scores[child]) {
+                break;
+            }
+            ids[i] = ids[child];
+            scores[i] = scores[child];
+            i = child;
+        }
+        ids[i] = id;
+        scores[i] = score;
+    }
+
+    /**
+     * Leert den Heap und gibt die Einträge absteigend nach Score als Treffer zurück.
+     */
+    List<SearchResult> drainDescending(IntFunction<Document> documents) {
+        SearchResult[] results = new SearchResult[size];
+        for (int i = results.length - 1; i >= 0; i--) {
+            float score = scores[0];
+            results[i] = new SearchResult(documents.apply(pop()), score);
+        }
+        return List.of(results);
+    }
+}
@@ -0,0 +1,12 @@
+package com.aimitjava.retrieval;
+
+import com.aimitjava.document.Document;
+
+/**
+ * Ein Treffer einer Vektorsuche.
+ *
+ * @param document Das gefundene Dokument
+ * @param score Das Skalarprodukt aus Anfrage- und Dokumentvektor, bei normierten Vektoren die Kosinus-Ähnlichkeit
+ */
+public record SearchResult(Document document, float score) {
+}
@@ -0,0 +1,40 @@
+package com.aimitjava.retrieval;
+
+import com.aimitjava.document.Document;
+
+import java.util.List;
+
+/**
+ * Ein Index über die Embeddings von Dokumenten, durchsucht nach dem größten Skalarprodukt.
+ * Für Kosinus-Ähnlichkeit müssen die Vektoren normiert sein, wie es {@link HashingEmbedder} liefert.
+ */
+public interface VectorIndex {
+
+    /**
+     * Nimmt ein Dokument mit seinem Embedding auf. Der Vektor wird kopiert.
+     *
+     * @param document Das Dokument
+     * @param embedding Das Embedding der Länge {@link #dimension()}
+     * @return Die fortlaufende ID im Index
+     */
+    int add(Document document, float[] embedding);
+
+    /**
+     * Sucht die ähnlichsten Dokumente.
+     *
+     * @param query Der Anfragevektor der Länge {@link #dimension()}
+     * @param k Die maximale Anzahl Treffer
+     * @return Die Treffer, absteigend nach Score sortiert
+     */
+    List<SearchResult> search(float[] query, int k);
+
+    /**
+     * @return Die Anzahl der Dokumente im Index
+     */
+    int size();
+
+    /**
+     * @return Die Länge der Vektoren
+     */
+    int dimension();
+}
@@ -0,0 +1,45 @@
+package com.aimitjava.retrieval;
+
+/**
+ * Skalarprodukte über primitive {@code float}-Arrays.
+ * <p>
+ * Die Schleife arbeitet mit vier unabhängigen Summen, damit die Additionen nicht aufeinander warten müssen
+ * und der JIT sie verschränken kann.
+ */
+final class VectorMath {
+
+    private VectorMath() {
+    }
+
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0;
+        float s1 = 0;
+        float s2 = 0;
+        float s3 = 0;
+        int i = 0;
+        int bound = length & ~3;
+        for (; i < bound; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Normiert den Vektor in-place auf Länge 1. Nullvektoren bleiben unverändert.
+     */
+    static void normalize(float[] vector) {
+        float norm = (float) Math.sqrt(dot(vector, 0, vector, 0, vector.length));
+        if (norm == 0) {
+            return;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] /= norm;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.aimitjava.retrieval;
+
+import java.util.Arrays;
+
+/**
+ * Speichert Vektoren fester Länge hintereinander in {@code float[]}-Blöcken zu je {@value #BLOCK_SIZE} Vektoren.
+ * Schreiben muss vom Aufrufer synchronisiert werden; ein Block wird vor der Veröffentlichung der neuen
+ * Anzahl beschrieben, sodass Leser bis zur gelesenen Anzahl vollständige Vektoren sehen.
+ */
+final class VectorStore {
+
+    static final int BLOCK_SHIFT = 10;
+    static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    private final int dimension;
+    private volatile float[][] blocks = new float[0][];
+
+    VectorStore(int dimension) {
+        if (dimension < 1) {
+            throw new IllegalArgumentException("dimension must be at least 1: " + dimension);
+        }
+        this.dimension = dimension;
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    void set(int id, float[] vector) {
+        int block = id >>> BLOCK_SHIFT;
+        float[][] current = blocks;
+        if (block >= current.length) {
+            current = Arrays.copyOf(current, block + 1);
+            current[block] = new float[BLOCK_SIZE * dimension];
+            blocks = current;
+        }
+        System.arraycopy(vector, 0, current[block], (id & BLOCK_MASK) * dimension, dimension);
+    }
+
+    float[][] blocks() {
+        return blocks;
+    }
+
+    float dot(int id, float[] query) {
+        return VectorMath.dot(blocks[id >>> BLOCK_SHIFT], (id & BLOCK_MASK) * dimension, query, 0, dimension);
+    }
+
+    float dot(int a, int b) {
+        float[][] current = blocks;
+        return VectorMath.dot(current[a >>> BLOCK_SHIFT], (a & BLOCK_MASK) * dimension,
+                current[b >>> BLOCK_SHIFT], (b & BLOCK_MASK) * dimension, dimension);
+    }
+
+    void checkDimension(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected a vector of dimension " + dimension + " but got " + vector.length);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.aimitjava.chain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedExecutorTest {
+
+    /**
+     * Ein Executor, der Aufgaben sammelt und erst auf Aufruf ausführt oder ablehnt.
+     */
+    private static class ManualExecutor implements Executor {
+        private final List<Runnable> accepted = new ArrayList<>();
+        private final AtomicBoolean rejecting = new AtomicBoolean();
+
+        @Override
+        public void execute(Runnable command) {
+            if (rejecting.get()) {
+                throw new RejectedExecutionException("Executor ist beendet");
+            }
+            accepted.add(command);
+        }
+
+        void runNext() {
+            accepted.remove(0).run();
+        }
+    }
+
+    @Test
+    void testLimitsConcurrency() {
+        // Vorbereiten
+        ManualExecutor delegate = new ManualExecutor();
+        BoundedExecutor executor = new BoundedExecutor(delegate, 2);
+        List<String> ran = new ArrayList<>();
+
+        // Ausführen
+        for (int i = 0; i < 3; i++) {
+            String name = "Aufgabe " + i;
+            executor.execute(() -> ran.add(name));
+        }
+
+        // Überprüfen
+        assertEquals(2, delegate.accepted.size());
+        assertEquals(1, executor.pendingCount());
+        delegate.runNext();
+        assertEquals(List.of("Aufgabe 0"), ran);
+        assertEquals(2, delegate.accepted.size());
+        assertEquals(0, executor.pendingCount());
+    }
+
+    @Test
+    void testRejectedTaskIsRemovedAndRethrown() {
+        ManualExecutor delegate = new ManualExecutor();
+        BoundedExecutor executor = new BoundedExecutor(delegate, 1);
+        delegate.rejecting.set(true);
+
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+
+        assertEquals(0, executor.pendingCount());
+        delegate.rejecting.set(false);
+        executor.execute(() -> { });
+        assertEquals(1, delegate.accepted.size());
+    }
+
+    @Test
+    void testQueuedTasksFailWhenDelegateRejectsAfterFirstTask() {
+        ManualExecutor delegate = new ManualExecutor();
+        BoundedExecutor executor = new BoundedExecutor(delegate, 1);
+        CompletableFuture<String> first = executor.supply(() -> "erste");
+        CompletableFuture<String> second = executor.supply(() -> "zweite");
+        CompletableFuture<String> third = executor.supply(() -> "dritte");
+
+        // Der Executor wird nach der ersten Aufgabe beendet; die wartenden dürfen nicht hängen bleiben
+        delegate.rejecting.set(true);
+        delegate.runNext();
+
+        assertEquals("erste", first.join());
+        for (CompletableFuture<String> future : List.of(second, third)) {
+            CompletionException error = assertThrows(CompletionException.class, future::join);
+            assertTrue(error.getCause() instanceof RejectedExecutionException, "cause " + error.getCause());
+        }
+        assertEquals(0, executor.pendingCount());
+    }
+
+    @Test
+    void testRejectionReachesTasksOfNestedExecutor() {
+        ManualExecutor delegate = new ManualExecutor();
+        BoundedExecutor shared = new BoundedExecutor(delegate, 1);
+        BoundedExecutor inner = new BoundedExecutor(shared, 2);
+        CompletableFuture<String> first = inner.supply(() -> "erste");
+        CompletableFuture<String> second = inner.supply(() -> "zweite");
+
+        delegate.rejecting.set(true);
+        delegate.runNext();
+
+        assertEquals("erste", first.join());
+        assertThrows(CompletionException.class, second::join);
+        assertEquals(0, shared.pendingCount());
+        assertEquals(0, inner.pendingCount());
+    }
+
+    @Test
+    void testSupplierFailureCompletesFuture() {
+        ManualExecutor delegate = new ManualExecutor();
+        BoundedExecutor executor = new BoundedExecutor(delegate, 1);
+        CompletableFuture<String> future = executor.supply(() -> {
+            throw new IllegalStateException("Fehler");
+        });
+
+        delegate.runNext();
+
+        CompletionException error = assertThrows(CompletionException.class, future::join);
+        assertTrue(error.getCause() instanceof IllegalStateException);
+    }
+}
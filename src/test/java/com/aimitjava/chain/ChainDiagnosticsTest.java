@@ -0,0 +1,176 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+import com.aimitjava.model.ChatLanguageModel;
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+class ChainDiagnosticsTest {
+
+    /**
+     * Dokument, das zählt, wie oft sein Text gelesen wird.
+     */
+    private static class CountingDocument extends Document {
+        private final AtomicInteger reads = new AtomicInteger();
+
+        CountingDocument(String text) {
+            super(text);
+        }
+
+        @Override
+        public String text() {
+            reads.incrementAndGet();
+            return super.text();
+        }
+    }
+
+    /**
+     * Variablenwert, der zählt, wie oft er in einen String umgewandelt wird.
+     */
+    private static class CountingValue {
+        private final AtomicInteger conversions = new AtomicInteger();
+
+        @Override
+        public String toString() {
+            conversions.incrementAndGet();
+            return "Wert";
+        }
+    }
+
+    private static Logger debugLogger() {
+        Logger logger = Mockito.mock(Logger.class);
+        when(logger.isDebugEnabled()).thenReturn(true);
+        return logger;
+    }
+
+    @Test
+    void testAbbreviateKeepsShortText() {
+        ChainDiagnostics diagnostics = new ChainDiagnostics(debugLogger(), 10, 1);
+
+        assertEquals("kurz", diagnostics.abbreviate("kurz"));
+    }
+
+    @Test
+    void testAbbreviateAddsLengthAndHash() {
+        ChainDiagnostics diagnostics = new ChainDiagnostics(debugLogger(), 5, 1);
+        String text = "abcdefghijklmnop";
+
+        String abbreviated = diagnostics.abbreviate(text);
+
+        assertTrue(abbreviated.startsWith("abcde… [16 Zeichen, hash="));
+        assertTrue(abbreviated.contains(Long.toHexString(ChainDiagnostics.hash(text))));
+        assertNotEquals(ChainDiagnostics.hash(text), ChainDiagnostics.hash("abcdefghijklmnoq"));
+    }
+
+    @Test
+    void testAbbreviateVariablesPerEntryAndBounded() {
+        ChainDiagnostics diagnostics = new ChainDiagnostics(debugLogger(), 8, 1);
+        Map<String, Object> variables = new LinkedHashMap<>();
+        variables.put("a", "x".repeat(1_000_000));
+        variables.put("b", 1);
+        variables.put("c", new CountingValue());
+
+        String abbreviated = diagnostics.abbreviate(variables);
+
+        assertTrue(abbreviated.startsWith("{a=xxxxxxxx… [1000000 Zeichen, hash="), abbreviated);
+        assertTrue(abbreviated.endsWith("… [2 weitere Variablen]}"), abbreviated);
+        assertEquals(0, ((CountingValue) variables.get("c")).conversions.get());
+        assertEquals("{b=1}", diagnostics.abbreviate(Map.of("b", 1)));
+    }
+
+    @Test
+    void testSampling() {
+        ChainDiagnostics diagnostics = new ChainDiagnostics(debugLogger(), 0, 3);
+
+        int sampled = 0;
+        for (int i = 0; i < 9; i++) {
+            if (diagnostics.sample()) {
+                sampled++;
+            }
+        }
+
+        assertEquals(3, sampled);
+    }
+
+    @Test
+    void testNoSamplingWhenDebugDisabled() {
+        Logger logger = Mockito.mock(Logger.class);
+        ChainDiagnostics diagnostics = new ChainDiagnostics(logger, 0, 1);
+
+        assertFalse(diagnostics.sample());
+    }
+
+    @Test
+    void testDisabledDebugDoesNotAllocate() {
+        ChainDiagnostics diagnostics = new ChainDiagnostics(LoggerFactory.getLogger(StuffDocumentsChain.class), 100, 1);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        int sampled = 0;
+        for (int i = 0; i < 10_000; i++) {
+            sampled += diagnostics.sample() ? 1 : 0;
+        }
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 100_000; i++) {
+            sampled += diagnostics.sample() ? 1 : 0;
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertEquals(0, sampled);
+        assertTrue(allocated < 1024, "allocated " + allocated + " bytes");
+    }
+
+    @Test
+    void testChainDoesNoLoggingWorkWhenDebugDisabled() {
+        ChatLanguageModel mockModel = Mockito.mock(ChatLanguageModel.class);
+        when(mockModel.generate(Mockito.anyString())).thenReturn(
+                new ChatLanguageModel.Response<>("Testantwort", new TokenUsage(1, 1, 2))
+        );
+        StuffDocumentsChain chain = new StuffDocumentsChain(mockModel, "Test prompt: {context}");
+        CountingDocument document = new CountingDocument("Dokument 1");
+        CountingValue unused = new CountingValue();
+        Map<String, Object> variables = new HashMap<>(Map.of("unbenutzt", unused));
+
+        chain.invoke(List.of(document), variables);
+
+        // Nur der Formatter liest den Text; die nicht verwendete Variable wird nie formatiert
+        assertEquals(1, document.reads.get());
+        assertEquals(0, unused.conversions.get());
+    }
+
+    @Test
+    void testDisabledDebugInvokeDoesNotAllocateForDiagnostics() {
+        ChatLanguageModel.Response<String> response = new ChatLanguageModel.Response<>("Testantwort",
+                new TokenUsage(1, 1, 2));
+        StuffDocumentsChain chain = new StuffDocumentsChain(prompt -> response, "Test prompt: {context}");
+        List<Document> documents = List.of(new Document("Dokument 1"), new Document("Dokument 2"));
+        // Mit Debug-Logging würde allein die Darstellung der Variablen diesen Wert kopieren
+        Map<String, Object> variables = Map.of("unbenutzt", "x".repeat(1_000_000));
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        for (int i = 0; i < 1_000; i++) {
+            chain.invoke(documents, variables);
+        }
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 1_000; i++) {
+            chain.invoke(documents, variables);
+        }
+        long perInvoke = (threads.getThreadAllocatedBytes(thread) - before) / 1_000;
+
+        assertTrue(perInvoke < 16 * 1024, "allocated " + perInvoke + " bytes per invoke");
+    }
+}
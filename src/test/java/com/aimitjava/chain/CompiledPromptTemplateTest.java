@@ -0,0 +1,57 @@
+package com.aimitjava.chain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledPromptTemplateTest {
+
+    @Test
+    void testRenderReplacesAllPlaceholders() {
+        CompiledPromptTemplate template = CompiledPromptTemplate.compile("Frage: {question}\n\n{context}\n\n{question}?");
+
+        String result = template.render(Map.of("question", "Wer?", "context", "Dokument 1"));
+
+        assertEquals("Frage: Wer?\n\nDokument 1\n\nWer??", result);
+        assertEquals(List.of("question", "context"), template.variableNames());
+    }
+
+    @Test
+    void testNonPlaceholderBracesStayLiteral() {
+        CompiledPromptTemplate template = CompiledPromptTemplate.compile("Antworte als {\"answer\": \"...\"} {} { x } {context}");
+
+        assertEquals(List.of("context"), template.variableNames());
+        assertEquals("Antworte als {\"answer\": \"...\"} {} { x } Text", template.render(Map.of("context", "Text")));
+    }
+
+    @Test
+    void testValuesAreNotSubstitutedAgain() {
+        CompiledPromptTemplate template = CompiledPromptTemplate.compile("{context} / {name}");
+
+        String result = template.render(Map.of("context", "enthält {name}", "name", "Jesse"));
+
+        assertEquals("enthält {name} / Jesse", result);
+    }
+
+    @Test
+    void testMissingVariableIsReported() {
+        CompiledPromptTemplate template = CompiledPromptTemplate.compile("{context} {question}");
+
+        Exception exception = assertThrows(IllegalArgumentException.class,
+                () -> template.render(Map.of("context", "Text")));
+
+        assertTrue(exception.getMessage().contains("question"));
+    }
+
+    @Test
+    void testUnusedVariables() {
+        CompiledPromptTemplate template = CompiledPromptTemplate.compile("{context}");
+
+        assertEquals(Set.of("extra"), template.unusedVariables(Map.of("context", "Text", "extra", 1)));
+        assertTrue(template.unusedVariables(Map.of("context", "Text")).isEmpty());
+    }
+}
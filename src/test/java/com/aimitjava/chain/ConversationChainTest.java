@@ -0,0 +1,269 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+import com.aimitjava.model.ChatLanguageModel;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConversationChainTest {
+
+    private static final String TEMPLATE = "Kontext:\n{context}\n\nVerlauf:\n{history}\n\nFrage: {question}";
+
+    /**
+     * Eine manuell verstellbare Uhr für die Inaktivität der Sitzungen.
+     */
+    private static class MutableClock extends Clock {
+        private volatile long millis;
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+    }
+
+    /**
+     * Beantwortet Fragen mit "Antwort N" und Zusammenfassungsaufträge mit "Zusammenfassung N".
+     */
+    private static class RecordingModel implements ChatLanguageModel {
+        private final List<String> prompts = new ArrayList<>();
+        private int answers;
+        private int summaries;
+
+        @Override
+        public synchronized Response<String> generate(String prompt) {
+            prompts.add(prompt);
+            String content = prompt.startsWith("Fasse") ? "Zusammenfassung " + ++summaries : "Antwort " + ++answers;
+            return new Response<>(content, null);
+        }
+    }
+
+    @Test
+    void testReusesUnchangedDocumentsAcrossTurns() {
+        // Vorbereiten
+        RecordingModel model = new RecordingModel();
+        AtomicInteger formatted = new AtomicInteger();
+        ConversationChain chain = new ConversationChain.Builder(model, TEMPLATE)
+                .documentFormatter(document -> {
+                    formatted.incrementAndGet();
+                    return "- " + document.text();
+                })
+                .documentSeparator("\n")
+                .build();
+        Document a = new Document("Jesse mag Rot");
+        Document b = new Document("Jamal mag Grün");
+        Document c = new Document("Kim mag Blau");
+
+        // Ausführen
+        chain.invoke("s1", "Wer mag Rot?", List.of(a, b));
+        chain.invoke("s1", "Und Grün?", List.of(new Document("Jesse mag Rot"), b));
+        chain.invoke("s1", "Und Blau?", List.of(b, c));
+
+        // Überprüfen: a und b einmal formatiert, die gleiche Liste als Kontext übernommen, nur c neu
+        assertEquals(3, formatted.get());
+        ConversationChain.Stats stats = chain.stats();
+        assertEquals(1, stats.reusedContexts());
+        assertEquals(3, stats.formattedSegments());
+        assertEquals(3, stats.reusedSegments());
+        assertTrue(model.prompts.get(2).startsWith("Kontext:\n- Jamal mag Grün\n- Kim mag Blau\n"));
+        assertTrue(model.prompts.get(2).contains("Nutzer: Wer mag Rot?\nAssistent: Antwort 1"));
+        assertTrue(model.prompts.get(2).endsWith("Frage: Und Blau?"));
+    }
+
+    @Test
+    void testDocumentsWithSameTextButDifferentMetadataAreDistinct() {
+        RecordingModel model = new RecordingModel();
+        ConversationChain chain = new ConversationChain.Builder(model, TEMPLATE)
+                .documentFormatter(document -> document.getMetadata("source") + ": " + document.text())
+                .build();
+
+        chain.invoke("s1", "F1", List.of(new Document("Text", Map.of("source", "a"))));
+        chain.invoke("s1", "F2", List.of(new Document("Text", Map.of("source", "b")),
+                new Document("Text", Map.of("source", "a"))));
+
+        assertTrue(model.prompts.get(1).startsWith("Kontext:\nb: Text\n\na: Text\n"));
+        assertEquals(1, chain.stats().reusedSegments());
+    }
+
+    @Test
+    void testHistoryIsSummarizedWhenOverBudget() {
+        RecordingModel model = new RecordingModel();
+        ConversationChain chain = new ConversationChain.Builder(model, TEMPLATE)
+                .tokenEstimator(TokenEstimator.charsPerToken(1))
+                .maxHistoryTokens(120)
+                .keepRecentTurns(1)
+                .build();
+
+        for (int i = 1; i <= 5; i++) {
+            chain.invoke("s1", "Frage " + i, List.of());
+        }
+
+        // Jede Runde hat etwa 40 Zeichen; ab der dritten wird zusammengefasst
+        assertTrue(chain.stats().summarizations() >= 1);
+        String summaryPrompt = model.prompts.stream().filter(p -> p.startsWith("Fasse")).findFirst().orElseThrow();
+        assertTrue(summaryPrompt.contains("Nutzer: Frage 1\nAssistent: Antwort 1"));
+        String history = chain.history("s1");
+        assertTrue(history.startsWith("Zusammenfassung des bisherigen Gesprächs: Zusammenfassung"), history);
+        assertTrue(history.endsWith("Nutzer: Frage 5\nAssistent: Antwort 5"), history);
+        assertTrue(history.length() <= 120 + 80, history);
+    }
+
+    @Test
+    void testFailedSummaryDropsOldestTurns() {
+        ChatLanguageModel model = prompt -> {
+            if (prompt.startsWith("Fasse")) {
+                throw new IllegalStateException("Modell nicht erreichbar");
+            }
+            return new ChatLanguageModel.Response<>("ok", null);
+        };
+        ConversationChain chain = new ConversationChain.Builder(model, TEMPLATE)
+                .tokenEstimator(TokenEstimator.charsPerToken(1))
+                .maxHistoryTokens(50)
+                .keepRecentTurns(1)
+                .build();
+
+        for (int i = 1; i <= 4; i++) {
+            assertEquals("ok", chain.invoke("s1", "Frage " + i, List.of()));
+        }
+
+        assertEquals("Nutzer: Frage 4\nAssistent: ok", chain.history("s1"));
+    }
+
+    @Test
+    void testIdleSessionsAreEvicted() {
+        MutableClock clock = new MutableClock();
+        RecordingModel model = new RecordingModel();
+        ConversationChain chain = new ConversationChain.Builder(model, TEMPLATE)
+                .idleTimeout(Duration.ofMinutes(10))
+                .clock(clock)
+                .build();
+
+        chain.invoke("alt", "F", List.of());
+        clock.millis = Duration.ofMinutes(8).toMillis();
+        chain.invoke("neu", "F", List.of());
+        assertEquals(2, chain.sessionCount());
+
+        // Die automatische Bereinigung läuft beim nächsten Aufruf nach Ablauf von idleTimeout / 4
+        clock.millis = Duration.ofMinutes(15).toMillis();
+        chain.invoke("neu", "F2", List.of());
+
+        assertEquals(1, chain.sessionCount());
+        assertEquals("", chain.history("alt"));
+        assertEquals(1, chain.stats().evictedSessions());
+    }
+
+    @Test
+    void testMaxSessionsEvictsLeastRecentlyUsed() {
+        MutableClock clock = new MutableClock();
+        ConversationChain chain = new ConversationChain.Builder(new RecordingModel(), TEMPLATE)
+                .maxSessions(10)
+                .clock(clock)
+                .build();
+
+        for (int i = 0; i < 11; i++) {
+            clock.millis = i;
+            chain.invoke("s" + i, "F", List.of());
+        }
+
+        assertTrue(chain.sessionCount() <= 10);
+        assertEquals("", chain.history("s0"));
+        assertFalse(chain.history("s10").isEmpty());
+    }
+
+    @Test
+    void testMaxSessionsEvictsExactlyTheOldest() {
+        MutableClock clock = new MutableClock();
+        ConversationChain chain = new ConversationChain.Builder(new RecordingModel(), TEMPLATE)
+                .maxSessions(20)
+                .clock(clock)
+                .build();
+
+        // Ein Aufruf zu viel entfernt die eine überzählige und zwei weitere (ein Zehntel von 20) Sitzungen
+        for (int i = 0; i < 21; i++) {
+            clock.millis = 1_000 - i;
+            chain.invoke("s" + i, "F", List.of());
+        }
+
+        assertEquals(18, chain.sessionCount());
+        for (int i = 0; i < 18; i++) {
+            assertFalse(chain.history("s" + i).isEmpty(), "s" + i);
+        }
+    }
+
+    @Test
+    void testSessionsDoNotBlockEachOther() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ChatLanguageModel model = prompt -> {
+            if (prompt.contains("Frage: warten")) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return new ChatLanguageModel.Response<>("ok", null);
+        };
+        ConversationChain chain = new ConversationChain.Builder(model, TEMPLATE).build();
+
+        Thread slow = new Thread(() -> chain.invoke("a", "warten", List.of()));
+        slow.start();
+        try {
+            blocked.await();
+            assertEquals("ok", chain.invoke("b", "sofort", List.of()));
+        } finally {
+            release.countDown();
+            slow.join();
+        }
+        assertFalse(chain.history("a").isEmpty());
+    }
+
+    @Test
+    void testEndSessionStartsFresh() {
+        RecordingModel model = new RecordingModel();
+        ConversationChain chain = new ConversationChain.Builder(model, TEMPLATE).build();
+
+        chain.invoke("s1", "Erste Frage", List.of());
+        assertTrue(chain.endSession("s1"));
+        assertFalse(chain.endSession("s1"));
+        chain.invoke("s1", "Zweite Frage", List.of());
+
+        assertFalse(model.prompts.get(1).contains("Erste Frage"));
+    }
+
+    @Test
+    void testInvalidTemplate() {
+        RecordingModel model = new RecordingModel();
+        assertThrows(IllegalArgumentException.class,
+                () -> new ConversationChain.Builder(model, "{context} {question}").build());
+        assertThrows(IllegalArgumentException.class,
+                () -> new ConversationChain.Builder(model, TEMPLATE).summaryPrompt("{summary}").build());
+    }
+}
@@ -0,0 +1,152 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+import com.aimitjava.metrics.ChainListener;
+import com.aimitjava.metrics.ChainMetrics;
+import com.aimitjava.model.ChatLanguageModel;
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentDeduplicatorTest {
+
+    // Ein Token pro Zeichen, damit die Einsparung im Test leicht nachvollziehbar ist
+    private static final TokenEstimator ONE_PER_CHAR = String::length;
+
+    private static final ChatLanguageModel ECHO_MODEL =
+            prompt -> new ChatLanguageModel.Response<>(prompt, new TokenUsage(1, 1, 2));
+
+    private static final String TEXT = "Die Bahn fährt heute wegen Bauarbeiten zwischen Köln und Bonn nur im Stundentakt, "
+            + "Reisende sollten mehr Zeit einplanen und die Verbindungen vorab in der App prüfen, "
+            + "weil auch Ersatzbusse nur eingeschränkt verfügbar sind und am Wochenende zusätzlich "
+            + "einzelne Regionalzüge ausfallen, was besonders Pendler und Ausflügler betrifft.";
+
+    private static DocumentDeduplicator deduplicator(DocumentDeduplicator.NearDuplicates nearDuplicates,
+                                                     double threshold) {
+        return new DocumentDeduplicator(nearDuplicates, threshold, ONE_PER_CHAR, Document::text, "|");
+    }
+
+    @Test
+    void testExactDuplicatesAreDropped() {
+        // Vorbereiten
+        Document a = new Document("aaaa", Map.of("source", "x"));
+        Document b = new Document("bb");
+        Document copy = new Document("aaaa", Map.of("source", "y"));
+
+        // Ausführen
+        DocumentDeduplicator.Result result = deduplicator(DocumentDeduplicator.NearDuplicates.NONE, 1)
+                .deduplicate(List.of(a, b, copy, b));
+
+        // Überprüfen
+        assertEquals(List.of(a, b), result.kept());
+        assertEquals(List.of(copy, b), result.dropped());
+        assertEquals(2, result.exactDuplicates());
+        assertEquals(0, result.nearDuplicates());
+        // Text plus Separator je verworfenem Dokument
+        assertEquals(5 + 3, result.savedTokens());
+    }
+
+    @Test
+    void testNearDuplicatesWithSimHash() {
+        Document original = new Document(TEXT);
+        Document edited = new Document(TEXT.replace("heute", "morgen"));
+        Document other = new Document("Ein völlig anderes Dokument über das Wetter an der Nordsee im Herbst.");
+
+        DocumentDeduplicator.Result result = deduplicator(DocumentDeduplicator.NearDuplicates.SIMHASH, 0.8)
+                .deduplicate(List.of(original, edited, other));
+
+        assertEquals(List.of(original, other), result.kept());
+        assertEquals(1, result.nearDuplicates());
+    }
+
+    @Test
+    void testNearDuplicatesWithMinHash() {
+        Document original = new Document(TEXT);
+        Document edited = new Document(TEXT.replace("heute", "morgen"));
+        Document other = new Document("Ein völlig anderes Dokument über das Wetter an der Nordsee im Herbst.");
+
+        DocumentDeduplicator.Result result = deduplicator(DocumentDeduplicator.NearDuplicates.MINHASH, 0.6)
+                .deduplicate(List.of(original, edited, other));
+
+        assertEquals(List.of(original, other), result.kept());
+        assertEquals(1, result.nearDuplicates());
+    }
+
+    @Test
+    void testShinglesIgnoreCaseAndPunctuation() {
+        assertArrayEquals(DocumentDeduplicator.shingles("Eins, zwei drei vier!"),
+                DocumentDeduplicator.shingles("eins zwei  DREI vier"));
+        assertEquals(1, DocumentDeduplicator.shingles("nur zwei").length);
+        assertEquals(0, DocumentDeduplicator.shingles(" - ").length);
+    }
+
+    @Test
+    void testSignatureIsCached() {
+        DocumentDeduplicator deduplicator = deduplicator(DocumentDeduplicator.NearDuplicates.MINHASH, 0.8);
+        Document document = new Document(TEXT);
+
+        assertSame(deduplicator.signature(document), deduplicator.signature(document));
+        assertEquals(DocumentDeduplicator.MINHASH_SIZE, deduplicator.signature(document).length);
+        // Der Schlüssel ist der Inhalt, nicht die Instanz
+        assertSame(deduplicator.signature(document), deduplicator.signature(new Document(TEXT)));
+        assertNotSame(deduplicator.signature(document),
+                deduplicator.signature(new Document(TEXT, Map.of("source", "x"))));
+    }
+
+    @Test
+    void testInvalidThreshold() {
+        assertThrows(IllegalArgumentException.class,
+                () -> deduplicator(DocumentDeduplicator.NearDuplicates.SIMHASH, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> deduplicator(DocumentDeduplicator.NearDuplicates.SIMHASH, 1.5));
+    }
+
+    @Test
+    void testChainDropsDuplicatesBeforeStuffing() {
+        ChainMetrics metrics = new ChainMetrics();
+        List<DocumentDeduplicator.Result> results = new ArrayList<>();
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(ECHO_MODEL, "{context}")
+                .documentSeparator("|")
+                .tokenEstimator(ONE_PER_CHAR)
+                .deduplicate(true)
+                .deduplicationListener(results::add)
+                .listener(metrics)
+                .build();
+        List<Document> documents = List.of(new Document("a"), new Document("b"), new Document("a"));
+
+        assertEquals("a|b", chain.invoke(documents));
+        assertEquals("a|b", chain.invoke(documents.iterator()));
+        assertEquals("a|b", chain.invoke(documents.stream()));
+
+        assertEquals(3, results.size());
+        assertEquals(3, metrics.deduplicatedDocuments());
+        assertEquals(6, metrics.deduplicationSavedTokens());
+        assertEquals(3, metrics.stage(ChainListener.Stage.DEDUPLICATE).count());
+    }
+
+    @Test
+    void testDuplicatesDoNotUseTokenBudget() {
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(ECHO_MODEL, "{context}")
+                .documentSeparator("|")
+                .tokenEstimator(ONE_PER_CHAR)
+                .maxContextTokens(5)
+                .deduplicate(true)
+                .build();
+
+        assertEquals("aa|bb", chain.invoke(List.of(new Document("aa"), new Document("aa"), new Document("bb"))));
+    }
+
+    @Test
+    void testDeduplicationIsOffByDefault() {
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(ECHO_MODEL, "{context}")
+                .documentSeparator("|")
+                .build();
+
+        assertEquals("a|a", chain.invoke(List.of(new Document("a"), new Document("a"))));
+    }
+}
@@ -0,0 +1,157 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+import com.aimitjava.model.ChatLanguageModel;
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+class DocumentPackerTest {
+
+    // Ein Token pro Zeichen, damit die Budgets im Test leicht nachvollziehbar sind
+    private static final TokenEstimator ONE_PER_CHAR = String::length;
+
+    private static Document doc(String text, double score) {
+        return new Document(text, Map.of("score", score));
+    }
+
+    private static DocumentPacker packer(int maxTokens, DocumentPacker.Policy policy) {
+        return new DocumentPacker(maxTokens, policy, "score", ONE_PER_CHAR, Document::text, "");
+    }
+
+    @Test
+    void testEverythingFits() {
+        List<Document> docs = List.of(doc("aaaa", 1), doc("bbbb", 2));
+
+        DocumentPacker.Result result = packer(8, DocumentPacker.Policy.IN_ORDER).pack(docs);
+
+        assertEquals(docs, result.kept());
+        assertFalse(result.hasDropped());
+        assertEquals(8, result.usedTokens());
+    }
+
+    @Test
+    void testInOrderTruncation() {
+        Document a = doc("aaaa", 1);
+        Document b = doc("bbbbbb", 5);
+        Document c = doc("cc", 9);
+
+        DocumentPacker.Result result = packer(8, DocumentPacker.Policy.IN_ORDER).pack(List.of(a, b, c));
+
+        assertEquals(List.of(a), result.kept());
+        assertEquals(List.of(b, c), result.dropped());
+    }
+
+    @Test
+    void testHighestScoreFirstKeepsInputOrder() {
+        Document a = doc("aaaa", 1);
+        Document b = doc("bbbbbb", 5);
+        Document c = doc("cc", 9);
+
+        DocumentPacker.Result result = packer(8, DocumentPacker.Policy.HIGHEST_SCORE_FIRST).pack(List.of(a, b, c));
+
+        assertEquals(List.of(b, c), result.kept());
+        assertEquals(List.of(a), result.dropped());
+        assertEquals(8, result.usedTokens());
+    }
+
+    @Test
+    void testKnapsackMaximizesScore() {
+        // Greedy nach Score würde nur "x" (Score 10, 9 Tokens) wählen; zusammen bringen a+b+c mehr
+        Document x = doc("xxxxxxxxx", 10);
+        Document a = doc("aaa", 4);
+        Document b = doc("bbb", 4);
+        Document c = doc("ccc", 4);
+
+        DocumentPacker.Result result = packer(10, DocumentPacker.Policy.KNAPSACK).pack(List.of(x, a, b, c));
+
+        assertEquals(List.of(a, b, c), result.kept());
+        assertEquals(List.of(x), result.dropped());
+    }
+
+    @Test
+    void testKnapsackWithoutScoresFillsBudget() {
+        Document a = new Document("aaaaaa");
+        Document b = new Document("bbbbb");
+        Document c = new Document("cccc");
+
+        DocumentPacker.Result result = packer(9, DocumentPacker.Policy.KNAPSACK).pack(List.of(a, b, c));
+
+        assertEquals(List.of(b, c), result.kept());
+        assertEquals(9, result.usedTokens());
+    }
+
+    @Test
+    void testKnapsackFillsRemainingBudgetWithUnscoredDocuments() {
+        Document a = new Document("aaa");
+        Document x = doc("xxxx", 5);
+        Document b = new Document("bbb");
+        Document c = new Document("ccccc");
+
+        DocumentPacker.Result result = packer(10, DocumentPacker.Policy.KNAPSACK).pack(List.of(a, x, b, c));
+
+        assertEquals(List.of(a, x, b), result.kept());
+        assertEquals(List.of(c), result.dropped());
+        assertEquals(10, result.usedTokens());
+    }
+
+    @Test
+    void testSeparatorTokensAreCounted() {
+        DocumentPacker packer = new DocumentPacker(9, DocumentPacker.Policy.IN_ORDER, "score",
+                ONE_PER_CHAR, Document::text, " | ");
+
+        DocumentPacker.Result result = packer.pack(List.of(new Document("aaa"), new Document("bbb"), new Document("c")));
+
+        assertEquals(2, result.kept().size());
+        assertEquals(9, result.usedTokens());
+    }
+
+    @Test
+    void testEstimateIsCachedPerDocument() {
+        AtomicInteger calls = new AtomicInteger();
+        TokenEstimator countingEstimator = text -> {
+            calls.incrementAndGet();
+            return text.length();
+        };
+        DocumentPacker packer = new DocumentPacker(100, DocumentPacker.Policy.IN_ORDER, "score",
+                countingEstimator, Document::text, "");
+        List<Document> docs = List.of(new Document("aaa"), new Document("bbb"));
+
+        packer.pack(docs);
+        packer.pack(docs);
+        packer.pack(List.of(new Document("aaa")));
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void testChainReportsDroppedDocuments() {
+        ChatLanguageModel mockModel = Mockito.mock(ChatLanguageModel.class);
+        when(mockModel.generate(anyString())).thenReturn(
+                new ChatLanguageModel.Response<>("Testantwort", new TokenUsage(1, 1, 2))
+        );
+        List<DocumentPacker.Result> reports = new ArrayList<>();
+
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(mockModel, "Test prompt: {context}")
+                .documentSeparator("")
+                .tokenEstimator(ONE_PER_CHAR)
+                .maxContextTokens(20)
+                .packingListener(reports::add)
+                .build();
+
+        chain.invoke(List.of(new Document("Dokument 1"), new Document("Dokument 2"), new Document("Dokument 3")));
+
+        Mockito.verify(mockModel).generate("Test prompt: Dokument 1Dokument 2");
+        assertEquals(1, reports.size());
+        assertEquals(1, reports.get(0).dropped().size());
+    }
+}
@@ -0,0 +1,130 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+import com.aimitjava.model.ChatLanguageModel;
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FormattedDocumentCacheTest {
+
+    private static final ChatLanguageModel ECHO_MODEL =
+            prompt -> new ChatLanguageModel.Response<>(prompt, new TokenUsage(1, 1, 2));
+
+    @Test
+    void testFormatsEachDocumentOnce() {
+        // Vorbereiten
+        AtomicInteger calls = new AtomicInteger();
+        Function<Document, String> formatter = doc -> {
+            calls.incrementAndGet();
+            return "[" + doc.text() + "]";
+        };
+        FormattedDocumentCache cache = new FormattedDocumentCache.Builder().build();
+        Document document = new Document("Richtlinie");
+
+        // Ausführen
+        String first = cache.format(document, formatter);
+        String second = cache.format(new Document("Richtlinie"), formatter);
+
+        // Überprüfen
+        assertEquals("[Richtlinie]", first);
+        assertSame(first, second);
+        assertEquals(1, calls.get());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(0.5, cache.hitRate(), 1e-9);
+    }
+
+    @Test
+    void testMetadataAndFormatterArePartOfTheKey() {
+        FormattedDocumentCache cache = new FormattedDocumentCache.Builder().build();
+        Function<Document, String> withSource = doc -> doc.getMetadata("source") + ": " + doc.text();
+        Function<Document, String> upper = doc -> doc.text().toUpperCase();
+
+        assertEquals("a: text", cache.format(new Document("text", Map.of("source", "a")), withSource));
+        assertEquals("b: text", cache.format(new Document("text", Map.of("source", "b")), withSource));
+        assertEquals("TEXT", cache.format(new Document("text", Map.of("source", "b")), upper));
+        assertEquals(0, cache.hits());
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+        FormattedDocumentCache cache = new FormattedDocumentCache.Builder().maxEntries(2).stripes(1).build();
+        Function<Document, String> formatter = Document::text;
+        Document a = new Document("a");
+        Document b = new Document("b");
+        Document c = new Document("c");
+
+        cache.format(a, formatter);
+        cache.format(b, formatter);
+        cache.format(a, formatter);
+        cache.format(c, formatter);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+        cache.format(a, formatter);
+        assertEquals(2, cache.hits());
+        cache.format(b, formatter);
+        assertEquals(4, cache.misses());
+    }
+
+    @Test
+    void testSizeIsBoundedAcrossStripes() {
+        FormattedDocumentCache cache = new FormattedDocumentCache.Builder().maxEntries(100).stripes(8).build();
+
+        for (int i = 0; i < 1000; i++) {
+            cache.format(new Document("Dokument " + i), Document::text);
+        }
+
+        assertTrue(cache.size() <= 100);
+        assertEquals(1000 - cache.size(), cache.evictions());
+    }
+
+    @Test
+    void testConcurrentChainsShareCache() {
+        AtomicInteger calls = new AtomicInteger();
+        Function<Document, String> formatter = doc -> {
+            calls.incrementAndGet();
+            return doc.text();
+        };
+        FormattedDocumentCache cache = new FormattedDocumentCache.Builder().build();
+        StuffDocumentsChain first = new StuffDocumentsChain.Builder(ECHO_MODEL, "{context}")
+                .documentFormatter(formatter)
+                .documentSeparator("|")
+                .formattedDocumentCache(cache)
+                .build();
+        StuffDocumentsChain second = new StuffDocumentsChain.Builder(ECHO_MODEL, "Kontext: {context}")
+                .documentFormatter(formatter)
+                .documentSeparator("|")
+                .formattedDocumentCache(cache)
+                .build();
+        List<Document> documents = List.of(new Document("a"), new Document("b"), new Document("c"));
+
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(first.invokeAsync(documents));
+            futures.add(second.invokeAsync(documents));
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(i % 2 == 0 ? "a|b|c" : "Kontext: a|b|c", futures.get(i).join());
+        }
+        assertEquals(300, cache.hits() + cache.misses());
+        assertEquals(calls.get(), cache.misses());
+        assertTrue(cache.hitRate() > 0.5);
+    }
+
+    @Test
+    void testInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new FormattedDocumentCache.Builder().maxEntries(0).build());
+        assertThrows(IllegalArgumentException.class, () -> new FormattedDocumentCache.Builder().stripes(0).build());
+    }
+}
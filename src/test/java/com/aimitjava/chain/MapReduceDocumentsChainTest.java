@@ -0,0 +1,125 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+import com.aimitjava.model.ChatLanguageModel;
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MapReduceDocumentsChainTest {
+
+    /**
+     * Simuliertes Modell: "MAP:x" wird zu "m(x)", "REDUCE:a|b" zu "r(a|b)". Latenz und Parallelität werden gemessen.
+     */
+    private static class RecordingModel implements ChatLanguageModel {
+        private final List<String> prompts = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        @Override
+        public Response<String> generate(String prompt) {
+            prompts.add(prompt);
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            String answer = prompt.startsWith("MAP:")
+                    ? "m(" + prompt.substring(4) + ")"
+                    : "r(" + prompt.substring(7) + ")";
+            return new Response<>(answer, new TokenUsage(1, 1, 2));
+        }
+
+        long count(String prefix) {
+            return prompts.stream().filter(p -> p.startsWith(prefix)).count();
+        }
+    }
+
+    private static List<Document> documents(int count) {
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            documents.add(new Document("d" + i));
+        }
+        return documents;
+    }
+
+    @Test
+    void testSingleReduceWhenPartialsFit() {
+        RecordingModel model = new RecordingModel();
+        MapReduceDocumentsChain chain = new MapReduceDocumentsChain.Builder(model, "MAP:{context}", "REDUCE:{context}")
+                .documentSeparator("|")
+                .build();
+
+        String result = chain.invoke(documents(3));
+
+        assertEquals("r(m(d0)|m(d1)|m(d2))", result);
+        assertEquals(3, model.count("MAP:"));
+        assertEquals(1, model.count("REDUCE:"));
+    }
+
+    @Test
+    void testHierarchicalReduce() {
+        RecordingModel model = new RecordingModel();
+        MapReduceDocumentsChain chain = new MapReduceDocumentsChain.Builder(model, "MAP:{context}", "REDUCE:{context}")
+                .documentSeparator("|")
+                .reduceBatchSize(2)
+                .build();
+
+        String result = chain.invoke(documents(4));
+
+        assertEquals("r(r(m(d0)|m(d1))|r(m(d2)|m(d3)))", result);
+        assertEquals(4, model.count("MAP:"));
+        assertEquals(3, model.count("REDUCE:"));
+    }
+
+    @Test
+    void testMapBatchSizeAndVariables() {
+        RecordingModel model = new RecordingModel();
+        MapReduceDocumentsChain chain = new MapReduceDocumentsChain.Builder(model,
+                "MAP:{question} {context}", "REDUCE:{context}")
+                .documentSeparator(",")
+                .mapBatchSize(2)
+                .build();
+
+        String result = chain.invoke(documents(3), Map.of("question", "Q"));
+
+        assertEquals("r(m(Q d0,d1),m(Q d2))", result);
+    }
+
+    @Test
+    void testMapPhaseRunsInParallel() {
+        RecordingModel model = new RecordingModel();
+        MapReduceDocumentsChain chain = new MapReduceDocumentsChain.Builder(model, "MAP:{context}", "REDUCE:{context}")
+                .reduceBatchSize(8)
+                .parallelism(4)
+                .build();
+
+        chain.invoke(documents(32));
+
+        assertEquals(4, model.maxInFlight.get());
+        assertEquals(32, model.count("MAP:"));
+        // 32 Teilergebnisse -> 4 Gruppen -> 1 abschließender Aufruf
+        assertEquals(5, model.count("REDUCE:"));
+    }
+
+    @Test
+    void testMapFailurePropagates() {
+        ChatLanguageModel failingModel = prompt -> {
+            throw new IllegalStateException("Provider nicht erreichbar");
+        };
+        MapReduceDocumentsChain chain = new MapReduceDocumentsChain.Builder(failingModel, "{context}", "{context}")
+                .build();
+
+        assertThrows(IllegalStateException.class, () -> chain.invoke(documents(2)));
+    }
+}
@@ -0,0 +1,183 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+import com.aimitjava.model.ChatLanguageModel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelDocumentFormatterTest {
+
+    private static List<Document> documents(int count) {
+        List<Document> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            documents.add(new Document("Dokument " + i));
+        }
+        return documents;
+    }
+
+    private static Function<Document, String> slowFormatter(Set<Thread> threads) {
+        return document -> {
+            threads.add(Thread.currentThread());
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "[" + document.text() + "]";
+        };
+    }
+
+    @Test
+    void testPreservesOrderAcrossThreads() {
+        // Vorbereiten
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ParallelDocumentFormatter formatter = new ParallelDocumentFormatter(slowFormatter(threads), pool, 8);
+
+        // Ausführen
+        String[] parts = formatter.formatAll(documents(64));
+
+        // Überprüfen
+        for (int i = 0; i < 64; i++) {
+            assertEquals("[Dokument " + i + "]", parts[i]);
+        }
+        assertTrue(threads.size() > 1, "Nur " + threads.size() + " Thread verwendet");
+        pool.shutdown();
+    }
+
+    @Test
+    void testStaysSequentialBelowThreshold() {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ParallelDocumentFormatter formatter = new ParallelDocumentFormatter(slowFormatter(threads), pool, 8);
+
+        formatter.formatAll(documents(7));
+
+        assertEquals(Set.of(Thread.currentThread()), threads);
+        pool.shutdown();
+    }
+
+    @Test
+    void testFailureCarriesDocumentIndex() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ParallelDocumentFormatter formatter = new ParallelDocumentFormatter(document -> {
+            if (document.text().equals("Dokument 37")) {
+                throw new IllegalArgumentException("Ungültiges HTML");
+            }
+            return document.text();
+        }, pool, 2);
+
+        DocumentFormattingException e = assertThrows(DocumentFormattingException.class,
+                () -> formatter.formatAll(documents(100)));
+        assertEquals(37, e.documentIndex());
+        assertTrue(e.getCause() instanceof IllegalArgumentException);
+
+        // Auch unterhalb der Schwelle wird die Position gemeldet
+        DocumentFormattingException sequential = assertThrows(DocumentFormattingException.class,
+                () -> new ParallelDocumentFormatter(document -> {
+                    throw new IllegalStateException("kaputt");
+                }, pool, 100).formatAll(documents(3)));
+        assertEquals(0, sequential.documentIndex());
+        pool.shutdown();
+    }
+
+    @Test
+    void testErrorOnHelperThreadReachesCaller() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ParallelDocumentFormatter formatter = new ParallelDocumentFormatter(document -> {
+            if (document.text().equals("Dokument 37")) {
+                throw new StackOverflowError("zu tief verschachtelt");
+            }
+            return document.text();
+        }, pool, 2);
+
+        StackOverflowError e = assertThrows(StackOverflowError.class, () -> formatter.formatAll(documents(100)));
+        assertEquals("zu tief verschachtelt", e.getMessage());
+        pool.shutdown();
+    }
+
+    @Test
+    void testRejectingExecutorFallsBackToCaller() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        ParallelDocumentFormatter formatter = new ParallelDocumentFormatter(Document::text, executor, 2);
+
+        String[] parts = formatter.formatAll(documents(10));
+
+        assertEquals("Dokument 9", parts[9]);
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {}));
+    }
+
+    @Test
+    void testChainFormatsEachDocumentOnceWithBudget() {
+        AtomicInteger calls = new AtomicInteger();
+        ChatLanguageModel model = prompt -> new ChatLanguageModel.Response<>(prompt, null);
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(model, "{context}")
+                .documentFormatter(document -> {
+                    calls.incrementAndGet();
+                    return document.text().toUpperCase();
+                })
+                .documentSeparator("|")
+                .maxContextTokens(10)
+                .parallelFormatting(2)
+                .build();
+
+        String prompt = chain.invoke(documents(20));
+
+        assertEquals("DOKUMENT 0|DOKUMENT 1", prompt);
+        assertEquals(20, calls.get());
+    }
+
+    @Test
+    void testChainDoesNotReformatDroppedDuplicates() {
+        AtomicInteger calls = new AtomicInteger();
+        ChatLanguageModel model = prompt -> new ChatLanguageModel.Response<>(prompt, null);
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(model, "{context}")
+                .documentFormatter(document -> {
+                    calls.incrementAndGet();
+                    return document.text();
+                })
+                .documentSeparator("|")
+                .deduplicate(true)
+                .parallelFormatting(1)
+                .build();
+        Document a = new Document("a");
+
+        String prompt = chain.invoke(List.of(a, a, new Document("b")));
+
+        assertEquals("a|b", prompt);
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void testChainWrapsFormatterFailure() {
+        ChatLanguageModel model = prompt -> new ChatLanguageModel.Response<>(prompt, null);
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(model, "{context}")
+                .documentFormatter(document -> {
+                    if (document.text().endsWith("5")) {
+                        throw new IllegalStateException("Markdown-Fehler");
+                    }
+                    return document.text();
+                })
+                .parallelFormatting(4, new ForkJoinPool(2))
+                .build();
+
+        DocumentFormattingException e = assertThrows(DocumentFormattingException.class,
+                () -> chain.invoke(documents(10)));
+        assertEquals(5, e.documentIndex());
+        assertThrows(IllegalArgumentException.class,
+                () -> new StuffDocumentsChain.Builder(model, "{context}").parallelFormatting(-1).build());
+    }
+}
@@ -0,0 +1,179 @@
+package com.aimitjava.chain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordOutputParserTest {
+
+    enum Stimmung { POSITIV, NEUTRAL, NEGATIV }
+
+    record Quelle(String titel, int seite) {
+    }
+
+    record Bewertung(String zusammenfassung, Stimmung stimmung, double score, List<String> schlagworte,
+                     Optional<Quelle> quelle, boolean sicher) {
+    }
+
+    record Punkt(long x, long y) {
+        Punkt {
+            if (x < 0) {
+                throw new IllegalArgumentException("x darf nicht negativ sein");
+            }
+        }
+    }
+
+    @Test
+    void testParsesChunkedOutputAndStopsWhenAllFieldsArePresent() {
+        // Vorbereiten
+        String output = "Hier ist das Ergebnis:\n```json\n{\"zusammenfassung\": \"Gut \\\"erklärt\\\" \\u00e4\", "
+                + "\"stimmung\": \"positiv\", \"score\": 0.75, \"schlagworte\": [\"a\", \"b\"], "
+                + "\"quelle\": {\"titel\": \"Handbuch\", \"seite\": 12}, \"sicher\": true, \"extra\": 1}\n```\n"
+                + "Ich hoffe, das hilft!";
+        RecordOutputParser<Bewertung> parser = RecordOutputParser.of(Bewertung.class);
+
+        // Ausführen: in Stücken zu drei Zeichen, wie sie ein Streaming-Modell liefern könnte
+        Bewertung result;
+        int consumed = 0;
+        try (OutputParser.Decoder<Bewertung> decoder = parser.newDecoder()) {
+            boolean complete = false;
+            while (!complete && consumed < output.length()) {
+                int end = Math.min(consumed + 3, output.length());
+                complete = decoder.feed(output.subSequence(consumed, end));
+                consumed = end;
+            }
+            assertTrue(complete);
+            result = decoder.result();
+        }
+
+        // Überprüfen: vollständig, sobald "sicher" gelesen ist, noch vor "extra" und dem Text danach
+        assertTrue(consumed < output.indexOf("\"extra\"") + 3, "consumed " + consumed);
+        assertEquals("Gut \"erklärt\" ä", result.zusammenfassung());
+        assertEquals(Stimmung.POSITIV, result.stimmung());
+        assertEquals(0.75, result.score());
+        assertEquals(List.of("a", "b"), result.schlagworte());
+        assertEquals(Optional.of(new Quelle("Handbuch", 12)), result.quelle());
+        assertTrue(result.sicher());
+    }
+
+    @Test
+    void testOptionalFieldMayBeMissingWhenObjectEnds() {
+        RecordOutputParser<Bewertung> parser = RecordOutputParser.of(Bewertung.class);
+
+        Bewertung result = parser.parse("{\"zusammenfassung\": \"x\", \"stimmung\": \"NEUTRAL\", \"score\": 1, "
+                + "\"schlagworte\": [], \"sicher\": false}");
+
+        assertEquals(Optional.empty(), result.quelle());
+        assertEquals(1.0, result.score());
+        assertEquals(List.of(), result.schlagworte());
+    }
+
+    @Test
+    void testMissingRequiredFieldFails() {
+        RecordOutputParser<Punkt> parser = RecordOutputParser.of(Punkt.class);
+
+        OutputParsingException e = assertThrows(OutputParsingException.class, () -> parser.parse("{\"x\": 1}"));
+
+        assertTrue(e.getMessage().contains("'y'"), e.getMessage());
+    }
+
+    @Test
+    void testInvalidOutputFails() {
+        RecordOutputParser<Punkt> parser = RecordOutputParser.of(Punkt.class);
+
+        assertThrows(OutputParsingException.class, () -> parser.parse("Dazu kann ich nichts sagen."));
+        assertThrows(OutputParsingException.class, () -> parser.parse("{\"x\": 1, \"y\": }"));
+        assertThrows(OutputParsingException.class, () -> parser.parse("{\"x\": 1.5, \"y\": 2}"));
+        assertThrows(OutputParsingException.class, () -> parser.parse("{\"x\": 1, \"y\""));
+        assertThrows(OutputParsingException.class, () -> parser.parse("{\"x\": -1, \"y\": 2}"));
+        assertThrows(OutputParsingException.class, () -> RecordOutputParser.of(Bewertung.class)
+                .parse("{\"zusammenfassung\": \"x\", \"stimmung\": \"WÜTEND\", \"score\": 1, "
+                        + "\"schlagworte\": [], \"sicher\": false}"));
+    }
+
+    @Test
+    void testValidatorFailureUsesMessage() {
+        RecordOutputParser<Punkt> parser = RecordOutputParser.of(Punkt.class)
+                .withValidator(p -> p.x() <= p.y(), "x muss kleiner oder gleich y sein");
+
+        assertEquals(new Punkt(1, 2), parser.parse("{\"x\": 1, \"y\": 2}"));
+        OutputParsingException e = assertThrows(OutputParsingException.class,
+                () -> parser.parse("{\"x\": 3, \"y\": 2}"));
+        assertEquals("x muss kleiner oder gleich y sein", e.getMessage());
+    }
+
+    @Test
+    void testFormatInstructionsDescribeFields() {
+        String instructions = RecordOutputParser.of(Bewertung.class).formatInstructions();
+
+        assertTrue(instructions.contains("\"zusammenfassung\": <Text>"), instructions);
+        assertTrue(instructions.contains("\"stimmung\": <eines von \"POSITIV\", \"NEUTRAL\", \"NEGATIV\">"),
+                instructions);
+        assertTrue(instructions.contains("\"schlagworte\": <Liste von Text>"), instructions);
+        assertTrue(instructions.contains("\"seite\": <Ganzzahl>"), instructions);
+        assertTrue(instructions.contains("} oder null"), instructions);
+        assertSame(instructions, RecordOutputParser.of(Bewertung.class).formatInstructions());
+    }
+
+    @Test
+    void testDecodersAreReusedWithoutLeakingState() {
+        RecordOutputParser<Punkt> parser = RecordOutputParser.of(Punkt.class);
+
+        assertThrows(OutputParsingException.class, () -> parser.parse("{\"x\": 1, \"y\": \"a"));
+        Punkt result = parser.parse("{\"x\": 4, \"y\": 5}");
+
+        assertEquals(new Punkt(4, 5), result);
+        OutputParser.Decoder<Punkt> decoder = parser.newDecoder();
+        decoder.close();
+        assertThrows(IllegalStateException.class, () -> decoder.feed("{"));
+    }
+
+    @Test
+    void testRejectsUnsupportedTypes() {
+        record MitObjekt(Object wert) {
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> RecordOutputParser.of(MitObjekt.class));
+    }
+
+    @Test
+    void testMapFieldKeepsNestedValues() {
+        record MitMap(Map<String, Object> werte) {
+        }
+
+        MitMap result = RecordOutputParser.of(MitMap.class).parse("{\"werte\": {\"a\": [1, 2.5, null], \"b\": {}}}");
+
+        assertEquals(Map.of("a", Arrays.asList(1L, 2.5, null), "b", Map.of()), result.werte());
+    }
+
+    @Test
+    void testMapValuesAreConvertedToDeclaredType() {
+        record Zaehler(Map<String, Integer> counts) {
+        }
+        RecordOutputParser<Zaehler> parser = RecordOutputParser.of(Zaehler.class);
+
+        Zaehler result = parser.parse("{\"counts\": {\"a\": 1, \"b\": 2}}");
+
+        int a = result.counts().get("a");
+        assertEquals(1, a);
+        assertEquals(Map.of("a", 1, "b", 2), result.counts());
+        assertThrows(UnsupportedOperationException.class, () -> result.counts().put("c", 3));
+        assertTrue(parser.formatInstructions().contains("<Objekt mit Werten vom Typ Ganzzahl>"),
+                parser.formatInstructions());
+        assertThrows(OutputParsingException.class, () -> parser.parse("{\"counts\": {\"a\": \"viele\"}}"));
+        assertThrows(OutputParsingException.class, () -> parser.parse("{\"counts\": {\"a\": null}}"));
+    }
+
+    @Test
+    void testRejectsNonStringMapKeys() {
+        record MitZahlSchluessel(Map<Integer, String> werte) {
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> RecordOutputParser.of(MitZahlSchluessel.class));
+    }
+}
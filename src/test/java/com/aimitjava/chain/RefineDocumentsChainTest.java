@@ -0,0 +1,50 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+import com.aimitjava.model.ChatLanguageModel;
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RefineDocumentsChainTest {
+
+    private static List<Document> documents(int count) {
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            documents.add(new Document("d" + i));
+        }
+        return documents;
+    }
+
+    @Test
+    void testRefineProcessesDocumentsSequentially() {
+        // Vorbereiten
+        List<String> prompts = new ArrayList<>();
+        ChatLanguageModel model = prompt -> {
+            prompts.add(prompt);
+            return new ChatLanguageModel.Response<>("A" + prompts.size(), new TokenUsage(1, 1, 2));
+        };
+        RefineDocumentsChain chain = new RefineDocumentsChain.Builder(model,
+                "Start: {context}", "Bisher: {existing_answer} Neu: {context}")
+                .build();
+
+        // Ausführen
+        String result = chain.invoke(documents(3));
+
+        // Überprüfen
+        assertEquals("A3", result);
+        assertEquals(List.of("Start: d0", "Bisher: A1 Neu: d1", "Bisher: A2 Neu: d2"), prompts);
+    }
+
+    @Test
+    void testRefinePromptMustContainAnswerVariable() {
+        ChatLanguageModel model = prompt -> new ChatLanguageModel.Response<>("", new TokenUsage(1, 1, 2));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new RefineDocumentsChain.Builder(model, "{context}", "{context}").build());
+    }
+}
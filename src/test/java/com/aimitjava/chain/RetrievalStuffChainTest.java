@@ -0,0 +1,109 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+import com.aimitjava.model.ChatLanguageModel;
+import com.aimitjava.retrieval.FlatVectorIndex;
+import com.aimitjava.retrieval.HashingEmbedder;
+import com.aimitjava.retrieval.HnswVectorIndex;
+import com.aimitjava.retrieval.SearchResult;
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetrievalStuffChainTest {
+
+    private static final ChatLanguageModel ECHO_MODEL =
+            prompt -> new ChatLanguageModel.Response<>(prompt, new TokenUsage(1, 1, 2));
+
+    private static final List<Document> DOCUMENTS = List.of(
+            new Document("Java Streams verarbeiten Collections deklarativ"),
+            new Document("Ein Apfelkuchen braucht Äpfel, Mehl und Zucker"),
+            new Document("Virtuelle Threads in Java sind leichtgewichtig"),
+            new Document("Der Zug nach Berlin fährt um acht Uhr"));
+
+    @Test
+    void testRetrievesRelevantDocumentsIntoPrompt() {
+        // Vorbereiten
+        HashingEmbedder embedder = new HashingEmbedder(256);
+        StuffDocumentsChain chain = new StuffDocumentsChain(ECHO_MODEL, "Frage: {question}\n{context}");
+        RetrievalStuffChain retrieval = new RetrievalStuffChain.Builder(chain, embedder, new FlatVectorIndex(256))
+                .topK(2)
+                .minScore(0.01f)
+                .build();
+        retrieval.addDocuments(DOCUMENTS);
+
+        // Ausführen
+        String prompt = retrieval.invoke("Wie funktionieren Streams in Java?");
+
+        // Überprüfen
+        assertTrue(prompt.startsWith("Frage: Wie funktionieren Streams in Java?\n"));
+        assertTrue(prompt.contains("Java Streams verarbeiten Collections deklarativ"));
+        assertFalse(prompt.contains("Apfelkuchen"));
+        assertFalse(prompt.contains("Berlin"));
+    }
+
+    @Test
+    void testRetrieveReturnsScoredStoredDocuments() {
+        HashingEmbedder embedder = new HashingEmbedder(256);
+        RetrievalStuffChain retrieval = new RetrievalStuffChain.Builder(
+                new StuffDocumentsChain(ECHO_MODEL, "{context}"), embedder, new HnswVectorIndex.Builder(256).build())
+                .topK(3)
+                .build();
+        retrieval.addDocuments(DOCUMENTS);
+
+        List<SearchResult> results = retrieval.retrieve("Apfelkuchen mit Äpfeln");
+
+        assertEquals(3, results.size());
+        assertSame(DOCUMENTS.get(1), results.get(0).document());
+        assertTrue(results.get(0).score() >= results.get(1).score());
+    }
+
+    @Test
+    void testRepeatedQueriesHitDocumentCaches() {
+        AtomicInteger formats = new AtomicInteger();
+        AtomicInteger estimates = new AtomicInteger();
+        TokenEstimator countingEstimator = text -> {
+            estimates.incrementAndGet();
+            return text.length();
+        };
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(ECHO_MODEL, "Frage: {question}\n{context}")
+                .documentFormatter(doc -> {
+                    formats.incrementAndGet();
+                    return doc.text();
+                })
+                .formattedDocumentCache(new FormattedDocumentCache.Builder().build())
+                .maxContextTokens(1_000)
+                .packingPolicy(DocumentPacker.Policy.HIGHEST_SCORE_FIRST)
+                .tokenEstimator(countingEstimator)
+                .nearDuplicates(DocumentDeduplicator.NearDuplicates.SIMHASH, 0.95)
+                .build();
+        RetrievalStuffChain retrieval = new RetrievalStuffChain.Builder(chain, new HashingEmbedder(256),
+                new FlatVectorIndex(256))
+                .topK(1)
+                .build();
+        retrieval.addDocuments(DOCUMENTS);
+
+        // Beide Anfragen finden dasselbe Dokument mit unterschiedlichem Score
+        String first = retrieval.invoke("Wie funktionieren Streams in Java?");
+        int formatsAfterFirst = formats.get();
+        int estimatesAfterFirst = estimates.get();
+        String second = retrieval.invoke("Streams und Collections");
+
+        assertTrue(first.contains(DOCUMENTS.get(0).text()));
+        assertTrue(second.contains(DOCUMENTS.get(0).text()));
+        assertEquals(formatsAfterFirst, formats.get());
+        assertEquals(estimatesAfterFirst, estimates.get());
+    }
+
+    @Test
+    void testDimensionMismatch() {
+        StuffDocumentsChain chain = new StuffDocumentsChain(ECHO_MODEL, "{context}");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new RetrievalStuffChain.Builder(chain, new HashingEmbedder(8), new FlatVectorIndex(16)).build());
+    }
+}
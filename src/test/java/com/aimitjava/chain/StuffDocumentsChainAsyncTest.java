@@ -0,0 +1,119 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+import com.aimitjava.model.ChatLanguageModel;
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StuffDocumentsChainAsyncTest {
+
+    private static final long LATENCY_MILLIS = 50;
+
+    /**
+     * Ein simuliertes Modell mit fester Latenz, das die maximale Anzahl gleichzeitiger Aufrufe mitschreibt.
+     */
+    private static class LatencyModel implements ChatLanguageModel {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        @Override
+        public Response<String> generate(String prompt) {
+            int current = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(current, Math::max);
+            try {
+                Thread.sleep(LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            return new Response<>("Antwort auf " + prompt, new TokenUsage(1, 1, 2));
+        }
+    }
+
+    private static List<List<Document>> batches(int count) {
+        List<List<Document>> batches = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            batches.add(List.of(new Document("Dokument " + i)));
+        }
+        return batches;
+    }
+
+    private static long timeInvokeAll(StuffDocumentsChain chain, List<List<Document>> batches) {
+        long start = System.nanoTime();
+        chain.invokeAll(batches);
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    @Test
+    void testInvokeAsync() {
+        LatencyModel model = new LatencyModel();
+        StuffDocumentsChain chain = new StuffDocumentsChain(model, "Test prompt: {context}");
+
+        String result = chain.invokeAsync(List.of(new Document("Dokument 1"))).join();
+
+        assertEquals("Antwort auf Test prompt: Dokument 1", result);
+    }
+
+    @Test
+    void testInvokeAllPreservesOrder() {
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(new LatencyModel(), "{context}")
+                .maxConcurrency(8)
+                .build();
+
+        List<String> results = chain.invokeAll(batches(20));
+
+        assertEquals(20, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals("Antwort auf Dokument " + i, results.get(i));
+        }
+    }
+
+    @Test
+    void testConcurrencyLimitIsRespected() {
+        LatencyModel model = new LatencyModel();
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(model, "{context}")
+                .maxConcurrency(4)
+                .build();
+
+        chain.invokeAll(batches(24));
+
+        assertEquals(4, model.maxInFlight.get());
+    }
+
+    @Test
+    void testThroughputScalesWithConcurrency() {
+        List<List<Document>> batches = batches(16);
+
+        long sequential = timeInvokeAll(new StuffDocumentsChain.Builder(new LatencyModel(), "{context}")
+                .maxConcurrency(1)
+                .build(), batches);
+        long parallel = timeInvokeAll(new StuffDocumentsChain.Builder(new LatencyModel(), "{context}")
+                .maxConcurrency(16)
+                .build(), batches);
+
+        assertTrue(sequential >= 16 * LATENCY_MILLIS, "sequential run took " + sequential + "ms");
+        assertTrue(parallel * 4 < sequential, "parallel " + parallel + "ms vs sequential " + sequential + "ms");
+    }
+
+    @Test
+    void testFailurePropagates() {
+        ChatLanguageModel failingModel = prompt -> {
+            throw new IllegalStateException("Provider nicht erreichbar");
+        };
+        StuffDocumentsChain chain = new StuffDocumentsChain(failingModel, "{context}");
+
+        CompletionException exception = assertThrows(CompletionException.class,
+                () -> chain.invokeAll(batches(3)));
+
+        assertTrue(exception.getCause() instanceof IllegalStateException);
+    }
+}
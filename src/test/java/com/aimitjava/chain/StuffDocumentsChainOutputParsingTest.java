@@ -0,0 +1,172 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+import com.aimitjava.metrics.ChainListener;
+import com.aimitjava.metrics.ChainMetrics;
+import com.aimitjava.model.ChatLanguageModel;
+import com.aimitjava.model.StreamingChatLanguageModel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StuffDocumentsChainOutputParsingTest {
+
+    record Antwort(String antwort, int quelle) {
+    }
+
+    /**
+     * Gibt nacheinander die vorgegebenen Antworten zurück und merkt sich die Prompts.
+     */
+    private static class ScriptedModel implements ChatLanguageModel {
+        private final List<String> prompts = new ArrayList<>();
+        private final String[] answers;
+
+        ScriptedModel(String... answers) {
+            this.answers = answers;
+        }
+
+        @Override
+        public synchronized Response<String> generate(String prompt) {
+            prompts.add(prompt);
+            return new Response<>(answers[Math.min(prompts.size(), answers.length) - 1], null);
+        }
+    }
+
+    /**
+     * Liefert die Antwort zeichenweise im aufrufenden Thread und bricht ab, sobald der Handler das verlangt.
+     */
+    private static class CharStreamingModel implements StreamingChatLanguageModel {
+        private final String answer;
+        private final AtomicInteger emitted = new AtomicInteger();
+
+        CharStreamingModel(String answer) {
+            this.answer = answer;
+        }
+
+        @Override
+        public void generate(String prompt, StreamingResponseHandler handler) {
+            for (int i = 0; i < answer.length(); i++) {
+                if (handler.isCancelled()) {
+                    return;
+                }
+                emitted.incrementAndGet();
+                handler.onToken(String.valueOf(answer.charAt(i)));
+            }
+            handler.onComplete(new ChatLanguageModel.Response<>(answer, null));
+        }
+    }
+
+    @Test
+    void testTypedInvokeAppendsFormatInstructions() {
+        // Vorbereiten
+        ScriptedModel model = new ScriptedModel("{\"antwort\": \"Rot\", \"quelle\": 1}");
+        StuffDocumentsChain chain = new StuffDocumentsChain(model, "Kontext: {context}\nFrage: {question}");
+
+        // Ausführen
+        Antwort result = chain.invoke(List.of(new Document("Jesse mag Rot")), Map.of("question", "Welche Farbe?"),
+                Antwort.class);
+
+        // Überprüfen
+        assertEquals(new Antwort("Rot", 1), result);
+        assertEquals("Kontext: Jesse mag Rot\nFrage: Welche Farbe?\n\n"
+                + RecordOutputParser.of(Antwort.class).formatInstructions(), model.prompts.get(0));
+    }
+
+    @Test
+    void testRetriesOnlyOnInvalidOutput() {
+        ScriptedModel model = new ScriptedModel("Rot, laut Quelle 1.", "{\"antwort\": \"Rot\", \"quelle\": 1}");
+        ChainMetrics metrics = new ChainMetrics();
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(model, "{context}")
+                .listener(metrics)
+                .build();
+
+        Antwort result = chain.invoke(List.of(new Document("Jesse mag Rot")), Antwort.class);
+
+        assertEquals(new Antwort("Rot", 1), result);
+        assertEquals(2, model.prompts.size());
+        assertTrue(model.prompts.get(1).startsWith(model.prompts.get(0)));
+        assertTrue(model.prompts.get(1).contains("Deine vorherige Antwort war ungültig: "
+                + "Die Antwort enthält kein JSON-Objekt"), model.prompts.get(1));
+        assertEquals(1, metrics.errors(ChainListener.Stage.PARSE));
+        assertEquals(1, metrics.stage(ChainListener.Stage.PARSE).count());
+    }
+
+    @Test
+    void testGivesUpAfterConfiguredRetries() {
+        ScriptedModel model = new ScriptedModel("{\"antwort\": \"Rot\", \"quelle\": -1}");
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(model, "{context}")
+                .outputRetries(2)
+                .build();
+        OutputParser<Antwort> parser = RecordOutputParser.of(Antwort.class)
+                .withValidator(a -> a.quelle() > 0, "quelle muss die Nummer eines Dokuments sein");
+
+        OutputParsingException e = assertThrows(OutputParsingException.class,
+                () -> chain.invoke(List.of(new Document("Text")), parser));
+
+        assertEquals("quelle muss die Nummer eines Dokuments sein", e.getMessage());
+        assertEquals(3, model.prompts.size());
+    }
+
+    @Test
+    void testModelErrorsAreNotRetried() {
+        AtomicInteger calls = new AtomicInteger();
+        ChatLanguageModel model = prompt -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("Modell nicht erreichbar");
+        };
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(model, "{context}").outputRetries(3).build();
+
+        assertThrows(IllegalStateException.class, () -> chain.invoke(List.of(new Document("Text")), Antwort.class));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testStreamingStopsAsSoonAsAllFieldsArePresent() {
+        String answer = "{\"antwort\": \"Rot\", \"quelle\": 1}\nBegründung: Das steht so im ersten Dokument.";
+        CharStreamingModel streaming = new CharStreamingModel(answer);
+        ChatLanguageModel unused = prompt -> {
+            throw new AssertionError("Das Streaming-Modell soll verwendet werden");
+        };
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(unused, "{context}")
+                .streamingModel(streaming)
+                .build();
+
+        Antwort result = chain.invoke(List.of(new Document("Jesse mag Rot")), Antwort.class);
+
+        assertEquals(new Antwort("Rot", 1), result);
+        // Die Zahl endet erst mit dem folgenden Zeichen, danach wird nichts mehr angefordert
+        assertEquals(answer.indexOf('}') + 1, streaming.emitted.get());
+    }
+
+    @Test
+    void testStreamingRetriesOnInvalidOutput() {
+        StreamingChatLanguageModel streaming = new StreamingChatLanguageModel() {
+            private int calls;
+
+            @Override
+            public void generate(String prompt, StreamingResponseHandler handler) {
+                String answer = calls++ == 0 ? "{\"antwort\": [}" : "{\"antwort\": \"Grün\", \"quelle\": 2}";
+                handler.onToken(answer);
+                if (!handler.isCancelled()) {
+                    handler.onComplete(new ChatLanguageModel.Response<>(answer, null));
+                }
+            }
+        };
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(new ScriptedModel("-"), "{context}")
+                .streamingModel(streaming)
+                .build();
+
+        assertEquals(new Antwort("Grün", 2), chain.invoke(List.of(new Document("Text")), Antwort.class));
+    }
+
+    @Test
+    void testNegativeOutputRetriesAreRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new StuffDocumentsChain.Builder(new ScriptedModel("-"), "{context}").outputRetries(-1).build());
+    }
+}
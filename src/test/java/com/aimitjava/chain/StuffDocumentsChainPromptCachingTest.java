@@ -0,0 +1,135 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+import com.aimitjava.metrics.ChainListener;
+import com.aimitjava.metrics.ChainMetrics;
+import com.aimitjava.model.ChatLanguageModel;
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StuffDocumentsChainPromptCachingTest {
+
+    private static final ChatLanguageModel ECHO_MODEL =
+            prompt -> new ChatLanguageModel.Response<>(prompt, new TokenUsage(1, 1, 2));
+
+    private static final String TEMPLATE = "Du bist ein hilfreicher Assistent.\n"
+            + "Frage: {question}\n"
+            + "Kontext:\n"
+            + "{context}\n"
+            + "Antwort:";
+
+    /**
+     * Merkt sich Fingerabdruck und Länge des letzten Präfixes.
+     */
+    private static class PrefixRecorder implements ChainListener {
+        private final List<Long> fingerprints = new ArrayList<>();
+        private int prefixChars;
+
+        @Override
+        public void onPromptPrefix(long fingerprint, int prefixChars, int promptChars) {
+            fingerprints.add(fingerprint);
+            this.prefixChars = prefixChars;
+        }
+    }
+
+    @Test
+    void testCacheFriendlyLayoutMovesVolatileLinesAfterDocuments() {
+        // Vorbereiten
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(ECHO_MODEL, TEMPLATE)
+                .cacheFriendlyLayout(true)
+                .build();
+
+        // Ausführen
+        String prompt = chain.invoke(List.of(new Document("Dokument")), Map.of("question", "Warum?"));
+
+        // Überprüfen
+        assertEquals("Du bist ein hilfreicher Assistent.\n"
+                + "Kontext:\n"
+                + "Dokument\n"
+                + "Frage: Warum?\n"
+                + "Antwort:", prompt);
+    }
+
+    @Test
+    void testVolatileLineMovedBehindLastLine() {
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(ECHO_MODEL, "{system}\n{question}\n{context}")
+                .cacheFriendlyLayout(true)
+                .stableVariables("system")
+                .build();
+
+        String prompt = chain.invoke(List.of(new Document("Dokument")), Map.of("system", "Regeln", "question", "Frage"));
+
+        assertEquals("Regeln\nDokument\nFrage", prompt);
+    }
+
+    @Test
+    void testPrefixIsStableAcrossQuestionsAndDocumentOrder() {
+        PrefixRecorder recorder = new PrefixRecorder();
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(ECHO_MODEL, TEMPLATE)
+                .cacheFriendlyLayout(true)
+                .listener(recorder)
+                .build();
+        Document a = new Document("Dokument A");
+        Document b = new Document("Dokument B");
+
+        String first = chain.invoke(List.of(a, b), Map.of("question", "Erste Frage"));
+        String second = chain.invoke(List.of(b, a), Map.of("question", "Ganz andere Frage"));
+
+        assertEquals(recorder.fingerprints.get(0), recorder.fingerprints.get(1));
+        assertEquals(first.substring(0, recorder.prefixChars), second.substring(0, recorder.prefixChars));
+        assertTrue(second.substring(0, recorder.prefixChars).endsWith("Dokument B\nFrage: "));
+        assertTrue(second.substring(recorder.prefixChars).startsWith("Ganz andere Frage"));
+    }
+
+    @Test
+    void testDefaultLayoutReportsShortPrefix() {
+        PrefixRecorder recorder = new PrefixRecorder();
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(ECHO_MODEL, TEMPLATE)
+                .listener(recorder)
+                .build();
+
+        chain.invoke(List.of(new Document("Dokument")), Map.of("question", "Warum?"));
+
+        // Der Präfix endet vor dem Wert von {question}
+        assertEquals("Du bist ein hilfreicher Assistent.\nFrage: ".length(), recorder.prefixChars);
+    }
+
+    @Test
+    void testDocumentSortKey() {
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(ECHO_MODEL, "{context}")
+                .documentSeparator("|")
+                .cacheFriendlyLayout(true)
+                .documentSortKey("page")
+                .build();
+        List<Document> documents = List.of(
+                new Document("ohne Seite"),
+                new Document("Seite 10", Map.of("page", 10)),
+                new Document("Seite 9", Map.of("page", 9)));
+
+        assertEquals("Seite 9|Seite 10|ohne Seite", chain.invoke(documents));
+        assertEquals("Seite 9|Seite 10|ohne Seite", chain.invoke(documents.stream()));
+    }
+
+    @Test
+    void testMetricsCountRepeatedPrefixes() {
+        ChainMetrics metrics = new ChainMetrics();
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(ECHO_MODEL, TEMPLATE)
+                .cacheFriendlyLayout(true)
+                .listener(metrics)
+                .build();
+        List<Document> documents = List.of(new Document("Dokument"));
+
+        for (int i = 0; i < 4; i++) {
+            chain.invoke(documents, Map.of("question", "Frage " + i));
+        }
+
+        assertEquals(0.75, metrics.prefixRepeatRate(), 1e-9);
+        assertEquals(4, metrics.prefixChars().count());
+    }
+}
@@ -0,0 +1,232 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+import com.aimitjava.model.ChatLanguageModel;
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StuffDocumentsChainSourceTest {
+
+    /**
+     * Ein Modell, das den erhaltenen Prompt unverändert zurückgibt.
+     */
+    private static final ChatLanguageModel ECHO_MODEL =
+            prompt -> new ChatLanguageModel.Response<>(prompt, new TokenUsage(1, 1, 2));
+
+    private static List<Document> documents(int count) {
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            documents.add(new Document("Dokument " + i));
+        }
+        return documents;
+    }
+
+    /**
+     * Eine Dokumentenquelle, die mitzählt, wie viele Dokumente gelesen wurden.
+     */
+    private static class CountingIterator implements Iterator<Document> {
+        private final Iterator<Document> delegate;
+        private int read;
+
+        CountingIterator(List<Document> documents) {
+            this.delegate = documents.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return delegate.hasNext();
+        }
+
+        @Override
+        public Document next() {
+            read++;
+            return delegate.next();
+        }
+    }
+
+    /**
+     * Ein Publisher, der Dokumente synchron gemäß der Nachfrage liefert und Nachfrage und Abbruch mitschreibt.
+     */
+    private static class DocumentPublisher implements Flow.Publisher<Document> {
+        private final List<Document> documents;
+        private final AtomicInteger emitted = new AtomicInteger();
+        private long maxOutstanding;
+        private boolean cancelled;
+
+        DocumentPublisher(List<Document> documents) {
+            this.documents = documents;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super Document> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                private long demand;
+                private boolean emitting;
+
+                @Override
+                public void request(long n) {
+                    demand += n;
+                    maxOutstanding = Math.max(maxOutstanding, demand);
+                    if (emitting) {
+                        return;
+                    }
+                    emitting = true;
+                    while (demand > 0 && !cancelled && emitted.get() < documents.size()) {
+                        demand--;
+                        subscriber.onNext(documents.get(emitted.getAndIncrement()));
+                    }
+                    emitting = false;
+                    if (!cancelled && emitted.get() == documents.size()) {
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+
+    @Test
+    void testIteratorAndStreamMatchList() {
+        // Vorbereiten
+        StuffDocumentsChain chain = new StuffDocumentsChain(ECHO_MODEL, "Kontext: {context}");
+        List<Document> documents = documents(5);
+
+        // Ausführen
+        String fromList = chain.invoke(documents);
+        String fromIterator = chain.invoke(documents.iterator());
+        String fromStream = chain.invoke(documents.stream());
+
+        // Überprüfen
+        assertEquals(fromList, fromIterator);
+        assertEquals(fromList, fromStream);
+    }
+
+    @Test
+    void testIteratorStopsReadingAtMaxPromptChars() {
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(ECHO_MODEL, "Kontext: {context}")
+                .documentSeparator("|")
+                .maxPromptChars(50)
+                .build();
+        CountingIterator source = new CountingIterator(documents(1000));
+
+        String prompt = chain.invoke(source);
+
+        // "Kontext: " (9) + 4 × "Dokument n" (10) + 3 Separatoren = 52 > 50, also passen 3 Dokumente
+        assertEquals("Kontext: Dokument 0|Dokument 1|Dokument 2", prompt);
+        assertEquals(4, source.read);
+    }
+
+    @Test
+    void testMaxPromptCharsAppliesToListsAndVariables() {
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(ECHO_MODEL, "{question} {context}")
+                .documentSeparator("|")
+                .maxPromptChars(30)
+                .build();
+
+        String prompt = chain.invoke(documents(10), Map.of("question", "Frage?"));
+
+        assertEquals("Frage? Dokument 0|Dokument 1", prompt);
+        assertThrows(IllegalArgumentException.class,
+                () -> chain.invoke(documents(1), Map.of("question", "x".repeat(40))));
+    }
+
+    @Test
+    void testTokenBudgetForSources() {
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(ECHO_MODEL, "{context}")
+                .documentSeparator("")
+                .maxContextTokens(25)
+                .tokenEstimator(String::length)
+                .build();
+        CountingIterator source = new CountingIterator(documents(100));
+
+        String prompt = chain.invoke(IntStream.range(0, 100).mapToObj(i -> source.next()));
+
+        assertEquals("Dokument 0Dokument 1", prompt);
+        assertEquals(3, source.read);
+    }
+
+    @Test
+    void testPublisherCancelsWhenPromptIsFull() {
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(ECHO_MODEL, "{context}")
+                .documentSeparator("|")
+                .maxPromptChars(32)
+                .build();
+        DocumentPublisher publisher = new DocumentPublisher(documents(1000));
+
+        String prompt = chain.invokeAsync(publisher).join();
+
+        assertEquals("Dokument 0|Dokument 1|Dokument 2", prompt);
+        assertTrue(publisher.cancelled);
+        assertEquals(4, publisher.emitted.get());
+        assertTrue(publisher.maxOutstanding <= 16);
+    }
+
+    @Test
+    void testPublisherCompletes() {
+        StuffDocumentsChain chain = new StuffDocumentsChain(ECHO_MODEL, "{context}");
+        DocumentPublisher publisher = new DocumentPublisher(documents(40));
+
+        String prompt = chain.invoke(publisher, new HashMap<>());
+
+        assertEquals(chain.invoke(documents(40)), prompt);
+        assertFalse(publisher.cancelled);
+    }
+
+    @Test
+    void testPublisherFailsWhenExecutorRejects() {
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(ECHO_MODEL, "{context}")
+                .executor(command -> {
+                    throw new RejectedExecutionException("voll");
+                })
+                .build();
+
+        CompletableFuture<String> result = chain.invokeAsync(new DocumentPublisher(documents(3)));
+
+        assertTrue(result.isCompletedExceptionally());
+        assertThrows(RejectedExecutionException.class,
+                () -> chain.invoke(new DocumentPublisher(documents(3)), new HashMap<>()));
+    }
+
+    @Test
+    void testPublisherRethrowsErrors() {
+        StuffDocumentsChain chain = new StuffDocumentsChain(prompt -> {
+            throw new AssertionError("Modell defekt");
+        }, "{context}");
+
+        AssertionError error = assertThrows(AssertionError.class,
+                () -> chain.invoke(new DocumentPublisher(documents(3)), new HashMap<>()));
+        assertEquals("Modell defekt", error.getMessage());
+    }
+
+    @Test
+    void testMapInputAcceptsSources() {
+        StuffDocumentsChain chain = new StuffDocumentsChain(ECHO_MODEL, "{context}");
+        Map<String, Object> inputs = new HashMap<>();
+
+        inputs.put("context", documents(2).iterator());
+        assertEquals("Dokument 0\n\nDokument 1", chain.invoke(inputs));
+
+        inputs.put("context", documents(2).stream());
+        assertEquals("Dokument 0\n\nDokument 1", chain.invoke(inputs));
+
+        inputs.put("context", "kein Dokument");
+        assertThrows(IllegalArgumentException.class, () -> chain.invoke(inputs));
+    }
+}
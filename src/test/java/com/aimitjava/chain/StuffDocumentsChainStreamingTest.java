@@ -0,0 +1,246 @@
+package com.aimitjava.chain;
+
+import com.aimitjava.document.Document;
+import com.aimitjava.model.ChatLanguageModel;
+import com.aimitjava.model.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StuffDocumentsChainStreamingTest {
+
+    private static final long TOKEN_DELAY_MILLIS = 30;
+
+    /**
+     * Simuliertes Streaming-Modell, das den Prompt wortweise mit Verzögerung auf einem eigenen Thread zurückgibt.
+     */
+    private static class FakeStreamingModel implements StreamingChatLanguageModel {
+        private final AtomicInteger emitted = new AtomicInteger();
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        @Override
+        public void generate(String prompt, StreamingResponseHandler handler) {
+            Thread thread = new Thread(() -> {
+                try {
+                    String[] words = prompt.split(" ");
+                    for (String word : words) {
+                        if (handler.isCancelled()) {
+                            return;
+                        }
+                        Thread.sleep(TOKEN_DELAY_MILLIS);
+                        emitted.incrementAndGet();
+                        handler.onToken(word);
+                    }
+                    handler.onComplete(new ChatLanguageModel.Response<>(String.join("", words),
+                            new TokenUsage(7, words.length, 7 + words.length)));
+                } catch (InterruptedException e) {
+                    handler.onError(e);
+                } finally {
+                    finished.countDown();
+                }
+            });
+            thread.start();
+        }
+    }
+
+    /**
+     * Subscriber, der Tokens und Zeitpunkte mitschreibt und eine konfigurierbare Nachfrage stellt.
+     */
+    private static class RecordingSubscriber implements Flow.Subscriber<String> {
+        private final List<String> tokens = Collections.synchronizedList(new ArrayList<>());
+        private final long initialDemand;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicLong firstTokenNanos = new AtomicLong();
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private volatile Flow.Subscription subscription;
+
+        RecordingSubscriber(long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialDemand);
+        }
+
+        @Override
+        public void onNext(String item) {
+            firstTokenNanos.compareAndSet(0, System.nanoTime());
+            tokens.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error.set(throwable);
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+    }
+
+    private static StuffDocumentsChain chain(StreamingChatLanguageModel streamingModel) {
+        return new StuffDocumentsChain.Builder(Mockito.mock(ChatLanguageModel.class), "Prompt {context}")
+                .documentSeparator(" ")
+                .streamingModel(streamingModel)
+                .build();
+    }
+
+    private static List<Document> documents() {
+        return List.of(new Document("a b"), new Document("c d e"));
+    }
+
+    @Test
+    void testTokensArriveInOrderWithTokenUsage() throws Exception {
+        TokenPublisher publisher = chain(new FakeStreamingModel()).stream(documents());
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+
+        publisher.subscribe(subscriber);
+
+        assertTrue(subscriber.done.await(5, TimeUnit.SECONDS));
+        assertNull(subscriber.error.get());
+        assertEquals(List.of("Prompt", "a", "b", "c", "d", "e"), subscriber.tokens);
+        ChatLanguageModel.Response<String> response = publisher.completion().get();
+        assertEquals("Promptabcde", response.content());
+        assertEquals(new TokenUsage(7, 6, 13), response.tokenUsage());
+    }
+
+    @Test
+    void testFirstTokenArrivesBeforeGenerationFinishes() throws Exception {
+        TokenPublisher publisher = chain(new FakeStreamingModel()).stream(documents());
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+
+        long start = System.nanoTime();
+        publisher.subscribe(subscriber);
+        publisher.completion().get(5, TimeUnit.SECONDS);
+        long total = System.nanoTime() - start;
+
+        long firstToken = subscriber.firstTokenNanos.get() - start;
+        assertTrue(firstToken * 3 < total, "first token after " + firstToken / 1_000_000 + "ms, total "
+                + total / 1_000_000 + "ms");
+    }
+
+    @Test
+    void testBackpressureLimitsDelivery() throws Exception {
+        FakeStreamingModel model = new FakeStreamingModel();
+        TokenPublisher publisher = chain(model).stream(documents());
+        RecordingSubscriber subscriber = new RecordingSubscriber(2);
+
+        publisher.subscribe(subscriber);
+        assertTrue(model.finished.await(5, TimeUnit.SECONDS));
+
+        assertEquals(List.of("Prompt", "a"), subscriber.tokens);
+        assertEquals(1, subscriber.done.getCount());
+
+        subscriber.subscription.request(10);
+        assertTrue(subscriber.done.await(5, TimeUnit.SECONDS));
+        assertEquals(6, subscriber.tokens.size());
+    }
+
+    @Test
+    void testCancellationStopsGeneration() throws Exception {
+        FakeStreamingModel model = new FakeStreamingModel();
+        TokenPublisher publisher = chain(model).stream(documents());
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE) {
+            @Override
+            public void onNext(String item) {
+                super.onNext(item);
+                if (item.equals("a")) {
+                    super.subscription.cancel();
+                }
+            }
+        };
+
+        publisher.subscribe(subscriber);
+        assertTrue(model.finished.await(5, TimeUnit.SECONDS));
+
+        assertEquals(List.of("Prompt", "a"), subscriber.tokens);
+        assertTrue(model.emitted.get() <= 3);
+        assertThrows(CancellationException.class, () -> publisher.completion().join());
+    }
+
+    @Test
+    void testInvalidDemandCancelsBeforeError() throws Exception {
+        FakeStreamingModel model = new FakeStreamingModel();
+        TokenPublisher publisher = chain(model).stream(documents());
+        AtomicReference<Boolean> cancelledOnError = new AtomicReference<>();
+        RecordingSubscriber subscriber = new RecordingSubscriber(1) {
+            @Override
+            public void onNext(String item) {
+                super.onNext(item);
+                super.subscription.request(0);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                cancelledOnError.set(((StreamingChatLanguageModel.StreamingResponseHandler) super.subscription)
+                        .isCancelled());
+                super.onError(throwable);
+            }
+        };
+
+        publisher.subscribe(subscriber);
+        assertTrue(subscriber.done.await(5, TimeUnit.SECONDS));
+        assertTrue(model.finished.await(5, TimeUnit.SECONDS));
+
+        assertTrue(subscriber.error.get() instanceof IllegalArgumentException);
+        assertEquals(Boolean.TRUE, cancelledOnError.get());
+        assertEquals(List.of("Prompt"), subscriber.tokens);
+        assertTrue(model.emitted.get() <= 2);
+        assertThrows(CancellationException.class, () -> publisher.completion().join());
+    }
+
+    @Test
+    void testCallbackVariant() throws Exception {
+        List<String> tokens = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch completed = new CountDownLatch(1);
+        AtomicReference<ChatLanguageModel.Response<String>> result = new AtomicReference<>();
+
+        chain(new FakeStreamingModel()).stream(documents(), new HashMap<>(),
+                new StreamingChatLanguageModel.StreamingResponseHandler() {
+                    @Override
+                    public void onToken(String token) {
+                        tokens.add(token);
+                    }
+
+                    @Override
+                    public void onComplete(ChatLanguageModel.Response<String> response) {
+                        result.set(response);
+                        completed.countDown();
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        completed.countDown();
+                    }
+                });
+
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+        assertEquals(6, tokens.size());
+        assertEquals(new TokenUsage(7, 6, 13), result.get().tokenUsage());
+    }
+
+    @Test
+    void testStreamWithoutStreamingModel() {
+        StuffDocumentsChain chain = new StuffDocumentsChain(Mockito.mock(ChatLanguageModel.class), "{context}");
+
+        assertThrows(IllegalStateException.class, () -> chain.stream(documents()));
+    }
+}
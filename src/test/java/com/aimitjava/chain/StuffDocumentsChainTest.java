@@ -6,6 +6,7 @@ import dev.langchain4j.model.output.TokenUsage;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -171,4 +172,32 @@ class StuffDocumentsChainTest {
         // Überprüfen, dass das Modell mit dem richtigen formatierten Prompt aufgerufen wurde
         Mockito.verify(mockModel).generate("Test prompt: Dokument 1\n\nDokument 2");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testInvokeWithThousandsOfDocuments() {
+        // Vorbereiten
+        ChatLanguageModel mockModel = Mockito.mock(ChatLanguageModel.class);
+        when(mockModel.generate(anyString())).thenReturn(
+                new ChatLanguageModel.Response<>("Testantwort", new TokenUsage(1, 1, 2))
+        );
+
+        String promptTemplate = "Test prompt: {context}";
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(mockModel, promptTemplate)
+                .documentSeparator(" | ")
+                .build();
+
+        List<Document> docs = new ArrayList<>();
+        List<String> expectedParts = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            docs.add(new Document("Dokument " + i));
+            expectedParts.add("Dokument " + i);
+        }
+
+        // Ausführen
+        String result = chain.invoke(docs);
+
+        // Überprüfen
+        assertEquals("Testantwort", result);
+        Mockito.verify(mockModel).generate("Test prompt: " + String.join(" | ", expectedParts));
+    }
+}
@@ -0,0 +1,68 @@
+package com.aimitjava.document;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentTest {
+
+    @Test
+    void testMetadataIsReadOnlyAndIndependentOfSource() {
+        // Vorbereiten
+        Map<String, Object> source = new HashMap<>();
+        source.put("source", "a.txt");
+        Document document = new Document("Text", source);
+
+        // Ausführen
+        source.put("source", "b.txt");
+
+        // Überprüfen
+        assertEquals("a.txt", document.getMetadata("source"));
+        assertThrows(UnsupportedOperationException.class, () -> document.metadata().put("x", 1));
+        assertSame(document.metadata(), document.metadata());
+    }
+
+    @Test
+    void testDerivedDocumentsShareMetadata() {
+        Document document = new Document("Text", Map.of("source", "a.txt"));
+
+        Document renamed = document.withText("Anderer Text");
+        Document tagged = document.withMetadata("page", 3);
+
+        assertSame(document.metadata(), renamed.metadata());
+        assertEquals("Anderer Text", renamed.text());
+        assertEquals(Map.of("source", "a.txt", "page", 3), tagged.metadata());
+        assertEquals(Map.of("source", "a.txt"), document.metadata());
+    }
+
+    @Test
+    void testManyMetadataEntries() {
+        Map<String, Object> source = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            source.put("key" + i, i);
+        }
+
+        Document document = new Document("Text", source);
+
+        assertEquals(20, document.metadata().size());
+        assertEquals(7, document.getMetadata("key7"));
+        assertNull(document.getMetadata("fehlt"));
+        assertEquals(source, document.metadata());
+    }
+
+    @Test
+    void testEqualsAndContentHash() {
+        Document a = new Document("Text", Map.of("source", "a.txt"));
+        Document b = new Document("Text", new HashMap<>(Map.of("source", "a.txt")));
+        Document c = new Document("Text");
+
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertNotEquals(a, c);
+        assertEquals(a.contentHash(), c.contentHash());
+        assertNotEquals(a.contentHash(), new Document("Text!").contentHash());
+    }
+}
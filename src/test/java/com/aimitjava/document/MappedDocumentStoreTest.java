@@ -0,0 +1,136 @@
+package com.aimitjava.document;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedDocumentStoreTest {
+
+    private static final int SMALL_SEGMENT = 4096;
+
+    private static MappedDocumentStore smallStore(Path directory) {
+        return new MappedDocumentStore.Builder(directory)
+                .segmentSize(SMALL_SEGMENT)
+                .indexSegmentSize(SMALL_SEGMENT)
+                .build();
+    }
+
+    @Test
+    void testAppendAndGet() throws Exception {
+        // Vorbereiten
+        Path directory = Files.createTempDirectory("documents");
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("source", "a.txt");
+        metadata.put("page", 3);
+        metadata.put("offset", 42L);
+        metadata.put("score", 0.75);
+        metadata.put("ratio", 0.5f);
+        metadata.put("draft", true);
+        metadata.put("author", null);
+        Document original = new Document("Grüße aus dem Dokument", metadata);
+
+        try (MappedDocumentStore store = MappedDocumentStore.open(directory)) {
+            // Ausführen
+            long id = store.append(original);
+            Document stored = store.get(id);
+
+            // Überprüfen
+            assertEquals(0, id);
+            assertEquals(1, store.size());
+            assertEquals(original.text(), stored.text());
+            assertEquals(metadata, stored.metadata());
+            assertEquals(original, stored);
+            assertEquals(stored, original);
+            assertEquals(original.hashCode(), stored.hashCode());
+            assertEquals(original.contentHash(), stored.contentHash());
+            assertEquals(original.length(), stored.length());
+        }
+    }
+
+    @Test
+    void testBulkAppendAcrossSegments() throws Exception {
+        Path directory = Files.createTempDirectory("documents");
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            documents.add(new Document("Dokument " + i + " " + "x".repeat(i % 50), Map.of("source", "doc-" + i)));
+        }
+
+        try (MappedDocumentStore store = smallStore(directory)) {
+            long first = store.append(new Document("Erstes"));
+            long bulk = store.appendAll(documents);
+
+            assertEquals(0, first);
+            assertEquals(1, bulk);
+            assertEquals(501, store.size());
+            for (int i = 0; i < documents.size(); i++) {
+                assertEquals(documents.get(i), store.get(bulk + i));
+            }
+            assertEquals(documents, store.documents().subList(1, 501));
+        }
+    }
+
+    @Test
+    void testReopenKeepsDocumentsAndContinuesAppending() throws Exception {
+        Path directory = Files.createTempDirectory("documents");
+        try (MappedDocumentStore store = smallStore(directory)) {
+            for (int i = 0; i < 200; i++) {
+                store.append(new Document("Dokument " + i, Map.of("index", i)));
+            }
+        }
+
+        // Die Segmentgrößen stammen beim erneuten Öffnen aus dem Header
+        try (MappedDocumentStore store = MappedDocumentStore.open(directory)) {
+            assertEquals(200, store.size());
+            assertEquals("Dokument 123", store.get(123).text());
+            assertEquals(123, store.get(123).getMetadata("index"));
+
+            long id = store.append(new Document("Neu"));
+
+            assertEquals(200, id);
+            assertEquals("Neu", store.get(id).text());
+            assertEquals("Dokument 199", store.get(199).text());
+        }
+    }
+
+    @Test
+    void testFailedBulkAppendIsNotCommitted() throws Exception {
+        Path directory = Files.createTempDirectory("documents");
+        try (MappedDocumentStore store = smallStore(directory)) {
+            store.append(new Document("Vorher"));
+            List<Document> documents = List.of(
+                    new Document("Gültig"),
+                    new Document("Ungültig", Map.of("value", new Object())));
+
+            assertThrows(IllegalArgumentException.class, () -> store.appendAll(documents));
+            assertThrows(IllegalArgumentException.class, () -> store.append(new Document("x".repeat(SMALL_SEGMENT + 1))));
+
+            assertEquals(1, store.size());
+            long id = store.append(new Document("Nachher"));
+            assertEquals(1, id);
+            assertEquals("Nachher", store.get(id).text());
+        }
+    }
+
+    @Test
+    void testInvalidAccess() throws Exception {
+        Path directory = Files.createTempDirectory("documents");
+        MappedDocumentStore store = smallStore(directory);
+        store.append(new Document("Text"));
+        Document handle = store.get(0);
+
+        assertThrows(IndexOutOfBoundsException.class, () -> store.get(1));
+        store.close();
+
+        assertThrows(IllegalStateException.class, () -> store.get(0));
+        assertThrows(IllegalStateException.class, handle::text);
+        assertThrows(IllegalArgumentException.class,
+                () -> new MappedDocumentStore.Builder(Files.createTempDirectory("documents")).segmentSize(5000).build());
+    }
+}
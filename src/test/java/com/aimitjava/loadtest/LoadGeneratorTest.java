@@ -0,0 +1,107 @@
+package com.aimitjava.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadGeneratorTest {
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    void testClosedLoopThroughputFollowsLatency() throws Exception {
+        // Vorbereiten
+        LoadGenerator generator = new LoadGenerator.Builder(() -> sleep(20))
+                .closedLoop(4)
+                .warmup(Duration.ofMillis(100))
+                .duration(Duration.ofMillis(500))
+                .build();
+
+        // Ausführen
+        LoadGenerator.Report report = generator.run();
+
+        // Überprüfen: 4 Worker mit je 20 ms ergeben etwa 200 Aufrufe pro Sekunde
+        assertEquals(LoadGenerator.Mode.CLOSED_LOOP, report.mode());
+        assertTrue(report.throughput() > 100 && report.throughput() <= 220, report.summary());
+        assertTrue(report.latencyMicros().p50() >= 20_000, report.summary());
+        assertEquals(0, report.errors());
+        assertThrows(IllegalStateException.class, generator::run);
+    }
+
+    @Test
+    void testOpenLoopKeepsArrivalRate() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        LoadGenerator.Report report = new LoadGenerator.Builder(() -> {
+            calls.incrementAndGet();
+            sleep(50);
+        })
+                .openLoop(200)
+                .poisson(false)
+                .warmup(Duration.ZERO)
+                .duration(Duration.ofMillis(500))
+                .build()
+                .run();
+
+        // Die Rate hängt nicht von der Latenz ab: 200/s über 0,5 s
+        assertEquals(100, report.requests(), 10);
+        assertEquals(report.requests(), calls.get());
+        assertTrue(report.latencyMicros().p50() >= 50_000, report.summary());
+    }
+
+    @Test
+    void testOpenLoopMeasuresFromIntendedStart() throws Exception {
+        // Nur ein Aufruf gleichzeitig möglich: die Wartezeit der übrigen muss in die Latenz eingehen
+        Object lock = new Object();
+        LoadGenerator.Report report = new LoadGenerator.Builder(() -> {
+            synchronized (lock) {
+                sleep(20);
+            }
+        })
+                .openLoop(100)
+                .poisson(false)
+                .warmup(Duration.ZERO)
+                .duration(Duration.ofMillis(300))
+                .build()
+                .run();
+
+        assertTrue(report.latencyMicros().max() >= 100_000, report.summary());
+    }
+
+    @Test
+    void testErrorsAndDroppedRequests() throws Exception {
+        LoadGenerator.Report report = new LoadGenerator.Builder(() -> {
+            sleep(100);
+            throw new IllegalStateException("Simulierter Fehler");
+        })
+                .openLoop(100)
+                .poisson(false)
+                .maxOutstanding(2)
+                .warmup(Duration.ZERO)
+                .duration(Duration.ofMillis(300))
+                .build()
+                .run();
+
+        assertEquals(0, report.requests());
+        assertTrue(report.errors() >= 2 && report.errors() <= 8, report.summary());
+        assertTrue(report.dropped() > 10, report.summary());
+        assertEquals(1.0, report.errorRate());
+    }
+
+    @Test
+    void testInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new LoadGenerator.Builder(() -> {}).openLoop(0).build());
+        assertThrows(IllegalArgumentException.class, () -> new LoadGenerator.Builder(() -> {}).closedLoop(0).build());
+        assertThrows(IllegalArgumentException.class,
+                () -> new LoadGenerator.Builder(() -> {}).duration(Duration.ZERO).build());
+    }
+}
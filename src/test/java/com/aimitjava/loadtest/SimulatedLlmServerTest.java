@@ -0,0 +1,110 @@
+package com.aimitjava.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulatedLlmServerTest {
+
+    private static final String REQUEST = "{\"model\":\"gpt-4o-mini\",\"messages\":[{\"role\":\"user\","
+            + "\"content\":\"Fasse zusammen\"}]}";
+
+    private static HttpResponse<String> post(SimulatedLlmServer server) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(server.baseUrl() + "/chat/completions"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(REQUEST))
+                .build();
+        return HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    void testAnswersLikeOpenAi() throws Exception {
+        // Vorbereiten
+        try (SimulatedLlmServer server = new SimulatedLlmServer.Builder()
+                .latency(LatencyDistribution.constant(Duration.ofMillis(50)))
+                .outputTokens(3)
+                .build()
+                .start()) {
+
+            // Ausführen
+            long start = System.nanoTime();
+            HttpResponse<String> response = post(server);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+
+            // Überprüfen
+            assertEquals(200, response.statusCode());
+            assertTrue(response.body().contains("\"model\":\"gpt-4o-mini\""));
+            assertTrue(response.body().contains("\"content\":\"Simulierte antwort antwort\""));
+            assertTrue(response.body().contains("\"completion_tokens\":3"));
+            assertTrue(millis >= 50, "Antwort kam nach " + millis + " ms");
+            assertEquals(1, server.requests());
+        }
+    }
+
+    @Test
+    void testTokenRateAddsGenerationTime() throws Exception {
+        try (SimulatedLlmServer server = new SimulatedLlmServer.Builder()
+                .tokensPerSecond(1000)
+                .outputTokens(100)
+                .build()
+                .start()) {
+            long start = System.nanoTime();
+            assertEquals(200, post(server).statusCode());
+            assertTrue((System.nanoTime() - start) / 1_000_000 >= 100);
+        }
+    }
+
+    @Test
+    void testInjectedErrors() throws Exception {
+        try (SimulatedLlmServer server = new SimulatedLlmServer.Builder().errorRate(1).build().start()) {
+            HttpResponse<String> response = post(server);
+            assertEquals(500, response.statusCode());
+            assertTrue(response.body().contains("server_error"));
+            assertEquals(1, server.injectedErrors());
+        }
+        try (SimulatedLlmServer server = new SimulatedLlmServer.Builder().rateLimitRate(1).build().start()) {
+            HttpResponse<String> response = post(server);
+            assertEquals(429, response.statusCode());
+            assertEquals("1", response.headers().firstValue("Retry-After").orElse(null));
+            assertEquals(1, server.rateLimited());
+        }
+    }
+
+    @Test
+    void testLatencyDistributions() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        assertEquals(200_000, LatencyDistribution.parse("constant:200").sampleMicros(random));
+        for (int i = 0; i < 1000; i++) {
+            long uniform = LatencyDistribution.parse("uniform:100:400").sampleMicros(random);
+            assertTrue(uniform >= 100_000 && uniform <= 400_000);
+        }
+
+        LatencyDistribution logNormal = LatencyDistribution.logNormal(Duration.ofMillis(300), Duration.ofMillis(1500));
+        int belowMedian = 0;
+        int aboveP99 = 0;
+        for (int i = 0; i < 20_000; i++) {
+            long sample = logNormal.sampleMicros(random);
+            belowMedian += sample < 300_000 ? 1 : 0;
+            aboveP99 += sample > 1_500_000 ? 1 : 0;
+        }
+        assertEquals(10_000, belowMedian, 600);
+        assertEquals(200, aboveP99, 100);
+
+        assertThrows(IllegalArgumentException.class, () -> LatencyDistribution.parse("normal:100"));
+        assertThrows(IllegalArgumentException.class, () -> LatencyDistribution.parse("uniform:400:100"));
+    }
+
+    @Test
+    void testInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new SimulatedLlmServer.Builder().errorRate(0.6)
+                .rateLimitRate(0.6).build());
+        assertThrows(IllegalArgumentException.class, () -> new SimulatedLlmServer.Builder().outputTokens(0).build());
+    }
+}
@@ -0,0 +1,106 @@
+package com.aimitjava.metrics;
+
+import com.aimitjava.chain.StuffDocumentsChain;
+import com.aimitjava.document.Document;
+import com.aimitjava.model.ChatLanguageModel;
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChainMetricsTest {
+
+    private static final ChatLanguageModel MODEL =
+            prompt -> new ChatLanguageModel.Response<>("Antwort", new TokenUsage(10, 5, 15));
+
+    @Test
+    void testHistogramPercentiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(1000, snapshot.count());
+        assertEquals(500.5, snapshot.mean(), 0.001);
+        assertEquals(1000, snapshot.max());
+        assertEquals(500, snapshot.p50(), 500 * 0.04);
+        assertEquals(990, snapshot.p99(), 990 * 0.04);
+    }
+
+    @Test
+    void testHistogramBucketsCoverLongRange() {
+        for (long value : new long[]{0, 1, 31, 32, 33, 1_000, 123_456_789, Long.MAX_VALUE}) {
+            int index = Histogram.indexOf(value);
+            assertTrue(Histogram.upperBound(index) >= value);
+            assertTrue(index == 0 || Histogram.upperBound(index - 1) < value);
+        }
+    }
+
+    @Test
+    void testConcurrentRecording() throws Exception {
+        Histogram histogram = new Histogram();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(40_000, histogram.count());
+    }
+
+    @Test
+    void testChainReportsStagesPromptAndTokens() {
+        ChainMetrics metrics = new ChainMetrics();
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(MODEL, "Prompt: {context}")
+                .listener(metrics)
+                .build();
+
+        ChatLanguageModel.Response<String> response = chain.invokeWithTokenUsage(
+                List.of(new Document("ä"), new Document("b")), new HashMap<>());
+
+        assertEquals("Antwort", response.content());
+        assertEquals(new TokenUsage(10, 5, 15), response.tokenUsage());
+        assertEquals(1, metrics.stage(ChainListener.Stage.FORMAT).count());
+        assertEquals(1, metrics.stage(ChainListener.Stage.RENDER).count());
+        assertEquals(1, metrics.stage(ChainListener.Stage.MODEL_CALL).count());
+        assertEquals(0, metrics.stage(ChainListener.Stage.PACK).count());
+        assertEquals(2, metrics.documentCount().snapshot().max());
+        // "Prompt: ä\n\nb" = 12 Zeichen, "ä" belegt zwei Bytes
+        assertEquals(13, metrics.promptBytes().snapshot().max());
+        assertEquals(15, metrics.totalTokens());
+    }
+
+    @Test
+    void testModelErrorsAreCounted() {
+        ChainMetrics metrics = new ChainMetrics();
+        ChatLanguageModel failing = prompt -> {
+            throw new IllegalStateException("Provider nicht erreichbar");
+        };
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(failing, "{context}")
+                .listener(metrics)
+                .build();
+
+        assertThrows(IllegalStateException.class, () -> chain.invoke(List.of(new Document("a"))));
+        assertEquals(1, metrics.errors(ChainListener.Stage.MODEL_CALL));
+    }
+
+    @Test
+    void testUtf8Length() {
+        assertEquals(0, ChainListener.utf8Length(""));
+        assertEquals("aä€😀".getBytes(java.nio.charset.StandardCharsets.UTF_8).length,
+                ChainListener.utf8Length("aä€😀"));
+    }
+}
@@ -0,0 +1,307 @@
+package com.aimitjava.model;
+
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingChatLanguageModelTest {
+
+    /**
+     * Simuliertes Modell, das seine Aufrufe zählt und optional auf ein Signal wartet.
+     */
+    private static class CountingModel implements ChatLanguageModel {
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile CountDownLatch release;
+
+        @Override
+        public Response<String> generate(String prompt) {
+            calls.incrementAndGet();
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return new Response<>("Antwort auf " + prompt, new TokenUsage(3, 5, 8));
+        }
+    }
+
+    /**
+     * Eine manuell verstellbare Uhr für TTL-Tests.
+     */
+    private static class MutableClock extends Clock {
+        private long millis;
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+
+    @Test
+    void testHitKeepsTokenUsage() {
+        CountingModel delegate = new CountingModel();
+        CachingChatLanguageModel model = new CachingChatLanguageModel.Builder(delegate).build();
+
+        ChatLanguageModel.Response<String> first = model.generate("Prompt");
+        ChatLanguageModel.Response<String> second = model.generate("Prompt");
+
+        assertEquals(1, delegate.calls.get());
+        assertEquals(first, second);
+        assertEquals(new TokenUsage(3, 5, 8), second.tokenUsage());
+        assertEquals(1, model.stats().hits());
+        assertEquals(1, model.stats().misses());
+    }
+
+    @Test
+    void testModelSettingsArePartOfTheKey() {
+        CountingModel delegate = new CountingModel();
+        CachingChatLanguageModel cold = new CachingChatLanguageModel.Builder(delegate).modelSettings("t=0.0").build();
+        CachingChatLanguageModel warm = new CachingChatLanguageModel.Builder(delegate).modelSettings("t=0.7").build();
+
+        cold.generate("Prompt");
+        warm.generate("Prompt");
+
+        assertEquals(2, delegate.calls.get());
+    }
+
+    @Test
+    void testLruEviction() {
+        CountingModel delegate = new CountingModel();
+        CachingChatLanguageModel model = new CachingChatLanguageModel.Builder(delegate).maxEntries(2).build();
+
+        model.generate("a");
+        model.generate("b");
+        model.generate("a");
+        model.generate("c");
+        model.generate("a");
+        model.generate("b");
+
+        // "b" war am längsten ungenutzt, als "c" hinzukam
+        assertEquals(4, delegate.calls.get());
+        assertEquals(2, model.stats().evictions());
+    }
+
+    @Test
+    void testSizeLimitInBytes() {
+        CountingModel delegate = new CountingModel();
+        CachingChatLanguageModel model = new CachingChatLanguageModel.Builder(delegate).maxBytes(400).build();
+
+        model.generate("a");
+        model.generate("b");
+        model.generate("c");
+
+        assertTrue(model.stats().bytes() <= 400);
+        assertTrue(model.stats().entries() < 3);
+    }
+
+    @Test
+    void testTimeToLive() {
+        CountingModel delegate = new CountingModel();
+        MutableClock clock = new MutableClock();
+        CachingChatLanguageModel model = new CachingChatLanguageModel.Builder(delegate)
+                .timeToLive(Duration.ofSeconds(10))
+                .clock(clock)
+                .build();
+
+        model.generate("Prompt");
+        clock.millis = 9_999;
+        model.generate("Prompt");
+        clock.millis = 10_000;
+        model.generate("Prompt");
+
+        assertEquals(2, delegate.calls.get());
+        assertEquals(1, model.stats().evictions());
+    }
+
+    @Test
+    void testConcurrentIdenticalRequestsAreSingleFlighted() throws Exception {
+        CountingModel delegate = new CountingModel();
+        delegate.release = new CountDownLatch(1);
+        CachingChatLanguageModel model = new CachingChatLanguageModel.Builder(delegate).build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<ChatLanguageModel.Response<String>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> model.generate("Prompt")));
+            }
+            while (model.stats().coalesced() + model.stats().hits() < 7) {
+                Thread.sleep(5);
+            }
+            delegate.release.countDown();
+
+            for (Future<ChatLanguageModel.Response<String>> future : futures) {
+                assertEquals("Antwort auf Prompt", future.get().content());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, delegate.calls.get());
+    }
+
+    @Test
+    void testErrorReachesCoalescedCaller() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ChatLanguageModel crashing = prompt -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new OutOfMemoryError("Simulierter Speichermangel");
+        };
+        CachingChatLanguageModel model = new CachingChatLanguageModel.Builder(crashing).build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<ChatLanguageModel.Response<String>> first = executor.submit(() -> model.generate("Prompt"));
+            Future<ChatLanguageModel.Response<String>> second = executor.submit(() -> model.generate("Prompt"));
+            while (model.stats().coalesced() < 1) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            for (Future<ChatLanguageModel.Response<String>> future : List.of(first, second)) {
+                ExecutionException error = assertThrows(ExecutionException.class,
+                        () -> future.get(5, TimeUnit.SECONDS));
+                assertTrue(error.getCause() instanceof OutOfMemoryError, "cause " + error.getCause());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testFailureIsNotCached() {
+        AtomicInteger calls = new AtomicInteger();
+        ChatLanguageModel flaky = prompt -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalStateException("Timeout");
+            }
+            return new ChatLanguageModel.Response<>("ok", new TokenUsage(1, 1, 2));
+        };
+        CachingChatLanguageModel model = new CachingChatLanguageModel.Builder(flaky).build();
+
+        assertThrows(IllegalStateException.class, () -> model.generate("Prompt"));
+        assertEquals("ok", model.generate("Prompt").content());
+    }
+
+    @Test
+    void testDiskCacheSurvivesRestart() throws Exception {
+        Path file = Files.createTempDirectory("cache").resolve("responses.bin");
+        CountingModel delegate = new CountingModel();
+
+        try (CachingChatLanguageModel model = new CachingChatLanguageModel.Builder(delegate)
+                .diskCache(file, 1024 * 1024)
+                .build()) {
+            model.generate("Prompt äöü");
+        }
+
+        try (CachingChatLanguageModel reopened = new CachingChatLanguageModel.Builder(delegate)
+                .diskCache(file, 1024 * 1024)
+                .build()) {
+            ChatLanguageModel.Response<String> response = reopened.generate("Prompt äöü");
+
+            assertEquals("Antwort auf Prompt äöü", response.content());
+            assertEquals(new TokenUsage(3, 5, 8), response.tokenUsage());
+            assertEquals(1, reopened.stats().diskHits());
+        }
+        assertEquals(1, delegate.calls.get());
+    }
+
+    @Test
+    void testFullDiskCacheReclaimsExpiredEntries() throws Exception {
+        Path file = Files.createTempDirectory("cache").resolve("responses.bin");
+        CountingModel delegate = new CountingModel();
+        MutableClock clock = new MutableClock();
+        // Platz für genau drei Datensätze: Header 12 Byte, je Datensatz 56 Byte Kopf und 20 Byte Inhalt
+        long capacity = 12 + 3 * (56 + 20);
+
+        try (CachingChatLanguageModel model = new CachingChatLanguageModel.Builder(delegate)
+                .timeToLive(Duration.ofSeconds(10))
+                .clock(clock)
+                .diskCache(file, capacity)
+                .build()) {
+            for (int i = 0; i < 3; i++) {
+                model.generate("Prompt " + i);
+            }
+            clock.millis = 10_000;
+            model.generate("Prompt 3");
+
+            assertEquals(0, model.stats().diskFull());
+        }
+
+        try (CachingChatLanguageModel reopened = new CachingChatLanguageModel.Builder(delegate)
+                .clock(clock)
+                .diskCache(file, capacity)
+                .build()) {
+            reopened.generate("Prompt 3");
+            reopened.generate("Prompt 0");
+
+            assertEquals(1, reopened.stats().diskHits());
+        }
+        assertEquals(5, delegate.calls.get());
+    }
+
+    @Test
+    void testFullDiskCacheIsCounted() throws Exception {
+        Path file = Files.createTempDirectory("cache").resolve("responses.bin");
+        CountingModel delegate = new CountingModel();
+
+        try (CachingChatLanguageModel model = new CachingChatLanguageModel.Builder(delegate)
+                .diskCache(file, 12 + 3 * (56 + 20))
+                .build()) {
+            for (int i = 0; i < 5; i++) {
+                model.generate("Prompt " + i);
+            }
+
+            assertEquals(2, model.stats().diskFull());
+            assertEquals(5, model.stats().entries());
+        }
+    }
+
+    @Test
+    void testOversizedResponseIsRejectedWithoutCompaction() throws Exception {
+        Path file = Files.createTempDirectory("cache").resolve("responses.bin");
+
+        try (MappedResponseStore store = new MappedResponseStore(file, 12 + 56 + 20, 0)) {
+            ChatLanguageModel.Response<String> small = new ChatLanguageModel.Response<>("x".repeat(20), null);
+            ChatLanguageModel.Response<String> large = new ChatLanguageModel.Response<>("x".repeat(21), null);
+
+            assertTrue(store.put(CacheKey.of("", "klein"), small, 0));
+            assertFalse(store.put(CacheKey.of("", "groß"), large, 0));
+
+            assertEquals(0, store.compactions());
+            assertEquals(1, store.size());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.aimitjava.model;
+
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+/**
+ * Lokales Modell für Tests, das pro Aufruf eine Verzögerung und Fehler einstreut. Aufrufe werden ab 0 gezählt;
+ * die Antwort enthält die Nummer des Aufrufs.
+ */
+class FakeChatLanguageModel implements ChatLanguageModel {
+    private final AtomicInteger calls = new AtomicInteger();
+    private final IntFunction<Long> latencyMillis;
+    private final IntPredicate failing;
+
+    /**
+     * @param latencyMillis Verzögerung in Millisekunden abhängig von der Nummer des Aufrufs
+     * @param failing Entscheidet abhängig von der Nummer des Aufrufs, ob er mit einem Fehler endet
+     */
+    FakeChatLanguageModel(IntFunction<Long> latencyMillis, IntPredicate failing) {
+        this.latencyMillis = latencyMillis;
+        this.failing = failing;
+    }
+
+    static FakeChatLanguageModel failingFirst(int failures) {
+        return new FakeChatLanguageModel(call -> 0L, call -> call < failures);
+    }
+
+    @Override
+    public Response<String> generate(String prompt) {
+        int call = calls.getAndIncrement();
+        long latency = latencyMillis.apply(call);
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted", e);
+            }
+        }
+        if (failing.test(call)) {
+            throw new IllegalStateException("Injizierter Fehler in Aufruf " + call);
+        }
+        return new Response<>("Antwort " + call, new TokenUsage(1, 1, 2));
+    }
+
+    int calls() {
+        return calls.get();
+    }
+}
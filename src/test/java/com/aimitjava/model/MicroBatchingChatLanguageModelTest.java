@@ -0,0 +1,191 @@
+package com.aimitjava.model;
+
+import com.aimitjava.chain.StuffDocumentsChain;
+import com.aimitjava.document.Document;
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicroBatchingChatLanguageModelTest {
+
+    /**
+     * Batch-Modell, das jeden Prompt gespiegelt beantwortet und die Bündelgrößen aufzeichnet.
+     */
+    private static class RecordingBatchModel implements BatchChatLanguageModel {
+        private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        private volatile CountDownLatch release;
+
+        @Override
+        public List<Response<String>> generateBatch(List<String> prompts) {
+            batchSizes.add(prompts.size());
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            List<Response<String>> responses = new ArrayList<>();
+            for (String prompt : prompts) {
+                responses.add(new Response<>("Echo: " + prompt, new TokenUsage(1, 1, 2)));
+            }
+            return responses;
+        }
+    }
+
+    @Test
+    void testConcurrentCallsAreBatched() {
+        // Vorbereiten
+        RecordingBatchModel batchModel = new RecordingBatchModel();
+        MicroBatchingChatLanguageModel model = new MicroBatchingChatLanguageModel.Builder(batchModel)
+                .maxBatchSize(10)
+                .window(Duration.ofSeconds(5))
+                .maxAddedLatency(Duration.ofSeconds(5))
+                .build();
+
+        // Ausführen
+        List<CompletableFuture<ChatLanguageModel.Response<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            futures.add(model.generateAsync("Prompt " + i));
+        }
+
+        // Überprüfen
+        for (int i = 0; i < 30; i++) {
+            assertEquals("Echo: Prompt " + i, futures.get(i).join().content());
+        }
+        assertEquals(List.of(10, 10, 10), batchModel.batchSizes);
+        assertEquals(3, model.batchSizes().count());
+    }
+
+    @Test
+    void testWindowFlushesPartialBatch() {
+        RecordingBatchModel batchModel = new RecordingBatchModel();
+        MicroBatchingChatLanguageModel model = new MicroBatchingChatLanguageModel.Builder(batchModel)
+                .maxBatchSize(100)
+                .window(Duration.ofMillis(20))
+                .build();
+
+        CompletableFuture<ChatLanguageModel.Response<String>> first = model.generateAsync("a");
+        CompletableFuture<ChatLanguageModel.Response<String>> second = model.generateAsync("b");
+
+        assertEquals("Echo: a", first.join().content());
+        assertEquals("Echo: b", second.join().content());
+        assertEquals(List.of(2), batchModel.batchSizes);
+    }
+
+    @Test
+    void testBusySlotsHoldCallsUntilMaxAddedLatency() {
+        RecordingBatchModel batchModel = new RecordingBatchModel();
+        CountDownLatch release = new CountDownLatch(1);
+        batchModel.release = release;
+        MicroBatchingChatLanguageModel model = new MicroBatchingChatLanguageModel.Builder(batchModel)
+                .maxBatchSize(1)
+                .window(Duration.ZERO)
+                .maxAddedLatency(Duration.ofMillis(30))
+                .maxConcurrentBatches(1)
+                .build();
+
+        CompletableFuture<ChatLanguageModel.Response<String>> blocked = model.generateAsync("a");
+        CompletableFuture<ChatLanguageModel.Response<String>> overdue = model.generateAsync("b");
+
+        // Das zweite Bündel wird trotz belegtem Platz nach maxAddedLatency abgeschickt
+        while (batchModel.batchSizes.size() < 2) {
+            Thread.onSpinWait();
+        }
+        assertFalse(blocked.isDone());
+        assertEquals(1, model.overdueBatches());
+        release.countDown();
+        assertEquals("Echo: a", blocked.join().content());
+        assertEquals("Echo: b", overdue.join().content());
+    }
+
+    @Test
+    void testBatchFailureReachesAllCalls() {
+        BatchChatLanguageModel failing = prompts -> {
+            throw new IllegalStateException("Anbieter nicht erreichbar");
+        };
+        MicroBatchingChatLanguageModel model = new MicroBatchingChatLanguageModel.Builder(failing)
+                .maxBatchSize(2)
+                .build();
+
+        CompletableFuture<ChatLanguageModel.Response<String>> first = model.generateAsync("a");
+        CompletableFuture<ChatLanguageModel.Response<String>> second = model.generateAsync("b");
+
+        assertThrows(IllegalStateException.class, () -> model.generate("c"));
+        assertTrue(first.isCompletedExceptionally() || assertThrowsCompletion(first));
+        assertTrue(assertThrowsCompletion(second));
+    }
+
+    @Test
+    void testBatchErrorReachesAllCalls() {
+        BatchChatLanguageModel failing = prompts -> {
+            throw new OutOfMemoryError("Simulierter Speichermangel");
+        };
+        MicroBatchingChatLanguageModel model = new MicroBatchingChatLanguageModel.Builder(failing)
+                .maxBatchSize(2)
+                .build();
+
+        CompletableFuture<ChatLanguageModel.Response<String>> first = model.generateAsync("a");
+
+        assertThrows(OutOfMemoryError.class, () -> model.generate("b"));
+        assertTrue(first.isCompletedExceptionally());
+    }
+
+    @Test
+    void testRejectedBatchFailsItsCalls() {
+        MicroBatchingChatLanguageModel model = new MicroBatchingChatLanguageModel.Builder(new RecordingBatchModel())
+                .maxBatchSize(1)
+                .executor(task -> {
+                    throw new RejectedExecutionException("Executor beendet");
+                })
+                .build();
+
+        assertThrows(RejectedExecutionException.class, () -> model.generate("a"));
+    }
+
+    private static boolean assertThrowsCompletion(CompletableFuture<?> future) {
+        assertThrows(RuntimeException.class, future::join);
+        return true;
+    }
+
+    @Test
+    void testChainInvocationsAreBatched() {
+        RecordingBatchModel batchModel = new RecordingBatchModel();
+        MicroBatchingChatLanguageModel model = new MicroBatchingChatLanguageModel.Builder(batchModel)
+                .maxBatchSize(8)
+                .window(Duration.ofMillis(50))
+                .build();
+        StuffDocumentsChain chain = new StuffDocumentsChain.Builder(model, "Klassifiziere: {context}").build();
+
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(chain.invokeAsync(List.of(new Document("Dokument " + i))));
+        }
+
+        for (int i = 0; i < 8; i++) {
+            assertEquals("Echo: Klassifiziere: Dokument " + i, futures.get(i).join());
+        }
+        assertTrue(batchModel.batchSizes.size() < 8);
+    }
+
+    @Test
+    void testInvalidConfiguration() {
+        RecordingBatchModel batchModel = new RecordingBatchModel();
+        assertThrows(IllegalArgumentException.class,
+                () -> new MicroBatchingChatLanguageModel.Builder(batchModel).maxBatchSize(0).build());
+        assertThrows(IllegalArgumentException.class,
+                () -> new MicroBatchingChatLanguageModel.Builder(batchModel)
+                        .window(Duration.ofMillis(10))
+                        .maxAddedLatency(Duration.ofMillis(5))
+                        .build());
+    }
+}
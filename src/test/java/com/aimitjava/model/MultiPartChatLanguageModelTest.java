@@ -0,0 +1,73 @@
+package com.aimitjava.model;
+
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultiPartChatLanguageModelTest {
+
+    @Test
+    void testSplitsCombinedAnswer() {
+        // Vorbereiten
+        List<String> received = new ArrayList<>();
+        ChatLanguageModel model = prompt -> {
+            received.add(prompt);
+            return new ChatLanguageModel.Response<>("### Antwort 1\npositiv\n### Antwort 2\nnegativ\n",
+                    new TokenUsage(100, 10, 110));
+        };
+        MultiPartChatLanguageModel multiPart = new MultiPartChatLanguageModel(model);
+
+        // Ausführen
+        List<ChatLanguageModel.Response<String>> responses = multiPart.generateBatch(List.of("Gut!", "Mies"));
+
+        // Überprüfen
+        assertEquals(1, received.size());
+        assertTrue(received.get(0).contains("### Aufgabe 1\nGut!"));
+        assertTrue(received.get(0).contains("### Aufgabe 2\nMies"));
+        assertEquals("positiv", responses.get(0).content());
+        assertEquals("negativ", responses.get(1).content());
+        assertEquals(Integer.valueOf(50), responses.get(0).tokenUsage().inputTokenCount());
+    }
+
+    @Test
+    void testMissingPartIsAskedIndividually() {
+        List<String> received = new ArrayList<>();
+        ChatLanguageModel model = prompt -> {
+            received.add(prompt);
+            String content = received.size() == 1 ? "### Antwort 2\nzwei" : "eins";
+            return new ChatLanguageModel.Response<>(content, new TokenUsage(1, 1, 2));
+        };
+        MultiPartChatLanguageModel multiPart = new MultiPartChatLanguageModel(model);
+
+        List<ChatLanguageModel.Response<String>> responses = multiPart.generateBatch(List.of("a", "b"));
+
+        assertEquals("eins", responses.get(0).content());
+        assertEquals("zwei", responses.get(1).content());
+        assertEquals("a", received.get(1));
+        assertEquals(1, multiPart.fallbacks());
+    }
+
+    @Test
+    void testSplitIgnoresPreambleAndRejectsDuplicates() {
+        String[] answers = MultiPartChatLanguageModel.split(
+                "Hier die Antworten:\n### Antwort 1\nx\n### Antwort 3\ny\n### Antwort 1\nz", 3);
+
+        assertNull(answers[0]);
+        assertNull(answers[1]);
+        assertEquals("y", answers[2]);
+    }
+
+    @Test
+    void testSinglePromptIsNotWrapped() {
+        ChatLanguageModel model = prompt -> new ChatLanguageModel.Response<>(prompt, null);
+
+        List<ChatLanguageModel.Response<String>> responses =
+                new MultiPartChatLanguageModel(model).generateBatch(List.of("allein"));
+
+        assertEquals("allein", responses.get(0).content());
+    }
+}
@@ -0,0 +1,249 @@
+package com.aimitjava.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResilientChatLanguageModelTest {
+
+    private static final Duration SHORT_BACKOFF = Duration.ofMillis(1);
+
+    /**
+     * Eine manuell verstellbare Uhr für den Circuit Breaker.
+     */
+    private static class MutableClock extends Clock {
+        private volatile long millis;
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+    }
+
+    private static void awaitHedgeWins(ResilientChatLanguageModel model, long expected) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (model.stats().hedgeWins() < expected && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(expected, model.stats().hedgeWins());
+    }
+
+    @Test
+    void testRetriesUntilSuccess() {
+        // Vorbereiten
+        FakeChatLanguageModel fake = FakeChatLanguageModel.failingFirst(2);
+        ResilientChatLanguageModel model = new ResilientChatLanguageModel.Builder(fake)
+                .maxAttempts(3)
+                .backoff(SHORT_BACKOFF, SHORT_BACKOFF, 2)
+                .build();
+
+        // Ausführen
+        ChatLanguageModel.Response<String> response = model.generate("Frage");
+
+        // Überprüfen
+        assertEquals("Antwort 2", response.content());
+        assertEquals(3, fake.calls());
+        assertEquals(2, model.stats().retries());
+        assertEquals(ResilientChatLanguageModel.CircuitState.CLOSED, model.circuitState());
+    }
+
+    @Test
+    void testGivesUpAfterMaxAttempts() {
+        FakeChatLanguageModel fake = FakeChatLanguageModel.failingFirst(10);
+        ResilientChatLanguageModel model = new ResilientChatLanguageModel.Builder(fake)
+                .maxAttempts(3)
+                .backoff(SHORT_BACKOFF, SHORT_BACKOFF, 2)
+                .build();
+
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> model.generate("Frage"));
+
+        assertEquals("Injizierter Fehler in Aufruf 2", error.getMessage());
+        assertEquals(3, fake.calls());
+    }
+
+    @Test
+    void testIllegalArgumentIsNotRetried() {
+        ChatLanguageModel invalid = prompt -> {
+            throw new IllegalArgumentException("Prompt zu lang");
+        };
+        ResilientChatLanguageModel model = new ResilientChatLanguageModel.Builder(invalid)
+                .backoff(SHORT_BACKOFF, SHORT_BACKOFF, 2)
+                .build();
+
+        assertThrows(IllegalArgumentException.class, () -> model.generate("Frage"));
+        assertEquals(1, model.stats().attempts());
+    }
+
+    @Test
+    void testTimeoutIsRetried() {
+        FakeChatLanguageModel fake = new FakeChatLanguageModel(call -> call == 0 ? 2000L : 0L, call -> false);
+        ResilientChatLanguageModel model = new ResilientChatLanguageModel.Builder(fake)
+                .timeout(Duration.ofMillis(50))
+                .backoff(SHORT_BACKOFF, SHORT_BACKOFF, 2)
+                .build();
+
+        assertEquals("Antwort 1", model.generate("Frage").content());
+        assertEquals(1, model.stats().timeouts());
+    }
+
+    @Test
+    void testTimeoutOnLastAttempt() {
+        FakeChatLanguageModel fake = new FakeChatLanguageModel(call -> 2000L, call -> false);
+        ResilientChatLanguageModel model = new ResilientChatLanguageModel.Builder(fake)
+                .timeout(Duration.ofMillis(20))
+                .maxAttempts(2)
+                .backoff(SHORT_BACKOFF, SHORT_BACKOFF, 2)
+                .build();
+
+        assertThrows(ResilientChatLanguageModel.ModelTimeoutException.class, () -> model.generate("Frage"));
+        assertEquals(2, model.stats().timeouts());
+    }
+
+    @Test
+    void testHedgedRequestAnswersFirst() {
+        FakeChatLanguageModel fake = new FakeChatLanguageModel(call -> call == 0 ? 3000L : 0L, call -> false);
+        ResilientChatLanguageModel model = new ResilientChatLanguageModel.Builder(fake)
+                .hedging(true)
+                .hedgeDelay(Duration.ofMillis(20))
+                .build();
+
+        long start = System.nanoTime();
+        ChatLanguageModel.Response<String> response = model.generate("Frage");
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals("Antwort 1", response.content());
+        assertTrue(elapsedMillis < 2000, "Hedging hat nicht gegriffen: " + elapsedMillis + " ms");
+        assertEquals(1, model.stats().hedges());
+        // Der Sieg wird erst nach dem Abschließen der Runde gezählt
+        awaitHedgeWins(model, 1);
+    }
+
+    @Test
+    void testHedgeDelayFollowsPercentile() {
+        FakeChatLanguageModel fake = new FakeChatLanguageModel(call -> 0L, call -> false);
+        ResilientChatLanguageModel model = new ResilientChatLanguageModel.Builder(fake)
+                .hedging(true)
+                .hedgeDelay(Duration.ofSeconds(5))
+                .build();
+
+        for (int i = 0; i < 20; i++) {
+            model.generate("Frage " + i);
+        }
+
+        assertTrue(model.hedgeDelay().compareTo(Duration.ofSeconds(1)) < 0);
+        assertEquals(0, model.stats().hedges());
+    }
+
+    @Test
+    void testCircuitBreakerOpensAndProbes() {
+        MutableClock clock = new MutableClock();
+        FakeChatLanguageModel fake = FakeChatLanguageModel.failingFirst(2);
+        ResilientChatLanguageModel model = new ResilientChatLanguageModel.Builder(fake)
+                .maxAttempts(1)
+                .circuitBreaker(2, Duration.ofSeconds(30))
+                .clock(clock)
+                .build();
+
+        assertThrows(IllegalStateException.class, () -> model.generate("Frage"));
+        assertThrows(IllegalStateException.class, () -> model.generate("Frage"));
+        assertEquals(ResilientChatLanguageModel.CircuitState.OPEN, model.circuitState());
+
+        assertThrows(ResilientChatLanguageModel.CircuitOpenException.class, () -> model.generate("Frage"));
+        assertEquals(2, fake.calls());
+        assertEquals(1, model.stats().rejected());
+
+        clock.millis = 30_000;
+        assertEquals("Antwort 2", model.generate("Frage").content());
+        assertEquals(ResilientChatLanguageModel.CircuitState.CLOSED, model.circuitState());
+    }
+
+    @Test
+    void testFailedProbeReopensCircuit() {
+        MutableClock clock = new MutableClock();
+        FakeChatLanguageModel fake = FakeChatLanguageModel.failingFirst(3);
+        ResilientChatLanguageModel model = new ResilientChatLanguageModel.Builder(fake)
+                .maxAttempts(1)
+                .circuitBreaker(2, Duration.ofSeconds(30))
+                .clock(clock)
+                .build();
+
+        assertThrows(IllegalStateException.class, () -> model.generate("Frage"));
+        assertThrows(IllegalStateException.class, () -> model.generate("Frage"));
+        clock.millis = 30_000;
+        assertThrows(IllegalStateException.class, () -> model.generate("Frage"));
+
+        assertEquals(ResilientChatLanguageModel.CircuitState.OPEN, model.circuitState());
+        assertThrows(ResilientChatLanguageModel.CircuitOpenException.class, () -> model.generate("Frage"));
+    }
+
+    @Test
+    void testConcurrentAsyncCalls() {
+        // Jeder dritte Prompt scheitert genau beim ersten Versuch, unabhängig von der Reihenfolge der Threads
+        Set<String> failedOnce = ConcurrentHashMap.newKeySet();
+        AtomicInteger attempts = new AtomicInteger();
+        ChatLanguageModel flaky = prompt -> {
+            attempts.incrementAndGet();
+            int number = Integer.parseInt(prompt.substring("Frage ".length()));
+            if (number % 3 == 0 && failedOnce.add(prompt)) {
+                throw new IllegalStateException("Injizierter Fehler für " + prompt);
+            }
+            return new ChatLanguageModel.Response<>("Antwort " + number, null);
+        };
+        ResilientChatLanguageModel model = new ResilientChatLanguageModel.Builder(flaky)
+                .maxAttempts(2)
+                .backoff(SHORT_BACKOFF, SHORT_BACKOFF, 2)
+                .circuitBreaker(0, Duration.ZERO)
+                .build();
+
+        List<CompletableFuture<ChatLanguageModel.Response<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(model.generateAsync("Frage " + i));
+        }
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("Antwort " + i, futures.get(i).join().content());
+        }
+        assertEquals(100, model.stats().calls());
+        assertEquals(34, model.stats().retries());
+        assertEquals(134, model.stats().attempts());
+        assertEquals(134, attempts.get());
+    }
+
+    @Test
+    void testInvalidConfiguration() {
+        ChatLanguageModel model = FakeChatLanguageModel.failingFirst(0);
+        assertThrows(IllegalArgumentException.class,
+                () -> new ResilientChatLanguageModel.Builder(model).maxAttempts(0).build());
+        assertThrows(IllegalArgumentException.class,
+                () -> new ResilientChatLanguageModel.Builder(model).jitter(1.5).build());
+        assertThrows(IllegalArgumentException.class,
+                () -> new ResilientChatLanguageModel.Builder(model).hedgePercentile(0).build());
+    }
+}
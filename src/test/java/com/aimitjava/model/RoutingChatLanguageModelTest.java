@@ -0,0 +1,322 @@
+package com.aimitjava.model;
+
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutingChatLanguageModelTest {
+
+    /**
+     * Modell, das mit seinem Namen antwortet und eine feste Tokenanzahl meldet.
+     */
+    private static class NamedModel implements ChatLanguageModel {
+        private final String name;
+        private final int totalTokens;
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile long latencyMillis;
+        private volatile CountDownLatch release;
+
+        NamedModel(String name, int totalTokens) {
+            this.name = name;
+            this.totalTokens = totalTokens;
+        }
+
+        @Override
+        public Response<String> generate(String prompt) {
+            calls.incrementAndGet();
+            try {
+                if (release != null) {
+                    release.await();
+                }
+                if (latencyMillis > 0) {
+                    Thread.sleep(latencyMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new Response<>(name, new TokenUsage(totalTokens, 0, totalTokens));
+        }
+    }
+
+    /**
+     * Eine manuell verstellbare Uhr für das Token-Fenster.
+     */
+    private static class MutableClock extends Clock {
+        private volatile long millis;
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+    }
+
+    @Test
+    void testRoundRobin() {
+        // Vorbereiten
+        RoutingChatLanguageModel router = new RoutingChatLanguageModel.Builder()
+                .strategy(RoutingChatLanguageModel.Strategy.ROUND_ROBIN)
+                .route("a", new NamedModel("a", 1))
+                .route("b", new NamedModel("b", 1))
+                .route("c", new NamedModel("c", 1))
+                .build();
+
+        // Ausführen
+        List<String> answers = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            answers.add(router.generate("Frage").content());
+        }
+
+        // Überprüfen
+        assertEquals(List.of("a", "b", "c", "a", "b", "c"), answers);
+        assertEquals(2, router.stats().get(1).requests());
+    }
+
+    @Test
+    void testConcurrencyCapSpillsToOtherRoute() throws Exception {
+        NamedModel a = new NamedModel("a", 1);
+        NamedModel b = new NamedModel("b", 1);
+        CountDownLatch release = new CountDownLatch(1);
+        a.release = release;
+        b.release = release;
+        RoutingChatLanguageModel router = new RoutingChatLanguageModel.Builder()
+                .strategy(RoutingChatLanguageModel.Strategy.LEAST_OUTSTANDING)
+                .route(new RoutingChatLanguageModel.Route.Builder("a", a).maxConcurrency(1).build())
+                .route(new RoutingChatLanguageModel.Route.Builder("b", b).maxConcurrency(1).build())
+                .build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> first = executor.submit(() -> router.generate("Frage"));
+            Future<?> second = executor.submit(() -> router.generate("Frage"));
+            while (a.calls.get() + b.calls.get() < 2) {
+                Thread.sleep(1);
+            }
+
+            assertEquals(1, a.calls.get());
+            assertEquals(1, b.calls.get());
+            assertThrows(RoutingChatLanguageModel.NoRouteAvailableException.class, () -> router.generate("Frage"));
+
+            release.countDown();
+            first.get();
+            second.get();
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, router.stats().get(0).outstanding());
+    }
+
+    @Test
+    void testTokenBudgetPerMinute() {
+        MutableClock clock = new MutableClock();
+        RoutingChatLanguageModel router = new RoutingChatLanguageModel.Builder()
+                .route(new RoutingChatLanguageModel.Route.Builder("a", new NamedModel("a", 400))
+                        .tokensPerMinute(800)
+                        .build())
+                .route(new RoutingChatLanguageModel.Route.Builder("b", new NamedModel("b", 400))
+                        .tokensPerMinute(400)
+                        .build())
+                .tokenEstimator(text -> 10)
+                .clock(clock)
+                .build();
+
+        List<String> answers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            answers.add(router.generate("Frage").content());
+        }
+        assertEquals(2, answers.stream().filter("a"::equals).count());
+        assertEquals(1, answers.stream().filter("b"::equals).count());
+        assertEquals(800, router.stats().get(0).tokensLastMinute());
+        assertThrows(RoutingChatLanguageModel.NoRouteAvailableException.class, () -> router.generate("Frage"));
+
+        // Nach einer Minute ist das Budget wieder frei
+        clock.millis = 60_000;
+        assertEquals(0, router.stats().get(0).tokensLastMinute());
+        assertDoesNotThrow(() -> router.generate("Frage"));
+    }
+
+    @Test
+    void testSmallModelPreferredForSmallPrompts() {
+        RoutingChatLanguageModel router = new RoutingChatLanguageModel.Builder()
+                .route("large", new NamedModel("large", 1))
+                .route(new RoutingChatLanguageModel.Route.Builder("small", new NamedModel("small", 1))
+                        .maxPromptTokens(100)
+                        .build())
+                .tokenEstimator(String::length)
+                .build();
+
+        assertEquals("small", router.generate("x".repeat(100)).content());
+        assertEquals("large", router.generate("x".repeat(101)).content());
+    }
+
+    @Test
+    void testSmallModelFallsBackWhenSaturated() {
+        NamedModel small = new NamedModel("small", 1);
+        RoutingChatLanguageModel router = new RoutingChatLanguageModel.Builder()
+                .route("large", new NamedModel("large", 1))
+                .route(new RoutingChatLanguageModel.Route.Builder("small", small)
+                        .maxPromptTokens(100)
+                        .tokensPerMinute(1)
+                        .build())
+                .tokenEstimator(String::length)
+                .build();
+
+        assertEquals("large", router.generate("Kurz").content());
+        assertEquals(0, small.calls.get());
+    }
+
+    @Test
+    void testEwmaPrefersFasterRoute() {
+        NamedModel slow = new NamedModel("slow", 1);
+        slow.latencyMillis = 30;
+        NamedModel fast = new NamedModel("fast", 1);
+        RoutingChatLanguageModel router = new RoutingChatLanguageModel.Builder()
+                .strategy(RoutingChatLanguageModel.Strategy.EWMA_LATENCY)
+                .route("slow", slow)
+                .route("fast", fast)
+                .build();
+
+        for (int i = 0; i < 20; i++) {
+            router.generate("Frage");
+        }
+
+        assertEquals(1, slow.calls.get());
+        assertTrue(router.stats().get(0).ewmaLatencyMillis() > router.stats().get(1).ewmaLatencyMillis());
+    }
+
+    @Test
+    void testFailureReleasesRoute() {
+        RoutingChatLanguageModel router = new RoutingChatLanguageModel.Builder()
+                .route(new RoutingChatLanguageModel.Route.Builder("a", FakeChatLanguageModel.failingFirst(1))
+                        .maxConcurrency(1)
+                        .build())
+                .build();
+
+        assertThrows(IllegalStateException.class, () -> router.generate("Frage"));
+        assertEquals("Antwort 1", router.generate("Frage").content());
+        assertEquals(1, router.stats().get(0).failures());
+        assertEquals(0, router.stats().get(0).outstanding());
+    }
+
+    @Test
+    void testEwmaAvoidsFailingRoute() {
+        NamedModel healthy = new NamedModel("healthy", 1);
+        healthy.latencyMillis = 1;
+        ChatLanguageModel broken = prompt -> {
+            throw new IllegalStateException("Deployment nicht erreichbar");
+        };
+        RoutingChatLanguageModel router = new RoutingChatLanguageModel.Builder()
+                .strategy(RoutingChatLanguageModel.Strategy.EWMA_LATENCY)
+                .route("broken", broken)
+                .route("healthy", healthy)
+                .build();
+
+        int failures = 0;
+        for (int i = 0; i < 100; i++) {
+            try {
+                router.generate("Frage");
+            } catch (IllegalStateException e) {
+                failures++;
+            }
+        }
+
+        // Jede Route wird ohne Messwert einmal ausprobiert, danach zählt die Strafzeit des Fehlers
+        assertEquals(1, failures);
+        assertEquals(99, healthy.calls.get());
+        assertTrue(router.stats().get(0).ewmaLatencyMillis() > router.stats().get(1).ewmaLatencyMillis());
+    }
+
+    @Test
+    void testErrorReleasesRoute() {
+        RoutingChatLanguageModel router = new RoutingChatLanguageModel.Builder()
+                .route(new RoutingChatLanguageModel.Route.Builder("a", prompt -> {
+                    throw new AssertionError("Fehler im Modell");
+                }).maxConcurrency(1).tokensPerMinute(1000).build())
+                .tokenEstimator(text -> 100)
+                .build();
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(AssertionError.class, () -> router.generate("Frage"));
+        }
+
+        assertEquals(0, router.stats().get(0).outstanding());
+        assertEquals(3, router.stats().get(0).failures());
+        assertEquals(300, router.stats().get(0).tokensLastMinute());
+    }
+
+    @Test
+    void testConcurrentCallersDoNotExceedTokenBudget() throws Exception {
+        NamedModel model = new NamedModel("a", 0);
+        model.release = new CountDownLatch(1);
+        RoutingChatLanguageModel router = new RoutingChatLanguageModel.Builder()
+                .route(new RoutingChatLanguageModel.Route.Builder("a", model).tokensPerMinute(100).build())
+                .tokenEstimator(text -> 10)
+                .build();
+        int threads = 32;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        router.generate("Frage");
+                    } catch (RoutingChatLanguageModel.NoRouteAvailableException e) {
+                        rejected.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            while (model.calls.get() + rejected.get() < threads) {
+                Thread.sleep(1);
+            }
+            assertEquals(10, model.calls.get());
+            model.release.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(threads - 10, rejected.get());
+    }
+
+    @Test
+    void testInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new RoutingChatLanguageModel.Builder().build());
+        assertThrows(IllegalArgumentException.class,
+                () -> new RoutingChatLanguageModel.Route.Builder("a", FakeChatLanguageModel.failingFirst(0))
+                        .maxConcurrency(-1)
+                        .build());
+    }
+}
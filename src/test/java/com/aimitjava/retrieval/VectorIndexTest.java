@@ -0,0 +1,153 @@
+package com.aimitjava.retrieval;
+
+import com.aimitjava.document.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VectorIndexTest {
+
+    private static float[] randomUnitVector(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        VectorMath.normalize(vector);
+        return vector;
+    }
+
+    private static void fill(VectorIndex index, int count, int dimension, long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < count; i++) {
+            index.add(new Document("Dokument " + i), randomUnitVector(random, dimension));
+        }
+    }
+
+    @Test
+    void testFlatIndexReturnsExactTopK() {
+        // Vorbereiten
+        FlatVectorIndex index = new FlatVectorIndex(3);
+        index.add(new Document("x"), new float[]{1, 0, 0});
+        index.add(new Document("y"), new float[]{0, 1, 0});
+        index.add(new Document("xy"), new float[]{0.7f, 0.7f, 0});
+
+        // Ausführen
+        List<SearchResult> results = index.search(new float[]{1, 0.1f, 0}, 2);
+
+        // Überprüfen
+        assertEquals(2, results.size());
+        assertEquals("x", results.get(0).document().text());
+        assertEquals("xy", results.get(1).document().text());
+        assertTrue(results.get(0).score() >= results.get(1).score());
+    }
+
+    @Test
+    void testFlatIndexAcrossBlocks() {
+        int count = VectorStore.BLOCK_SIZE * 2 + 17;
+        FlatVectorIndex index = new FlatVectorIndex(8);
+        fill(index, count, 8, 1);
+        float[] query = new float[8];
+        Random random = new Random(1);
+        for (int i = 0; i < count; i++) {
+            float[] vector = randomUnitVector(random, 8);
+            if (i == count - 1) {
+                query = vector;
+            }
+        }
+
+        List<SearchResult> results = index.search(query, 1);
+
+        assertEquals(count, index.size());
+        assertEquals("Dokument " + (count - 1), results.get(0).document().text());
+        assertEquals(1.0f, results.get(0).score(), 1e-5);
+    }
+
+    @Test
+    void testHnswRecallAgainstFlatIndex() {
+        int dimension = 32;
+        int count = 3000;
+        FlatVectorIndex flat = new FlatVectorIndex(dimension);
+        HnswVectorIndex hnsw = new HnswVectorIndex.Builder(dimension).m(12).efConstruction(100).efSearch(64).build();
+        fill(flat, count, dimension, 7);
+        fill(hnsw, count, dimension, 7);
+
+        Random random = new Random(99);
+        int found = 0;
+        int expected = 0;
+        for (int q = 0; q < 50; q++) {
+            float[] query = randomUnitVector(random, dimension);
+            Set<String> exact = new HashSet<>();
+            for (SearchResult result : flat.search(query, 10)) {
+                exact.add(result.document().text());
+            }
+            for (SearchResult result : hnsw.search(query, 10)) {
+                if (exact.contains(result.document().text())) {
+                    found++;
+                }
+            }
+            expected += exact.size();
+        }
+
+        double recall = (double) found / expected;
+        assertTrue(recall >= 0.9, "recall@10 = " + recall);
+    }
+
+    @Test
+    void testLargeKOnSmallIndexFromManyThreads() throws Exception {
+        int dimension = 8;
+        FlatVectorIndex flat = new FlatVectorIndex(dimension);
+        HnswVectorIndex hnsw = new HnswVectorIndex.Builder(dimension).efSearch(16).build();
+        fill(flat, 5, dimension, 3);
+        fill(hnsw, 5, dimension, 3);
+        float[] query = randomUnitVector(new Random(5), dimension);
+
+        List<Callable<List<SearchResult>>> searches = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            searches.add(() -> hnsw.search(query, 1_000_000));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (Future<List<SearchResult>> future : executor.invokeAll(searches)) {
+                assertEquals(5, future.get().size());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(5, flat.search(query, 1_000_000).size());
+    }
+
+    @Test
+    void testHashingEmbedderIsDeterministicAndNormalized() {
+        HashingEmbedder embedder = new HashingEmbedder(64);
+
+        float[] first = embedder.embed("Java Streams und Collections");
+        float[] second = embedder.embed("java streams UND collections");
+        float[] other = embedder.embed("Kochrezept für Apfelkuchen");
+
+        assertArrayEquals(first, second);
+        assertEquals(1.0f, VectorMath.dot(first, 0, first, 0, 64), 1e-5);
+        assertTrue(VectorMath.dot(first, 0, second, 0, 64) > VectorMath.dot(first, 0, other, 0, 64));
+    }
+
+    @Test
+    void testInvalidArguments() {
+        FlatVectorIndex flat = new FlatVectorIndex(4);
+        HnswVectorIndex hnsw = new HnswVectorIndex.Builder(4).build();
+
+        assertThrows(IllegalArgumentException.class, () -> flat.add(new Document("x"), new float[3]));
+        assertThrows(IllegalArgumentException.class, () -> flat.search(new float[4], 0));
+        assertThrows(IllegalArgumentException.class, () -> hnsw.search(new float[5], 1));
+        assertTrue(hnsw.search(new float[4], 3).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> new HnswVectorIndex.Builder(4).m(1).build());
+    }
+}